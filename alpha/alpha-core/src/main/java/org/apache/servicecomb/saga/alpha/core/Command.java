@@ -34,6 +34,9 @@ public class Command {
   private String localTxId;
   private String parentTxId;
   private String compensationMethod;
+  // the payloads are not duplicated in the Command table, they are referenced by 'eventId' and read from the TxStartedEvent.
+  // the command made from an event shares the array of the event, and the array is never modified after ingestion.
+  @Column(insertable = false, updatable = false)
   private byte[] payloads;
   private String status;
 
@@ -33,7 +33,24 @@ public interface CommandRepository {
 
   void markCommandAsDone(String globalTxId, String localTxId);
 
+  /**
+   * To claim the command for compensating by changing its status from NEW to PENDING.
+   *
+   * @return false if the command has been claimed by others
+   */
+  boolean markCommandAsPending(String globalTxId, String localTxId);
+
   List<Command> findUncompletedCommands(String globalTxId);
 
-  List<Command> findFirstCommandToCompensate();
+  /**
+   * To find the commands which are not claimed yet, they should be claimed by 'markCommandAsPending' before compensating.
+   */
+  List<Command> findNewCommands();
+
+  /**
+   * To claim at most 'limit' NEW commands at once by changing their status to PENDING, every command is claimed by one caller only.
+   *
+   * @return the claimed commands, the latest first
+   */
+  List<Command> claimNewCommands(int limit);
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+
+/**
+ * Sends the compensation as soon as the commands are saved, instead of waiting for the EventScanner to poll the Command table.
+ * Every command is claimed by changing its status from NEW to PENDING before compensating, so it's sent only once
+ * even if the scanner or another alpha node sees it at the same time.
+ * The Command table is still the durable backlog, the commands which are rejected by the full queue or lost by a crash are compensated by the scanner.
+ * The claimed commands of one global transaction are sent together, so the ones for the same omega instance go as one batch.
+ */
+public class CompensationDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final ThreadPoolExecutor dispatcherPool;
+
+    @Autowired
+    private CommandRepository commandRepository;
+
+    @Autowired
+    private OmegaCallback omegaCallback;
+
+    public CompensationDispatcher(int threads, int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.dispatcherPool = new ThreadPoolExecutor(threads, threads, 0, MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "txle-compensation-dispatcher-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (r, executor) -> LOG.warn("The compensation queue is full, the commands will be compensated by the scanner."));
+    }
+
+    /**
+     * To compensate the commands of one global transaction in the given order.
+     */
+    public void dispatch(List<Command> commands) {
+        if (commands == null || commands.isEmpty() || dispatcherPool.isShutdown()) {
+            return;
+        }
+        List<Command> commandList = new ArrayList<>(commands);
+        dispatcherPool.execute(() -> compensate(commandList));
+    }
+
+    public void shutdown() {
+        dispatcherPool.shutdown();
+        try {
+            if (!dispatcherPool.awaitTermination(5, SECONDS)) {
+                dispatcherPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            dispatcherPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void compensate(List<Command> commands) {
+        List<TxEvent> events = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            try {
+                // the command has been claimed by the scanner or another node if it's not NEW any more.
+                if (commandRepository.markCommandAsPending(command.globalTxId(), command.localTxId())) {
+                    TxEvent event = txStartedEventOf(command);
+                    CurrentThreadContext.put(command.globalTxId(), event);
+                    LOG.info("Compensating transaction with globalTxId {} and localTxId {} by dispatcher.", command.globalTxId(), command.localTxId());
+                    events.add(event);
+                }
+            } catch (Exception e) {
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to claim compensation command {}.", command, e);
+            }
+        }
+        try {
+            compensate(omegaCallback, events);
+        } catch (Exception e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to dispatch [{}] compensation commands of globalTxId [{}].",
+                    events.size(), events.get(0).globalTxId(), e);
+        }
+    }
+
+    // a single compensation is sent as before, so the clients and the callbacks which don't know the batch are not bothered.
+    static void compensate(OmegaCallback callback, List<TxEvent> events) {
+        if (events.size() == 1) {
+            callback.compensate(events.get(0));
+        } else if (!events.isEmpty()) {
+            callback.compensate(events);
+        }
+    }
+
+    static TxEvent txStartedEventOf(Command command) {
+        return new TxEvent(
+                command.serviceName(),
+                command.instanceId(),
+                command.globalTxId(),
+                command.localTxId(),
+                command.parentTxId(),
+                TxStartedEvent.name(),
+                command.compensationMethod(),
+                command.category(),
+                command.payloads()
+        );
+    }
+}
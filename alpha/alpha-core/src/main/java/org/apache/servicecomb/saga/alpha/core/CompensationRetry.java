@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The durable record of a failed compensation, which keeps the attempts and the time of the next attempt across restarts.
+ */
+@Entity
+@Table(name = "CompensationRetry")
+public class CompensationRetry {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long surrogateId;
+
+  private String serviceName;
+  private String instanceId;
+  private String globalTxId;
+  private String localTxId;
+  private int attempts;
+  // it's null in the records of the old versions, which gave the command back to the scanner.
+  private Date nextAttemptTime;
+  private String lastError;
+
+  CompensationRetry() {
+  }
+
+  public CompensationRetry(String serviceName, String instanceId, String globalTxId, String localTxId, int attempts, Date nextAttemptTime,
+      String lastError) {
+    this.serviceName = serviceName;
+    this.instanceId = instanceId;
+    this.globalTxId = globalTxId;
+    this.localTxId = localTxId;
+    this.attempts = attempts;
+    this.nextAttemptTime = nextAttemptTime;
+    this.lastError = lastError;
+  }
+
+  public String serviceName() {
+    return serviceName;
+  }
+
+  public String instanceId() {
+    return instanceId;
+  }
+
+  public String globalTxId() {
+    return globalTxId;
+  }
+
+  public String localTxId() {
+    return localTxId;
+  }
+
+  public int attempts() {
+    return attempts;
+  }
+
+  public Date nextAttemptTime() {
+    return nextAttemptTime;
+  }
+
+  public String lastError() {
+    return lastError;
+  }
+
+  @Override
+  public String toString() {
+    return "CompensationRetry{" +
+        "serviceName='" + serviceName + '\'' +
+        ", instanceId='" + instanceId + '\'' +
+        ", globalTxId='" + globalTxId + '\'' +
+        ", localTxId='" + localTxId + '\'' +
+        ", attempts=" + attempts +
+        ", nextAttemptTime=" + nextAttemptTime +
+        '}';
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import java.util.Date;
+import java.util.List;
+
+public interface CompensationRetryRepository {
+
+  CompensationRetry find(String globalTxId, String localTxId);
+
+  /**
+   * To save the attempts and the next attempt time, the record of the same transaction is replaced.
+   */
+  void save(CompensationRetry retry);
+
+  void delete(String globalTxId, String localTxId);
+
+  /**
+   * To find the retries whose next attempt time is earlier than the given time, or is not set by the old versions.
+   */
+  List<CompensationRetry> findOverdue(Date before);
+
+  /**
+   * To take over the overdue retry by moving its next attempt time, so the other nodes do not take it over again.
+   *
+   * @return false if the retry is not overdue any more, such as it has been taken over by another node
+   */
+  boolean claimOverdue(String globalTxId, String localTxId, Date before, Date nextAttemptTime);
+
+  /**
+   * To find the command of the retry with its payloads, whatever its status is.
+   */
+  Command findCommand(String globalTxId, String localTxId);
+}
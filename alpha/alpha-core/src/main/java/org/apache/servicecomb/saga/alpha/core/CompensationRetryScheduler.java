@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandleType;
+import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandling;
+import org.apache.servicecomb.saga.alpha.core.accidenthandling.IAccidentHandlingService;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+
+/**
+ * Retries the failed compensations by parallel workers, with an exponential backoff and jitter per command,
+ * instead of one compensation every few seconds, so the backlog of a downstream outage is recovered soon after the outage.
+ * <p>
+ * The attempts and the next attempt time are saved in the CompensationRetry table, which is the only state of a retry,
+ * because the scanner marks the command as DONE after its first send. The retry is sent again by the sender, such as the fair scheduler,
+ * and its record is deleted after the compensation is sent successfully, even if it's sent by the scanner.
+ * The overdue retries of a crashed or restarted node are taken over by another node, and the attempts go on from the saved ones.
+ * The command is reported as an accident after the max attempts, and it's not retried any more.
+ */
+public class CompensationRetryScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final CompensationRetryRepository retryRepository;
+    private final IAccidentHandlingService accidentHandlingService;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+    private final DelayQueue<RetryTask> retryTasks = new DelayQueue<>();
+    // the attempts of the retries which are owned by this node, they are skipped when recovering the overdue ones.
+    private final Map<String, Integer> ownedRetries = new ConcurrentHashMap<>();
+    // the retries which are waiting in the delay queue, a failure of the same transaction does not schedule it twice.
+    private final Set<String> waitingRetries = ConcurrentHashMap.newKeySet();
+    private final Thread[] workers;
+    private volatile OmegaCallback sender;
+    private volatile boolean shutdown;
+
+    public CompensationRetryScheduler(CompensationRetryRepository retryRepository, IAccidentHandlingService accidentHandlingService, int workerCount,
+                                      long baseDelayMillis, long maxDelayMillis, int maxAttempts) {
+        if (workerCount <= 0 || baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis || maxAttempts <= 0) {
+            throw new IllegalArgumentException("The workers, delays and max attempts of compensation retry must be positive.");
+        }
+        this.retryRepository = retryRepository;
+        this.accidentHandlingService = accidentHandlingService;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::runWorker, "txle-compensation-retry-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * To send the retries by the given callback, which reports the failures by 'retry' and the successes by 'compensated'.
+     */
+    public void sendBy(OmegaCallback sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * To retry the compensation which failed just now, the attempts go on from the saved ones if it failed before.
+     */
+    public void retry(TxEvent event, Exception cause) {
+        String key = keyOf(event.globalTxId(), event.localTxId());
+        if (waitingRetries.contains(key)) {
+            return;
+        }
+        Integer ownedAttempts = ownedRetries.get(key);
+        int previousAttempts = ownedAttempts == null ? savedAttemptsOf(event) : ownedAttempts;
+        scheduleNext(event, previousAttempts, cause, System.currentTimeMillis());
+    }
+
+    /**
+     * To delete the retry of the compensation which was sent successfully, it's nothing if the compensation never failed.
+     */
+    public void compensated(TxEvent event) {
+        Integer attempts = ownedRetries.remove(keyOf(event.globalTxId(), event.localTxId()));
+        if (attempts != null) {
+            deleteRetry(event);
+            LOG.info("Compensated globalTxId [{}] and localTxId [{}] by the retry [{}].", event.globalTxId(), event.localTxId(), attempts);
+        }
+    }
+
+    /**
+     * To take over the overdue retries which are not owned by this node, such as the ones of a crashed node.
+     *
+     * @param overdueMillis the retries which should have been attempted earlier than the time are recovered
+     * @return the number of the recovered retries
+     */
+    public int recover(long overdueMillis) {
+        int recovered = 0;
+        try {
+            long now = System.currentTimeMillis();
+            Date overdueBefore = new Date(now - overdueMillis);
+            List<CompensationRetry> overdueRetries = retryRepository.findOverdue(overdueBefore);
+            for (CompensationRetry retry : overdueRetries) {
+                if (!ownedRetries.containsKey(keyOf(retry.globalTxId(), retry.localTxId())) && recover(retry, overdueBefore, now)) {
+                    recovered++;
+                }
+            }
+        } catch (Exception e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to recover the overdue compensation retries.", e);
+        }
+        if (recovered > 0) {
+            LOG.info("Took over [{}] overdue compensation retries.", recovered);
+        }
+        return recovered;
+    }
+
+    public int size() {
+        return ownedRetries.size();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    long backoffMillis(int attempts) {
+        long delay = baseDelayMillis << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxDelayMillis) {
+            delay = maxDelayMillis;
+        }
+        // the equal jitter keeps half of the backoff, and spreads the retries of an outage over the other half.
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    // the retry is moved to the next attempt time first, so only one node takes it over.
+    private boolean recover(CompensationRetry retry, Date overdueBefore, long now) {
+        if (!retryRepository.claimOverdue(retry.globalTxId(), retry.localTxId(), overdueBefore, new Date(now + backoffMillis(retry.attempts() + 1)))) {
+            return false;
+        }
+        Command command = retryRepository.findCommand(retry.globalTxId(), retry.localTxId());
+        if (command == null) {
+            giveUp(new TxEvent(retry.serviceName(), retry.instanceId(), retry.globalTxId(), retry.localTxId(), null, TxStartedEvent.name(), "", "", null),
+                    retry.attempts(), new AlphaException("The command of the retry was not found."));
+            return true;
+        }
+        TxEvent event = CompensationDispatcher.txStartedEventOf(command);
+        String key = keyOf(retry.globalTxId(), retry.localTxId());
+        ownedRetries.put(key, retry.attempts());
+        waitingRetries.add(key);
+        retryTasks.offer(new RetryTask(event, retry.attempts(), now));
+        return true;
+    }
+
+    private int savedAttemptsOf(TxEvent event) {
+        try {
+            CompensationRetry savedRetry = retryRepository.find(event.globalTxId(), event.localTxId());
+            return savedRetry == null ? 0 : savedRetry.attempts();
+        } catch (Exception e) {
+            LOG.warn("Failed to find the saved retry of globalTxId [{}] and localTxId [{}], the attempts start from 0.",
+                    event.globalTxId(), event.localTxId(), e);
+            return 0;
+        }
+    }
+
+    private void scheduleNext(TxEvent event, int previousAttempts, Exception cause, long now) {
+        int attempts = previousAttempts + 1;
+        String key = keyOf(event.globalTxId(), event.localTxId());
+        if (attempts > maxAttempts) {
+            ownedRetries.remove(key);
+            giveUp(event, previousAttempts, cause);
+            return;
+        }
+        long nextAttemptTime = now + backoffMillis(attempts);
+        try {
+            retryRepository.save(new CompensationRetry(event.serviceName(), event.instanceId(), event.globalTxId(), event.localTxId(), attempts,
+                    new Date(nextAttemptTime), errorOf(cause)));
+        } catch (Exception e) {
+            LOG.warn("Failed to save the retry of globalTxId [{}] and localTxId [{}], it's retried in memory only.",
+                    event.globalTxId(), event.localTxId(), e);
+        }
+        ownedRetries.put(key, attempts);
+        waitingRetries.add(key);
+        retryTasks.offer(new RetryTask(event, attempts, nextAttemptTime));
+    }
+
+    private void giveUp(TxEvent event, int attempts, Exception cause) {
+        LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Gave up compensating globalTxId [{}] and localTxId [{}] after [{}] retries, it's reported as an accident.",
+                event.globalTxId(), event.localTxId(), attempts, cause);
+        deleteRetry(event);
+        if (accidentHandlingService != null) {
+            String remark = truncate("Failed to compensate by method [" + event.compensationMethod() + "] after " + attempts
+                    + " retries, the last error: " + errorOf(cause));
+            accidentHandlingService.reportMsgToAccidentPlatform(new AccidentHandling(event.serviceName(), event.instanceId(), event.globalTxId(),
+                    event.localTxId(), AccidentHandleType.ROLLBACK_ERROR, "", remark).toJsonString());
+        }
+    }
+
+    // the result of the retry comes back by 'retry' or 'compensated' from the sender, which may send it asynchronously.
+    private void runWorker() {
+        while (!shutdown) {
+            RetryTask task;
+            try {
+                task = retryTasks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            TxEvent event = task.event;
+            waitingRetries.remove(keyOf(event.globalTxId(), event.localTxId()));
+            try {
+                OmegaCallback currentSender = sender;
+                if (currentSender == null) {
+                    throw new AlphaException("No sender of the compensation retries.");
+                }
+                currentSender.compensate(event);
+            } catch (Exception e) {
+                LOG.warn("Failed to retry compensating globalTxId [{}] and localTxId [{}], attempts [{}].",
+                        event.globalTxId(), event.localTxId(), task.attempts, e);
+                retry(event, e);
+            }
+        }
+    }
+
+    private void deleteRetry(TxEvent event) {
+        try {
+            retryRepository.delete(event.globalTxId(), event.localTxId());
+        } catch (Exception e) {
+            LOG.warn("Failed to delete the retry of globalTxId [{}] and localTxId [{}].", event.globalTxId(), event.localTxId(), e);
+        }
+    }
+
+    private static String keyOf(String globalTxId, String localTxId) {
+        return globalTxId + "_" + localTxId;
+    }
+
+    private static String errorOf(Exception cause) {
+        return truncate(cause == null ? "" : cause.getClass().getName() + ": " + cause.getMessage());
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private static final class RetryTask implements Delayed {
+        private final TxEvent event;
+        private final int attempts;
+        private final long nextAttemptTime;
+
+        private RetryTask(TxEvent event, int attempts, long nextAttemptTime) {
+            this.event = event;
+            this.attempts = attempts;
+            this.nextAttemptTime = nextAttemptTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextAttemptTime - System.currentTimeMillis(), MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(MILLISECONDS), other.getDelay(MILLISECONDS));
+        }
+    }
+}
@@ -18,6 +18,9 @@ package org.apache.servicecomb.saga.alpha.core;
 import static java.util.Collections.emptyMap;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -33,23 +36,54 @@ public class CompositeOmegaCallback implements OmegaCallback {
 
   @Override
   public void compensate(TxEvent event) {
+    Map<String, OmegaCallback> serviceCallbacks = serviceCallbacksOf(event);
+    OmegaCallback omegaCallback = omegaCallbackOf(serviceCallbacks, event);
+
+    try {
+      omegaCallback.compensate(event);
+    } catch (Exception e) {
+      serviceCallbacks.values().remove(omegaCallback);
+      throw e;
+    }
+  }
+
+  // the events are sent as one batch per omega instance, and the order of the events is kept in every batch.
+  @Override
+  public void compensate(List<TxEvent> events) {
+    Map<OmegaCallback, List<TxEvent>> batches = new LinkedHashMap<>();
+    Map<OmegaCallback, Map<String, OmegaCallback>> batchServiceCallbacks = new LinkedHashMap<>();
+    for (TxEvent event : events) {
+      Map<String, OmegaCallback> serviceCallbacks = serviceCallbacksOf(event);
+      OmegaCallback omegaCallback = omegaCallbackOf(serviceCallbacks, event);
+      batches.computeIfAbsent(omegaCallback, callback -> new ArrayList<>()).add(event);
+      batchServiceCallbacks.put(omegaCallback, serviceCallbacks);
+    }
+
+    for (Map.Entry<OmegaCallback, List<TxEvent>> batch : batches.entrySet()) {
+      try {
+        batch.getKey().compensate(batch.getValue());
+      } catch (Exception e) {
+        batchServiceCallbacks.get(batch.getKey()).values().remove(batch.getKey());
+        throw e;
+      }
+    }
+  }
+
+  private Map<String, OmegaCallback> serviceCallbacksOf(TxEvent event) {
     Map<String, OmegaCallback> serviceCallbacks = callbacks.getOrDefault(event.serviceName(), emptyMap());
 
     if (serviceCallbacks.isEmpty()) {
       throw new AlphaException("No such omega callback found for service " + event.serviceName());
     }
+    return serviceCallbacks;
+  }
 
+  private OmegaCallback omegaCallbackOf(Map<String, OmegaCallback> serviceCallbacks, TxEvent event) {
     OmegaCallback omegaCallback = serviceCallbacks.get(event.instanceId());
     if (omegaCallback == null) {
       LOG.info("Cannot find the service with the instanceId {}, call the other instance.", event.instanceId());
       omegaCallback = serviceCallbacks.values().iterator().next();
     }
-
-    try {
-      omegaCallback.compensate(event);
-    } catch (Exception e) {
-      serviceCallbacks.values().remove(omegaCallback);
-      throw e;
-    }
+    return omegaCallback;
   }
 }
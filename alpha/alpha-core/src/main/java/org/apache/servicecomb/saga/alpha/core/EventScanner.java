@@ -20,19 +20,26 @@
 package org.apache.servicecomb.saga.alpha.core;
 
 import org.apache.servicecomb.saga.alpha.core.cache.ITxleCache;
+import org.apache.servicecomb.saga.alpha.core.partition.IScannerOwnership;
+import org.apache.servicecomb.saga.alpha.core.partition.LeaderScannerOwnership;
+import org.apache.servicecomb.saga.alpha.core.txstate.UnendedTxWatermark;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.servicecomb.saga.alpha.core.TaskStatus.NEW;
 import static org.apache.servicecomb.saga.common.EventType.TxAbortedEvent;
-import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
 
 public class EventScanner implements Runnable {
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -44,6 +51,10 @@ public class EventScanner implements Runnable {
   private final OmegaCallback omegaCallback;
 
   private final long eventPollingInterval;
+  // the interval of scanning timeout events in the TxEvent table, it's much longer than 'eventPollingInterval' if the timeout wheel works.
+  private final long timeoutPollingInterval;
+  // the interval of scanning NEW commands in the Command table, it's much longer than 'eventPollingInterval' if the CompensationDispatcher works.
+  private final long compensationPollingInterval;
 
   // Could not find the max id directly. In some cases, the minimum identify of undone event may be not max. Such ids: 1, 2, 3, 3 is done, but 2 is running yet.
   private static volatile long unendedMinEventId;
@@ -53,8 +64,19 @@ public class EventScanner implements Runnable {
 
   public static final String SCANNER_SQL = " /**scanner_sql**/";
 
+  public static final int DEFAULT_COMPENSATION_CLAIM_BATCH_SIZE = 100;
+
   private ITxleCache txleCache;
-  private TxleConsulClient txleConsulClient;
+  // current node scans the global transactions which are owned by it only, it's the leader who owns all of them by default.
+  private IScannerOwnership scannerOwnership;
+  // the low watermark is maintained in memory if it's not null, and the expensive query of it is only a rare reconciliation.
+  private final UnendedTxWatermark unendedTxWatermark;
+  private final long watermarkReconcileInterval;
+  // the max number of NEW commands which are claimed by one query.
+  private final int compensationClaimBatchSize;
+  // the min id of the unended events of the partitions owned by current node, it's used instead of 'unendedMinEventId' if the low watermark is disabled
+  // and the global transactions are partitioned, because the REST APIs read 'unendedMinEventId' for all of global transactions.
+  private volatile OwnedMinEventId ownedMinEventId = new OwnedMinEventId(Collections.emptySet(), 0);
 
   public EventScanner(ScheduledExecutorService scheduler,
                       TxEventRepository eventRepository,
@@ -64,14 +86,50 @@ public class EventScanner implements Runnable {
                       int eventPollingInterval,
                       ITxleCache txleCache,
                       TxleConsulClient txleConsulClient) {
+    this(scheduler, eventRepository, commandRepository, timeoutRepository, omegaCallback, eventPollingInterval, eventPollingInterval, eventPollingInterval * 2,
+            txleCache, new LeaderScannerOwnership(txleConsulClient));
+  }
+
+  public EventScanner(ScheduledExecutorService scheduler,
+                      TxEventRepository eventRepository,
+                      CommandRepository commandRepository,
+                      TxTimeoutRepository timeoutRepository,
+                      OmegaCallback omegaCallback,
+                      int eventPollingInterval,
+                      int timeoutPollingInterval,
+                      int compensationPollingInterval,
+                      ITxleCache txleCache,
+                      IScannerOwnership scannerOwnership) {
+    this(scheduler, eventRepository, commandRepository, timeoutRepository, omegaCallback, eventPollingInterval, timeoutPollingInterval,
+            compensationPollingInterval, txleCache, scannerOwnership, null, 0, DEFAULT_COMPENSATION_CLAIM_BATCH_SIZE);
+  }
+
+  public EventScanner(ScheduledExecutorService scheduler,
+                      TxEventRepository eventRepository,
+                      CommandRepository commandRepository,
+                      TxTimeoutRepository timeoutRepository,
+                      OmegaCallback omegaCallback,
+                      int eventPollingInterval,
+                      int timeoutPollingInterval,
+                      int compensationPollingInterval,
+                      ITxleCache txleCache,
+                      IScannerOwnership scannerOwnership,
+                      UnendedTxWatermark unendedTxWatermark,
+                      int watermarkReconcileInterval,
+                      int compensationClaimBatchSize) {
     this.scheduler = scheduler;
     this.eventRepository = eventRepository;
     this.commandRepository = commandRepository;
     this.timeoutRepository = timeoutRepository;
     this.omegaCallback = omegaCallback;
     this.eventPollingInterval = eventPollingInterval;
+    this.timeoutPollingInterval = timeoutPollingInterval;
+    this.compensationPollingInterval = compensationPollingInterval;
     this.txleCache = txleCache;
-    this.txleConsulClient = txleConsulClient;
+    this.scannerOwnership = scannerOwnership;
+    this.unendedTxWatermark = unendedTxWatermark;
+    this.watermarkReconcileInterval = watermarkReconcileInterval;
+    this.compensationClaimBatchSize = compensationClaimBatchSize;
   }
 
   @Override
@@ -83,14 +141,16 @@ public class EventScanner implements Runnable {
     /**
      * 1.check timeout by scheduler
      *    Produce aborted event and compensating command after checking timeout out.
+     *    If the TxTimeoutWheel is enabled, the timeout is detected by it, and here is only a slow sweep for the deadlines which were not registered on any live node.
      * 2.check timeout by TM (TM(Transaction Manager): TxConsistentService#handleSupportTxPause(TxEvent))
      *    Check timeout after ending sub-transaction. Produce aborted event and compensating command after checking timeout out.
      * 3.compensate for all of compensating commands.
+     *    If the CompensationDispatcher is enabled, the commands are compensated once they were saved, and here is only a slow sweep for the missed ones.
      */
     scheduler.scheduleWithFixedDelay(
             () -> {
               try {
-                if (txleConsulClient.isMaster()) {
+                if (scannerOwnership.isActive()) {
                   // Use a new scheduler for lessening the latency of checking timeout.
                   updateTimeoutStatus();
                   findTimeoutEvents();
@@ -102,14 +162,13 @@ public class EventScanner implements Runnable {
               }
             },
             0,
-            eventPollingInterval,
+            timeoutPollingInterval,
             MILLISECONDS);
 
     scheduler.scheduleWithFixedDelay(
             () -> {
               try {
-                if (txleConsulClient.isMaster()) {
-                  compensate();
+                if (scannerOwnership.isActive()) {
                   updateCompensatedCommands();
                   getMinUnendedEventId();
                 }
@@ -121,10 +180,42 @@ public class EventScanner implements Runnable {
             0,
             eventPollingInterval * 2,
             MILLISECONDS);
+
+    scheduler.scheduleWithFixedDelay(
+            () -> {
+              try {
+                if (scannerOwnership.isActive()) {
+                  compensate();
+                }
+              } catch (Exception e) {
+                // to avoid stopping this scheduler in case of exception By Gannalyo
+                log.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to execute method 'compensate' in scheduler.", e);
+              }
+            },
+            0,
+            compensationPollingInterval,
+            MILLISECONDS);
+
+    if (unendedTxWatermark != null) {
+      // it has been reconciled on startup.
+      scheduler.scheduleWithFixedDelay(
+              () -> {
+                try {
+                  if (scannerOwnership.isActive()) {
+                    reconcileUnendedTxWatermark();
+                  }
+                } catch (Exception e) {
+                  log.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to reconcile the low watermark of unended events.", e);
+                }
+              },
+              watermarkReconcileInterval,
+              watermarkReconcileInterval,
+              MILLISECONDS);
+    }
   }
 
   private void updateTimeoutStatus() {
-    List<Long> timeoutIdList = timeoutRepository.selectTimeoutIdList();
+    List<Long> timeoutIdList = timeoutRepository.selectTimeoutIdList(scannerOwnership.getPartitionCount(), scannerOwnership.getOwnedPartitions());
     if (timeoutIdList != null && !timeoutIdList.isEmpty()) {
       timeoutRepository.markTimeoutAsDone(timeoutIdList);
     }
@@ -133,7 +224,9 @@ public class EventScanner implements Runnable {
   private void findTimeoutEvents() {
     // check and record timeout
     // SELECT t.surrogateId FROM TxTimeout t, TxEvent t1 WHERE t1.globalTxId = t.globalTxId AND t1.localTxId = t.localTxId AND t1.type != t.type
-    eventRepository.findTimeoutEvents(unendedMinEventId)
+    // the partitions are filtered by the query, the same below.
+    Set<Integer> partitions = scannerOwnership.getOwnedPartitions();
+    eventRepository.findTimeoutEvents(scanMinEventId(partitions), scannerOwnership.getPartitionCount(), partitions)
             .forEach(event -> {
               CurrentThreadContext.put(event.globalTxId(), event);
               log.info("Found timeout event {}", event);
@@ -149,7 +242,7 @@ public class EventScanner implements Runnable {
 
   private void abortTimeoutEvents() {
     // select timeout records which have a 'NEW' status.
-    List<TxTimeout> txTimeoutList = timeoutRepository.findFirstTimeout();
+    List<TxTimeout> txTimeoutList = timeoutRepository.findFirstTimeout(scannerOwnership.getPartitionCount(), scannerOwnership.getOwnedPartitions());
     if (txTimeoutList != null && !txTimeoutList.isEmpty()) {
       txTimeoutList.forEach(timeout -> {
         log.info("Found timeout event {} to abort", timeout);
@@ -171,20 +264,26 @@ public class EventScanner implements Runnable {
   }
 
   private void compensate() {
-    List<Command> commandList = commandRepository.findFirstCommandToCompensate();
-    if (commandList == null || commandList.isEmpty()) {
-      return;
-    }
-    commandList.forEach(command -> {
-      log.error("Compensating transaction with globalTxId {} and localTxId {}", command.globalTxId(), command.localTxId());
+    // every command is claimed by one node only, so the NEW commands are drained by the scanners of all nodes in parallel, regardless of the partitions.
+    List<Command> commandList;
+    do {
+      commandList = commandRepository.claimNewCommands(compensationClaimBatchSize);
+      // the claimed commands are the latest first, so the ones of every global transaction are grouped in the reverse order of execution.
+      Map<String, List<TxEvent>> globalTxEvents = new LinkedHashMap<>();
+      commandList.forEach(command -> {
+        log.error("Compensating transaction with globalTxId {} and localTxId {}", command.globalTxId(), command.localTxId());
+        globalTxEvents.computeIfAbsent(command.globalTxId(), globalTxId -> new ArrayList<>()).add(CompensationDispatcher.txStartedEventOf(command));
+      });
       // call the client method 'org.apache.servicecomb.saga.omega.transaction.CompensationMessageHandler.onReceive()' to execute compensation.
-      omegaCallback.compensate(txStartedEventOf(command));
-    });
+      globalTxEvents.values().forEach(events -> CompensationDispatcher.compensate(omegaCallback, events));
+    } while (commandList.size() >= compensationClaimBatchSize && scannerOwnership.isActive());
   }
 
   private void updateCompensatedCommands() {
     // The 'findFirstCompensatedEventByIdGreaterThan' interface did not think about the 'SagaEndedEvent' type so that would do too many thing those were wasted.
-    List<TxEvent> compensatedUnendEventList = eventRepository.findSequentialCompensableEventOfUnended(unendedMinEventId);
+    Set<Integer> partitions = scannerOwnership.getOwnedPartitions();
+    List<TxEvent> compensatedUnendEventList =
+        eventRepository.findSequentialCompensableEventOfUnended(scanMinEventId(partitions), scannerOwnership.getPartitionCount(), partitions);
     if (compensatedUnendEventList == null || compensatedUnendEventList.isEmpty()) {
       return;
     }
@@ -214,20 +313,6 @@ public class EventScanner implements Runnable {
             "Transaction timeout".getBytes());
   }
 
-  private TxEvent txStartedEventOf(Command command) {
-    return new TxEvent(
-            command.serviceName(),
-            command.instanceId(),
-            command.globalTxId(),
-            command.localTxId(),
-            command.parentTxId(),
-            TxStartedEvent.name(),
-            command.compensationMethod(),
-            command.category(),
-            command.payloads()
-    );
-  }
-
   private TxTimeout txTimeoutOf(TxEvent event) {
     return new TxTimeout(
             event.id(),
@@ -244,6 +329,14 @@ public class EventScanner implements Runnable {
   }
 
   private void getMinUnendedEventId() {
+    if (unendedTxWatermark != null) {
+      unendedMinEventId = unendedTxWatermark.lowWatermark();
+      return;
+    }
+    if (scannerOwnership.getPartitionCount() > 0) {
+      getOwnedMinUnendedEventId(scannerOwnership.getPartitionCount(), scannerOwnership.getOwnedPartitions());
+      return;
+    }
     try {
       if (UNENDED_MIN_EVENT_ID_SELECT_COUNT.get() == 0) {
         return;
@@ -260,8 +353,63 @@ public class EventScanner implements Runnable {
     }
   }
 
+  private void getOwnedMinUnendedEventId(int partitionCount, Set<Integer> partitions) {
+    OwnedMinEventId current = ownedMinEventId;
+    // the newly owned partitions may have unended events below the former min id, so it's queried from the beginning again.
+    boolean partitionsChanged = !partitions.equals(current.partitions);
+    long minEventId = partitionsChanged ? 0 : current.eventId;
+    if (partitionsChanged) {
+      ownedMinEventId = new OwnedMinEventId(partitions, 0);
+    } else if (UNENDED_MIN_EVENT_ID_SELECT_COUNT.get() == 0) {
+      return;
+    }
+    if (partitions.isEmpty()) {
+      return;
+    }
+    try {
+      UNENDED_MIN_EVENT_ID_SELECT_COUNT.updateAndGet(count -> Math.max(count - 1, 0));
+      long currentMinId = eventRepository.selectMinUnendedTxEventId(minEventId, partitionCount, partitions);
+      if (minEventId < currentMinId) {
+        ownedMinEventId = new OwnedMinEventId(partitions, currentMinId);
+      }
+    } catch (Exception e) {
+      log.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to get the min id of global transaction which is not ended in the owned partitions.", e);
+    }
+  }
+
+  // the scanning queries of the partitions start from it.
+  private long scanMinEventId(Set<Integer> partitions) {
+    if (unendedTxWatermark != null || scannerOwnership.getPartitionCount() < 1) {
+      return unendedMinEventId;
+    }
+    OwnedMinEventId current = ownedMinEventId;
+    return partitions.equals(current.partitions) ? current.eventId : 0;
+  }
+
+  private void reconcileUnendedTxWatermark() {
+    // the max id is queried first, the global transactions started after it by other nodes have greater ids.
+    long maxEventId = eventRepository.selectMaxTxEventId();
+    // every unended global transaction was either tracked here, or started after the last reconciliation, so none of them is below the current watermark.
+    long watermark = Math.max(unendedTxWatermark.lowWatermark(), eventRepository.selectUnendedTxWatermark());
+    long minEventId = eventRepository.selectMinUnendedTxEventId(watermark > 0 ? watermark - 1 : 0);
+    List<TxEvent> unendedEvents = minEventId > 0 ? eventRepository.selectUnendedTxEvents(minEventId - 1) : null;
+    unendedTxWatermark.reconcile(unendedEvents, maxEventId);
+    unendedMinEventId = unendedTxWatermark.lowWatermark();
+    eventRepository.saveUnendedTxWatermark(unendedMinEventId);
+  }
+
   public static long getUnendedMinEventId() {
     return unendedMinEventId;
   }
 
+  private static final class OwnedMinEventId {
+    private final Set<Integer> partitions;
+    private final long eventId;
+
+    OwnedMinEventId(Set<Integer> partitions, long eventId) {
+      this.partitions = partitions;
+      this.eventId = eventId;
+    }
+  }
+
 }
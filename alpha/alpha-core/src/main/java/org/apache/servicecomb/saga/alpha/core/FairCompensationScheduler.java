@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.SummaryMetricFamily;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends the compensations fairly across the services, instead of in the order of the Command table,
+ * so a service with a huge backlog or slow compensations does not starve the compensations of the other services.
+ * <p>
+ * The compensations are queued per service and category, and the queues are served by deficit round robin,
+ * every queue sends as many compensations as its weight in a round. The compensations are sent by a pool of sender threads,
+ * and a service holds at most its concurrency limit of the senders, so a slow service does not occupy all of them.
+ * The permit is released as soon as the send completes, or fails, or by the in-flight timeout if the send is stuck.
+ * The compensation which has waited longer than the aging threshold is sent before the others, so the light services are never starved by the heavy ones.
+ * The queue depth, the in-flight count and the wait time of every queue are exposed to Prometheus.
+ * <p>
+ * The compensations of one global transaction for the same service are scheduled as one batch, which is sent as a whole by one sender and holds one permit.
+ * The commands are claimed as PENDING before they are scheduled, so the queue capacity also bounds the queued commands which are lost if this node crashes.
+ */
+public class FairCompensationScheduler extends Collector {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final List<String> LABEL_NAMES = Arrays.asList("service", "category");
+
+    private final int queueCapacity;
+    private final int defaultWeight;
+    private final int defaultConcurrency;
+    private final Map<String, Integer> weights;
+    private final Map<String, Integer> concurrencyLimits;
+    private final long agingThresholdMillis;
+    private final long inFlightTimeoutMillis;
+    private final int senderThreads;
+    private final LongSupplier clock;
+    private final Thread thread;
+    private final ExecutorService senders;
+
+    // all of the states are guarded by 'this'.
+    private final Map<List<String>, ServiceQueue> queues = new LinkedHashMap<>();
+    private final ArrayDeque<ServiceQueue> activeQueues = new ArrayDeque<>();
+    private final Set<Compensation> inFlights = new HashSet<>();
+    private int queuedCount;
+    private volatile boolean shutdown;
+
+    public FairCompensationScheduler(int queueCapacity, int defaultWeight, int defaultConcurrency, Map<String, Integer> weights,
+                                 Map<String, Integer> concurrencyLimits, long agingThresholdMillis, long inFlightTimeoutMillis, int senderThreads) {
+        this(queueCapacity, defaultWeight, defaultConcurrency, weights, concurrencyLimits, agingThresholdMillis, inFlightTimeoutMillis, senderThreads,
+                System::currentTimeMillis, true);
+    }
+
+    FairCompensationScheduler(int queueCapacity, int defaultWeight, int defaultConcurrency, Map<String, Integer> weights, Map<String, Integer> concurrencyLimits,
+                          long agingThresholdMillis, long inFlightTimeoutMillis, int senderThreads, LongSupplier clock, boolean started) {
+        if (queueCapacity <= 0 || defaultWeight <= 0 || defaultConcurrency <= 0 || senderThreads <= 0) {
+            throw new IllegalArgumentException("The queue capacity, weight, concurrency and sender threads of compensation scheduler must be positive.");
+        }
+        this.queueCapacity = queueCapacity;
+        this.defaultWeight = defaultWeight;
+        this.defaultConcurrency = defaultConcurrency;
+        this.weights = weights == null ? Collections.emptyMap() : new HashMap<>(weights);
+        this.concurrencyLimits = concurrencyLimits == null ? Collections.emptyMap() : new HashMap<>(concurrencyLimits);
+        this.agingThresholdMillis = agingThresholdMillis;
+        this.inFlightTimeoutMillis = inFlightTimeoutMillis;
+        this.senderThreads = senderThreads;
+        this.clock = clock;
+        AtomicInteger senderIndex = new AtomicInteger();
+        // the loop hands out at most 'senderThreads' compensations at a time, so the queue of the pool stays short.
+        this.senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread sender = new Thread(r, "txle-fair-compensation-sender-" + senderIndex.incrementAndGet());
+            sender.setDaemon(true);
+            return sender;
+        });
+        this.thread = new Thread(this::runLoop, "txle-fair-compensation-scheduler");
+        this.thread.setDaemon(true);
+        if (started) {
+            this.thread.start();
+        }
+    }
+
+    /**
+     * To parse the values per service, such as 'payment-service=8,order-service=2'.
+     */
+    public static Map<String, Integer> parseServiceValues(String serviceValues) {
+        Map<String, Integer> values = new HashMap<>();
+        if (serviceValues == null || serviceValues.trim().isEmpty()) {
+            return values;
+        }
+        for (String serviceValue : serviceValues.split(",")) {
+            int index = serviceValue.lastIndexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid service value [" + serviceValue + "], the format is 'serviceName=value'.");
+            }
+            values.put(serviceValue.substring(0, index).trim(), Integer.valueOf(serviceValue.substring(index + 1).trim()));
+        }
+        return values;
+    }
+
+    /**
+     * To send the compensation by the callback after the ones which are scheduled earlier, or by the weight and the age of its service.
+     * It blocks while the scheduler is full.
+     */
+    public void schedule(TxEvent event, OmegaCallback callback) {
+        if (shutdown) {
+            callback.compensate(event);
+            return;
+        }
+        synchronized (this) {
+            awaitCapacity();
+            enqueue(Arrays.asList(event.serviceName(), categoryOf(event)), Collections.singletonList(event), callback);
+        }
+    }
+
+    /**
+     * To send the compensations of one global transaction by the callback in the given order, as one batch per service and category.
+     * It blocks while the scheduler is full.
+     */
+    public void schedule(List<TxEvent> events, OmegaCallback callback) {
+        if (shutdown) {
+            callback.compensate(events);
+            return;
+        }
+        Map<List<String>, List<TxEvent>> batches = new LinkedHashMap<>();
+        events.forEach(event -> batches.computeIfAbsent(Arrays.asList(event.serviceName(), categoryOf(event)), key -> new ArrayList<>()).add(event));
+        synchronized (this) {
+            awaitCapacity();
+            batches.forEach((key, batch) -> enqueue(key, batch, callback));
+        }
+    }
+
+    private void awaitCapacity() {
+        try {
+            while (queuedCount >= queueCapacity && !shutdown) {
+                wait(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(List<String> key, List<TxEvent> events, OmegaCallback callback) {
+        ServiceQueue queue = queues.computeIfAbsent(key, ServiceQueue::new);
+        queue.compensations.addLast(new Compensation(queue, events, callback, clock.getAsLong()));
+        queue.depth += events.size();
+        if (!queue.active) {
+            queue.active = true;
+            activeQueues.addLast(queue);
+        }
+        queuedCount += events.size();
+        notifyAll();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            thread.join(5000);
+            senders.shutdown();
+            senders.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the next compensation to send, which has been counted as in flight, or null if no queue or sender is allowed to send now
+     */
+    synchronized Compensation next() {
+        long now = clock.getAsLong();
+        expireInFlights(now);
+        if (inFlights.size() >= senderThreads) {
+            return null;
+        }
+        Compensation compensation = nextAged(now);
+        if (compensation == null) {
+            compensation = nextByDeficitRoundRobin();
+        }
+        if (compensation != null) {
+            ServiceQueue queue = compensation.queue;
+            queuedCount -= compensation.events.size();
+            queue.depth -= compensation.events.size();
+            queue.scheduledCount += compensation.events.size();
+            queue.waitMillis += (now - compensation.scheduledTime) * compensation.events.size();
+            queue.inFlightCount++;
+            compensation.sentTime = now;
+            inFlights.add(compensation);
+            notifyAll();
+        }
+        return compensation;
+    }
+
+    synchronized int queueDepth(String serviceName, String category) {
+        ServiceQueue queue = queues.get(Arrays.asList(serviceName, category));
+        return queue == null ? 0 : queue.depth;
+    }
+
+    synchronized int inFlightCount(String serviceName, String category) {
+        ServiceQueue queue = queues.get(Arrays.asList(serviceName, category));
+        return queue == null ? 0 : queue.inFlightCount;
+    }
+
+    // the oldest compensation which has waited longer than the aging threshold is sent at once.
+    private Compensation nextAged(long now) {
+        ServiceQueue oldestQueue = null;
+        for (ServiceQueue queue : activeQueues) {
+            if (queue.isSaturated()) {
+                continue;
+            }
+            long scheduledTime = queue.compensations.peekFirst().scheduledTime;
+            if (now - scheduledTime >= agingThresholdMillis && (oldestQueue == null || scheduledTime < oldestQueue.compensations.peekFirst().scheduledTime)) {
+                oldestQueue = queue;
+            }
+        }
+        if (oldestQueue == null) {
+            return null;
+        }
+        Compensation compensation = oldestQueue.compensations.pollFirst();
+        if (oldestQueue.compensations.isEmpty()) {
+            deactivate(oldestQueue);
+        }
+        return compensation;
+    }
+
+    // the queue at the head of the active queues sends until its deficit is used up, then it's moved to the tail and the next queue goes on.
+    // a saturated queue is skipped without gaining deficit, so it does not burst after the permits are released.
+    private Compensation nextByDeficitRoundRobin() {
+        int skipped = 0;
+        while (skipped < activeQueues.size()) {
+            ServiceQueue queue = activeQueues.peekFirst();
+            if (queue.isSaturated()) {
+                activeQueues.addLast(activeQueues.pollFirst());
+                skipped++;
+                continue;
+            }
+            if (queue.deficit < 1) {
+                queue.deficit += queue.weight;
+            }
+            queue.deficit--;
+            Compensation compensation = queue.compensations.pollFirst();
+            if (queue.compensations.isEmpty()) {
+                deactivate(queue);
+            } else if (queue.deficit < 1) {
+                activeQueues.addLast(activeQueues.pollFirst());
+            }
+            return compensation;
+        }
+        return null;
+    }
+
+    private void deactivate(ServiceQueue queue) {
+        queue.active = false;
+        queue.deficit = 0;
+        activeQueues.remove(queue);
+    }
+
+    // the permit of a stuck send is released, so the service goes on with the other senders.
+    private void expireInFlights(long now) {
+        Iterator<Compensation> iterator = inFlights.iterator();
+        while (iterator.hasNext()) {
+            Compensation compensation = iterator.next();
+            if (now - compensation.sentTime >= inFlightTimeoutMillis) {
+                iterator.remove();
+                compensation.queue.inFlightCount--;
+                LOG.warn("The compensation of globalTxId [{}] and localTxId [{}] has been sent for more than [{}] milliseconds, its permit is released.",
+                        compensation.event().globalTxId(), compensation.event().localTxId(), inFlightTimeoutMillis);
+            }
+        }
+    }
+
+    private synchronized void release(Compensation compensation) {
+        if (inFlights.remove(compensation)) {
+            compensation.queue.inFlightCount--;
+            notifyAll();
+        }
+    }
+
+    private void runLoop() {
+        while (!shutdown || hasQueued()) {
+            Compensation compensation;
+            synchronized (this) {
+                compensation = next();
+                if (compensation == null) {
+                    if (shutdown) {
+                        // the saturated queues are sent at once when shutting down, the permits do not matter any more.
+                        drainOnShutdown();
+                        return;
+                    }
+                    try {
+                        wait(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+            }
+            Compensation sending = compensation;
+            try {
+                senders.execute(() -> send(sending));
+            } catch (RejectedExecutionException e) {
+                send(sending);
+            }
+        }
+    }
+
+    private synchronized boolean hasQueued() {
+        return queuedCount > 0;
+    }
+
+    private void drainOnShutdown() {
+        for (ServiceQueue queue : queues.values()) {
+            Compensation compensation;
+            while ((compensation = queue.compensations.pollFirst()) != null) {
+                queuedCount -= compensation.events.size();
+                queue.depth -= compensation.events.size();
+                send(compensation);
+            }
+        }
+    }
+
+    /**
+     * To send the compensation by its callback, and to release its permit after the send completes or fails.
+     */
+    void send(Compensation compensation) {
+        List<TxEvent> events = compensation.events;
+        try {
+            CompensationDispatcher.compensate(compensation.callback, events);
+        } catch (Exception e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to send [{}] compensations of globalTxId [{}], the first localTxId [{}].",
+                    events.size(), events.get(0).globalTxId(), events.get(0).localTxId(), e);
+        } finally {
+            release(compensation);
+        }
+    }
+
+    private static String categoryOf(TxEvent event) {
+        return event.category() == null ? "" : event.category();
+    }
+
+    @Override
+    public synchronized List<MetricFamilySamples> collect() {
+        GaugeMetricFamily queueDepth = new GaugeMetricFamily("txle_compensation_queue_depth",
+                "Number of compensations waiting in the queue of the service.", LABEL_NAMES);
+        GaugeMetricFamily inFlight = new GaugeMetricFamily("txle_compensation_in_flight",
+                "Number of permits held by the compensations which are being sent to the service.", LABEL_NAMES);
+        SummaryMetricFamily waitTime = new SummaryMetricFamily("txle_compensation_wait_seconds",
+                "Seconds spent by compensations waiting in the queue of the service.", LABEL_NAMES);
+        for (Map.Entry<List<String>, ServiceQueue> entry : queues.entrySet()) {
+            ServiceQueue queue = entry.getValue();
+            queueDepth.addMetric(entry.getKey(), queue.depth);
+            inFlight.addMetric(entry.getKey(), queue.inFlightCount);
+            waitTime.addMetric(entry.getKey(), queue.scheduledCount, queue.waitMillis / 1e3);
+        }
+        List<MetricFamilySamples> metricList = new ArrayList<>();
+        metricList.add(queueDepth);
+        metricList.add(inFlight);
+        metricList.add(waitTime);
+        return metricList;
+    }
+
+    private final class ServiceQueue {
+        private final ArrayDeque<Compensation> compensations = new ArrayDeque<>();
+        private final int weight;
+        private final int concurrency;
+        private boolean active;
+        private int depth;
+        private int deficit;
+        private int inFlightCount;
+        private long scheduledCount;
+        private long waitMillis;
+
+        private ServiceQueue(List<String> key) {
+            this.weight = Math.max(1, weights.getOrDefault(key.get(0), defaultWeight));
+            this.concurrency = Math.max(1, concurrencyLimits.getOrDefault(key.get(0), defaultConcurrency));
+        }
+
+        private boolean isSaturated() {
+            return inFlightCount >= concurrency;
+        }
+    }
+
+    final class Compensation {
+        private final ServiceQueue queue;
+        private final List<TxEvent> events;
+        private final OmegaCallback callback;
+        private final long scheduledTime;
+        // guarded by the scheduler.
+        private long sentTime;
+
+        private Compensation(ServiceQueue queue, List<TxEvent> events, OmegaCallback callback, long scheduledTime) {
+            this.queue = queue;
+            this.events = events;
+            this.callback = callback;
+            this.scheduledTime = scheduledTime;
+        }
+
+        TxEvent event() {
+            return events.get(0);
+        }
+
+        List<TxEvent> events() {
+            return events;
+        }
+    }
+}
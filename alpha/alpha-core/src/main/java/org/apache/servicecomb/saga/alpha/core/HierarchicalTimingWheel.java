@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hierarchical timing wheel, scheduling and cancelling are O(1), and advancing costs only the expired or cascaded entries.
+ * The level 0 has 'wheelSize' slots of 'tickMs', and every slot of the level n covers a whole revolution of the level n - 1.
+ * Entries are moved down to the lower level when the upper slot is reached, and expire in the slot of the level 0.
+ * A deadline beyond the highest level is parked in the farthest slot and cascaded again later.
+ *
+ * @param <K> the key for cancelling, scheduling a key again replaces its former deadline
+ * @param <V> the value which is returned on expiry
+ */
+public class HierarchicalTimingWheel<K, V> {
+    private final long tickMs;
+    private final int wheelSize;
+    // ticks of one slot in every level, they are 1, wheelSize, wheelSize^2 ...
+    private final long[] slotTicks;
+    private final List<List<Set<Entry<K, V>>>> levels;
+    private final Map<K, Entry<K, V>> entries = new HashMap<>();
+
+    private long currentTick;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, int levelCount, long startTimeMs) {
+        if (tickMs < 1 || wheelSize < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Illegal timing wheel, tickMs = " + tickMs + ", wheelSize = " + wheelSize + ", levels = " + levelCount);
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.slotTicks = new long[levelCount];
+        this.levels = new ArrayList<>(levelCount);
+        long ticks = 1;
+        for (int i = 0; i < levelCount; i++) {
+            slotTicks[i] = ticks;
+            ticks *= wheelSize;
+            List<Set<Entry<K, V>>> slots = new ArrayList<>(wheelSize);
+            for (int j = 0; j < wheelSize; j++) {
+                slots.add(new LinkedHashSet<>());
+            }
+            levels.add(slots);
+        }
+        this.currentTick = startTimeMs / tickMs;
+    }
+
+    public synchronized void schedule(K key, V value, long deadlineMs) {
+        cancel(key);
+        Entry<K, V> entry = new Entry<>(key, value, (deadlineMs + tickMs - 1) / tickMs);
+        entries.put(key, entry);
+        if (entry.deadlineTick <= currentTick) {
+            // it's overdue, so it will expire at the next tick.
+            place(entry, 0, (currentTick + 1) % wheelSize);
+        } else {
+            insert(entry, null);
+        }
+    }
+
+    public synchronized boolean cancel(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        levels.get(entry.level).get(entry.slot).remove(entry);
+        return true;
+    }
+
+    /**
+     * To move the wheel to the time 'nowMs'.
+     *
+     * @return the values whose deadlines are reached
+     */
+    public synchronized List<V> advance(long nowMs) {
+        List<V> expired = new ArrayList<>();
+        long targetTick = nowMs / tickMs;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // cascade from the highest level, so that the entries are always moved to the slots which are not reached yet.
+            for (int level = levels.size() - 1; level > 0; level--) {
+                if (currentTick % slotTicks[level] == 0) {
+                    reinsert(level, (int) ((currentTick / slotTicks[level]) % wheelSize), expired);
+                }
+            }
+            reinsert(0, (int) (currentTick % wheelSize), expired);
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void reinsert(int level, int slot, List<V> expired) {
+        Set<Entry<K, V>> bucket = levels.get(level).get(slot);
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<K, V>> moving = new ArrayList<>(bucket);
+        bucket.clear();
+        moving.forEach(entry -> insert(entry, expired));
+    }
+
+    private void insert(Entry<K, V> entry, List<V> expired) {
+        if (entry.deadlineTick <= currentTick && expired != null) {
+            entries.remove(entry.key);
+            expired.add(entry.value);
+            return;
+        }
+        for (int level = 0; level < levels.size(); level++) {
+            long distance = entry.deadlineTick / slotTicks[level] - currentTick / slotTicks[level];
+            if (distance < wheelSize) {
+                place(entry, level, (entry.deadlineTick / slotTicks[level]) % wheelSize);
+                return;
+            }
+        }
+        // beyond the highest level, park it in the farthest slot.
+        int highest = levels.size() - 1;
+        place(entry, highest, (currentTick / slotTicks[highest] + wheelSize - 1) % wheelSize);
+    }
+
+    private void place(Entry<K, V> entry, int level, long slot) {
+        entry.level = level;
+        entry.slot = (int) slot;
+        levels.get(level).get(entry.slot).add(entry);
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long deadlineTick;
+        private int level;
+        private int slot;
+
+        private Entry(K key, V value, long deadlineTick) {
+            this.key = key;
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -15,9 +15,18 @@
 
 package org.apache.servicecomb.saga.alpha.core;
 
+import java.util.List;
+
 public interface OmegaCallback {
   void compensate(TxEvent event);
 
+  /**
+   * To compensate the transactions of one global transaction in the given order, they are sent one by one by default.
+   */
+  default void compensate(List<TxEvent> events) {
+    events.forEach(this::compensate);
+  }
+
   default void disconnect() {
   }
 }
@@ -16,6 +16,10 @@
 package org.apache.servicecomb.saga.alpha.core;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
@@ -25,10 +29,19 @@ public class PushBackOmegaCallback implements OmegaCallback {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private final BlockingQueue<Runnable> pendingCompensations;
+  private final CompensationRetryScheduler retryScheduler;
   private final OmegaCallback underlying;
 
   public PushBackOmegaCallback(BlockingQueue<Runnable> pendingCompensations, OmegaCallback underlying) {
     this.pendingCompensations = pendingCompensations;
+    this.retryScheduler = null;
+    this.underlying = underlying;
+  }
+
+  // the failed compensations are retried with backoff by the scheduler, instead of the pending queue.
+  public PushBackOmegaCallback(CompensationRetryScheduler retryScheduler, OmegaCallback underlying) {
+    this.pendingCompensations = null;
+    this.retryScheduler = retryScheduler;
     this.underlying = underlying;
   }
 
@@ -37,11 +50,45 @@ public class PushBackOmegaCallback implements OmegaCallback {
     try {
       underlying.compensate(event);
     } catch (Exception e) {
-      logError(event, e);
+      pushBack(event, e);
+      return;
+    }
+    compensated(event);
+  }
+
+  // the events are sent as one batch per omega instance, and every event of a failed batch is retried on its own.
+  @Override
+  public void compensate(List<TxEvent> events) {
+    Map<String, List<TxEvent>> batches = new LinkedHashMap<>();
+    events.forEach(event -> batches.computeIfAbsent(event.serviceName() + "_" + event.instanceId(), key -> new ArrayList<>()).add(event));
+
+    for (List<TxEvent> batch : batches.values()) {
+      try {
+        underlying.compensate(batch);
+      } catch (Exception e) {
+        batch.forEach(event -> pushBack(event, e));
+        continue;
+      }
+      batch.forEach(this::compensated);
+    }
+  }
+
+  private void pushBack(TxEvent event, Exception e) {
+    logError(event, e);
+    if (retryScheduler != null) {
+      retryScheduler.retry(event, e);
+    } else {
       pendingCompensations.offer(() -> compensate(event));
     }
   }
 
+  // the retry of the compensation is deleted once it's sent, whoever sends it, the scanner or the retry scheduler.
+  private void compensated(TxEvent event) {
+    if (retryScheduler != null) {
+      retryScheduler.compensated(event);
+    }
+  }
+
   private void logError(TxEvent event, Exception e) {
     LOG.error(
         "Failed to {} service [{}] instance [{}] with method [{}], global tx id [{}] and local tx id [{}]",
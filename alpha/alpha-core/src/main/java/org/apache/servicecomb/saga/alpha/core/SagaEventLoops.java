@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.SummaryMetricFamily;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Handles the events of alpha by N single-threaded loops, the loop of an event is chosen by the hash of its globalTxId.
+ * So the events of one global transaction are handled one by one in the arriving order, and different global transactions run in parallel.
+ * Every loop has a bounded queue, the caller is blocked while the queue is full, which pushes the pressure back to the clients.
+ * The queue depth and the latency, from submitting to finishing, of every loop are exposed to Prometheus.
+ * <p>
+ * A loop doesn't run the tasks itself, because they include the blocking writes to the database, e.g. waiting for the group commit.
+ * It chains every task after the last task of the same global transaction, and the chained tasks run on a shared pool of workers,
+ * so the loop moves on to the next event at once, and a slow write only delays the later events of its own global transaction.
+ * The tasks which have been handed over but not finished are limited by the queue capacity per loop, the loop waits while it's reached.
+ * The number of the workers, 'alpha.event.loops.worker-threads', is the max number of events which are saved at the same time.
+ */
+public class SagaEventLoops extends Collector {
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private volatile boolean shutdown;
+
+    public SagaEventLoops(int loopCount, int queueCapacity) {
+        this(loopCount, queueCapacity, loopCount);
+    }
+
+    public SagaEventLoops(int loopCount, int queueCapacity, int workerCount) {
+        if (loopCount <= 0 || queueCapacity <= 0 || workerCount <= 0) {
+            throw new IllegalArgumentException("The count, queue capacity and workers of event loops must be positive.");
+        }
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "txle-saga-event-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i, queueCapacity);
+            loops[i].thread.start();
+        }
+    }
+
+    /**
+     * To handle the task by the loop of the global transaction, after the tasks which were submitted for the same global transaction earlier.
+     * It blocks while the queue of the loop is full.
+     *
+     * @return the future which is completed by the loop thread
+     */
+    public <T> CompletableFuture<T> submit(String globalTxId, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (shutdown) {
+            future.completeExceptionally(new RejectedExecutionException("The saga event loops have been shut down."));
+            return future;
+        }
+        EventLoop loop = loops[loopIndexOf(globalTxId)];
+        try {
+            loop.waitingCount.incrementAndGet();
+            loop.queue.put(new EventTask<>(globalTxId == null ? "" : globalTxId, task, future));
+        } catch (InterruptedException e) {
+            loop.waitingCount.decrementAndGet();
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    int loopIndexOf(String globalTxId) {
+        if (globalTxId == null) {
+            return 0;
+        }
+        int hash = globalTxId.hashCode();
+        // to spread the high bits as HashMap does, the UUIDs differ in all bits but the other ids may not.
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % loops.length;
+    }
+
+    // the events which have been submitted but not started, no matter whether they are in the queue or chained after the former events.
+    int queueDepth(int index) {
+        return loops[index].waitingCount.get();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join(SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            loop.thread.interrupt();
+            List<EventTask<?>> remainingTasks = new ArrayList<>();
+            loop.queue.drainTo(remainingTasks);
+            remainingTasks.forEach(task -> task.future.completeExceptionally(new RejectedExecutionException("The saga event loops have been shut down.")));
+        }
+        // the chained tasks are still finished.
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<String> labelNames = Collections.singletonList("shard");
+        GaugeMetricFamily queueDepth = new GaugeMetricFamily("txle_ingestion_shard_queue_depth",
+                "Number of events waiting in the queue of the saga event loop.", labelNames);
+        SummaryMetricFamily latency = new SummaryMetricFamily("txle_ingestion_shard_latency_seconds",
+                "Seconds spent from submitting an event to the saga event loop to finishing it.", labelNames);
+        for (EventLoop loop : loops) {
+            List<String> labelValues = Collections.singletonList(String.valueOf(loop.index));
+            queueDepth.addMetric(labelValues, loop.waitingCount.get());
+            latency.addMetric(labelValues, loop.handledCount.get(), loop.latencyNanos.get() / 1e9);
+        }
+        List<MetricFamilySamples> metricList = new ArrayList<>();
+        metricList.add(queueDepth);
+        metricList.add(latency);
+        return metricList;
+    }
+
+    private final class EventLoop implements Runnable {
+        private final int index;
+        private final BlockingQueue<EventTask<?>> queue;
+        // globalTxId -> the completion of its last task which has been handed over, it's removed once that task is finished.
+        private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+        // the tasks which have been handed over but not finished.
+        private final Semaphore inFlight;
+        private final Thread thread;
+        private final AtomicInteger waitingCount = new AtomicInteger();
+        private final AtomicLong handledCount = new AtomicLong();
+        private final AtomicLong latencyNanos = new AtomicLong();
+
+        private EventLoop(int index, int queueCapacity) {
+            this.index = index;
+            this.queue = new LinkedBlockingQueue<>(queueCapacity);
+            this.inFlight = new Semaphore(queueCapacity);
+            this.thread = new Thread(this, "txle-saga-event-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            // the queued events are still handled after shutting down, until the queue is empty.
+            while (!shutdown || !queue.isEmpty()) {
+                EventTask<?> task;
+                try {
+                    task = queue.poll(100, MILLISECONDS);
+                    if (task != null) {
+                        inFlight.acquire();
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (task != null) {
+                    handOver(task);
+                }
+            }
+        }
+
+        // only the loop thread chains the tasks, so the tail of a global transaction is not replaced concurrently.
+        private void handOver(EventTask<?> task) {
+            CompletableFuture<Void> previous = tails.getOrDefault(task.globalTxId, CompletableFuture.completedFuture(null));
+            CompletableFuture<Void> tail;
+            try {
+                tail = previous.handleAsync((v, e) -> {
+                    task.run(this);
+                    return null;
+                }, workers);
+            } catch (RejectedExecutionException e) {
+                waitingCount.decrementAndGet();
+                inFlight.release();
+                task.future.completeExceptionally(e);
+                return;
+            }
+            tails.put(task.globalTxId, tail);
+            tail.whenComplete((v, e) -> {
+                tails.remove(task.globalTxId, tail);
+                inFlight.release();
+                if (e != null) {
+                    // the task was rejected by the workers which have been shut down.
+                    waitingCount.decrementAndGet();
+                    task.future.completeExceptionally(e);
+                }
+            });
+        }
+
+        private void record(long submittedNanos) {
+            handledCount.incrementAndGet();
+            latencyNanos.addAndGet(System.nanoTime() - submittedNanos);
+        }
+    }
+
+    private static final class EventTask<T> {
+        private final String globalTxId;
+        private final Callable<T> task;
+        private final CompletableFuture<T> future;
+        private final long submittedNanos = System.nanoTime();
+
+        private EventTask(String globalTxId, Callable<T> task, CompletableFuture<T> future) {
+            this.globalTxId = globalTxId;
+            this.task = task;
+            this.future = future;
+        }
+
+        // the metrics are recorded before completing, so they include the event once the caller sees the result.
+        private void run(EventLoop loop) {
+            loop.waitingCount.decrementAndGet();
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = task.call();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            loop.record(submittedNanos);
+            if (failure == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -98,7 +98,7 @@ public class TxConsistentService {
 			LOG.info("Transaction event {} rejected, because its parent with globalTxId {} was already aborted", type, globalTxId);
 			// Should return wrong result in case of aborted transaction, even though all of businesses were completed.
 			if (SagaEndedEvent.name().equals(type)) {
-				eventRepository.save(event);
+				eventRepository.saveUnlessDuplicate(event);
 			}
 			txleMetrics.countTxNumber(event, false, event.retries() > 0);
 			// end duration.
@@ -117,7 +117,11 @@ public class TxConsistentService {
 			// We could intercept this method or use the Observer Design model on it, the aim is to handle some operations around it, but apparently, it is not easy to maintain code, so we reserved this idea.
 			// 保存事件前，检查是否已经存在某子事务的某种事件，如果存在则不再保存。如：检测某事务超时后，若在下次检测时做出补偿处理，则会保存多条超时事件信息，为避免则先检测是否存在
 			try {
-				eventRepository.save(event);
+				// The hedged copy of an event may be received by another node, the later one is acknowledged as well but it takes no effect.
+				if (!eventRepository.saveUnlessDuplicate(event)) {
+					LOG.info("Ignored the duplicate event globalTxId {} localTxId {} type {}.", globalTxId, localTxId, type);
+					return 1;
+				}
 
 				// 此处继续检测超时的意义是，如果超时，则不再继续执行全局事务中此子事务后面其它子事务
 				if (TxEndedEvent.name().equals(type)) {
@@ -195,7 +199,11 @@ public class TxConsistentService {
 		return false;
 	}
 //    return !eventRepository.findTransactions(event.globalTxId(), TxAbortedEvent.name()).isEmpty();
-    return txleCache.getTxAbortStatus(event.globalTxId());
+    if (txleCache.getTxAbortStatus(event.globalTxId())) {
+      return true;
+    }
+    // the abort statuses are evicted only if there are too many of them, then the missing ones may be evicted.
+    return txleCache.isTxAbortStatusEvicted() && eventRepository.checkGlobalTxIsAborted(event.globalTxId());
     // 先查询是否含Aborted事件，如果含有再确定是否为重试情况，而不是一下子都确定好，因为存在异常事件的不多，这样性能上会快些
     /*TxEvent abortedTxEvent = eventRepository.selectAbortedTxEvent(event.globalTxId());
 	if (abortedTxEvent != null) {
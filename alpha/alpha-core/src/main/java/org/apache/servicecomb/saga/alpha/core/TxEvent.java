@@ -52,6 +52,10 @@ public class TxEvent/* extends TxEventExtension*/ {
   private int retries;
   private String category;
   private byte[] payloads;
+  // it's unique, and it's null except for the idempotent events of omega, so the hedged copy of an event is not saved twice.
+  // it's written by JDBC only, so the tables without this column still work by JPA.
+  @Transient
+  private String dedupeKey;
 
   private TxEvent() {
   }
@@ -145,7 +149,7 @@ public class TxEvent/* extends TxEventExtension*/ {
         payloads);
   }
 
-  TxEvent(Long surrogateId,
+  public TxEvent(Long surrogateId,
       String serviceName,
       String instanceId,
       Date creationTime,
@@ -209,6 +213,14 @@ public class TxEvent/* extends TxEventExtension*/ {
     this.surrogateId = surrogateId;
   }
 
+  public String dedupeKey() {
+    return dedupeKey;
+  }
+
+  public void setDedupeKey(String dedupeKey) {
+    this.dedupeKey = dedupeKey;
+  }
+
   public String serviceName() {
     return serviceName;
   }
@@ -15,9 +15,11 @@
 
 package org.apache.servicecomb.saga.alpha.core;
 
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
 import org.apache.servicecomb.saga.common.EventType;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Repository for {@link TxEvent}
@@ -31,6 +33,17 @@ public interface TxEventRepository {
    */
   void save(TxEvent event);
 
+  /**
+   * Save a {@link TxEvent} unless an event with the same dedupe key was saved, e.g. by another alpha node which received the hedged copy.
+   *
+   * @param event for global/sub transaction
+   * @return false if it's a duplicate
+   */
+  default boolean saveUnlessDuplicate(TxEvent event) {
+    save(event);
+    return true;
+  }
+
   /**
    * Find timeout {@link TxEvent}s. A timeout TxEvent satisfies below requirements:
    *
@@ -45,6 +58,17 @@ public interface TxEventRepository {
    */
   List<TxEvent> findTimeoutEvents(long unendedMinEventId);
 
+  /**
+   * The same as {@link #findTimeoutEvents(long)}, but only the events of the global transactions in the partitions are returned.
+   * They are filtered in memory by default, the implementations had better filter them by the database.
+   *
+   * @param partitionCount the events are not filtered if it's not positive, see {@link PartitionLeaseManager#partitionOf(String, int)}
+   */
+  default List<TxEvent> findTimeoutEvents(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    return findTimeoutEvents(unendedMinEventId).stream()
+        .filter(event -> PartitionLeaseManager.inPartitions(event.globalTxId(), partitionCount, partitions)).collect(Collectors.toList());
+  }
+
   TxEvent findTimeoutEventsBeforeEnding(String globalTxId);
 
   /**
@@ -63,16 +87,46 @@ public interface TxEventRepository {
 
   List<TxEvent> findSequentialCompensableEventOfUnended(long unendedMinEventId);
 
+  /**
+   * The same as {@link #findSequentialCompensableEventOfUnended(long)}, but only the events of the global transactions in the partitions are returned.
+   */
+  default List<TxEvent> findSequentialCompensableEventOfUnended(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    return findSequentialCompensableEventOfUnended(unendedMinEventId).stream()
+        .filter(event -> PartitionLeaseManager.inPartitions(event.globalTxId(), partitionCount, partitions)).collect(Collectors.toList());
+  }
+
   List<String> selectAllTypeByGlobalTxId(String globalTxId);
 
+  /**
+   * The same as {@link #selectAllTypeByGlobalTxId(String)}, but it's always answered by the database instead of any memory of current node.
+   */
+  default List<String> selectPersistedTypesByGlobalTxId(String globalTxId) {
+    return selectAllTypeByGlobalTxId(globalTxId);
+  }
+
   List<TxEvent> selectPausedAndContinueEvent(String globalTxId);
 
   Set<String> selectEndedGlobalTx(Set<String> localTxIdSet);
 
   boolean checkIsExistsEventType(String globalTxId, String localTxId, String type);
 
+  /**
+   * The same as {@link #checkIsExistsEventType(String, String, String)}, but it's always answered by the database instead of any memory of current node.
+   */
+  default boolean checkPersistedEventType(String globalTxId, String localTxId, String type) {
+    return checkIsExistsEventType(globalTxId, localTxId, type);
+  }
+
   boolean checkTxIsAborted(String globalTxId, String localTxId);
 
+  /**
+   * To check by the database whether the global transaction was aborted, i.e. it has a TxAbortedEvent of itself or of a sub-transaction's last attempt.
+   * It's the fallback of the abort status cache.
+   */
+  default boolean checkGlobalTxIsAborted(String globalTxId) {
+    return selectPersistedTypesByGlobalTxId(globalTxId).contains(EventType.TxAbortedEvent.name());
+  }
+
   List<Map<String, Object>> findTxList(int pageIndex, int pageSize, String orderName, String direction, String searchText);
 
   List<TxEvent> selectTxEventByGlobalTxIds(List<String> globalTxIdList);
@@ -83,8 +137,44 @@ public interface TxEventRepository {
 
   List<TxEvent> selectUnendedTxEvents(long unendedMinEventId);
 
+  /**
+   * The same as {@link #selectUnendedTxEvents(long)}, but only the events of the global transactions in the partitions are returned.
+   */
+  default List<TxEvent> selectUnendedTxEvents(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    return selectUnendedTxEvents(unendedMinEventId).stream()
+        .filter(event -> PartitionLeaseManager.inPartitions(event.globalTxId(), partitionCount, partitions)).collect(Collectors.toList());
+  }
+
   long selectMinUnendedTxEventId(long unendedMinEventId);
 
+  /**
+   * The same as {@link #selectMinUnendedTxEventId(long)}, but only the global transactions in the partitions are counted.
+   * It's the min of all partitions by default, which is not greater than the one of the partitions.
+   */
+  default long selectMinUnendedTxEventId(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    return selectMinUnendedTxEventId(unendedMinEventId);
+  }
+
+  /**
+   * @return the max id of the TxEvent table, or 0 if it's unknown, then the low watermark of unended events is not raised above 0
+   */
+  default long selectMaxTxEventId() {
+    return 0;
+  }
+
+  /**
+   * @return the low watermark of unended events which was persisted by any alpha node, or 0 if there is no one
+   */
+  default long selectUnendedTxWatermark() {
+    return 0;
+  }
+
+  /**
+   * To persist the low watermark of unended events, so the next reconciliation queries the events after it only, even after restarting.
+   */
+  default void saveUnendedTxWatermark(long unendedMinEventId) {
+  }
+
   Date selectMinDateInTxEvent();
 
   List<Long> selectEndedEventIdsWithinSomePeriod(int pageIndex, int pageSize, Date startTime, Date endTime);
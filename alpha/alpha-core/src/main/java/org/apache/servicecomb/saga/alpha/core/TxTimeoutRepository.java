@@ -15,7 +15,11 @@
 
 package org.apache.servicecomb.saga.alpha.core;
 
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
+
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public interface TxTimeoutRepository {
   void save(TxTimeout timeout);
@@ -26,5 +30,22 @@ public interface TxTimeoutRepository {
 
   List<Long> selectTimeoutIdList();
 
+  /**
+   * The same as {@link #selectTimeoutIdList()}, but only the timeouts of the global transactions in the partitions are returned.
+   * They are not filtered by default, then the timeouts of the other partitions are marked as done as well, which is harmless.
+   */
+  default List<Long> selectTimeoutIdList(int partitionCount, Set<Integer> partitions) {
+    return selectTimeoutIdList();
+  }
+
   List<TxTimeout> findFirstTimeout();
+
+  /**
+   * The same as {@link #findFirstTimeout()}, but only the timeouts of the global transactions in the partitions are returned.
+   * They are filtered in memory by default, the implementations had better filter them by the database.
+   */
+  default List<TxTimeout> findFirstTimeout(int partitionCount, Set<Integer> partitions) {
+    return findFirstTimeout().stream()
+        .filter(timeout -> PartitionLeaseManager.inPartitions(timeout.globalTxId(), partitionCount, partitions)).collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import org.apache.servicecomb.saga.alpha.core.cache.ITxleCache;
+import org.apache.servicecomb.saga.alpha.core.partition.IScannerOwnership;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.servicecomb.saga.alpha.core.TaskStatus.DONE;
+import static org.apache.servicecomb.saga.common.EventType.*;
+
+/**
+ * Detects the timeout of global and sub transactions by a timing wheel instead of scanning the TxEvent table.
+ * The deadline is registered once a started event with timeout was persisted, and it's cancelled by any other event of the same transaction.
+ * On expiry, the aborted event and the compensating commands are produced directly, as the EventScanner did.
+ * <p>
+ * Every node registers the deadlines of the events which it persisted, but only the owner of the global transaction, the same one as its EventScanner,
+ * aborts it, after confirming the timeout by the database. The deadlines which are not owned here are left to the timeout recovery scan of the owner.
+ */
+public class TxTimeoutWheel {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final long tickMs;
+    private final HierarchicalTimingWheel<String, TxEvent> wheel;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "txle-timeout-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private TxEventRepository eventRepository;
+
+    @Autowired
+    private CommandRepository commandRepository;
+
+    @Autowired
+    private TxTimeoutRepository timeoutRepository;
+
+    @Autowired
+    private ITxleCache txleCache;
+
+    // all timeouts are aborted here if it's null.
+    private volatile IScannerOwnership scannerOwnership;
+
+    public TxTimeoutWheel(long tickMs, int wheelSize, int levels) {
+        this.tickMs = tickMs;
+        this.wheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, levels, System.currentTimeMillis());
+    }
+
+    public void ownedBy(IScannerOwnership scannerOwnership) {
+        this.scannerOwnership = scannerOwnership;
+    }
+
+    public void start() {
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                wheel.advance(System.currentTimeMillis()).forEach(this::abortTimeoutEvent);
+            } catch (Exception e) {
+                // to avoid stopping this scheduler in case of exception
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to advance the timeout wheel.", e);
+            }
+        }, tickMs, tickMs, MILLISECONDS);
+    }
+
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * To register or cancel the deadline according to the persisted event.
+     */
+    public void onEventPersisted(TxEvent event) {
+        String type = event.type();
+        if (TxStartedEvent.name().equals(type) || SagaStartedEvent.name().equals(type)) {
+            if (event.expiryTime() != null && event.expiryTime().getTime() < TxEvent.MAX_TIMESTAMP) {
+                wheel.schedule(event.localTxId(), event, event.expiryTime().getTime());
+            }
+        } else if (event.localTxId() != null) {
+            wheel.cancel(event.localTxId());
+        }
+    }
+
+    /**
+     * To register the deadlines of the unended transactions on startup, the overdue ones expire at the next tick.
+     */
+    public void rebuild(List<TxEvent> unendedEvents) {
+        if (unendedEvents == null || unendedEvents.isEmpty()) {
+            return;
+        }
+        List<TxEvent> events = new ArrayList<>(unendedEvents);
+        events.sort(Comparator.comparingLong(TxEvent::id));
+        events.forEach(this::onEventPersisted);
+        LOG.info("Registered [{}] deadlines of unended transactions to the timeout wheel.", wheel.size());
+    }
+
+    public int size() {
+        return wheel.size();
+    }
+
+    private void abortTimeoutEvent(TxEvent event) {
+        String globalTxId = event.globalTxId();
+        IScannerOwnership ownership = scannerOwnership;
+        if (ownership != null && !(ownership.isActive() && ownership.owns(globalTxId))) {
+            LOG.debug("Skipped the timeout event {} which is not owned by current node.", event);
+            return;
+        }
+        try {
+            // The ending event may be persisted by another node, so it's necessary to confirm the timeout by the database before aborting.
+            List<String> types = eventRepository.selectPersistedTypesByGlobalTxId(globalTxId);
+            if (types != null && (types.contains(TxAbortedEvent.name()) || types.contains(SagaEndedEvent.name()))) {
+                return;
+            }
+            if (!globalTxId.equals(event.localTxId()) && (eventRepository.checkPersistedEventType(globalTxId, event.localTxId(), TxEndedEvent.name())
+                    || eventRepository.checkPersistedEventType(globalTxId, event.localTxId(), TxCompensatedEvent.name()))) {
+                return;
+            }
+
+            CurrentThreadContext.put(globalTxId, event);
+            LOG.info("Found timeout event {} by the timeout wheel.", event);
+            // set cache for aborted tx as soon as possible so that next sub-transaction can get the aborted status when it verifies the aborted status.
+            txleCache.putDistributedTxAbortStatusCache(globalTxId, true, 2);
+            if (timeoutRepository.findTxTimeoutByEventId(event.id()) < 1) {
+                // the timeout has been handled here, so it's recorded as done for the EventScanner.
+                timeoutRepository.save(txTimeoutOf(event));
+            }
+
+            TxEvent abortedEvent = toTxAbortedEvent(event);
+            if (!eventRepository.checkPersistedEventType(globalTxId, abortedEvent.localTxId(), abortedEvent.type())) {
+                // record abort event in case of timeout.
+                eventRepository.save(abortedEvent);
+                // save compensating record
+                commandRepository.saveWillCompensateCommandsForTimeout(globalTxId);
+            }
+        } catch (Exception e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to abort timeout event {}.", event, e);
+        }
+    }
+
+    private TxTimeout txTimeoutOf(TxEvent event) {
+        return new TxTimeout(
+                event.id(),
+                event.serviceName(),
+                event.instanceId(),
+                event.globalTxId(),
+                event.localTxId(),
+                event.parentTxId(),
+                event.type(),
+                event.expiryTime(),
+                DONE.name(),
+                event.category()
+        );
+    }
+
+    private TxEvent toTxAbortedEvent(TxEvent event) {
+        return new TxEvent(
+                event.serviceName(),
+                event.instanceId(),
+                event.globalTxId(),
+                event.localTxId(),
+                event.parentTxId(),
+                TxAbortedEvent.name(),
+                "",
+                event.category(),
+                "Transaction timeout".getBytes());
+    }
+}
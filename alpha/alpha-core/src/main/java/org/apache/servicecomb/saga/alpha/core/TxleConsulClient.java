@@ -75,6 +75,14 @@ public class TxleConsulClient implements ApplicationRunner {
         return consulClient;
     }
 
+    public String getConsulSessionId() {
+        return consulSessionId;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
     private void initConsulCluster() {
         try {
             if (consulServers != null && consulServers.length() > 0) {
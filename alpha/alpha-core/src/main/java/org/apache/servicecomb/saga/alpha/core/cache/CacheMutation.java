@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.cache;
+
+import java.io.Serializable;
+
+/**
+ * One change of the distributed cache, the function is the name of the rest api which applies it, such as '/putTxAbortStatusCache'.
+ */
+public class CacheMutation implements Serializable {
+    private long sequence;
+    private String function;
+    private String key;
+    private String value;
+    private int expire;
+
+    public CacheMutation() {
+    }
+
+    public CacheMutation(long sequence, String function, String key, String value, int expire) {
+        this.sequence = sequence;
+        this.function = function;
+        this.key = key;
+        this.value = value;
+        this.expire = expire;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public void setFunction(String function) {
+        this.function = function;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public int getExpire() {
+        return expire;
+    }
+
+    public void setExpire(int expire) {
+        this.expire = expire;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The continuous cache mutations of one alpha node, the origin consists of the host, port and starting time of the node.
+ * It's 'truncated' if the mutations which were requested have been dropped from the log of the origin.
+ * A heartbeat has no mutations, its 'toSequence' is the latest sequence of the origin, so the receivers find the lost batches.
+ */
+public class CacheMutationBatch implements Serializable {
+    private String origin;
+    private long fromSequence;
+    private long toSequence;
+    private boolean truncated;
+    private List<CacheMutation> mutations = new ArrayList<>();
+
+    public CacheMutationBatch() {
+    }
+
+    public CacheMutationBatch(String origin, List<CacheMutation> mutations) {
+        this.origin = origin;
+        this.mutations = mutations;
+        if (!mutations.isEmpty()) {
+            this.fromSequence = mutations.get(0).getSequence();
+            this.toSequence = mutations.get(mutations.size() - 1).getSequence();
+        }
+    }
+
+    public static CacheMutationBatch heartbeat(String origin, long latestSequence) {
+        CacheMutationBatch batch = new CacheMutationBatch();
+        batch.setOrigin(origin);
+        batch.setToSequence(latestSequence);
+        return batch;
+    }
+
+    public static CacheMutationBatch truncated(String origin) {
+        CacheMutationBatch batch = new CacheMutationBatch();
+        batch.setOrigin(origin);
+        batch.setTruncated(true);
+        return batch;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    public long getFromSequence() {
+        return fromSequence;
+    }
+
+    public void setFromSequence(long fromSequence) {
+        this.fromSequence = fromSequence;
+    }
+
+    public long getToSequence() {
+        return toSequence;
+    }
+
+    public void setToSequence(long toSequence) {
+        this.toSequence = toSequence;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public List<CacheMutation> getMutations() {
+        return mutations;
+    }
+
+    public void setMutations(List<CacheMutation> mutations) {
+        this.mutations = mutations;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The status cache of global transactions, such as aborted or suspended.
+ * Entries are indexed by key, so lookup, put and remove cost O(1), and removing k keys costs O(k).
+ * Every key is also recorded in the bucket of its expire time, so the eviction visits the expired buckets only.
+ * The size is bounded, the entries which expire first are evicted if it's full, and the count of them is recorded,
+ * so the caller is able to know whether a missing key may have been evicted.
+ */
+public class ExpiringStatusCache {
+    private final long bucketMillis;
+    private final int maxSize;
+    private final ConcurrentHashMap<String, CacheEntity> entries = new ConcurrentHashMap<>();
+    // expire time / bucketMillis -> keys
+    private final ConcurrentSkipListMap<Long, Set<String>> expiryBuckets = new ConcurrentSkipListMap<>();
+    private final AtomicLong evictedByCapacity = new AtomicLong();
+
+    public ExpiringStatusCache(long bucketMillis, int maxSize) {
+        this.bucketMillis = bucketMillis;
+        this.maxSize = maxSize;
+    }
+
+    public boolean contains(String key) {
+        // return true even though expired, until it's evicted by 'evictExpired', by the capacity or by the ending of global transaction.
+        return key != null && entries.containsKey(key);
+    }
+
+    public void put(String key, Object value, int expireMinutes) {
+        if (key != null) {
+            put(new CacheEntity(key, value, expireMinutes));
+        }
+    }
+
+    public void put(CacheEntity entity) {
+        // the bucket is changed inside 'compute', so that the entry and its bucket are updated atomically for the same key.
+        entries.compute(entity.getKey(), (key, former) -> {
+            if (former != null && bucketOf(former) != bucketOf(entity)) {
+                removeFromBucket(former);
+            }
+            addToBucket(key, bucketOf(entity));
+            return entity;
+        });
+        if (entries.size() > maxSize) {
+            evictEarliest(entries.size() - maxSize);
+        }
+    }
+
+    public void remove(String key) {
+        if (key != null) {
+            entries.computeIfPresent(key, (k, entity) -> {
+                removeFromBucket(entity);
+                return null;
+            });
+        }
+    }
+
+    public void removeAll(Collection<String> keys) {
+        keys.forEach(this::remove);
+    }
+
+    /**
+     * To evict the expired entries, the buckets which are not expired are not visited.
+     *
+     * @return the count of evicted entries
+     */
+    public int evictExpired() {
+        long currentBucket = System.currentTimeMillis() / bucketMillis;
+        int evicted = 0;
+        Map.Entry<Long, Set<String>> first;
+        while ((first = expiryBuckets.firstEntry()) != null && first.getKey() < currentBucket) {
+            if (expiryBuckets.remove(first.getKey(), first.getValue())) {
+                for (String key : first.getValue()) {
+                    CacheEntity entity = entries.get(key);
+                    // the key may be put again with a later expire time.
+                    if (entity != null && entity.expired() && entries.remove(key, entity)) {
+                        evicted++;
+                    }
+                }
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the count of entries which were evicted since the cache was full, they may be not expired yet
+     */
+    public long getEvictedByCapacity() {
+        return evictedByCapacity.get();
+    }
+
+    public void clear() {
+        entries.clear();
+        expiryBuckets.clear();
+    }
+
+    public List<CacheEntity> values() {
+        return new ArrayList<>(entries.values());
+    }
+
+    private void evictEarliest(int count) {
+        for (Map.Entry<Long, Set<String>> bucket : expiryBuckets.entrySet()) {
+            for (String key : bucket.getValue()) {
+                if (count-- <= 0) {
+                    return;
+                }
+                remove(key);
+                evictedByCapacity.incrementAndGet();
+            }
+        }
+    }
+
+    // the bucket functions are idempotent, because they may be applied more than once by the skip list.
+    private void addToBucket(String key, long bucket) {
+        expiryBuckets.compute(bucket, (b, keys) -> {
+            Set<String> bucketKeys = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            bucketKeys.add(key);
+            return bucketKeys;
+        });
+    }
+
+    private void removeFromBucket(CacheEntity entity) {
+        long bucket = bucketOf(entity);
+        expiryBuckets.computeIfPresent(bucket, (b, keys) -> {
+            keys.remove(entity.getKey());
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private long bucketOf(CacheEntity entity) {
+        return entity.getExpire() / bucketMillis;
+    }
+}
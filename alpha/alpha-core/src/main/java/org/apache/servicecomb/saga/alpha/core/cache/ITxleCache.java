@@ -8,7 +8,7 @@ package org.apache.servicecomb.saga.alpha.core.cache;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 
 /**
  * @author Gannalyo
@@ -17,14 +17,19 @@ import java.util.concurrent.ConcurrentSkipListSet;
 public interface ITxleCache {
     ConcurrentHashMap<String, Boolean> getConfigCache();
 
-    ConcurrentSkipListSet<CacheEntity> getTxSuspendStatusCache();
+    ExpiringStatusCache getTxSuspendStatusCache();
 
-    ConcurrentSkipListSet<CacheEntity> getTxAbortStatusCache();
+    ExpiringStatusCache getTxAbortStatusCache();
 
     boolean getTxSuspendStatus(String globalTxId);
 
     boolean getTxAbortStatus(String globalTxId);
 
+    /**
+     * @return true if some abort statuses were evicted before their global transactions ended, then a missing one has to be checked by the database
+     */
+    boolean isTxAbortStatusEvicted();
+
     void putDistributedConfigCache(String key, Boolean value);
 
     void putDistributedTxSuspendStatusCache(String key, Boolean value, int expire);
@@ -47,6 +52,16 @@ public interface ITxleCache {
 
     void removeLocalConfigCache(String key);
 
+    /**
+     * The listener is called after the config cache is changed locally, including the changes replicated from the other servers.
+     */
+    void addConfigChangeListener(Runnable listener);
+
+    /**
+     * The listener is called with the globalTxId after a paused global transaction is resumed, or with an empty one if all of them are resumed.
+     */
+    void addTxResumeListener(Consumer<String> listener);
+
     void removeLocalTxStatusCache(String key);
 
     void removeLocalTxSuspendStatusCache(String key);
@@ -59,4 +74,8 @@ public interface ITxleCache {
 
     Map<String, Object> fetchSynchronizedCache();
 
+    void receiveCacheMutations(CacheMutationBatch batch);
+
+    CacheMutationBatch fetchCacheMutations(long sinceSequence);
+
 }
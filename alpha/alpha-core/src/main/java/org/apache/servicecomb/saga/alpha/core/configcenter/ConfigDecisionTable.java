@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.configcenter;
+
+import org.apache.servicecomb.saga.common.ConfigCenterType;
+import org.apache.servicecomb.saga.common.TxleConstants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the normal configs, compiled into the final decision of every (type, instanceId, category).
+ * The rules are the same as the ones checked against the Config table before:
+ * 1.Every config takes effect only if there is a global config of its type, and a global config whose ability is 0 disables the type.
+ * 2.The config of instanceId and category covers the global value, otherwise the default config of instanceId (no category) does.
+ * 3.The instance's config whose ability is 0 does not cover the global value.
+ * 4.All of configs except fault-tolerant and pause are enabled by default if there is no global config.
+ * So a check costs a few hash lookups, and the table is replaced as a whole when any config changes.
+ */
+public final class ConfigDecisionTable {
+    private static final ConfigDecisionTable EMPTY = new ConfigDecisionTable(0, Collections.emptyMap());
+
+    private final long version;
+    // type -> decisions, only the types which have a global config are present.
+    private final Map<Integer, TypeDecisions> decisions;
+
+    private ConfigDecisionTable(long version, Map<Integer, TypeDecisions> decisions) {
+        this.version = version;
+        this.decisions = decisions;
+    }
+
+    public static ConfigDecisionTable empty() {
+        return EMPTY;
+    }
+
+    public static ConfigDecisionTable compile(long version, List<ConfigCenter> configs) {
+        Map<Integer, ConfigCenter> globalConfigs = new HashMap<>();
+        for (ConfigCenter config : configs) {
+            if (isNormal(config) && isBlank(config.getInstanceid())) {
+                globalConfigs.putIfAbsent(config.getType(), config);
+            }
+        }
+
+        Map<Integer, TypeDecisions> decisions = new HashMap<>();
+        globalConfigs.forEach((type, global) -> {
+            boolean globalDecision = global.getAbility() != TxleConstants.NO && TxleConstants.ENABLED.equals(global.getValue());
+            decisions.put(type, new TypeDecisions(globalDecision, new HashMap<>()));
+        });
+        for (ConfigCenter config : configs) {
+            TypeDecisions typeDecisions = decisions.get(config.getType());
+            if (!isNormal(config) || isBlank(config.getInstanceid()) || typeDecisions == null || globalConfigs.get(config.getType()).getAbility() == TxleConstants.NO) {
+                continue;
+            }
+            boolean decision = config.getAbility() == TxleConstants.NO ? typeDecisions.global : TxleConstants.ENABLED.equals(config.getValue());
+            InstanceDecisions instanceDecisions = typeDecisions.instances.computeIfAbsent(config.getInstanceid(), id -> new InstanceDecisions());
+            if (isBlank(config.getCategory())) {
+                if (instanceDecisions.instanceDefault == null) {
+                    instanceDecisions.instanceDefault = decision;
+                }
+            } else {
+                instanceDecisions.categories.putIfAbsent(config.getCategory(), decision);
+            }
+        }
+        return new ConfigDecisionTable(version, decisions);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isEnabled(String instanceId, String category, ConfigCenterType type) {
+        TypeDecisions typeDecisions = decisions.get(type.toInteger());
+        if (typeDecisions == null) {
+            return isEnabledByDefault(type);
+        }
+        if (isBlank(instanceId)) {
+            return typeDecisions.global;
+        }
+        InstanceDecisions instanceDecisions = typeDecisions.instances.get(instanceId);
+        if (instanceDecisions == null) {
+            return typeDecisions.global;
+        }
+        if (category != null) {
+            Boolean decision = instanceDecisions.categories.get(category);
+            if (decision != null) {
+                return decision;
+            }
+        }
+        return instanceDecisions.instanceDefault != null ? instanceDecisions.instanceDefault : typeDecisions.global;
+    }
+
+    /**
+     * @return the categories which have their own configs for the instance, the other categories share the default decisions of the instance
+     */
+    public Set<String> getCategories(String instanceId) {
+        Set<String> categories = new HashSet<>();
+        if (!isBlank(instanceId)) {
+            for (TypeDecisions typeDecisions : decisions.values()) {
+                InstanceDecisions instanceDecisions = typeDecisions.instances.get(instanceId);
+                if (instanceDecisions != null) {
+                    categories.addAll(instanceDecisions.categories.keySet());
+                }
+            }
+        }
+        return categories;
+    }
+
+    static boolean isEnabledByDefault(ConfigCenterType type) {
+        return !(ConfigCenterType.PauseGlobalTx.equals(type) || ConfigCenterType.GlobalTxFaultTolerant.equals(type)
+                || ConfigCenterType.CompensationFaultTolerant.equals(type) || ConfigCenterType.AutoCompensationFaultTolerant.equals(type));
+    }
+
+    private static boolean isNormal(ConfigCenter config) {
+        return config.getStatus() == ConfigCenterStatus.Normal.toInteger();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().length() == 0;
+    }
+
+    // the maps are not modified after compiling, and the table is published by a volatile reference.
+    private static final class TypeDecisions {
+        private final boolean global;
+        private final Map<String, InstanceDecisions> instances;
+
+        private TypeDecisions(boolean global, Map<String, InstanceDecisions> instances) {
+            this.global = global;
+            this.instances = instances;
+        }
+    }
+
+    private static final class InstanceDecisions {
+        private Boolean instanceDefault;
+        private final Map<String, Boolean> categories = new HashMap<>();
+    }
+}
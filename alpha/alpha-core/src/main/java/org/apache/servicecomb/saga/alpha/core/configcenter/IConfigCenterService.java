@@ -9,6 +9,7 @@ import org.apache.servicecomb.saga.common.ConfigCenterType;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface IConfigCenterService {
     List<ConfigCenter> selectConfigCenterList();
@@ -21,6 +22,13 @@ public interface IConfigCenterService {
 
     boolean isEnabledConfig(String instanceId, String category, ConfigCenterType type);
 
+    ConfigDecisionTable getConfigDecisionTable();
+
+    /**
+     * The listener is called with the new table after the configs have been changed.
+     */
+    void addConfigDecisionTableListener(Consumer<ConfigDecisionTable> listener);
+
     boolean createConfigCenter(ConfigCenter config);
 
     boolean updateConfigCenter(ConfigCenter config);
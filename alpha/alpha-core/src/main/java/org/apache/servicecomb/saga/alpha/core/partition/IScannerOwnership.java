@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.partition;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Decides which global transactions are scanned and compensated by the EventScanner of current alpha node.
+ */
+public interface IScannerOwnership {
+    /**
+     * @return true if current node is responsible for some global transactions, the scanner sleeps if not.
+     */
+    boolean isActive();
+
+    boolean owns(String globalTxId);
+
+    /**
+     * @return the count of the partitions which the global transactions are split into, 0 if they are not partitioned, then current node owns all of them while it's active
+     */
+    default int getPartitionCount() {
+        return 0;
+    }
+
+    /**
+     * @return the partitions owned by current node, the scanning queries return the global transactions of them only
+     */
+    default Set<Integer> getOwnedPartitions() {
+        return Collections.emptySet();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.partition;
+
+import org.apache.servicecomb.saga.alpha.core.TxleConsulClient;
+
+/**
+ * The leader of the alpha cluster scans all of the global transactions.
+ */
+public class LeaderScannerOwnership implements IScannerOwnership {
+    private final TxleConsulClient txleConsulClient;
+
+    public LeaderScannerOwnership(TxleConsulClient txleConsulClient) {
+        this.txleConsulClient = txleConsulClient;
+    }
+
+    @Override
+    public boolean isActive() {
+        return txleConsulClient.isMaster();
+    }
+
+    @Override
+    public boolean owns(String globalTxId) {
+        return true;
+    }
+}
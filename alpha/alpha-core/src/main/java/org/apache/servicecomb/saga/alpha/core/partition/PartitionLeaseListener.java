@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.partition;
+
+import java.util.Set;
+
+/**
+ * Notified by PartitionLeaseManager when the partitions of current node change, on the thread which rebalances the partitions.
+ */
+public interface PartitionLeaseListener {
+    void onAcquired(Set<Integer> partitions);
+
+    void onReleased(Set<Integer> partitions);
+}
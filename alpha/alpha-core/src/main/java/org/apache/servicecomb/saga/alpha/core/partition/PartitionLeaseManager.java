@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.partition;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import com.ecwid.consul.v1.session.model.Session;
+import org.apache.servicecomb.saga.alpha.core.TxleConsulClient;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Splits the global transactions into partitions by the hash of globalTxId, and leases the partitions across the live alpha nodes.
+ * A lease is a Consul KV lock held by the session of the node, so the partitions of a dead node are released together with its session.
+ * Every node keeps a fair share of the partitions, it releases the extra ones when a node joins and acquires the free ones when a node leaves.
+ * The addresses of the owners are refreshed by every rebalancing too, so the other nodes can find the owner of a global transaction.
+ */
+public class PartitionLeaseManager implements IScannerOwnership {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    static final String PARTITION_KEY_PREFIX = "txle/scanner/partitions/";
+
+    private final TxleConsulClient txleConsulClient;
+    private final int partitionCount;
+    private final long rebalanceInterval;
+    private final ScheduledExecutorService rebalanceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "txle-partition-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Set<Integer> ownedPartitions = Collections.emptySet();
+    // partition -> 'host:port' of the node which holds it, which is parsed from the name of its session.
+    private volatile Map<Integer, String> ownerAddresses = Collections.emptyMap();
+    private final List<PartitionLeaseListener> listeners = new CopyOnWriteArrayList<>();
+
+    public PartitionLeaseManager(TxleConsulClient txleConsulClient, int partitionCount, long rebalanceInterval) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("The count of scanner partitions should be positive, partitionCount = " + partitionCount);
+        }
+        this.txleConsulClient = txleConsulClient;
+        this.partitionCount = partitionCount;
+        this.rebalanceInterval = rebalanceInterval;
+    }
+
+    /**
+     * The same partition as {@link #partitionOf(String, int)} in SQL, which is supported by MySQL, PostgreSQL and H2,
+     * so the scanning queries return the global transactions of the owned partitions only. 't' is the alias of the scanned table.
+     */
+    public static final String PARTITION_SQL = " AND MOD(ASCII(RIGHT(t.globalTxId, 1)) + 31 * ASCII(RIGHT(t.globalTxId, 2))"
+            + " + 961 * ASCII(RIGHT(t.globalTxId, 3)), :partitionCount) IN (:partitions)";
+
+    /**
+     * The partition is hashed from the last 3 chars of globalTxId, which vary the most in both the UUIDs and the time ordered ids,
+     * and it's computed by the databases as well, see {@link #PARTITION_SQL}.
+     */
+    public static int partitionOf(String globalTxId, int partitionCount) {
+        int hash = charFromEnd(globalTxId, 1) + 31 * charFromEnd(globalTxId, 2) + 961 * charFromEnd(globalTxId, 3);
+        return hash % partitionCount;
+    }
+
+    // the same as 'ASCII(RIGHT(s, n))' in SQL, i.e. the first char of the last n chars.
+    private static int charFromEnd(String s, int n) {
+        return s.isEmpty() ? 0 : s.charAt(Math.max(0, s.length() - n));
+    }
+
+    /**
+     * @param partitionCount the global transactions are not partitioned if it's not positive, then they are in any partitions
+     */
+    public static boolean inPartitions(String globalTxId, int partitionCount, Set<Integer> partitions) {
+        return partitionCount < 1 || globalTxId != null && partitions.contains(partitionOf(globalTxId, partitionCount));
+    }
+
+    @Override
+    public boolean isActive() {
+        return !ownedPartitions.isEmpty();
+    }
+
+    @Override
+    public boolean owns(String globalTxId) {
+        return globalTxId != null && ownedPartitions.contains(partitionOf(globalTxId, partitionCount));
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    @Override
+    public Set<Integer> getOwnedPartitions() {
+        return ownedPartitions;
+    }
+
+    /**
+     * @return 'host:port' of the node which owns the global transaction, null if it's unknown, e.g. its partition is free
+     */
+    public String getOwnerAddress(String globalTxId) {
+        return globalTxId == null ? null : ownerAddresses.get(partitionOf(globalTxId, partitionCount));
+    }
+
+    /**
+     * The listener is notified of the partitions which are owned currently at once, then of the later changes.
+     */
+    public synchronized void addListener(PartitionLeaseListener listener) {
+        listeners.add(listener);
+        if (!ownedPartitions.isEmpty()) {
+            listener.onAcquired(ownedPartitions);
+        }
+    }
+
+    public void start() {
+        rebalanceScheduler.scheduleWithFixedDelay(this::rebalance, 0, rebalanceInterval, MILLISECONDS);
+    }
+
+    public void shutdown() {
+        rebalanceScheduler.shutdownNow();
+        ConsulClient consulClient = txleConsulClient.getConsulClient();
+        String sessionId = txleConsulClient.getConsulSessionId();
+        if (consulClient != null && sessionId != null) {
+            // release the leases at once, so that the other nodes can take them over without waiting for the session to be invalidated.
+            ownedPartitions.forEach(partition -> release(consulClient, sessionId, partition));
+        }
+        updateOwnedPartitions(Collections.emptySet());
+        ownerAddresses = Collections.emptyMap();
+    }
+
+    void rebalance() {
+        ConsulClient consulClient = txleConsulClient.getConsulClient();
+        String sessionId = txleConsulClient.getConsulSessionId();
+        if (consulClient == null || sessionId == null) {
+            updateOwnedPartitions(Collections.emptySet());
+            return;
+        }
+        try {
+            Map<String, String> liveSessions = readLiveSessions(consulClient);
+            int liveNodes = liveSessions.containsKey(sessionId) ? liveSessions.size() : liveSessions.size() + 1;
+            int fairShare = (partitionCount + liveNodes - 1) / liveNodes;
+
+            Map<Integer, String> holders = readHolders(consulClient);
+            TreeSet<Integer> owned = new TreeSet<>();
+            holders.forEach((partition, holder) -> {
+                if (sessionId.equals(holder)) {
+                    owned.add(partition);
+                }
+            });
+
+            // release the extra partitions for the new nodes.
+            while (owned.size() > fairShare) {
+                int partition = owned.last();
+                release(consulClient, sessionId, partition);
+                owned.remove(partition);
+            }
+            // acquire the free partitions, such as the ones released by the dead or the overloaded nodes.
+            for (int partition = 0; partition < partitionCount && owned.size() < fairShare; partition++) {
+                if (holders.get(partition) == null && acquire(consulClient, sessionId, partition)) {
+                    owned.add(partition);
+                }
+            }
+
+            if (!owned.equals(ownedPartitions)) {
+                LOG.info("Scanner partitions of current node changed to {}, live nodes = [{}], partitions = [{}].", owned, liveNodes, partitionCount);
+            }
+            Map<Integer, String> addresses = new HashMap<>();
+            for (int partition = 0; partition < partitionCount; partition++) {
+                String holder = owned.contains(partition) ? sessionId : holders.get(partition);
+                String address = sessionId.equals(holder) && !owned.contains(partition) ? null : liveSessions.get(holder);
+                if (address != null) {
+                    addresses.put(partition, address);
+                }
+            }
+            ownerAddresses = addresses;
+            updateOwnedPartitions(Collections.unmodifiableSet(owned));
+        } catch (Exception e) {
+            // the leases can not be confirmed, so stop scanning until Consul is available again.
+            updateOwnedPartitions(Collections.emptySet());
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to rebalance scanner partitions.", e);
+        }
+    }
+
+    private synchronized void updateOwnedPartitions(Set<Integer> owned) {
+        Set<Integer> previous = ownedPartitions;
+        ownedPartitions = owned;
+        Set<Integer> released = new TreeSet<>(previous);
+        released.removeAll(owned);
+        Set<Integer> acquired = new TreeSet<>(owned);
+        acquired.removeAll(previous);
+        for (PartitionLeaseListener listener : listeners) {
+            try {
+                if (!released.isEmpty()) {
+                    listener.onReleased(released);
+                }
+                if (!acquired.isEmpty()) {
+                    listener.onAcquired(acquired);
+                }
+            } catch (Exception e) {
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to notify the changed partitions, acquired {}, released {}.", acquired, released, e);
+            }
+        }
+    }
+
+    // every alpha node registers one session whose name starts with 'session-' and the application name, see TxleConsulClient.registerConsulSession.
+    // sessionId -> 'host:port' of the node, the value is null if it can not be parsed.
+    private Map<String, String> readLiveSessions(ConsulClient consulClient) {
+        String namePrefix = "session-" + txleConsulClient.getServerName() + "-";
+        List<Session> sessions = consulClient.getSessionList(QueryParams.DEFAULT).getValue();
+        Map<String, String> liveSessions = new HashMap<>();
+        if (sessions != null) {
+            for (Session session : sessions) {
+                if (session.getName() != null && session.getName().startsWith(namePrefix)) {
+                    liveSessions.put(session.getId(), addressOf(session.getName().substring(namePrefix.length())));
+                }
+            }
+        }
+        return liveSessions;
+    }
+
+    // the rest of the session name is 'host-port-creationTime'.
+    static String addressOf(String hostPortTime) {
+        String[] parts = hostPortTime.split("-", 3);
+        return parts.length < 2 || parts[0].isEmpty() || parts[1].isEmpty() ? null : parts[0] + ":" + parts[1];
+    }
+
+    private Map<Integer, String> readHolders(ConsulClient consulClient) {
+        Map<Integer, String> holders = new HashMap<>();
+        List<GetValue> values = consulClient.getKVValues(PARTITION_KEY_PREFIX).getValue();
+        if (values != null) {
+            for (GetValue value : values) {
+                try {
+                    int partition = Integer.parseInt(value.getKey().substring(PARTITION_KEY_PREFIX.length()));
+                    if (partition < partitionCount && value.getSession() != null) {
+                        holders.put(partition, value.getSession());
+                    }
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignored unknown scanner partition key [{}].", value.getKey());
+                }
+            }
+        }
+        return holders;
+    }
+
+    private boolean acquire(ConsulClient consulClient, String sessionId, int partition) {
+        PutParams putParams = new PutParams();
+        putParams.setAcquireSession(sessionId);
+        Boolean acquired = consulClient.setKVValue(PARTITION_KEY_PREFIX + partition, sessionId, putParams).getValue();
+        return acquired != null && acquired;
+    }
+
+    private void release(ConsulClient consulClient, String sessionId, int partition) {
+        try {
+            PutParams putParams = new PutParams();
+            putParams.setReleaseSession(sessionId);
+            consulClient.setKVValue(PARTITION_KEY_PREFIX + partition, "", putParams);
+        } catch (Exception e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to release scanner partition [{}].", partition, e);
+        }
+    }
+}
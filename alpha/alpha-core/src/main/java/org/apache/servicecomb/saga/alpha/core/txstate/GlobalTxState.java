@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.txstate;
+
+import org.apache.servicecomb.saga.alpha.core.AdditionalEventType;
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxAbortedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+
+/**
+ * The state of one active global transaction, it's built from the persisted events of the transaction.
+ * Every method answers the same result as the corresponding query in TxEventRepository, but without any database access.
+ * The events may be applied more than once and out of order, e.g. by the rebuilding and by the forwarding of other nodes at the same time,
+ * so an event which has been applied is skipped, and the lists are kept in order of the event ids.
+ */
+public class GlobalTxState {
+    private final String globalTxId;
+    // all types of events in current global transaction.
+    private final Set<String> types = new LinkedHashSet<>();
+    // localTxId -> types of the sub-transaction's events.
+    private final Map<String, Set<String>> subTxTypes = new HashMap<>();
+    // the sub-transactions which have a TxStartedEvent without retries.
+    private final Set<String> subTxStartedWithoutRetries = new HashSet<>();
+    // the started events which have a timeout, in order of their ids.
+    private final List<TxEvent> startedEventsWithDeadline = new ArrayList<>();
+    // the paused, continued and auto-continued events, in order of their ids.
+    private final List<TxEvent> pauseContinueEvents = new ArrayList<>();
+    private final Set<Long> appliedEventIds = new HashSet<>();
+
+    private volatile long lastAppliedTime;
+
+    GlobalTxState(String globalTxId, long createdTime) {
+        this.globalTxId = globalTxId;
+        this.lastAppliedTime = createdTime;
+    }
+
+    public String getGlobalTxId() {
+        return globalTxId;
+    }
+
+    long getLastAppliedTime() {
+        return lastAppliedTime;
+    }
+
+    synchronized void apply(TxEvent event, long now) {
+        lastAppliedTime = now;
+        if (!appliedEventIds.add(event.id())) {
+            return;
+        }
+        String type = event.type();
+        types.add(type);
+        subTxTypes.computeIfAbsent(event.localTxId(), localTxId -> new HashSet<>()).add(type);
+
+        if (TxStartedEvent.name().equals(type) && event.retries() == 0) {
+            subTxStartedWithoutRetries.add(event.localTxId());
+        }
+        if ((TxStartedEvent.name().equals(type) || SagaStartedEvent.name().equals(type))
+                && event.expiryTime() != null && event.expiryTime().getTime() < TxEvent.MAX_TIMESTAMP) {
+            addInOrder(startedEventsWithDeadline, event);
+        }
+        if (AdditionalEventType.SagaPausedEvent.name().equals(type) || AdditionalEventType.SagaContinuedEvent.name().equals(type)
+                || AdditionalEventType.SagaAutoContinuedEvent.name().equals(type)) {
+            addInOrder(pauseContinueEvents, event);
+        }
+    }
+
+    private static void addInOrder(List<TxEvent> events, TxEvent event) {
+        events.add(event);
+        if (events.size() > 1 && events.get(events.size() - 2).id() > event.id()) {
+            events.sort(Comparator.comparingLong(TxEvent::id));
+        }
+    }
+
+    synchronized boolean isStarted() {
+        return types.contains(SagaStartedEvent.name());
+    }
+
+    public synchronized boolean isEnded() {
+        return types.contains(SagaEndedEvent.name());
+    }
+
+    public synchronized boolean isAborted() {
+        return types.contains(TxAbortedEvent.name());
+    }
+
+    public synchronized List<String> allTypes() {
+        return new ArrayList<>(types);
+    }
+
+    public synchronized boolean containsEventType(String localTxId, String type) {
+        Set<String> typesOfSubTx = subTxTypes.get(localTxId);
+        return typesOfSubTx != null && typesOfSubTx.contains(type);
+    }
+
+    public synchronized boolean hasStartedWithoutRetries(String localTxId) {
+        return subTxStartedWithoutRetries.contains(localTxId);
+    }
+
+    /**
+     * @return the latest started event which is overdue, null if there is none, or the transaction was aborted or ended.
+     */
+    public synchronized TxEvent findTimeoutEventBeforeEnding(Date currentDateTime) {
+        if (isAborted() || isEnded()) {
+            return null;
+        }
+        for (int i = startedEventsWithDeadline.size() - 1; i >= 0; i--) {
+            TxEvent event = startedEventsWithDeadline.get(i);
+            if (event.expiryTime().before(currentDateTime)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the paused and continued events, the latest one is the first.
+     */
+    public synchronized List<TxEvent> pausedAndContinueEvents() {
+        List<TxEvent> events = new ArrayList<>(pauseContinueEvents);
+        Collections.reverse(events);
+        return events;
+    }
+}
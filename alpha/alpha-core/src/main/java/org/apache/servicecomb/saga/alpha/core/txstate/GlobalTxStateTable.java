@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.txstate;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseListener;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+
+/**
+ * The states of the active global transactions in the partitions which are owned by current alpha node, see PartitionLeaseManager.
+ * The events of an owned global transaction which are persisted by the other nodes are forwarded to current node,
+ * so the states of the owned partitions are complete, and every decision about them is answered from memory.
+ * <p>
+ * When a partition is acquired, its unended global transactions are rebuilt from the TxEvent table after a delay,
+ * which gives the other nodes time to learn the new owner. The partition is answered after it has been rebuilt,
+ * and the events which are applied during the rebuilding are merged with the loaded ones.
+ * The states of a released partition are dropped at once.
+ * <p>
+ * A state is evicted once its SagaEndedEvent is applied. The states which have not been updated for the TTL are evicted as well,
+ * it's only a safety net for the SagaEndedEvents which were missed, e.g. by a failed forwarding, then the database answers them.
+ */
+public class GlobalTxStateTable implements PartitionLeaseListener {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Map<String, GlobalTxState> states = new ConcurrentHashMap<>();
+    private final int partitionCount;
+    // owned partitions -> the unended events of them
+    private final Function<Set<Integer>, List<TxEvent>> unendedEventsLoader;
+    private final long rebuildDelayMillis;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private volatile long nextEvictionTime;
+
+    private final Set<Integer> ownedPartitions = ConcurrentHashMap.newKeySet();
+    // the owned partitions which have been rebuilt, only their states are answered.
+    private final Set<Integer> readyPartitions = ConcurrentHashMap.newKeySet();
+    // partition -> the globalTxIds which ended during its rebuilding, they are not restored from the loaded events.
+    private final Map<Integer, Set<String>> rebuildingPartitions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService rebuildScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "txle-tx-state-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param unendedEventsLoader to load the events of the unended global transactions in the partitions
+     * @param rebuildDelayMillis  an acquired partition is rebuilt after it, it should be longer than the rebalancing interval of the partitions
+     * @param ttlMillis           the states which have not been updated for it are evicted
+     */
+    public GlobalTxStateTable(int partitionCount, Function<Set<Integer>, List<TxEvent>> unendedEventsLoader, long rebuildDelayMillis, long ttlMillis) {
+        this(partitionCount, unendedEventsLoader, rebuildDelayMillis, ttlMillis, System::currentTimeMillis);
+    }
+
+    GlobalTxStateTable(int partitionCount, Function<Set<Integer>, List<TxEvent>> unendedEventsLoader, long rebuildDelayMillis, long ttlMillis,
+                       LongSupplier clock) {
+        this.partitionCount = partitionCount;
+        this.unendedEventsLoader = unendedEventsLoader;
+        this.rebuildDelayMillis = rebuildDelayMillis;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.nextEvictionTime = clock.getAsLong() + ttlMillis;
+    }
+
+    public void apply(TxEvent event) {
+        if (event == null || event.globalTxId() == null) {
+            return;
+        }
+        int partition = partitionOf(event.globalTxId());
+        Set<String> endedDuringRebuild = rebuildingPartitions.get(partition);
+        boolean ready = readyPartitions.contains(partition);
+        if (!ready && endedDuringRebuild == null) {
+            // not owned, or not rebuilt yet, then the rebuilding will load the event.
+            return;
+        }
+        long now = clock.getAsLong();
+        if (SagaEndedEvent.name().equals(event.type())) {
+            states.compute(event.globalTxId(), (globalTxId, state) -> {
+                if (endedDuringRebuild != null) {
+                    endedDuringRebuild.add(globalTxId);
+                }
+                return null;
+            });
+        } else if (ready && !SagaStartedEvent.name().equals(event.type())) {
+            // the transaction which is unknown in a rebuilt partition has ended or been evicted.
+            GlobalTxState state = states.get(event.globalTxId());
+            if (state != null) {
+                state.apply(event, now);
+            }
+        } else {
+            // the former events of a rebuilding partition are merged by the rebuilding.
+            states.computeIfAbsent(event.globalTxId(), globalTxId -> new GlobalTxState(globalTxId, now)).apply(event, now);
+        }
+        if (now >= nextEvictionTime) {
+            evictExpired(now);
+        }
+    }
+
+    @Override
+    public void onAcquired(Set<Integer> partitions) {
+        ownedPartitions.addAll(partitions);
+        Set<Integer> acquired = new TreeSet<>(partitions);
+        rebuildScheduler.schedule(() -> rebuild(acquired), rebuildDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onReleased(Set<Integer> partitions) {
+        ownedPartitions.removeAll(partitions);
+        readyPartitions.removeAll(partitions);
+        partitions.forEach(rebuildingPartitions::remove);
+        states.keySet().removeIf(globalTxId -> partitions.contains(partitionOf(globalTxId)));
+    }
+
+    void rebuild(Set<Integer> partitions) {
+        Set<Integer> rebuilding = new TreeSet<>();
+        for (Integer partition : partitions) {
+            if (ownedPartitions.contains(partition) && !readyPartitions.contains(partition)
+                    && rebuildingPartitions.putIfAbsent(partition, ConcurrentHashMap.newKeySet()) == null) {
+                rebuilding.add(partition);
+            }
+        }
+        if (rebuilding.isEmpty()) {
+            return;
+        }
+        try {
+            List<TxEvent> events = new ArrayList<>(unendedEventsLoader.apply(rebuilding));
+            events.sort(Comparator.comparingLong(TxEvent::id));
+            long now = clock.getAsLong();
+            for (TxEvent event : events) {
+                Set<String> endedDuringRebuild = rebuildingPartitions.get(partitionOf(event.globalTxId()));
+                if (endedDuringRebuild == null) {
+                    // released during the rebuilding.
+                    continue;
+                }
+                states.compute(event.globalTxId(), (globalTxId, state) -> {
+                    if (endedDuringRebuild.contains(globalTxId)) {
+                        return state;
+                    }
+                    GlobalTxState rebuiltState = state == null ? new GlobalTxState(globalTxId, now) : state;
+                    rebuiltState.apply(event, now);
+                    return rebuiltState;
+                });
+            }
+            for (Integer partition : rebuilding) {
+                if (rebuildingPartitions.remove(partition) != null && ownedPartitions.contains(partition)) {
+                    readyPartitions.add(partition);
+                }
+            }
+            LOG.info("Rebuilt the states of the global transactions in partitions {} from [{}] events, states = [{}].", rebuilding, events.size(), states.size());
+        } catch (Exception e) {
+            rebuilding.forEach(rebuildingPartitions::remove);
+            states.keySet().removeIf(globalTxId -> rebuilding.contains(partitionOf(globalTxId)));
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to rebuild the states of the global transactions in partitions {}, retrying after [{}] ms.",
+                    rebuilding, rebuildDelayMillis, e);
+            if (!rebuildScheduler.isShutdown()) {
+                rebuildScheduler.schedule(() -> rebuild(rebuilding), rebuildDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void evictExpired(long now) {
+        nextEvictionTime = now + Math.max(ttlMillis / 10, 1);
+        int size = states.size();
+        states.values().removeIf(state -> state.getLastAppliedTime() + ttlMillis <= now);
+        if (states.size() < size) {
+            LOG.warn("Evicted the states of [{}] global transactions which have not been updated for [{}] ms.", size - states.size(), ttlMillis);
+        }
+    }
+
+    private int partitionOf(String globalTxId) {
+        return PartitionLeaseManager.partitionOf(globalTxId, partitionCount);
+    }
+
+    /**
+     * @return the complete state of the global transaction, null if it's not answered by current node, e.g. it's not owned or it has ended.
+     */
+    public GlobalTxState get(String globalTxId) {
+        if (globalTxId == null || !readyPartitions.contains(partitionOf(globalTxId))) {
+            return null;
+        }
+        GlobalTxState state = states.get(globalTxId);
+        // the events of a transaction which had ended before its partition was rebuilt may be applied during the rebuilding.
+        return state != null && state.isStarted() ? state : null;
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public void shutdown() {
+        rebuildScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.txstate;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A persisted TxEvent which is forwarded to the alpha node owning its global transaction, see GlobalTxStateTable.
+ * The payloads are not forwarded, since they are not used by the state.
+ */
+public class TxStateEvent implements Serializable {
+    private long surrogateId;
+    private String serviceName;
+    private String instanceId;
+    private Date creationTime;
+    private String globalTxId;
+    private String localTxId;
+    private String parentTxId;
+    private String type;
+    private String compensationMethod;
+    private Date expiryTime;
+    private String retryMethod;
+    private int retries;
+    private String category;
+
+    public TxStateEvent() {
+    }
+
+    public static TxStateEvent of(TxEvent event) {
+        TxStateEvent stateEvent = new TxStateEvent();
+        stateEvent.setSurrogateId(event.id());
+        stateEvent.setServiceName(event.serviceName());
+        stateEvent.setInstanceId(event.instanceId());
+        stateEvent.setCreationTime(event.creationTime());
+        stateEvent.setGlobalTxId(event.globalTxId());
+        stateEvent.setLocalTxId(event.localTxId());
+        stateEvent.setParentTxId(event.parentTxId());
+        stateEvent.setType(event.type());
+        stateEvent.setCompensationMethod(event.compensationMethod());
+        stateEvent.setExpiryTime(event.expiryTime());
+        stateEvent.setRetryMethod(event.retryMethod());
+        stateEvent.setRetries(event.retries());
+        stateEvent.setCategory(event.category());
+        return stateEvent;
+    }
+
+    public TxEvent toTxEvent() {
+        return new TxEvent(surrogateId, serviceName, instanceId, creationTime, globalTxId, localTxId, parentTxId, type, compensationMethod, expiryTime,
+                retryMethod, retries, category, new byte[0]);
+    }
+
+    public long getSurrogateId() {
+        return surrogateId;
+    }
+
+    public void setSurrogateId(long surrogateId) {
+        this.surrogateId = surrogateId;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Date creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public String getGlobalTxId() {
+        return globalTxId;
+    }
+
+    public void setGlobalTxId(String globalTxId) {
+        this.globalTxId = globalTxId;
+    }
+
+    public String getLocalTxId() {
+        return localTxId;
+    }
+
+    public void setLocalTxId(String localTxId) {
+        this.localTxId = localTxId;
+    }
+
+    public String getParentTxId() {
+        return parentTxId;
+    }
+
+    public void setParentTxId(String parentTxId) {
+        this.parentTxId = parentTxId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getCompensationMethod() {
+        return compensationMethod;
+    }
+
+    public void setCompensationMethod(String compensationMethod) {
+        this.compensationMethod = compensationMethod;
+    }
+
+    public Date getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(Date expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    public String getRetryMethod() {
+        return retryMethod;
+    }
+
+    public void setRetryMethod(String retryMethod) {
+        this.retryMethod = retryMethod;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.txstate;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+
+/**
+ * The low watermark of the TxEvent table, which is the min id of the events of all unended global transactions.
+ * The scanners only query the events after it. It's maintained in memory by the persisted SagaStartedEvents and SagaEndedEvents,
+ * instead of querying the whole TxEvent table periodically, so it costs as much as the number of active global transactions.
+ * <p>
+ * The global transactions started by other alpha nodes are unknown here, and the ones ended by other nodes are still tracked,
+ * so the table is reconciled with the database rarely. The ids of the events which were persisted by other nodes after reconciling
+ * are greater than the max id at reconciling, so the watermark never exceeds that max id.
+ */
+public class UnendedTxWatermark extends Collector {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // the min event id of every unended global transaction, and the unended global transactions ordered by those ids.
+    // they are replaced as a whole on reconciling, so the watermark is never read from a half-built table.
+    private Map<String, Long> minEventIds = new HashMap<>();
+    private volatile ConcurrentSkipListMap<Long, String> unendedGlobalTxs = new ConcurrentSkipListMap<>();
+    private volatile long reconciledMaxEventId;
+
+    public synchronized void apply(TxEvent event) {
+        if (event == null || event.globalTxId() == null) {
+            return;
+        }
+        if (SagaStartedEvent.name().equals(event.type())) {
+            if (!minEventIds.containsKey(event.globalTxId())) {
+                minEventIds.put(event.globalTxId(), event.id());
+                unendedGlobalTxs.put(event.id(), event.globalTxId());
+            }
+        } else if (SagaEndedEvent.name().equals(event.type())) {
+            Long minEventId = minEventIds.remove(event.globalTxId());
+            if (minEventId != null) {
+                unendedGlobalTxs.remove(minEventId);
+            }
+        }
+    }
+
+    /**
+     * To replace the tracked global transactions with the unended ones in the database, except the ones which were started after the query.
+     *
+     * @param unendedEvents the events of the unended global transactions
+     * @param maxEventId    the max id of the TxEvent table, it must be queried before the unended events
+     */
+    public synchronized void reconcile(List<TxEvent> unendedEvents, long maxEventId) {
+        Map<String, Long> reconciledMinEventIds = new HashMap<>();
+        if (unendedEvents != null) {
+            unendedEvents.forEach(event -> reconciledMinEventIds.merge(event.globalTxId(), event.id(), Math::min));
+        }
+        // the global transactions which were started after the query are still unended.
+        minEventIds.forEach((globalTxId, minEventId) -> {
+            if (minEventId > maxEventId) {
+                reconciledMinEventIds.merge(globalTxId, minEventId, Math::min);
+            }
+        });
+
+        ConcurrentSkipListMap<Long, String> reconciledGlobalTxs = new ConcurrentSkipListMap<>();
+        reconciledMinEventIds.forEach((globalTxId, minEventId) -> reconciledGlobalTxs.put(minEventId, globalTxId));
+        int previousSize = minEventIds.size();
+        minEventIds = reconciledMinEventIds;
+        unendedGlobalTxs = reconciledGlobalTxs;
+        reconciledMaxEventId = Math.max(reconciledMaxEventId, maxEventId);
+        LOG.info("Reconciled the unended global transactions with the database, [{}] before and [{}] after, low watermark [{}].",
+                previousSize, minEventIds.size(), lowWatermark());
+    }
+
+    /**
+     * @return the min id of the events of the unended global transactions, or the max id at reconciling if there is no one
+     */
+    public long lowWatermark() {
+        long maxEventId = reconciledMaxEventId;
+        Map.Entry<Long, String> oldest = unendedGlobalTxs.firstEntry();
+        return oldest == null ? maxEventId : Math.min(oldest.getKey(), maxEventId);
+    }
+
+    public int size() {
+        return unendedGlobalTxs.size();
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> metricList = new ArrayList<>();
+        metricList.add(new GaugeMetricFamily("txle_unended_event_low_watermark",
+                "The min id of the events of the unended global transactions, the scanners query the events after it.", lowWatermark()));
+        metricList.add(new GaugeMetricFamily("txle_unended_global_tx_count",
+                "Number of the unended global transactions which are tracked for the low watermark.", size()));
+        return metricList;
+    }
+}
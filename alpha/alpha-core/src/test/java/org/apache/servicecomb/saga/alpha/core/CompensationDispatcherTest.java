@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import static org.apache.servicecomb.saga.alpha.core.TxEventMaker.someEvent;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class CompensationDispatcherTest {
+  @Mock
+  private CommandRepository commandRepository;
+
+  @Mock
+  private OmegaCallback omegaCallback;
+
+  @InjectMocks
+  private CompensationDispatcher dispatcher = new CompensationDispatcher(1, 16);
+
+  private final Command first = new Command(someEvent());
+  private final Command second = new Command(someEvent());
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @After
+  public void tearDown() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void compensatesClaimedCommandsInOrder() {
+    when(commandRepository.markCommandAsPending(any(String.class), any(String.class))).thenReturn(true);
+
+    dispatcher.dispatch(Arrays.asList(first, second));
+
+    verify(omegaCallback, timeout(1000)).compensate(argThat(eventsOf(first, second)));
+  }
+
+  @Test
+  public void skipsCommandClaimedByOthers() {
+    when(commandRepository.markCommandAsPending(first.globalTxId(), first.localTxId())).thenReturn(false);
+    when(commandRepository.markCommandAsPending(second.globalTxId(), second.localTxId())).thenReturn(true);
+
+    dispatcher.dispatch(Arrays.asList(first, second));
+
+    verify(omegaCallback, timeout(1000)).compensate(argThat(eventOf(second)));
+    verify(omegaCallback, never()).compensate(argThat(eventOf(first)));
+  }
+
+  private static ArgumentMatcher<List<TxEvent>> eventsOf(Command... commands) {
+    return events -> events != null && events.stream().map(TxEvent::localTxId).collect(Collectors.toList())
+        .equals(Arrays.stream(commands).map(Command::localTxId).collect(Collectors.toList()));
+  }
+
+  private static ArgumentMatcher<TxEvent> eventOf(Command command) {
+    return event -> event != null && command.localTxId().equals(event.localTxId());
+  }
+}
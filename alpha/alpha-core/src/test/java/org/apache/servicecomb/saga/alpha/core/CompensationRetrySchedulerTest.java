@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import static org.apache.servicecomb.saga.alpha.core.TxEventMaker.someEvent;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.apache.servicecomb.saga.alpha.core.accidenthandling.IAccidentHandlingService;
+import org.hamcrest.Matcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompensationRetrySchedulerTest {
+  private final MemoryRetryRepository retryRepository = new MemoryRetryRepository();
+  private final IAccidentHandlingService accidentHandlingService = mock(IAccidentHandlingService.class);
+  private final OmegaCallback underlying = mock(OmegaCallback.class);
+  private final TxEvent event = someEvent();
+  private final List<TxEvent> sentRetries = new CopyOnWriteArrayList<>();
+  private CompensationRetryScheduler retryScheduler;
+  private PushBackOmegaCallback omegaCallback;
+
+  @Before
+  public void setUp() {
+    newRetryScheduler(2, 10, 100, 5);
+  }
+
+  @After
+  public void tearDown() {
+    retryScheduler.shutdown();
+  }
+
+  @Test
+  public void retriesWithBackoffUntilCompensated() throws Exception {
+    doThrow(AlphaException.class).doThrow(AlphaException.class).doNothing().when(underlying).compensate(event);
+
+    omegaCallback.compensate(event);
+
+    verify(underlying, timeout(2000).times(3)).compensate(event);
+    waitUntilNoRetry();
+    assertThat(retryRepository.find(event.globalTxId(), event.localTxId()), is(nullValue()));
+    assertThat(sentRetries.size(), is(2));
+    verify(accidentHandlingService, never()).reportMsgToAccidentPlatform(anyString());
+  }
+
+  @Test
+  public void backsOffExponentiallyWithJitter() {
+    retryScheduler.shutdown();
+    newRetryScheduler(1, 100, 1000, 5);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(retryScheduler.backoffMillis(1), is(between(50, 100)));
+      assertThat(retryScheduler.backoffMillis(3), is(between(200, 400)));
+      assertThat(retryScheduler.backoffMillis(10), is(between(500, 1000)));
+      assertThat(retryScheduler.backoffMillis(100), is(between(500, 1000)));
+    }
+  }
+
+  @Test
+  public void reportsAccidentAfterMaxAttempts() throws Exception {
+    retryScheduler.shutdown();
+    newRetryScheduler(2, 10, 100, 2);
+    doThrow(AlphaException.class).when(underlying).compensate(event);
+
+    omegaCallback.compensate(event);
+
+    verify(accidentHandlingService, timeout(2000)).reportMsgToAccidentPlatform(anyString());
+    verify(underlying, times(3)).compensate(event);
+    assertThat(retryScheduler.size(), is(0));
+    assertThat(retryRepository.find(event.globalTxId(), event.localTxId()), is(nullValue()));
+  }
+
+  @Test
+  public void continuesAttemptsFromSavedRetry() throws Exception {
+    retryRepository.save(new CompensationRetry(event.serviceName(), event.instanceId(), event.globalTxId(), event.localTxId(), 4, null, ""));
+    doThrow(AlphaException.class).doNothing().when(underlying).compensate(event);
+
+    omegaCallback.compensate(event);
+
+    assertThat(retryRepository.find(event.globalTxId(), event.localTxId()).attempts(), is(5));
+    verify(underlying, timeout(2000).times(2)).compensate(event);
+    waitUntilNoRetry();
+  }
+
+  @Test
+  public void takesOverOverdueRetriesWhoseCommandsAreDone() throws Exception {
+    // the scanner has marked the command as DONE after its first send, but the retry goes on.
+    long now = System.currentTimeMillis();
+    retryRepository.commands.add(new Command(event));
+    retryRepository.save(new CompensationRetry(event.serviceName(), event.instanceId(), event.globalTxId(), event.localTxId(), 1, new Date(now - 60000), ""));
+    retryRepository.save(new CompensationRetry("service", "instance", "globalTx-2", "localTx-2", 1, new Date(now + 60000), ""));
+
+    assertThat(retryScheduler.recover(30000), is(1));
+    assertThat(retryScheduler.recover(30000), is(0));
+
+    verify(underlying, timeout(2000)).compensate(argThat((TxEvent sent) -> sent.localTxId().equals(event.localTxId())));
+    waitUntilNoRetry();
+    assertThat(retryRepository.find(event.globalTxId(), event.localTxId()), is(nullValue()));
+    assertThat(retryRepository.find("globalTx-2", "localTx-2"), is(notNullValue()));
+  }
+
+  @Test
+  public void reportsAccidentIfCommandOfOverdueRetryIsGone() {
+    retryRepository.save(new CompensationRetry("service", "instance", "globalTx-1", "localTx-1", 3, null, ""));
+
+    assertThat(retryScheduler.recover(30000), is(1));
+
+    verify(accidentHandlingService).reportMsgToAccidentPlatform(anyString());
+    assertThat(retryRepository.find("globalTx-1", "localTx-1"), is(nullValue()));
+  }
+
+  private void newRetryScheduler(int workers, long baseDelayMillis, long maxDelayMillis, int maxAttempts) {
+    retryScheduler = new CompensationRetryScheduler(retryRepository, accidentHandlingService, workers, baseDelayMillis, maxDelayMillis, maxAttempts);
+    omegaCallback = new PushBackOmegaCallback(retryScheduler, underlying);
+    retryScheduler.sendBy(retry -> {
+      sentRetries.add(retry);
+      omegaCallback.compensate(retry);
+    });
+  }
+
+  private void waitUntilNoRetry() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 2000;
+    while (retryScheduler.size() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(retryScheduler.size(), is(0));
+  }
+
+  private static Matcher<Long> between(long min, long max) {
+    return both(greaterThanOrEqualTo(min)).and(lessThanOrEqualTo(max));
+  }
+
+  private static class MemoryRetryRepository implements CompensationRetryRepository {
+    private final Map<String, CompensationRetry> retries = new ConcurrentHashMap<>();
+    private final List<Command> commands = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompensationRetry find(String globalTxId, String localTxId) {
+      return retries.get(globalTxId + localTxId);
+    }
+
+    @Override
+    public void save(CompensationRetry retry) {
+      retries.put(retry.globalTxId() + retry.localTxId(), retry);
+    }
+
+    @Override
+    public void delete(String globalTxId, String localTxId) {
+      retries.remove(globalTxId + localTxId);
+    }
+
+    @Override
+    public List<CompensationRetry> findOverdue(Date before) {
+      return retries.values().stream()
+          .filter(retry -> retry.nextAttemptTime() == null || retry.nextAttemptTime().before(before))
+          .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized boolean claimOverdue(String globalTxId, String localTxId, Date before, Date nextAttemptTime) {
+      CompensationRetry retry = find(globalTxId, localTxId);
+      if (retry == null || (retry.nextAttemptTime() != null && !retry.nextAttemptTime().before(before))) {
+        return false;
+      }
+      save(new CompensationRetry(retry.serviceName(), retry.instanceId(), globalTxId, localTxId, retry.attempts(), nextAttemptTime, retry.lastError()));
+      return true;
+    }
+
+    @Override
+    public Command findCommand(String globalTxId, String localTxId) {
+      return commands.stream()
+          .filter(command -> command.globalTxId().equals(globalTxId) && command.localTxId().equals(localTxId))
+          .findFirst()
+          .orElse(null);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -153,6 +154,20 @@ public class CompositeOmegaCallbackTest {
     assertThat(callbacks.get(serviceName2).values(), containsInAnyOrder(callback2One, callback2Two));
   }
 
+  @Test
+  public void compensateOneBatchPerOmegaInstanceInOrder() throws Exception {
+    TxEvent event1 = eventOf(serviceName1, instanceId1One, TxStartedEvent);
+    TxEvent event2 = eventOf(serviceName2, instanceId2One, TxStartedEvent);
+    TxEvent event3 = eventOf(serviceName1, instanceId1One, TxStartedEvent);
+
+    compositeOmegaCallback.compensate(Arrays.asList(event1, event2, event3));
+
+    verify(callback1One).compensate(Arrays.asList(event1, event3));
+    verify(callback2One).compensate(Arrays.asList(event2));
+    verify(callback1Two, never()).compensate(any(TxEvent.class));
+    verify(callback2Two, never()).compensate(any(TxEvent.class));
+  }
+
   private TxEvent eventOf(String serviceName, String instanceId, EventType eventType) {
     return new TxEvent(
         serviceName,
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import org.junit.After;
+import org.junit.Test;
+
+public class FairCompensationSchedulerTest {
+  private final AtomicLong clock = new AtomicLong(1000);
+  private final OmegaCallback callback = event -> { };
+  private FairCompensationScheduler scheduler = new FairCompensationScheduler(100, 1, 2, Collections.singletonMap("payment", 3),
+      Collections.singletonMap("slow", 1), 10000, 60000, 8, clock::get, false);
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void servesServicesByWeight() {
+    for (int i = 0; i < 4; i++) {
+      scheduler.schedule(event("bulk", "bulk-" + i, TxStartedEvent.name()), callback);
+    }
+    for (int i = 0; i < 4; i++) {
+      scheduler.schedule(event("payment", "payment-" + i, TxStartedEvent.name()), callback);
+    }
+
+    List<String> sent = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      sent.add(nextAndCompensate());
+    }
+
+    // bulk was first and sends one in a round, then payment sends three, although all of bulk were scheduled earlier.
+    assertThat(sent, contains("bulk-0", "payment-0", "payment-1", "payment-2"));
+  }
+
+  @Test
+  public void limitsInFlightCompensationsPerService() {
+    scheduler.schedule(event("slow", "slow-0", TxStartedEvent.name()), callback);
+    scheduler.schedule(event("slow", "slow-1", TxStartedEvent.name()), callback);
+    scheduler.schedule(event("other", "other-0", TxStartedEvent.name()), callback);
+
+    FairCompensationScheduler.Compensation slow0 = scheduler.next();
+    assertThat(slow0.event().localTxId(), is("slow-0"));
+    assertThat(scheduler.next().event().localTxId(), is("other-0"));
+    assertThat(scheduler.next(), is(nullValue()));
+    assertThat(scheduler.inFlightCount("slow", ""), is(1));
+
+    // the permit is released when the send completes.
+    scheduler.send(slow0);
+    assertThat(scheduler.inFlightCount("slow", ""), is(0));
+    assertThat(scheduler.next().event().localTxId(), is("slow-1"));
+  }
+
+  @Test
+  public void releasesPermitWhenSendFails() {
+    scheduler.schedule(event("slow", "slow-0", TxStartedEvent.name()), event -> {
+      throw new AlphaException("omega is gone");
+    });
+    scheduler.schedule(event("slow", "slow-1", TxStartedEvent.name()), callback);
+
+    scheduler.send(scheduler.next());
+
+    assertThat(scheduler.inFlightCount("slow", ""), is(0));
+    assertThat(scheduler.next().event().localTxId(), is("slow-1"));
+  }
+
+  @Test
+  public void limitsSendsBySenderThreads() {
+    scheduler.shutdown();
+    scheduler = new FairCompensationScheduler(100, 1, 2, null, null, 10000, 60000, 1, clock::get, false);
+    scheduler.schedule(event("payment", "payment-0", TxStartedEvent.name()), callback);
+    scheduler.schedule(event("other", "other-0", TxStartedEvent.name()), callback);
+
+    FairCompensationScheduler.Compensation payment0 = scheduler.next();
+    assertThat(scheduler.next(), is(nullValue()));
+
+    scheduler.send(payment0);
+    assertThat(scheduler.next().event().localTxId(), is("other-0"));
+  }
+
+  @Test
+  public void releasesPermitsOfStuckSends() {
+    scheduler.schedule(event("slow", "slow-0", TxStartedEvent.name()), callback);
+    scheduler.schedule(event("slow", "slow-1", TxStartedEvent.name()), callback);
+    scheduler.next();
+    assertThat(scheduler.next(), is(nullValue()));
+
+    clock.addAndGet(60000);
+    assertThat(scheduler.next().event().localTxId(), is("slow-1"));
+  }
+
+  @Test
+  public void boostsAgedCompensations() {
+    scheduler.schedule(event("payment", "payment-0", TxStartedEvent.name()), callback);
+    clock.addAndGet(1);
+    scheduler.schedule(event("other", "other-0", TxStartedEvent.name()), callback);
+    clock.addAndGet(4000);
+    for (int i = 1; i < 4; i++) {
+      scheduler.schedule(event("payment", "payment-" + i, TxStartedEvent.name()), callback);
+    }
+    assertThat(nextAndCompensate(), is("payment-0"));
+
+    // payment has two more in its round, but other-0 is sent first after waiting longer than the aging threshold.
+    clock.addAndGet(6000);
+    assertThat(nextAndCompensate(), is("other-0"));
+    assertThat(nextAndCompensate(), is("payment-1"));
+  }
+
+  @Test
+  public void exposesQueueDepthAndWaitTimePerService() {
+    scheduler.schedule(event("payment", "payment-0", TxStartedEvent.name()), callback);
+    scheduler.schedule(event("payment", "payment-1", TxStartedEvent.name()), callback);
+    clock.addAndGet(500);
+    scheduler.next();
+
+    assertThat(scheduler.queueDepth("payment", ""), is(1));
+    assertThat(sampleOf("txle_compensation_queue_depth"), is(1.0));
+    assertThat(sampleOf("txle_compensation_in_flight"), is(1.0));
+    assertThat(sampleOf("txle_compensation_wait_seconds_count"), is(1.0));
+    assertThat(sampleOf("txle_compensation_wait_seconds_sum"), is(0.5));
+  }
+
+  @Test
+  public void sendsScheduledCompensationsByThread() throws Exception {
+    scheduler.shutdown();
+    scheduler = new FairCompensationScheduler(100, 1, 1, null, null, 10000, 60000, 4);
+    CountDownLatch firstSending = new CountDownLatch(1);
+    List<String> sent = new CopyOnWriteArrayList<>();
+    OmegaCallback blockingCallback = event -> {
+      try {
+        firstSending.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      sent.add(event.localTxId());
+    };
+    for (int i = 0; i < 3; i++) {
+      scheduler.schedule(event("service", "service-" + i, TxStartedEvent.name()), blockingCallback);
+    }
+
+    // the service holds its only permit while the first send is blocked.
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    while (scheduler.inFlightCount("service", "") == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertThat(scheduler.inFlightCount("service", ""), is(1));
+    assertThat(scheduler.queueDepth("service", ""), is(2));
+
+    firstSending.countDown();
+    deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    while (sent.size() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(sent, contains("service-0", "service-1", "service-2"));
+  }
+
+  @Test
+  public void schedulesBatchPerServiceAsOneCompensation() {
+    TxEvent payment0 = event("payment", "payment-0", TxStartedEvent.name());
+    TxEvent payment1 = event("payment", "payment-1", TxStartedEvent.name());
+    TxEvent other0 = event("other", "other-0", TxStartedEvent.name());
+
+    scheduler.schedule(Arrays.asList(payment1, other0, payment0), callback);
+
+    assertThat(scheduler.queueDepth("payment", ""), is(2));
+    FairCompensationScheduler.Compensation paymentBatch = scheduler.next();
+    assertThat(paymentBatch.events(), contains(payment1, payment0));
+    assertThat(scheduler.inFlightCount("payment", ""), is(1));
+    assertThat(scheduler.next().events(), contains(other0));
+
+    scheduler.send(paymentBatch);
+    assertThat(scheduler.inFlightCount("payment", ""), is(0));
+  }
+
+  private String nextAndCompensate() {
+    FairCompensationScheduler.Compensation compensation = scheduler.next();
+    scheduler.send(compensation);
+    return compensation.event().localTxId();
+  }
+
+  private double sampleOf(String name) {
+    for (MetricFamilySamples family : scheduler.collect()) {
+      for (MetricFamilySamples.Sample sample : family.samples) {
+        if (sample.name.equals(name) && sample.labelValues.get(0).equals("payment")) {
+          return sample.value;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static TxEvent event(String serviceName, String localTxId, String type) {
+    return new TxEvent(serviceName, "instanceId", "globalTxId", localTxId, null, type, "compensationMethod", "", new byte[0]);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class HierarchicalTimingWheelTest {
+  private static final long START = 1000000L;
+
+  // 10ms per tick, 8 slots and 3 levels cover 512 ticks.
+  private final HierarchicalTimingWheel<String, String> wheel = new HierarchicalTimingWheel<>(10, 8, 3, START);
+
+  @Test
+  public void expiresEntryOnceDeadlineIsReached() {
+    wheel.schedule("a", "a", START + 35);
+
+    assertThat(wheel.advance(START + 30), is(empty()));
+    assertThat(wheel.advance(START + 40), contains("a"));
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  public void cancelledEntryNeverExpires() {
+    wheel.schedule("a", "a", START + 30);
+    wheel.schedule("b", "b", START + 30);
+
+    assertThat(wheel.cancel("a"), is(true));
+    assertThat(wheel.cancel("a"), is(false));
+    assertThat(wheel.advance(START + 100), contains("b"));
+  }
+
+  @Test
+  public void reschedulingReplacesFormerDeadline() {
+    wheel.schedule("a", "first", START + 30);
+    wheel.schedule("a", "second", START + 200);
+
+    assertThat(wheel.size(), is(1));
+    assertThat(wheel.advance(START + 190), is(empty()));
+    assertThat(wheel.advance(START + 200), contains("second"));
+  }
+
+  @Test
+  public void overdueEntryExpiresAtNextTick() {
+    wheel.schedule("a", "a", START - 500);
+
+    assertThat(wheel.advance(START + 10), contains("a"));
+  }
+
+  @Test
+  public void cascadesDistantDeadlinesDownToExactTick() {
+    // on the level 2
+    wheel.schedule("near", "near", START + 2000);
+    // beyond the highest level, it's parked and cascaded again
+    wheel.schedule("far", "far", START + 12345);
+
+    assertThat(wheel.advance(START + 1990), is(empty()));
+    assertThat(wheel.advance(START + 2000), contains("near"));
+    assertThat(wheel.advance(START + 12340), is(empty()));
+    assertThat(wheel.advance(START + 12350), contains("far"));
+    assertThat(wheel.size(), is(0));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import org.junit.After;
+import org.junit.Test;
+
+public class SagaEventLoopsTest {
+  private final SagaEventLoops loops = new SagaEventLoops(4, 16);
+
+  @After
+  public void tearDown() {
+    loops.shutdown();
+  }
+
+  @Test
+  public void handlesEventsOfOneGlobalTxSerially() throws Exception {
+    String globalTxId = UUID.randomUUID().toString();
+    AtomicInteger running = new AtomicInteger();
+    List<Integer> handledOrder = new ArrayList<>();
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      int sequence = i;
+      futures.add(loops.submit(globalTxId, () -> {
+        assertThat(running.incrementAndGet(), is(1));
+        handledOrder.add(sequence);
+        running.decrementAndGet();
+        return sequence;
+      }));
+    }
+
+    for (int i = 0; i < futures.size(); i++) {
+      assertThat(futures.get(i).get(1, SECONDS), is(i));
+      assertThat(handledOrder.get(i), is(i));
+    }
+  }
+
+  @Test
+  public void handlesDifferentGlobalTxsInParallel() throws Exception {
+    String blockedTxId = "globalTx-1";
+    String otherTxId = "globalTx-2";
+    while (loops.loopIndexOf(otherTxId) == loops.loopIndexOf(blockedTxId)) {
+      otherTxId = otherTxId + "0";
+    }
+    CountDownLatch blocked = new CountDownLatch(1);
+    CompletableFuture<Boolean> blockedFuture = loops.submit(blockedTxId, () -> blocked.await(5, SECONDS));
+
+    assertThat(loops.submit(otherTxId, () -> true).get(1, SECONDS), is(true));
+    assertThat(blockedFuture.isDone(), is(false));
+
+    blocked.countDown();
+    assertThat(blockedFuture.get(1, SECONDS), is(true));
+  }
+
+  @Test
+  public void slowEventDoesNotStallOtherGlobalTxsOfSameLoop() throws Exception {
+    String blockedTxId = "globalTx-1";
+    String otherTxId = "globalTx-2";
+    while (loops.loopIndexOf(otherTxId) != loops.loopIndexOf(blockedTxId)) {
+      otherTxId = otherTxId + "0";
+    }
+    CountDownLatch blocked = new CountDownLatch(1);
+    CompletableFuture<Boolean> blockedFuture = loops.submit(blockedTxId, () -> blocked.await(5, SECONDS));
+    CompletableFuture<Integer> nextOfBlocked = loops.submit(blockedTxId, () -> 1);
+
+    assertThat(loops.submit(otherTxId, () -> true).get(1, SECONDS), is(true));
+    assertThat(blockedFuture.isDone(), is(false));
+    assertThat(nextOfBlocked.isDone(), is(false));
+
+    blocked.countDown();
+    assertThat(blockedFuture.get(1, SECONDS), is(true));
+    assertThat(nextOfBlocked.get(1, SECONDS), is(1));
+  }
+
+  @Test
+  public void exposesQueueDepthAndLatencyPerShard() throws Exception {
+    String globalTxId = UUID.randomUUID().toString();
+    int shard = loops.loopIndexOf(globalTxId);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    loops.submit(globalTxId, () -> {
+      started.countDown();
+      return blocked.await(5, SECONDS);
+    });
+    started.await(1, SECONDS);
+    CompletableFuture<Integer> queued = loops.submit(globalTxId, () -> 1);
+    loops.submit(globalTxId, () -> 2);
+
+    assertThat(loops.queueDepth(shard), is(2));
+    assertThat(sampleOf("txle_ingestion_shard_queue_depth", shard), is(2.0));
+
+    blocked.countDown();
+    queued.get(1, SECONDS);
+    loops.submit(globalTxId, () -> 3).get(1, SECONDS);
+    assertThat(sampleOf("txle_ingestion_shard_latency_seconds_count", shard), is(4.0));
+    assertThat(sampleOf("txle_ingestion_shard_latency_seconds_count", (shard + 1) % 4), is(0.0));
+  }
+
+  @Test
+  public void failsTheFutureIfEventFails() throws Exception {
+    CompletableFuture<Object> future = loops.submit("globalTx", () -> {
+      throw new IllegalStateException("failed");
+    });
+
+    try {
+      future.get(1, SECONDS);
+    } catch (ExecutionException e) {
+      assertThat(e.getCause().getMessage(), is("failed"));
+    }
+    assertThat(future.isCompletedExceptionally(), is(true));
+    assertThat(loops.submit("globalTx", () -> true).get(1, SECONDS), is(true));
+  }
+
+  private double sampleOf(String name, int shard) {
+    for (MetricFamilySamples family : loops.collect()) {
+      for (MetricFamilySamples.Sample sample : family.samples) {
+        if (sample.name.equals(name) && sample.labelValues.get(0).equals(String.valueOf(shard))) {
+          return sample.value;
+        }
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.TxAbortedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.apache.servicecomb.saga.alpha.core.cache.ITxleCache;
+import org.apache.servicecomb.saga.alpha.core.partition.IScannerOwnership;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class TxTimeoutWheelTest {
+  @Mock
+  private TxEventRepository eventRepository;
+
+  @Mock
+  private CommandRepository commandRepository;
+
+  @Mock
+  private TxTimeoutRepository timeoutRepository;
+
+  @Mock
+  private ITxleCache txleCache;
+
+  @Mock
+  private IScannerOwnership scannerOwnership;
+
+  @InjectMocks
+  private TxTimeoutWheel wheel = new TxTimeoutWheel(10, 64, 4);
+
+  private final String globalTxId = uniquify("globalTxId");
+  private final TxEvent overdueEvent = new TxEvent(1L, globalTxId, uniquify("localTxId"), "serviceName", "instanceId", TxStartedEvent.name(), "",
+      new Date(System.currentTimeMillis() - 1000), 0, new Date());
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(scannerOwnership.isActive()).thenReturn(true);
+    wheel.ownedBy(scannerOwnership);
+    wheel.start();
+  }
+
+  @After
+  public void tearDown() {
+    wheel.shutdown();
+  }
+
+  @Test
+  public void abortsOwnedTimeoutConfirmedByDatabase() {
+    when(scannerOwnership.owns(globalTxId)).thenReturn(true);
+    when(eventRepository.selectPersistedTypesByGlobalTxId(globalTxId)).thenReturn(Collections.singletonList(TxStartedEvent.name()));
+
+    wheel.onEventPersisted(overdueEvent);
+
+    verify(eventRepository, timeout(1000)).save(argThat(event -> TxAbortedEvent.name().equals(event.type())));
+    verify(commandRepository).saveWillCompensateCommandsForTimeout(globalTxId);
+  }
+
+  @Test
+  public void leavesTimeoutOwnedByAnotherNode() throws InterruptedException {
+    when(scannerOwnership.owns(globalTxId)).thenReturn(false);
+
+    wheel.onEventPersisted(overdueEvent);
+
+    Thread.sleep(100);
+    verify(eventRepository, never()).selectPersistedTypesByGlobalTxId(any());
+    verify(eventRepository, never()).save(any());
+    verify(timeoutRepository, never()).findTxTimeoutByEventId(anyLong());
+  }
+
+  @Test
+  public void skipsTimeoutEndedOnAnotherNode() throws InterruptedException {
+    when(scannerOwnership.owns(globalTxId)).thenReturn(true);
+    when(eventRepository.selectPersistedTypesByGlobalTxId(globalTxId)).thenReturn(Collections.singletonList(TxStartedEvent.name()));
+    when(eventRepository.checkPersistedEventType(globalTxId, overdueEvent.localTxId(), "TxEndedEvent")).thenReturn(true);
+
+    wheel.onEventPersisted(overdueEvent);
+
+    verify(eventRepository, timeout(1000)).checkPersistedEventType(globalTxId, overdueEvent.localTxId(), "TxEndedEvent");
+    Thread.sleep(100);
+    verify(eventRepository, never()).save(any());
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.cache;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ExpiringStatusCacheTest {
+  private final ExpiringStatusCache cache = new ExpiringStatusCache(10, 3);
+
+  private final String globalTxId = uniquify("globalTxId");
+  private final String anotherGlobalTxId = uniquify("globalTxId");
+
+  @Test
+  public void looksUpByKey() {
+    cache.put(globalTxId, true, 2);
+    // the same expire time does not collide with each other.
+    cache.put(anotherGlobalTxId, true, 2);
+
+    assertThat(cache.contains(globalTxId), is(true));
+    assertThat(cache.contains(anotherGlobalTxId), is(true));
+    assertThat(cache.contains(uniquify("globalTxId")), is(false));
+    assertThat(cache.contains(null), is(false));
+  }
+
+  @Test
+  public void removesKeysInBatch() {
+    cache.put(globalTxId, true, 2);
+    cache.put(anotherGlobalTxId, true, 2);
+
+    cache.removeAll(Arrays.asList(globalTxId, anotherGlobalTxId, uniquify("globalTxId")));
+
+    assertThat(cache.size(), is(0));
+  }
+
+  @Test
+  public void evictsExpiredEntriesOnly() {
+    cache.put(expiredEntity(globalTxId));
+    cache.put(anotherGlobalTxId, true, 2);
+
+    assertThat(cache.evictExpired(), is(1));
+    assertThat(cache.contains(globalTxId), is(false));
+    assertThat(cache.contains(anotherGlobalTxId), is(true));
+    assertThat(cache.getEvictedByCapacity(), is(0L));
+  }
+
+  @Test
+  public void keepsEntryPutAgainWithLaterExpireTime() {
+    cache.put(expiredEntity(globalTxId));
+    cache.put(globalTxId, true, 2);
+
+    assertThat(cache.evictExpired(), is(0));
+    assertThat(cache.contains(globalTxId), is(true));
+  }
+
+  @Test
+  public void evictsEarliestEntriesWhenFull() {
+    cache.put(expiredEntity(globalTxId));
+    for (int i = 0; i < 3; i++) {
+      cache.put(uniquify("globalTxId"), true, 2);
+    }
+
+    assertThat(cache.size(), is(3));
+    assertThat(cache.contains(globalTxId), is(false));
+    assertThat(cache.getEvictedByCapacity(), is(1L));
+  }
+
+  private CacheEntity expiredEntity(String key) {
+    CacheEntity entity = new CacheEntity(key, true);
+    entity.setExpire(System.currentTimeMillis() - 1000);
+    return entity;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.configcenter;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.servicecomb.saga.common.ConfigCenterType;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.junit.Test;
+
+public class ConfigDecisionTableTest {
+  private static final String INSTANCE_ID = "instance-1";
+  private static final String CATEGORY = "category-1";
+
+  @Test
+  public void enablesAllConfigsExceptFaultTolerantAndPauseByDefault() {
+    ConfigDecisionTable table = ConfigDecisionTable.compile(1, emptyList());
+
+    assertThat(table.isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.GlobalTx), is(true));
+    assertThat(table.isEnabled(null, null, ConfigCenterType.Compensation), is(true));
+    assertThat(table.isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.GlobalTxFaultTolerant), is(false));
+    assertThat(table.isEnabled(null, null, ConfigCenterType.PauseGlobalTx), is(false));
+  }
+
+  @Test
+  public void ignoresInstanceConfigsWithoutGlobalConfig() {
+    ConfigDecisionTable table = ConfigDecisionTable.compile(1, asList(
+        config(INSTANCE_ID, CATEGORY, TxleConstants.YES, ConfigCenterType.GlobalTx, "disabled")));
+
+    assertThat(table.isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.GlobalTx), is(true));
+  }
+
+  @Test
+  public void disablesTypeIfGlobalConfigProvidesNoAbility() {
+    ConfigDecisionTable table = ConfigDecisionTable.compile(1, asList(
+        config(null, null, TxleConstants.NO, ConfigCenterType.Compensation, TxleConstants.ENABLED),
+        config(INSTANCE_ID, CATEGORY, TxleConstants.YES, ConfigCenterType.Compensation, TxleConstants.ENABLED)));
+
+    assertThat(table.isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.Compensation), is(false));
+    assertThat(table.isEnabled(null, null, ConfigCenterType.Compensation), is(false));
+  }
+
+  @Test
+  public void instanceConfigsCoverGlobalValueInOrder() {
+    ConfigDecisionTable table = ConfigDecisionTable.compile(1, asList(
+        config(null, null, TxleConstants.YES, ConfigCenterType.TxMonitor, TxleConstants.ENABLED),
+        config(INSTANCE_ID, null, TxleConstants.YES, ConfigCenterType.TxMonitor, "disabled"),
+        config(INSTANCE_ID, CATEGORY, TxleConstants.YES, ConfigCenterType.TxMonitor, TxleConstants.ENABLED)));
+
+    assertThat(table.isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.TxMonitor), is(true));
+    assertThat(table.isEnabled(INSTANCE_ID, "category-2", ConfigCenterType.TxMonitor), is(false));
+    assertThat(table.isEnabled(INSTANCE_ID, null, ConfigCenterType.TxMonitor), is(false));
+    assertThat(table.isEnabled("instance-2", CATEGORY, ConfigCenterType.TxMonitor), is(true));
+  }
+
+  @Test
+  public void instanceConfigWithoutAbilityKeepsGlobalValue() {
+    ConfigDecisionTable table = ConfigDecisionTable.compile(1, asList(
+        config(null, null, TxleConstants.YES, ConfigCenterType.Alert, TxleConstants.ENABLED),
+        config(INSTANCE_ID, CATEGORY, TxleConstants.NO, ConfigCenterType.Alert, "disabled"),
+        config(INSTANCE_ID, null, TxleConstants.YES, ConfigCenterType.Alert, "disabled")));
+
+    assertThat(table.isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.Alert), is(true));
+    assertThat(table.isEnabled(INSTANCE_ID, "category-2", ConfigCenterType.Alert), is(false));
+  }
+
+  @Test
+  public void skipsHistoricalConfigs() {
+    ConfigCenter historical = config(null, null, TxleConstants.YES, ConfigCenterType.GlobalTx, "disabled");
+    historical.setStatus(ConfigCenterStatus.Historical.toInteger());
+
+    assertThat(ConfigDecisionTable.compile(2, asList(historical)).isEnabled(INSTANCE_ID, CATEGORY, ConfigCenterType.GlobalTx), is(true));
+  }
+
+  private ConfigCenter config(String instanceId, String category, int ability, ConfigCenterType type, String value) {
+    return new ConfigCenter(null, instanceId, category, ConfigCenterStatus.Normal, ability, type, value, null);
+  }
+}
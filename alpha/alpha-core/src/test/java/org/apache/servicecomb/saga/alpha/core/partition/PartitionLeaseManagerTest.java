@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.partition;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager.PARTITION_KEY_PREFIX;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.servicecomb.saga.alpha.core.TxleConsulClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import com.ecwid.consul.v1.session.model.Session;
+
+public class PartitionLeaseManagerTest {
+  private static final String SERVER_NAME = "txle";
+
+  private final ConsulClient consulClient = mock(ConsulClient.class);
+  // partition key -> session which holds the lock
+  private final Map<String, String> locks = new ConcurrentHashMap<>();
+  private final List<Session> sessions = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    when(consulClient.getSessionList(any(QueryParams.class))).thenAnswer(invocation -> response(new ArrayList<>(sessions)));
+    when(consulClient.getKVValues(PARTITION_KEY_PREFIX)).thenAnswer(invocation -> {
+      List<GetValue> values = new ArrayList<>();
+      locks.forEach((key, session) -> {
+        GetValue value = new GetValue();
+        value.setKey(key);
+        value.setSession(session);
+        values.add(value);
+      });
+      return response(values);
+    });
+    when(consulClient.setKVValue(anyString(), anyString(), any(PutParams.class))).thenAnswer(invocation -> {
+      String key = invocation.getArgument(0);
+      PutParams putParams = invocation.getArgument(2);
+      if (putParams.getAcquireSession() != null) {
+        return response(locks.putIfAbsent(key, putParams.getAcquireSession()) == null);
+      }
+      return response(locks.remove(key, putParams.getReleaseSession()));
+    });
+  }
+
+  @Test
+  public void singleNodeOwnsAllPartitions() {
+    PartitionLeaseManager manager = managerOf(newSession());
+
+    manager.rebalance();
+
+    assertThat(manager.getOwnedPartitions(), containsInAnyOrder(0, 1, 2, 3));
+    assertThat(manager.owns(uniquify("globalTxId")), is(true));
+  }
+
+  @Test
+  public void rebalancesPartitionsWhenNodeJoins() {
+    PartitionLeaseManager first = managerOf(newSession());
+    first.rebalance();
+
+    PartitionLeaseManager second = managerOf(newSession());
+    // the new node can not take any partition until the first one releases the extra ones.
+    second.rebalance();
+    assertThat(second.isActive(), is(false));
+
+    first.rebalance();
+    second.rebalance();
+
+    assertThat(first.getOwnedPartitions().size(), is(2));
+    assertThat(second.getOwnedPartitions().size(), is(2));
+    Set<Integer> all = new HashSet<>(first.getOwnedPartitions());
+    all.addAll(second.getOwnedPartitions());
+    assertThat(all, containsInAnyOrder(0, 1, 2, 3));
+
+    String globalTxId = uniquify("globalTxId");
+    assertThat(first.owns(globalTxId) ^ second.owns(globalTxId), is(true));
+  }
+
+  @Test
+  public void takesOverPartitionsOfDeadNode() {
+    String deadSession = newSession();
+    PartitionLeaseManager dead = managerOf(deadSession);
+    PartitionLeaseManager alive = managerOf(newSession());
+    dead.rebalance();
+    alive.rebalance();
+
+    // the locks are released by Consul together with the session.
+    sessions.removeIf(session -> session.getId().equals(deadSession));
+    locks.values().removeIf(deadSession::equals);
+    alive.rebalance();
+
+    assertThat(alive.getOwnedPartitions(), containsInAnyOrder(0, 1, 2, 3));
+  }
+
+  @Test
+  public void findsOwnerAddressOfGlobalTransaction() {
+    PartitionLeaseManager first = managerOf(newSession(8091));
+    PartitionLeaseManager second = managerOf(newSession(8092));
+    first.rebalance();
+    second.rebalance();
+    first.rebalance();
+    second.rebalance();
+    first.rebalance();
+
+    String globalTxId = uniquify("globalTxId");
+    String owner = first.owns(globalTxId) ? "127.0.0.1:8091" : "127.0.0.1:8092";
+    assertThat(first.getOwnerAddress(globalTxId), is(owner));
+    assertThat(second.getOwnerAddress(globalTxId), is(owner));
+  }
+
+  @Test
+  public void parsesAddressFromSessionName() {
+    assertThat(PartitionLeaseManager.addressOf("127.0.0.1-8090-2019-01-01 00:00:00"), is("127.0.0.1:8090"));
+    assertThat(PartitionLeaseManager.addressOf("127.0.0.1"), is(nullValue()));
+  }
+
+  @Test
+  public void notifiesListenersOfAcquiredAndReleasedPartitions() {
+    PartitionLeaseManager first = managerOf(newSession());
+    first.rebalance();
+    RecordingListener listener = new RecordingListener();
+    first.addListener(listener);
+
+    assertThat(listener.acquired, containsInAnyOrder(0, 1, 2, 3));
+
+    PartitionLeaseManager second = managerOf(newSession());
+    second.rebalance();
+    first.rebalance();
+
+    assertThat(listener.released.size(), is(2));
+    assertThat(listener.acquired, is(first.getOwnedPartitions()));
+
+    first.shutdown();
+    assertThat(listener.acquired, is(empty()));
+  }
+
+  @Test
+  public void stopsScanningWithoutConsul() {
+    TxleConsulClient txleConsulClient = mock(TxleConsulClient.class);
+    PartitionLeaseManager manager = new PartitionLeaseManager(txleConsulClient, 4, 1000);
+
+    manager.rebalance();
+
+    assertThat(manager.getOwnedPartitions(), is(empty()));
+    assertThat(manager.isActive(), is(false));
+  }
+
+  private String newSession() {
+    return newSession(8090 + sessions.size());
+  }
+
+  private String newSession(int port) {
+    Session session = new Session();
+    session.setId(uniquify("session"));
+    session.setName("session-" + SERVER_NAME + "-127.0.0.1-" + port + "-2019-01-01 00:00:00");
+    sessions.add(session);
+    return session.getId();
+  }
+
+  // it keeps the partitions which are owned according to the notifications.
+  private static class RecordingListener implements PartitionLeaseListener {
+    private final Set<Integer> acquired = new HashSet<>();
+    private final Set<Integer> released = new HashSet<>();
+
+    @Override
+    public void onAcquired(Set<Integer> partitions) {
+      acquired.addAll(partitions);
+      released.removeAll(partitions);
+    }
+
+    @Override
+    public void onReleased(Set<Integer> partitions) {
+      acquired.removeAll(partitions);
+      released.addAll(partitions);
+    }
+  }
+
+  private PartitionLeaseManager managerOf(String sessionId) {
+    TxleConsulClient txleConsulClient = mock(TxleConsulClient.class);
+    when(txleConsulClient.getConsulClient()).thenReturn(consulClient);
+    when(txleConsulClient.getConsulSessionId()).thenReturn(sessionId);
+    when(txleConsulClient.getServerName()).thenReturn(SERVER_NAME);
+    return new PartitionLeaseManager(txleConsulClient, 4, 1000);
+  }
+
+  private static <T> Response<T> response(T value) {
+    return new Response<>(value, 0L, true, 0L);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.txstate;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxAbortedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static java.util.Collections.singleton;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.servicecomb.saga.alpha.core.AdditionalEventType;
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GlobalTxStateTableTest {
+  private static final int PARTITION_COUNT = 4;
+
+  private final AtomicLong ids = new AtomicLong();
+  private final AtomicLong clock = new AtomicLong(1000);
+  // the unended events in the database, which are loaded by the rebuilding.
+  private final List<TxEvent> persistedEvents = new ArrayList<>();
+  private final GlobalTxStateTable stateTable = new GlobalTxStateTable(PARTITION_COUNT, this::loadUnendedEvents, 60000, 10000, clock::get);
+
+  private final String globalTxId = uniquify("globalTxId");
+  private final String localTxId = uniquify("localTxId");
+  private final int partition = PartitionLeaseManager.partitionOf(globalTxId, PARTITION_COUNT);
+
+  @Before
+  public void setUp() {
+    Set<Integer> all = allPartitions();
+    stateTable.onAcquired(all);
+    stateTable.rebuild(all);
+  }
+
+  @After
+  public void tearDown() {
+    stateTable.shutdown();
+  }
+
+  @Test
+  public void answersEventTypesOfActiveTransaction() {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    stateTable.apply(event(localTxId, TxStartedEvent.name(), 0, 0));
+
+    GlobalTxState state = stateTable.get(globalTxId);
+    assertThat(state.containsEventType(localTxId, TxStartedEvent.name()), is(true));
+    assertThat(state.containsEventType(localTxId, TxEndedEvent.name()), is(false));
+    assertThat(state.hasStartedWithoutRetries(localTxId), is(true));
+    assertThat(state.allTypes(), contains(SagaStartedEvent.name(), TxStartedEvent.name()));
+  }
+
+  @Test
+  public void findsOverdueStartedEventUntilAborted() throws Exception {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    TxEvent startedEvent = event(localTxId, TxStartedEvent.name(), 1, 0);
+    stateTable.apply(startedEvent);
+
+    GlobalTxState state = stateTable.get(globalTxId);
+    assertThat(state.findTimeoutEventBeforeEnding(new Date()), is(nullValue()));
+    assertThat(state.findTimeoutEventBeforeEnding(new Date(System.currentTimeMillis() + 2000)), is(startedEvent));
+
+    stateTable.apply(event(localTxId, TxAbortedEvent.name(), 0, 0));
+    assertThat(state.findTimeoutEventBeforeEnding(new Date(System.currentTimeMillis() + 2000)), is(nullValue()));
+  }
+
+  @Test
+  public void returnsLatestPausedEventFirst() {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    TxEvent paused = event(globalTxId, AdditionalEventType.SagaPausedEvent.name(), 0, 0);
+    TxEvent continued = event(globalTxId, AdditionalEventType.SagaContinuedEvent.name(), 0, 0);
+    stateTable.apply(paused);
+    stateTable.apply(continued);
+
+    assertThat(stateTable.get(globalTxId).pausedAndContinueEvents(), contains(continued, paused));
+  }
+
+  @Test
+  public void evictsStateOnSagaEnded() {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    stateTable.apply(event(globalTxId, SagaEndedEvent.name(), 0, 0));
+
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+    assertThat(stateTable.size(), is(0));
+  }
+
+  @Test
+  public void ignoresTransactionNotStartedHere() {
+    stateTable.apply(event(localTxId, TxStartedEvent.name(), 0, 0));
+
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+  }
+
+  @Test
+  public void answersOnlyOwnedPartitionsAfterRebuilding() {
+    stateTable.onReleased(singleton(partition));
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+
+    persistedEvents.add(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    stateTable.onAcquired(singleton(partition));
+    // the other nodes may still persist the events of the partition without forwarding them before it's rebuilt.
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+
+    stateTable.rebuild(singleton(partition));
+    assertThat(stateTable.get(globalTxId).allTypes(), contains(SagaStartedEvent.name()));
+  }
+
+  @Test
+  public void rebuildsUnendedTransactionsFromDatabase() {
+    stateTable.onReleased(allPartitions());
+    persistedEvents.add(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    persistedEvents.add(event(localTxId, TxStartedEvent.name(), 0, 0));
+
+    stateTable.onAcquired(allPartitions());
+    stateTable.rebuild(allPartitions());
+
+    GlobalTxState state = stateTable.get(globalTxId);
+    assertThat(state.allTypes(), contains(SagaStartedEvent.name(), TxStartedEvent.name()));
+    assertThat(state.hasStartedWithoutRetries(localTxId), is(true));
+  }
+
+  @Test
+  public void mergesEventsAppliedDuringRebuilding() {
+    stateTable.onReleased(allPartitions());
+    TxEvent sagaStarted = event(globalTxId, SagaStartedEvent.name(), 0, 0);
+    TxEvent txStarted = event(localTxId, TxStartedEvent.name(), 0, 0);
+    persistedEvents.add(sagaStarted);
+    String endedGlobalTxId = uniquify("globalTxId");
+    persistedEvents.add(event(endedGlobalTxId, uniquify("localTxId"), SagaStartedEvent.name()));
+    stateTable.onAcquired(allPartitions());
+
+    // the events are forwarded while the unended ones are loaded, so they may be applied twice.
+    loadingHook = () -> {
+      stateTable.apply(txStarted);
+      stateTable.apply(sagaStarted);
+      stateTable.apply(event(endedGlobalTxId, uniquify("localTxId"), SagaEndedEvent.name()));
+      persistedEvents.add(txStarted);
+    };
+    stateTable.rebuild(allPartitions());
+
+    assertThat(stateTable.get(globalTxId).allTypes(), containsInAnyOrder(SagaStartedEvent.name(), TxStartedEvent.name()));
+    // the transaction which ended during the rebuilding is not restored from the loaded events.
+    assertThat(stateTable.get(endedGlobalTxId), is(nullValue()));
+    assertThat(stateTable.size(), is(1));
+  }
+
+  @Test
+  public void retriesRebuildingAfterFailure() {
+    stateTable.onReleased(allPartitions());
+    persistedEvents.add(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    stateTable.onAcquired(allPartitions());
+
+    loadingHook = () -> {
+      throw new IllegalStateException("database is unavailable");
+    };
+    stateTable.rebuild(allPartitions());
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+
+    loadingHook = () -> { };
+    stateTable.rebuild(allPartitions());
+    assertThat(stateTable.get(globalTxId), is(notNullValue()));
+  }
+
+  @Test
+  public void dropsStatesOfReleasedPartitions() {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+
+    stateTable.onReleased(singleton(partition));
+
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+    assertThat(stateTable.size(), is(0));
+  }
+
+  @Test
+  public void ignoresDuplicateEvents() {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    TxEvent startedEvent = event(localTxId, TxStartedEvent.name(), 0, 0);
+    stateTable.apply(startedEvent);
+    stateTable.apply(startedEvent);
+
+    assertThat(stateTable.get(globalTxId).allTypes(), contains(SagaStartedEvent.name(), TxStartedEvent.name()));
+  }
+
+  @Test
+  public void evictsStateNotUpdatedForTtl() {
+    stateTable.apply(event(globalTxId, SagaStartedEvent.name(), 0, 0));
+    clock.addAndGet(5000);
+    stateTable.apply(event(localTxId, TxStartedEvent.name(), 0, 0));
+
+    // its SagaEndedEvent may be persisted by another node.
+    clock.addAndGet(9999);
+    stateTable.apply(event(uniquify("globalTxId"), uniquify("localTxId"), SagaStartedEvent.name()));
+    assertThat(stateTable.get(globalTxId), is(notNullValue()));
+
+    // the expired states are swept every tenth of the TTL.
+    clock.addAndGet(1000);
+    stateTable.apply(event(uniquify("globalTxId"), uniquify("localTxId"), SagaStartedEvent.name()));
+    assertThat(stateTable.get(globalTxId), is(nullValue()));
+    assertThat(stateTable.size(), is(2));
+  }
+
+  private Runnable loadingHook = () -> { };
+
+  private List<TxEvent> loadUnendedEvents(Set<Integer> partitions) {
+    loadingHook.run();
+    return persistedEvents.stream()
+        .filter(event -> partitions.contains(PartitionLeaseManager.partitionOf(event.globalTxId(), PARTITION_COUNT)))
+        .collect(Collectors.toList());
+  }
+
+  private static Set<Integer> allPartitions() {
+    Set<Integer> partitions = new HashSet<>();
+    for (int i = 0; i < PARTITION_COUNT; i++) {
+      partitions.add(i);
+    }
+    return partitions;
+  }
+
+  private TxEvent event(String localTxId, String type, int timeout, int retries) {
+    TxEvent event = new TxEvent("serviceName", "instanceId", globalTxId, localTxId, null, type, "compensationMethod",
+        timeout, "", retries, "", new byte[0]);
+    event.setSurrogateId(ids.incrementAndGet());
+    return event;
+  }
+
+  private TxEvent event(String globalTxId, String localTxId, String type) {
+    TxEvent event = new TxEvent("serviceName", "instanceId", globalTxId, localTxId, null, type, "compensationMethod", "", new byte[0]);
+    event.setSurrogateId(ids.incrementAndGet());
+    return event;
+  }
+}
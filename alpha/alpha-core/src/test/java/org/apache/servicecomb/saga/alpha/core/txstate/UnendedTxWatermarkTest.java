@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.core.txstate;
+
+import static org.apache.servicecomb.saga.common.EventType.SagaEndedEvent;
+import static org.apache.servicecomb.saga.common.EventType.SagaStartedEvent;
+import static org.apache.servicecomb.saga.common.EventType.TxStartedEvent;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.junit.Test;
+
+public class UnendedTxWatermarkTest {
+  private final UnendedTxWatermark watermark = new UnendedTxWatermark();
+
+  @Test
+  public void followsOldestUnendedGlobalTx() {
+    watermark.reconcile(Collections.emptyList(), 100);
+    assertThat(watermark.lowWatermark(), is(100L));
+
+    watermark.apply(event(101, "globalTx-1", SagaStartedEvent.name()));
+    watermark.apply(event(102, "globalTx-2", SagaStartedEvent.name()));
+    watermark.apply(event(103, "globalTx-1", TxStartedEvent.name()));
+    assertThat(watermark.lowWatermark(), is(100L));
+    assertThat(watermark.size(), is(2));
+
+    watermark.reconcile(Arrays.asList(event(101, "globalTx-1", SagaStartedEvent.name()), event(102, "globalTx-2", SagaStartedEvent.name())), 103);
+    assertThat(watermark.lowWatermark(), is(101L));
+
+    watermark.apply(event(104, "globalTx-1", SagaEndedEvent.name()));
+    assertThat(watermark.lowWatermark(), is(102L));
+
+    watermark.apply(event(105, "globalTx-2", SagaEndedEvent.name()));
+    assertThat(watermark.lowWatermark(), is(103L));
+    assertThat(watermark.size(), is(0));
+  }
+
+  @Test
+  public void reconcilesGlobalTxsOfOtherNodes() {
+    watermark.reconcile(Collections.emptyList(), 10);
+    watermark.apply(event(11, "globalTx-1", SagaStartedEvent.name()));
+    watermark.apply(event(30, "globalTx-3", SagaStartedEvent.name()));
+
+    // globalTx-1 was ended by another node, globalTx-2 was started by another node, and globalTx-3 was started after the query.
+    watermark.reconcile(Arrays.asList(event(20, "globalTx-2", SagaStartedEvent.name()), event(21, "globalTx-2", TxStartedEvent.name())), 25);
+
+    assertThat(watermark.size(), is(2));
+    assertThat(watermark.lowWatermark(), is(20L));
+    watermark.apply(event(31, "globalTx-2", SagaEndedEvent.name()));
+    assertThat(watermark.lowWatermark(), is(25L));
+  }
+
+  @Test
+  public void exposesWatermarkAsMetric() {
+    watermark.reconcile(Collections.singletonList(event(7, "globalTx-1", SagaStartedEvent.name())), 9);
+
+    assertThat(watermark.collect().get(0).samples.get(0).value, is(7.0));
+    assertThat(watermark.collect().get(1).samples.get(0).value, is(1.0));
+  }
+
+  private TxEvent event(long id, String globalTxId, String type) {
+    TxEvent event = new TxEvent("serviceName", "instanceId", globalTxId, globalTxId, null, type, "compensationMethod",
+        0, "", 0, "", new byte[0]);
+    event.setSurrogateId(id);
+    return event;
+  }
+}
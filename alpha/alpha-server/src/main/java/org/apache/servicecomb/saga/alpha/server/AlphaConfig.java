@@ -25,6 +25,11 @@ import org.apache.servicecomb.saga.alpha.core.datadictionary.IDataDictionaryServ
 import org.apache.servicecomb.saga.alpha.core.datatransfer.IDataTransferService;
 import org.apache.servicecomb.saga.alpha.core.listener.GlobalTxListener;
 import org.apache.servicecomb.saga.alpha.core.listener.TxEventAfterPersistingListener;
+import org.apache.servicecomb.saga.alpha.core.partition.IScannerOwnership;
+import org.apache.servicecomb.saga.alpha.core.partition.LeaderScannerOwnership;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
+import org.apache.servicecomb.saga.alpha.core.txstate.GlobalTxStateTable;
+import org.apache.servicecomb.saga.alpha.core.txstate.UnendedTxWatermark;
 import org.apache.servicecomb.saga.alpha.server.accidenthandling.AccidentHandlingEntityRepository;
 import org.apache.servicecomb.saga.alpha.server.accidenthandling.AccidentHandlingService;
 import org.apache.servicecomb.saga.alpha.server.cache.TxleCache;
@@ -37,8 +42,10 @@ import org.apache.servicecomb.saga.alpha.server.datatransfer.DataTransferService
 import org.apache.servicecomb.saga.alpha.server.kafka.KafkaProducerConfig;
 import org.apache.servicecomb.saga.alpha.server.tracing.TracingConfiguration;
 import org.apache.servicecomb.saga.common.CommonConfig;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -50,6 +57,9 @@ import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -64,6 +74,24 @@ class AlphaConfig {
   @Value("${alpha.compensation.retry.delay:3000}")
   private int delay;
 
+  // the failed compensations are retried by parallel workers with an exponential backoff, from the base delay to the max delay.
+  @Value("${alpha.compensation.retry.workers:4}")
+  private int compensationRetryWorkers;
+
+  @Value("${alpha.compensation.retry.base-delay:1000}")
+  private int compensationRetryBaseDelay;
+
+  @Value("${alpha.compensation.retry.max-delay:60000}")
+  private int compensationRetryMaxDelay;
+
+  // the command is reported as an accident after the max attempts.
+  @Value("${alpha.compensation.retry.max-attempts:20}")
+  private int compensationRetryMaxAttempts;
+
+  // the retries which are overdue longer than the interval, such as the ones of a crashed node, are given back to the scanner.
+  @Value("${alpha.compensation.retry.recovery-interval:300000}")
+  private int compensationRetryRecoveryInterval;
+
   @Value("${txle.prometheus.metrics.port:-1}")
   private String promMetricsPort;
 
@@ -76,9 +104,99 @@ class AlphaConfig {
   @Value("${txle.accident.platform.retry.interval:1}")
   private int interval;
 
+  // To write the concurrent TxEvents by one JDBC batch and one commit.
+  @Value("${alpha.event.group-commit.enabled:true}")
+  private boolean groupCommitEnabled;
+
+  @Value("${alpha.event.group-commit.max-batch-size:256}")
+  private int groupCommitMaxBatchSize;
+
   @Value("${alpha.event.pollingInterval:500}")
   private int eventPollingInterval;
 
+  // the scanner only sweeps the timeout events which were missed by the timeout wheel, such as the ones accepted by a crashed node.
+  @Value("${alpha.timeout.wheel.recovery-interval:60000}")
+  private int timeoutRecoveryInterval;
+
+  @Value("${alpha.timeout.wheel.tick:100}")
+  private int timeoutWheelTick;
+
+  // the scanner only sweeps the NEW commands which were missed by the compensation dispatcher.
+  @Value("${alpha.compensation.dispatcher.recovery-interval:30000}")
+  private int compensationRecoveryInterval;
+
+  @Value("${alpha.compensation.dispatcher.threads:4}")
+  private int compensationDispatcherThreads;
+
+  @Value("${alpha.compensation.dispatcher.queue-capacity:10000}")
+  private int compensationDispatcherQueueCapacity;
+
+  // the compensations are sent fairly across the services, by the weights and the concurrency limits such as 'payment-service=8,order-service=2'.
+  @Value("${alpha.compensation.fair-scheduler.queue-capacity:10000}")
+  private int fairCompensationSchedulerQueueCapacity;
+
+  @Value("${alpha.compensation.fair-scheduler.default-weight:1}")
+  private int fairCompensationSchedulerDefaultWeight;
+
+  @Value("${alpha.compensation.fair-scheduler.default-concurrency:8}")
+  private int fairCompensationSchedulerDefaultConcurrency;
+
+  @Value("${alpha.compensation.fair-scheduler.weights:}")
+  private String fairCompensationSchedulerWeights;
+
+  @Value("${alpha.compensation.fair-scheduler.concurrency-limits:}")
+  private String fairCompensationSchedulerConcurrencyLimits;
+
+  @Value("${alpha.compensation.fair-scheduler.aging-threshold:10000}")
+  private int fairCompensationSchedulerAgingThreshold;
+
+  @Value("${alpha.compensation.fair-scheduler.in-flight-timeout:60000}")
+  private int fairCompensationSchedulerInFlightTimeout;
+
+  @Value("${alpha.compensation.fair-scheduler.sender-threads:16}")
+  private int fairCompensationSchedulerSenderThreads;
+
+  // the scanners claim the NEW commands by set, at most the batch size per query.
+  @Value("${alpha.compensation.claim.enabled:true}")
+  private boolean compensationClaimEnabled;
+
+  @Value("${alpha.compensation.claim.batch-size:" + EventScanner.DEFAULT_COMPENSATION_CLAIM_BATCH_SIZE + "}")
+  private int compensationClaimBatchSize;
+
+  // the claimed commands which are still PENDING after it are claimed again, it should be longer than any compensation.
+  @Value("${alpha.compensation.claim.lease:600000}")
+  private long compensationClaimLease;
+
+  // the low watermark of unended events is maintained in memory, the query of the events after the persisted watermark only reconciles it.
+  @Value("${alpha.scanner.watermark.reconcile-interval:600000}")
+  private int watermarkReconcileInterval;
+
+  // a state is evicted once its global transaction ends, the TTL is only a safety net for the missed SagaEndedEvents.
+  @Value("${alpha.tx-state.ttl:3600000}")
+  private long globalTxStateTtl;
+
+  // the events of the global transactions owned by other nodes are forwarded to them, see TxStateForwarder.
+  @Value("${alpha.tx-state.forward-timeout:3000}")
+  private int globalTxStateForwardTimeout;
+
+  // the events are ordered by the single-threaded loops which are chosen by the hash of globalTxId.
+  // they are saved by the workers, so the worker count is the max number of concurrent writes, see SagaEventLoops.
+  @Value("${alpha.event.loops.count:32}")
+  private int sagaEventLoopCount;
+
+  @Value("${alpha.event.loops.queue-capacity:1024}")
+  private int sagaEventLoopQueueCapacity;
+
+  @Value("${alpha.event.loops.worker-threads:256}")
+  private int sagaEventLoopWorkerThreads;
+
+  // globalTxIds are split into partitions which are leased across the alpha nodes, every node scans its own partitions.
+  @Value("${alpha.scanner.partition.count:16}")
+  private int scannerPartitionCount;
+
+  @Value("${alpha.scanner.partition.rebalance-interval:5000}")
+  private int scannerPartitionRebalanceInterval;
+
   @Bean
   public RestTemplate restTemplate(@Qualifier("simpleClientHttpRequestFactory") ClientHttpRequestFactory clientHttpRequestFactory) {
     return new RestTemplate(clientHttpRequestFactory);
@@ -96,17 +214,144 @@ class AlphaConfig {
   }
 
   @Bean
-  OmegaCallback omegaCallback(Map<String, Map<String, OmegaCallback>> callbacks) {
-    return new PushBackOmegaCallback(pendingCompensations, new CompositeOmegaCallback(callbacks));
+  OmegaCallback omegaCallback(Map<String, Map<String, OmegaCallback>> callbacks, ObjectProvider<FairCompensationScheduler> fairCompensationSchedulerProvider,
+      ObjectProvider<CompensationRetryScheduler> compensationRetrySchedulerProvider) {
+    CompensationRetryScheduler compensationRetryScheduler = compensationRetrySchedulerProvider.getIfAvailable();
+    OmegaCallback omegaCallback = compensationRetryScheduler != null
+        ? new PushBackOmegaCallback(compensationRetryScheduler, new CompositeOmegaCallback(callbacks))
+        : new PushBackOmegaCallback(pendingCompensations, new CompositeOmegaCallback(callbacks));
+    FairCompensationScheduler fairCompensationScheduler = fairCompensationSchedulerProvider.getIfAvailable();
+    OmegaCallback scheduledCallback = fairCompensationScheduler == null ? omegaCallback : new OmegaCallback() {
+      @Override
+      public void compensate(TxEvent event) {
+        fairCompensationScheduler.schedule(event, omegaCallback);
+      }
+
+      @Override
+      public void compensate(List<TxEvent> events) {
+        fairCompensationScheduler.schedule(events, omegaCallback);
+      }
+    };
+    if (compensationRetryScheduler != null) {
+      // the retries are sent by the fair scheduler too, so they are not sent ahead of the other services.
+      compensationRetryScheduler.sendBy(scheduledCallback);
+    }
+    return scheduledCallback;
+  }
+
+  @Bean
+  CompensationRetryRepository springCompensationRetryRepository(CompensationRetryEntityRepository retryRepo, CommandEntityRepository commandRepo) {
+    return new SpringCompensationRetryRepository(retryRepo, commandRepo);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.compensation.retry.enabled", havingValue = "true", matchIfMissing = true)
+  CompensationRetryScheduler compensationRetryScheduler(CompensationRetryRepository compensationRetryRepository, IAccidentHandlingService accidentHandlingService) {
+    return new CompensationRetryScheduler(compensationRetryRepository, accidentHandlingService, compensationRetryWorkers, compensationRetryBaseDelay,
+        compensationRetryMaxDelay, compensationRetryMaxAttempts);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.compensation.fair-scheduler.enabled", havingValue = "true", matchIfMissing = true)
+  FairCompensationScheduler fairCompensationScheduler() {
+    FairCompensationScheduler fairCompensationScheduler = new FairCompensationScheduler(fairCompensationSchedulerQueueCapacity, fairCompensationSchedulerDefaultWeight,
+        fairCompensationSchedulerDefaultConcurrency, FairCompensationScheduler.parseServiceValues(fairCompensationSchedulerWeights),
+        FairCompensationScheduler.parseServiceValues(fairCompensationSchedulerConcurrencyLimits), fairCompensationSchedulerAgingThreshold, fairCompensationSchedulerInFlightTimeout,
+        fairCompensationSchedulerSenderThreads);
+    try {
+      fairCompensationScheduler.register();
+    } catch (IllegalArgumentException e) {
+      // the metrics have been registered by another application context of the same JVM, such as the tests.
+    }
+    return fairCompensationScheduler;
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.tx-state.enabled", havingValue = "true", matchIfMissing = true)
+  GlobalTxStateTable globalTxStateTable(ObjectProvider<PartitionLeaseManager> partitionLeaseManagerProvider,
+      ObjectProvider<TxEventRepository> txEventRepositoryProvider) {
+    // every node answers the global transactions in its own partitions, so nothing is answered from memory without the partition leases.
+    // the repository is resolved lazily, because it's also where the states are applied.
+    GlobalTxStateTable globalTxStateTable = new GlobalTxStateTable(scannerPartitionCount, partitions -> {
+      TxEventRepository txEventRepository = txEventRepositoryProvider.getObject();
+      long watermark = txEventRepository.selectUnendedTxWatermark();
+      long minUnendedEventId = txEventRepository.selectMinUnendedTxEventId(watermark > 0 ? watermark - 1 : 0, scannerPartitionCount, partitions);
+      if (minUnendedEventId < 1) {
+        return Collections.emptyList();
+      }
+      return txEventRepository.selectUnendedTxEvents(minUnendedEventId - 1, scannerPartitionCount, partitions);
+    }, 2L * scannerPartitionRebalanceInterval, globalTxStateTtl);
+    PartitionLeaseManager partitionLeaseManager = partitionLeaseManagerProvider.getIfAvailable();
+    if (partitionLeaseManager != null) {
+      partitionLeaseManager.addListener(globalTxStateTable);
+    }
+    return globalTxStateTable;
   }
 
   @Bean
-  TxEventRepository springTxEventRepository(TxEventEnvelopeRepository eventRepo) {
-    return new SpringTxEventRepository(eventRepo);
+  @ConditionalOnProperty(value = "alpha.tx-state.enabled", havingValue = "true", matchIfMissing = true)
+  TxStateForwarder txStateForwarder(ObjectProvider<PartitionLeaseManager> partitionLeaseManagerProvider) {
+    return new TxStateForwarder(partitionLeaseManagerProvider.getIfAvailable(), globalTxStateForwardTimeout, globalTxStateForwardTimeout);
   }
 
   @Bean
-  CommandRepository springCommandRepository(TxEventEnvelopeRepository eventRepo, CommandEntityRepository commandRepository) {
+  @ConditionalOnProperty(value = "alpha.scanner.watermark.enabled", havingValue = "true", matchIfMissing = true)
+  UnendedTxWatermark unendedTxWatermark() {
+    UnendedTxWatermark unendedTxWatermark = new UnendedTxWatermark();
+    try {
+      unendedTxWatermark.register();
+    } catch (IllegalArgumentException e) {
+      // the metrics have been registered by another application context of the same JVM, such as the tests.
+    }
+    return unendedTxWatermark;
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.timeout.wheel.enabled", havingValue = "true", matchIfMissing = true)
+  TxTimeoutWheel txTimeoutWheel() {
+    // 64 slots and 4 levels cover 64^4 ticks, deadlines beyond it are cascaded again.
+    return new TxTimeoutWheel(timeoutWheelTick, 64, 4);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.compensation.dispatcher.enabled", havingValue = "true", matchIfMissing = true)
+  CompensationDispatcher compensationDispatcher() {
+    return new CompensationDispatcher(compensationDispatcherThreads, compensationDispatcherQueueCapacity);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.event.loops.enabled", havingValue = "true", matchIfMissing = true)
+  SagaEventLoops sagaEventLoops() {
+    SagaEventLoops sagaEventLoops = new SagaEventLoops(sagaEventLoopCount, sagaEventLoopQueueCapacity, sagaEventLoopWorkerThreads);
+    try {
+      sagaEventLoops.register();
+    } catch (IllegalArgumentException e) {
+      // the metrics have been registered by another application context of the same JVM, such as the tests.
+    }
+    return sagaEventLoops;
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnProperty(value = "alpha.scanner.partition.enabled", havingValue = "true", matchIfMissing = true)
+  PartitionLeaseManager partitionLeaseManager(TxleConsulClient txleConsulClient) {
+    PartitionLeaseManager partitionLeaseManager = new PartitionLeaseManager(txleConsulClient, scannerPartitionCount, scannerPartitionRebalanceInterval);
+    partitionLeaseManager.start();
+    return partitionLeaseManager;
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  TxEventRepository springTxEventRepository(TxEventEnvelopeRepository eventRepo, DataSource dataSource) {
+    return new SpringTxEventRepository(eventRepo, dataSource, groupCommitEnabled ? groupCommitMaxBatchSize : 0);
+  }
+
+  @Bean
+  CommandRepository springCommandRepository(TxEventEnvelopeRepository eventRepo, CommandEntityRepository commandRepository, DataSource dataSource) {
+    if (compensationClaimEnabled) {
+      CommandClaimer commandClaimer = new CommandClaimer(dataSource, compensationClaimLease);
+      if (commandClaimer.isSupported()) {
+        return new SpringCommandRepository(eventRepo, commandRepository, commandClaimer);
+      }
+    }
     return new SpringCommandRepository(eventRepo, commandRepository);
   }
 
@@ -180,22 +425,70 @@ class AlphaConfig {
           Tracing tracing,
           IAccidentHandlingService accidentHandlingService,
           ITxleCache txleCache,
-          TxleConsulClient txleConsulClient) {
-
-    new EventScanner(scheduler, eventRepository, commandRepository, timeoutRepository, omegaCallback, eventPollingInterval, txleCache, txleConsulClient).run();
+          TxleConsulClient txleConsulClient,
+          ObjectProvider<TxTimeoutWheel> txTimeoutWheelProvider,
+          ObjectProvider<CompensationDispatcher> compensationDispatcherProvider,
+          ObjectProvider<PartitionLeaseManager> partitionLeaseManagerProvider,
+          ObjectProvider<SagaEventLoops> sagaEventLoopsProvider,
+          ObjectProvider<UnendedTxWatermark> unendedTxWatermarkProvider,
+          ObjectProvider<CompensationRetryScheduler> compensationRetrySchedulerProvider) {
+
+    IScannerOwnership scannerOwnership = partitionLeaseManagerProvider.getIfAvailable();
+    if (scannerOwnership == null) {
+      scannerOwnership = new LeaderScannerOwnership(txleConsulClient);
+    }
+
+    TxTimeoutWheel txTimeoutWheel = txTimeoutWheelProvider.getIfAvailable();
+    UnendedTxWatermark unendedTxWatermark = unendedTxWatermarkProvider.getIfAvailable();
+    if (txTimeoutWheel != null || unendedTxWatermark != null) {
+      // To rebuild the deadlines and the watermark of the active global transactions before accepting any event.
+      // the max id is queried first, the ids of the events persisted after it are greater.
+      long maxEventId = eventRepository.selectMaxTxEventId();
+      // the watermark persisted before restarting is still valid, so the events below it are not queried.
+      long persistedWatermark = eventRepository.selectUnendedTxWatermark();
+      long unendedMinEventId = eventRepository.selectMinUnendedTxEventId(persistedWatermark > 0 ? persistedWatermark - 1 : 0);
+      List<TxEvent> unendedEvents = unendedMinEventId > 0 ? eventRepository.selectUnendedTxEvents(unendedMinEventId - 1) : null;
+      if (txTimeoutWheel != null) {
+        // the timeouts are aborted by the same node which scans the global transaction.
+        txTimeoutWheel.ownedBy(scannerOwnership);
+        txTimeoutWheel.rebuild(unendedEvents);
+        txTimeoutWheel.start();
+      }
+      if (unendedTxWatermark != null) {
+        unendedTxWatermark.reconcile(unendedEvents, maxEventId);
+        eventRepository.saveUnendedTxWatermark(unendedTxWatermark.lowWatermark());
+      }
+    }
+
+    int timeoutPollingInterval = txTimeoutWheel != null ? timeoutRecoveryInterval : eventPollingInterval;
+    int compensationPollingInterval = compensationDispatcherProvider.getIfAvailable() != null ? compensationRecoveryInterval : eventPollingInterval * 2;
+    new EventScanner(scheduler, eventRepository, commandRepository, timeoutRepository, omegaCallback, eventPollingInterval, timeoutPollingInterval,
+            compensationPollingInterval, txleCache, scannerOwnership, unendedTxWatermark, watermarkReconcileInterval,
+            compensationClaimBatchSize).run();
+
+    CompensationRetryScheduler compensationRetryScheduler = compensationRetrySchedulerProvider.getIfAvailable();
+    if (compensationRetryScheduler != null) {
+      scheduler.scheduleWithFixedDelay(() -> compensationRetryScheduler.recover(compensationRetryRecoveryInterval),
+          0, compensationRetryRecoveryInterval, TimeUnit.MILLISECONDS);
+    }
 
     TxConsistentService consistentService = new TxConsistentService(eventRepository, commandRepository, timeoutRepository);
 
-    ServerStartable starTable = buildGrpc(serverConfig, consistentService, omegaCallbacks, dbDegradationConfigService, tracing, accidentHandlingService);
+    ServerStartable starTable = buildGrpc(serverConfig, consistentService, omegaCallbacks, dbDegradationConfigService, tracing, accidentHandlingService, txleCache,
+            sagaEventLoopsProvider.getIfAvailable());
     new Thread(starTable::start).start();
 
     return consistentService;
   }
 
   private ServerStartable buildGrpc(GrpcServerConfig serverConfig, TxConsistentService txConsistentService,
-                                    Map<String, Map<String, OmegaCallback>> omegaCallbacks, IConfigCenterService dbDegradationConfigService, Tracing tracing, IAccidentHandlingService accidentHandlingService) {
-    return new GrpcStartable(serverConfig, tracing,
-            new GrpcTxEventEndpointImpl(txConsistentService, omegaCallbacks, dbDegradationConfigService, accidentHandlingService));
+                                    Map<String, Map<String, OmegaCallback>> omegaCallbacks, IConfigCenterService dbDegradationConfigService, Tracing tracing, IAccidentHandlingService accidentHandlingService,
+                                    ITxleCache txleCache, SagaEventLoops sagaEventLoops) {
+    GrpcTxEventEndpointImpl txEventEndpoint = new GrpcTxEventEndpointImpl(txConsistentService, omegaCallbacks, dbDegradationConfigService, accidentHandlingService,
+            sagaEventLoops);
+    // the paused events of omega are resumed at once, instead of checking the pause status periodically.
+    txleCache.addTxResumeListener(txEventEndpoint::onTxResumed);
+    return new GrpcStartable(serverConfig, tracing, txEventEndpoint);
   }
 
   @Bean
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.Command;
+import org.apache.servicecomb.saga.alpha.core.EventScanner;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Claims a set of NEW commands by one statement. Every call marks at most N commands as PENDING with its own token,
+ * then reads the commands which carry the token, so a command is claimed by one caller only,
+ * and the scanners of all alpha nodes are able to drain the Command table in parallel.
+ * The concurrent claimers wait for the row locks of each other and skip the rows which are not NEW any more after the locks are released.
+ * <p>
+ * A claim is a lease which starts from 'claimedTime'. Every call resets the PENDING commands whose leases have expired to NEW before claiming,
+ * so the commands which were claimed by a dead node, or whose compensations were lost, are claimed again.
+ * So the lease should be longer than any compensation, otherwise a slow compensation is sent twice.
+ */
+class CommandClaimer {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String CLAIM_SQL = "UPDATE Command SET status = 'PENDING', claimToken = ?, claimedTime = ?"
+      + " WHERE status = 'NEW' ORDER BY surrogateId DESC LIMIT ?" + EventScanner.SCANNER_SQL;
+
+  // the commands which are claimed one by one have no 'claimedTime', so they are never reset.
+  private static final String EXPIRED_CLAIMS_SQL = "UPDATE Command SET status = 'NEW', claimToken = NULL, claimedTime = NULL"
+      + " WHERE status = 'PENDING' AND claimedTime < ?" + EventScanner.SCANNER_SQL;
+
+  // it matches nothing, but it's rejected if the database or the Command table does not support the claiming statement.
+  private static final String PROBE_SQL = "UPDATE Command SET claimToken = NULL, claimedTime = NULL"
+      + " WHERE 1 = 0 ORDER BY surrogateId DESC LIMIT 1" + EventScanner.SCANNER_SQL;
+
+  // the payloads are read from the TxStartedEvent which the command references, the same as 'CommandEntityRepository.findCommandByStatus'.
+  private static final String CLAIMED_SQL = "SELECT T.eventId, T.serviceName, T.instanceId, T.globalTxId, T.localTxId, T.parentTxId,"
+      + " T.compensationMethod, T.category, COALESCE(T.payloads, E.payloads) AS payloads"
+      + " FROM Command T LEFT JOIN TxEvent E ON E.surrogateId = T.eventId"
+      + " WHERE T.claimToken = ? ORDER BY T.surrogateId DESC" + EventScanner.SCANNER_SQL;
+
+  private final DataSource dataSource;
+  private final long leaseMillis;
+
+  CommandClaimer(DataSource dataSource, long leaseMillis) {
+    this.dataSource = dataSource;
+    this.leaseMillis = leaseMillis;
+  }
+
+  /**
+   * It's checked once on starting, the commands are claimed one by one if it's not supported.
+   *
+   * @return false if the database or the Command table does not support the claiming statement, e.g. the columns 'claimToken' and 'claimedTime' are missing
+   */
+  boolean isSupported() {
+    try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+      statement.executeUpdate(PROBE_SQL);
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+      return true;
+    } catch (SQLException e) {
+      // the SQL states of class '42' are the syntax errors, such as the unknown column of an old table or 'UPDATE ... LIMIT' of some databases.
+      if (e.getSQLState() != null && e.getSQLState().startsWith("42")) {
+        LOG.warn("The Command table does not support claiming commands by set, they are claimed one by one. Please add the columns 'claimToken' and"
+            + " 'claimedTime' to the Command table, see migrate-mysql-command-claim.sql. SQLState = [{}].", e.getSQLState(), e);
+        return false;
+      }
+      // the database is unavailable for now, the claiming will report its errors.
+      LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to check whether the Command table supports claiming commands by set.", e);
+      return true;
+    }
+  }
+
+  /**
+   * @return the claimed commands, the latest first
+   */
+  List<Command> claim(int limit) {
+    String claimToken = UUID.randomUUID().toString();
+    long now = System.currentTimeMillis();
+    try (Connection connection = dataSource.getConnection()) {
+      int expired;
+      try (PreparedStatement statement = connection.prepareStatement(EXPIRED_CLAIMS_SQL)) {
+        statement.setTimestamp(1, new Timestamp(now - leaseMillis));
+        expired = statement.executeUpdate();
+      }
+      if (expired > 0) {
+        LOG.warn("Reset [{}] PENDING commands whose claims have been expired for [{}] ms to NEW.", expired, leaseMillis);
+      }
+      int claimed;
+      try (PreparedStatement statement = connection.prepareStatement(CLAIM_SQL)) {
+        statement.setString(1, claimToken);
+        statement.setTimestamp(2, new Timestamp(now));
+        statement.setInt(3, limit);
+        claimed = statement.executeUpdate();
+      }
+      // the row locks are released at once, so the other claimers go on.
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+      if (claimed == 0) {
+        return Collections.emptyList();
+      }
+
+      List<Command> commands = new ArrayList<>(claimed);
+      try (PreparedStatement statement = connection.prepareStatement(CLAIMED_SQL)) {
+        statement.setString(1, claimToken);
+        try (ResultSet resultSet = statement.executeQuery()) {
+          while (resultSet.next()) {
+            commands.add(new Command(
+                resultSet.getLong("eventId"),
+                resultSet.getString("serviceName"),
+                resultSet.getString("instanceId"),
+                resultSet.getString("globalTxId"),
+                resultSet.getString("localTxId"),
+                resultSet.getString("parentTxId"),
+                resultSet.getString("compensationMethod"),
+                resultSet.getString("category"),
+                resultSet.getBytes("payloads")));
+          }
+        }
+      }
+      return commands;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Failed to claim NEW commands.", e);
+    }
+  }
+}
@@ -37,7 +37,7 @@ public interface CommandEntityRepository extends CrudRepository<Command, Long> {
       + "WHERE c.globalTxId = :globalTxId "
       + "  AND c.localTxId = :localTxId "
       + "  AND c.status = :fromStatus")
-  void updateStatusByGlobalTxIdAndLocalTxId(
+  int updateStatusByGlobalTxIdAndLocalTxId(
       @Param("fromStatus") String fromStatus,
       @Param("toStatus") String toStatus,
       @Param("globalTxId") String globalTxId,
@@ -76,9 +76,19 @@ public interface CommandEntityRepository extends CrudRepository<Command, Long> {
   // 查询某全局事务没有PENDING状态且为NEW状态的Command
   List<Command> findFirstGroupByGlobalTxIdWithoutPendingOrderByIdDesc();
 
-  @Query(value = "SELECT * FROM Command T WHERE T.status = ?1 ORDER BY T.surrogateId DESC" + EventScanner.SCANNER_SQL, nativeQuery = true)
+  // the payloads are read from the TxStartedEvent which the command references, and the old commands which stored them are still read as before.
+  @Query(value = "SELECT T.surrogateId, T.eventId, T.serviceName, T.instanceId, T.globalTxId, T.localTxId, T.parentTxId, T.compensationMethod,"
+      + " COALESCE(T.payloads, E.payloads) AS payloads, T.status, T.version, T.category"
+      + " FROM Command T LEFT JOIN TxEvent E ON E.surrogateId = T.eventId"
+      + " WHERE T.status = ?1 ORDER BY T.surrogateId DESC" + EventScanner.SCANNER_SQL, nativeQuery = true)
   List<Command> findCommandByStatus(String status);
 
+  @Query(value = "SELECT T.surrogateId, T.eventId, T.serviceName, T.instanceId, T.globalTxId, T.localTxId, T.parentTxId, T.compensationMethod,"
+      + " COALESCE(T.payloads, E.payloads) AS payloads, T.status, T.version, T.category"
+      + " FROM Command T LEFT JOIN TxEvent E ON E.surrogateId = T.eventId"
+      + " WHERE T.globalTxId = ?1 AND T.localTxId = ?2 ORDER BY T.surrogateId DESC", nativeQuery = true)
+  List<Command> findByGlobalTxIdAndLocalTxIdWithPayloads(String globalTxId, String localTxId);
+
   @Query(value = "SELECT T.eventId FROM Command T WHERE T.eventId IN ?1")
   Set<Long> findExistCommandList(Set<Long> eventIdList);
 }
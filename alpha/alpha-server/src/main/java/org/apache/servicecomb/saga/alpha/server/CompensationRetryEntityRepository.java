@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.apache.servicecomb.saga.alpha.core.CompensationRetry;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+interface CompensationRetryEntityRepository extends CrudRepository<CompensationRetry, Long> {
+
+  @Query("SELECT r FROM CompensationRetry r WHERE r.globalTxId = ?1 AND r.localTxId = ?2")
+  List<CompensationRetry> findByGlobalTxIdAndLocalTxId(String globalTxId, String localTxId);
+
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query("UPDATE org.apache.servicecomb.saga.alpha.core.CompensationRetry r "
+      + "SET r.attempts = :attempts, r.nextAttemptTime = :nextAttemptTime, r.lastError = :lastError "
+      + "WHERE r.globalTxId = :globalTxId "
+      + "  AND r.localTxId = :localTxId")
+  int updateAttemptsByGlobalTxIdAndLocalTxId(
+      @Param("attempts") int attempts,
+      @Param("nextAttemptTime") Date nextAttemptTime,
+      @Param("lastError") String lastError,
+      @Param("globalTxId") String globalTxId,
+      @Param("localTxId") String localTxId);
+
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query("UPDATE org.apache.servicecomb.saga.alpha.core.CompensationRetry r "
+      + "SET r.nextAttemptTime = :nextAttemptTime "
+      + "WHERE r.globalTxId = :globalTxId "
+      + "  AND r.localTxId = :localTxId "
+      + "  AND (r.nextAttemptTime IS NULL OR r.nextAttemptTime < :before)")
+  int updateOverdueNextAttemptTimeByGlobalTxIdAndLocalTxId(
+      @Param("nextAttemptTime") Date nextAttemptTime,
+      @Param("globalTxId") String globalTxId,
+      @Param("localTxId") String localTxId,
+      @Param("before") Date before);
+
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query("DELETE FROM CompensationRetry r WHERE r.globalTxId = :globalTxId AND r.localTxId = :localTxId")
+  int deleteByGlobalTxIdAndLocalTxId(
+      @Param("globalTxId") String globalTxId,
+      @Param("localTxId") String localTxId);
+
+  // the next attempt time was cleared by the old versions after giving the command back to the scanner, so these retries are overdue too.
+  @Query("SELECT r FROM CompensationRetry r WHERE r.nextAttemptTime IS NULL OR r.nextAttemptTime < ?1 ORDER BY r.nextAttemptTime ASC")
+  List<CompensationRetry> findByNextAttemptTimeBefore(Date before);
+}
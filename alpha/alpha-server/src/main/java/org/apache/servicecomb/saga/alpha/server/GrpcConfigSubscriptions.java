@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigDecisionTable;
+import org.apache.servicecomb.saga.alpha.core.configcenter.IConfigCenterService;
+import org.apache.servicecomb.saga.common.ConfigCenterType;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfig;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigDecision;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The config subscriptions of omega instances, every subscriber receives a snapshot of its client configs on subscribing,
+ * and a new one whenever the decision table changes its configs.
+ */
+class GrpcConfigSubscriptions implements Consumer<ConfigDecisionTable> {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // the configs of client and the fault-tolerant ones, which are read by omega.
+    static final List<ConfigCenterType> SUBSCRIBED_TYPES;
+
+    static {
+        List<ConfigCenterType> types = new ArrayList<>();
+        for (ConfigCenterType type : ConfigCenterType.values()) {
+            if (type.toInteger() >= 50) {
+                types.add(type);
+            }
+        }
+        types.add(ConfigCenterType.GlobalTxFaultTolerant);
+        types.add(ConfigCenterType.CompensationFaultTolerant);
+        types.add(ConfigCenterType.AutoCompensationFaultTolerant);
+        SUBSCRIBED_TYPES = Collections.unmodifiableList(types);
+    }
+
+    private final IConfigCenterService configCenterService;
+    private final Map<StreamObserver<GrpcConfigSnapshot>, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    GrpcConfigSubscriptions(IConfigCenterService configCenterService) {
+        this.configCenterService = configCenterService;
+    }
+
+    void subscribe(GrpcConfig config, StreamObserver<GrpcConfigSnapshot> responseObserver) {
+        Subscription subscription = new Subscription(config.getInstanceId(), responseObserver);
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            ((ServerCallStreamObserver<GrpcConfigSnapshot>) responseObserver).setOnCancelHandler(() -> subscriptions.remove(responseObserver));
+        }
+        subscriptions.put(responseObserver, subscription);
+        subscription.push(configCenterService.getConfigDecisionTable());
+    }
+
+    @Override
+    public void accept(ConfigDecisionTable table) {
+        subscriptions.values().forEach(subscription -> subscription.push(table));
+    }
+
+    int size() {
+        return subscriptions.size();
+    }
+
+    static GrpcConfigSnapshot snapshotOf(ConfigDecisionTable table, String instanceId) {
+        GrpcConfigSnapshot.Builder builder = GrpcConfigSnapshot.newBuilder().setVersion(table.getVersion());
+        for (ConfigCenterType type : SUBSCRIBED_TYPES) {
+            builder.addDecisions(GrpcConfigDecision.newBuilder().setType(type.toInteger()).setCategory("").setStatus(table.isEnabled(instanceId, null, type)));
+        }
+        for (String category : table.getCategories(instanceId)) {
+            for (ConfigCenterType type : SUBSCRIBED_TYPES) {
+                builder.addDecisions(GrpcConfigDecision.newBuilder().setType(type.toInteger()).setCategory(category).setStatus(table.isEnabled(instanceId, category, type)));
+            }
+        }
+        return builder.build();
+    }
+
+    private class Subscription {
+        private final String instanceId;
+        private final StreamObserver<GrpcConfigSnapshot> responseObserver;
+        private long lastVersion = -1;
+        private List<GrpcConfigDecision> lastDecisions;
+
+        private Subscription(String instanceId, StreamObserver<GrpcConfigSnapshot> responseObserver) {
+            this.instanceId = instanceId;
+            this.responseObserver = responseObserver;
+        }
+
+        // StreamObserver is not thread-safe, and the older table should not cover the newer one.
+        private synchronized void push(ConfigDecisionTable table) {
+            if (table.getVersion() < lastVersion) {
+                return;
+            }
+            GrpcConfigSnapshot snapshot = snapshotOf(table, instanceId);
+            lastVersion = table.getVersion();
+            // most of the changes are irrelevant to this instance.
+            if (snapshot.getDecisionsList().equals(lastDecisions)) {
+                return;
+            }
+            try {
+                responseObserver.onNext(snapshot);
+                lastDecisions = snapshot.getDecisionsList();
+            } catch (Exception e) {
+                subscriptions.remove(responseObserver);
+                LOG.warn("Removed the config subscription of instance [{}], cause: {}.", instanceId, e.getMessage());
+            }
+        }
+    }
+}
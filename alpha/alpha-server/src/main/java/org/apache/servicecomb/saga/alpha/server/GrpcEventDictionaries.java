@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcServiceConfig;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The string dictionaries of the connected omega instances, one per connection. The constant strings of GrpcTxEvent, such as the service name
+ * and the compensation method, are defined once by the client, and the later events carry the small refs of them rather than the text.
+ * A dictionary lives as long as its connection, it's replaced if the same instance connects again and removed on disconnecting.
+ */
+class GrpcEventDictionaries {
+    // the same limit as the client, the entries beyond it are sent as text.
+    static final int MAX_ENTRIES = 1024;
+
+    private final Map<Long, AtomicReferenceArray<String>> dictionaries = new ConcurrentHashMap<>();
+    private final Map<String, Long> dictionaryIdsOfInstances = new ConcurrentHashMap<>();
+
+    /**
+     * @return true if the client declared a dictionary
+     */
+    boolean register(GrpcServiceConfig config) {
+        if (config.getDictionaryId() == 0) {
+            return false;
+        }
+        dictionaries.put(config.getDictionaryId(), new AtomicReferenceArray<>(MAX_ENTRIES));
+        Long previousId = dictionaryIdsOfInstances.put(instanceKey(config), config.getDictionaryId());
+        if (previousId != null && previousId != config.getDictionaryId()) {
+            dictionaries.remove(previousId);
+        }
+        return true;
+    }
+
+    void unregister(GrpcServiceConfig config) {
+        if (dictionaryIdsOfInstances.remove(instanceKey(config), config.getDictionaryId())) {
+            dictionaries.remove(config.getDictionaryId());
+        }
+    }
+
+    /**
+     * To save the entries defined by the event, and to fill its strings by the refs.
+     *
+     * @return the event with the text of all strings, or null if some ref is unknown
+     */
+    GrpcTxEvent resolve(GrpcTxEvent message) {
+        if (message.getDictionaryId() == 0) {
+            return message;
+        }
+        AtomicReferenceArray<String> dictionary = dictionaries.get(message.getDictionaryId());
+        if (dictionary == null) {
+            return null;
+        }
+        for (Map.Entry<Integer, String> entry : message.getDictionaryEntriesMap().entrySet()) {
+            if (entry.getKey() > 0 && entry.getKey() < MAX_ENTRIES) {
+                dictionary.set(entry.getKey(), entry.getValue());
+            }
+        }
+
+        String serviceName = lookup(dictionary, message.getServiceNameRef(), message.getServiceName());
+        String instanceId = lookup(dictionary, message.getInstanceIdRef(), message.getInstanceId());
+        String type = lookup(dictionary, message.getTypeRef(), message.getType());
+        String compensationMethod = lookup(dictionary, message.getCompensationMethodRef(), message.getCompensationMethod());
+        String category = lookup(dictionary, message.getCategoryRef(), message.getCategory());
+        String retryMethod = lookup(dictionary, message.getRetryMethodRef(), message.getRetryMethod());
+        if (serviceName == null || instanceId == null || type == null || compensationMethod == null || category == null || retryMethod == null) {
+            return null;
+        }
+        // the payloads are shared by the new message rather than copied.
+        return message.toBuilder()
+                .setServiceName(serviceName).clearServiceNameRef()
+                .setInstanceId(instanceId).clearInstanceIdRef()
+                .setType(type).clearTypeRef()
+                .setCompensationMethod(compensationMethod).clearCompensationMethodRef()
+                .setCategory(category).clearCategoryRef()
+                .setRetryMethod(retryMethod).clearRetryMethodRef()
+                .clearDictionaryEntries()
+                .build();
+    }
+
+    private String lookup(AtomicReferenceArray<String> dictionary, int ref, String text) {
+        if (ref == 0) {
+            return text;
+        }
+        return ref > 0 && ref < MAX_ENTRIES ? dictionary.get(ref) : null;
+    }
+
+    private String instanceKey(GrpcServiceConfig config) {
+        return config.getServiceName() + "#" + config.getInstanceId();
+    }
+}
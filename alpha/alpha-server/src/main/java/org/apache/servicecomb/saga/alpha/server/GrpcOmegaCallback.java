@@ -15,32 +15,104 @@
 
 package org.apache.servicecomb.saga.alpha.server;
 
+import java.util.List;
+
 import org.apache.servicecomb.saga.alpha.core.OmegaCallback;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.common.PayloadCodec;
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcCompensateCommand;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
 import io.grpc.stub.StreamObserver;
 
 class GrpcOmegaCallback implements OmegaCallback {
 
   private final StreamObserver<GrpcCompensateCommand> observer;
+  private final boolean resumeNotification;
+  private final boolean payloadCompression;
+  private final boolean batchCompensation;
 
   GrpcOmegaCallback(StreamObserver<GrpcCompensateCommand> observer) {
+    this(observer, false);
+  }
+
+  GrpcOmegaCallback(StreamObserver<GrpcCompensateCommand> observer, boolean resumeNotification) {
+    this(observer, resumeNotification, false);
+  }
+
+  GrpcOmegaCallback(StreamObserver<GrpcCompensateCommand> observer, boolean resumeNotification, boolean payloadCompression) {
+    this(observer, resumeNotification, payloadCompression, false);
+  }
+
+  GrpcOmegaCallback(StreamObserver<GrpcCompensateCommand> observer, boolean resumeNotification, boolean payloadCompression,
+      boolean batchCompensation) {
     this.observer = observer;
+    this.resumeNotification = resumeNotification;
+    this.payloadCompression = payloadCompression;
+    this.batchCompensation = batchCompensation;
   }
 
   @Override
   public void compensate(TxEvent event) {
-    GrpcCompensateCommand command = GrpcCompensateCommand.newBuilder()
+    send(commandOf(event));
+  }
+
+  // the old clients regard every command as one compensation, so the batch is sent to the ones which declared it only.
+  @Override
+  public void compensate(List<TxEvent> events) {
+    if (!batchCompensation || events.size() == 1) {
+      OmegaCallback.super.compensate(events);
+      return;
+    }
+    GrpcCompensateCommand.Builder builder = GrpcCompensateCommand.newBuilder().setGlobalTxId(events.get(0).globalTxId());
+    events.forEach(event -> builder.addCompensations(commandOf(event)));
+    send(builder.build());
+  }
+
+  private GrpcCompensateCommand commandOf(TxEvent event) {
+    GrpcCompensateCommand.Builder builder = GrpcCompensateCommand.newBuilder()
         .setGlobalTxId(event.globalTxId())
         .setLocalTxId(event.localTxId())
         .setParentTxId(event.parentTxId() == null ? "" : event.parentTxId())
-        .setCompensationMethod(event.compensationMethod())
-        .setPayloads(ByteString.copyFrom(event.payloads()))
-        .build();
-    observer.onNext(command);
+        .setCompensationMethod(event.compensationMethod());
+    // the compressed payloads are stored as-is, they are inflated only for the clients which are not able to do it.
+    byte[] payloads = event.payloads();
+    if (PayloadCodec.isCompressed(payloads)) {
+      if (payloadCompression) {
+        builder.setPayloadCodec(PayloadCodec.DEFLATE);
+      } else {
+        payloads = PayloadCodec.decompress(payloads);
+      }
+    }
+    // the payloads are never modified after ingestion, so they are wrapped rather than copied.
+    return builder.setPayloads(payloads == null ? ByteString.EMPTY : UnsafeByteOperations.unsafeWrap(payloads)).build();
+  }
+
+  // the old clients regard every command as a compensation, so it's sent to the ones which declared the codec only.
+  void acceptPayloadCodec() {
+    if (payloadCompression) {
+      send(GrpcCompensateCommand.newBuilder().setAcceptedPayloadCodec(PayloadCodec.DEFLATE).build());
+    }
+  }
+
+  // the old clients regard every command as a compensation, so they are not notified.
+  void resume(String globalTxId) {
+    if (resumeNotification) {
+      send(GrpcCompensateCommand.newBuilder().setGlobalTxId(globalTxId == null ? "" : globalTxId).setResumed(true).build());
+    }
+  }
+
+  void acceptDictionary(long dictionaryId) {
+    send(GrpcCompensateCommand.newBuilder().setAcceptedDictionaryId(dictionaryId).build());
+  }
+
+  // StreamObserver is not thread-safe, and the commands are sent by the dispatcher and the notifications concurrently.
+  private void send(GrpcCompensateCommand command) {
+    synchronized (observer) {
+      observer.onNext(command);
+    }
   }
 
   @Override
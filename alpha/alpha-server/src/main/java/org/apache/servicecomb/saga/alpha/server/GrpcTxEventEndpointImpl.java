@@ -27,6 +27,7 @@ import com.esotericsoftware.kryo.pool.KryoPool;
 import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
 import org.apache.servicecomb.saga.alpha.core.OmegaCallback;
+import org.apache.servicecomb.saga.alpha.core.SagaEventLoops;
 import org.apache.servicecomb.saga.alpha.core.TxConsistentService;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
 import org.apache.servicecomb.saga.alpha.core.accidenthandling.AccidentHandleType;
@@ -36,6 +37,7 @@ import org.apache.servicecomb.saga.alpha.core.configcenter.IConfigCenterService;
 import org.apache.servicecomb.saga.alpha.core.kafka.KafkaMessage;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.apache.servicecomb.saga.common.EventType;
+import org.apache.servicecomb.saga.common.PayloadCodec;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.pack.contract.grpc.*;
 import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceImplBase;
@@ -48,7 +50,9 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.emptyMap;
 
@@ -64,19 +68,54 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
 
     private final IAccidentHandlingService accidentHandlingService;
 
+    private final GrpcConfigSubscriptions configSubscriptions;
+
+    private final GrpcEventDictionaries eventDictionaries = new GrpcEventDictionaries();
+
+    // null if the events are handled by the gRPC threads directly.
+    private final SagaEventLoops sagaEventLoops;
+
     GrpcTxEventEndpointImpl(TxConsistentService txConsistentService,
-                            Map<String, Map<String, OmegaCallback>> omegaCallbacks, IConfigCenterService dbDegradationConfigService, IAccidentHandlingService accidentHandlingService) {
+                            Map<String, Map<String, OmegaCallback>> omegaCallbacks, IConfigCenterService dbDegradationConfigService, IAccidentHandlingService accidentHandlingService,
+                            SagaEventLoops sagaEventLoops) {
         this.txConsistentService = txConsistentService;
+        this.sagaEventLoops = sagaEventLoops;
         this.omegaCallbacks = omegaCallbacks;
         this.dbDegradationConfigService = dbDegradationConfigService;
         this.accidentHandlingService = accidentHandlingService;
+        this.configSubscriptions = new GrpcConfigSubscriptions(dbDegradationConfigService);
+        dbDegradationConfigService.addConfigDecisionTableListener(configSubscriptions);
     }
 
     @Override
     public void onConnected(GrpcServiceConfig request, StreamObserver<GrpcCompensateCommand> responseObserver) {
+        GrpcOmegaCallback callback = new GrpcOmegaCallback(responseObserver, request.getResumeNotification(),
+                PayloadCodec.DEFLATE.equals(request.getPayloadCodec()), request.getBatchCompensation());
+        // it's answered before registering the callback, so the client knows the codec before receiving any compensation.
+        callback.acceptPayloadCodec();
+        if (eventDictionaries.register(request)) {
+            callback.acceptDictionary(request.getDictionaryId());
+        }
         omegaCallbacks
                 .computeIfAbsent(request.getServiceName(), key -> new ConcurrentHashMap<>())
-                .put(request.getInstanceId(), new GrpcOmegaCallback(responseObserver));
+                .put(request.getInstanceId(), callback);
+    }
+
+    /**
+     * To notify all of connected clients, the ones which have no paused event of the global transaction ignore it.
+     *
+     * @param globalTxId empty if all of global transactions were resumed
+     */
+    void onTxResumed(String globalTxId) {
+        omegaCallbacks.values().forEach(callbacks -> callbacks.values().forEach(callback -> {
+            if (callback instanceof GrpcOmegaCallback) {
+                try {
+                    ((GrpcOmegaCallback) callback).resume(globalTxId);
+                } catch (Exception e) {
+                    LOG.error("Failed to notify client of resuming global transaction [{}].", globalTxId, e);
+                }
+            }
+        }));
     }
 
     // TODO 2018/1/5 connect is async and disconnect is sync, meaning callback may not be registered on disconnected
@@ -89,6 +128,7 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
             if (callback != null) {
                 callback.disconnect();
             }
+            eventDictionaries.unregister(request);
         } catch (Exception e) {
             LOG.error("Encountered an exception when trying to disconnect.", e);
         } finally {
@@ -100,20 +140,101 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
 
     @Override
     public void onTxEvent(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+        submitTxEvent(message).whenComplete((grpcAck, e) -> {
+            if (grpcAck == null) {
+                LOG.error("Encountered an exception when handling the event, globalTxId = [{}].", message.getGlobalTxId(), e);
+                responseObserver.onError(e != null ? e : new IllegalStateException("No ack for the event."));
+                return;
+            }
+            responseObserver.onNext(grpcAck);
+            responseObserver.onCompleted();
+        });
+    }
+
+    /**
+     * A long-lived stream for TxEvents, it saves the setup of one HTTP/2 stream for every event.
+     * Client is able to send many events without waiting, and every ack carries the sequence of its event, so client can correlate them.
+     * Events of one global transaction are handled in order, because gRPC calls the method 'onNext' serially for one call and they are queued to the same saga event loop.
+     * The acks of different global transactions may be sent out of order, and the stream is completed after the last ack.
+     */
+    @Override
+    public StreamObserver<GrpcTxEvent> onTxEventStream(StreamObserver<GrpcAck> responseObserver) {
+        AtomicInteger pendingEvents = new AtomicInteger();
+        return new StreamObserver<GrpcTxEvent>() {
+            private boolean completed;
+
+            @Override
+            public void onNext(GrpcTxEvent message) {
+                pendingEvents.incrementAndGet();
+                submitTxEvent(message).whenComplete((ack, e) -> {
+                    GrpcAck grpcAck = ack;
+                    if (grpcAck == null) {
+                        // the other events of the stream go on, the client fails this event only, the same as 'onError' of the unary rpc.
+                        LOG.error("Encountered an exception when handling the stream event, sequence = [{}].", message.getSequence(), e);
+                        grpcAck = GrpcAck.newBuilder().setError(e != null ? String.valueOf(e) : "No ack for the event.").build();
+                    }
+                    synchronized (responseObserver) {
+                        responseObserver.onNext(grpcAck.toBuilder().setSequence(message.getSequence()).build());
+                        if (pendingEvents.decrementAndGet() == 0 && completed) {
+                            responseObserver.onCompleted();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                LOG.warn("TxEvent stream was closed by client with error, cause: {}.", t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                synchronized (responseObserver) {
+                    completed = true;
+                    if (pendingEvents.get() == 0) {
+                        responseObserver.onCompleted();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * The events are handled by the saga event loop of their global transaction, so one global transaction is handled by one thread at a time.
+     * The strings are resolved by the calling thread, because the client defines the dictionary entries in the sending order.
+     */
+    private CompletableFuture<GrpcAck> submitTxEvent(GrpcTxEvent encodedMessage) {
+        GrpcTxEvent message = eventDictionaries.resolve(encodedMessage);
+        if (message == null) {
+            LOG.warn("Unknown string dictionary [{}], the client will send the event again as text.", encodedMessage.getDictionaryId());
+            return CompletableFuture.completedFuture(GrpcAck.newBuilder().setAborted(false).setDictionaryMissed(true).build());
+        }
+        if (sagaEventLoops != null && !message.getGlobalTxId().isEmpty() && !TxleConstants.SPECIAL_KEY.equals(message.getCategory())) {
+            return sagaEventLoops.submit(message.getGlobalTxId(), () -> handleTxEvent(message));
+        }
+        CompletableFuture<GrpcAck> future = new CompletableFuture<>();
+        try {
+            future.complete(handleTxEvent(message));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private GrpcAck handleTxEvent(GrpcTxEvent message) {
         if (TxleConstants.SPECIAL_KEY.equals(message.getCategory())) {
-            fetchLocalTxIdOfEndedGlobalTx(message, responseObserver);
-            return;
+            return fetchLocalTxIdOfEndedGlobalTx(message);
         }
 
         // check global tx, compensation, auto-compensation. All of configs except fault-tolerant are enabled by default.
-        if (!isEnabledTx(message, responseObserver)) {
-            return;
+        if (!isEnabledTx(message)) {
+            return GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(false).build();
         }
 
-        handleSupportTxPause(message, responseObserver);
+        return handleSupportTxPause(message);
     }
 
-    private boolean isEnabledTx(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+    private boolean isEnabledTx(GrpcTxEvent message) {
         boolean result = true;
         try {
             if (EventType.SagaStartedEvent.name().equals(message.getType())) {
@@ -132,22 +253,16 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
         } catch (Exception e) {
             LOG.error("Encountered an exception when executing method 'isEnabledConfig'.", e);
         }
-
-        if (!result) {
-            // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
-            responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).setIsEnabledTx(result).build());
-            responseObserver.onCompleted();
-        }
         return result;
     }
 
-    private void handleSupportTxPause(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+    private GrpcAck handleSupportTxPause(GrpcTxEvent message) {
         // To use temporary variables as much as possible for saving memory, not static variables.
         GrpcAck grpcAck = null;
         try {
             int result = 0;
             try {
-                result = txConsistentService.handleSupportTxPause(new TxEvent(
+                TxEvent event = new TxEvent(
                         message.getServiceName(),
                         message.getInstanceId(),
                         new Date(),
@@ -161,7 +276,11 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
                         message.getRetries(),
                         message.getCategory(),
                         message.getPayloads().toByteArray()
-                ));
+                );
+                if (message.getIdempotent()) {
+                    event.setDedupeKey(message.getGlobalTxId() + ":" + message.getLocalTxId() + ":" + message.getType());
+                }
+                result = txConsistentService.handleSupportTxPause(event);
             } catch (Exception e) {
             }
 
@@ -174,14 +293,11 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
             }
         } catch (Exception e) {
             LOG.error("Encountered an exception when executing method 'handleSupportTxPause'.", e);
-        } finally {
-            // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
-            responseObserver.onNext(grpcAck);
-            responseObserver.onCompleted();
         }
+        return grpcAck;
     }
 
-    private void fetchLocalTxIdOfEndedGlobalTx(GrpcTxEvent message, StreamObserver<GrpcAck> responseObserver) {
+    private GrpcAck fetchLocalTxIdOfEndedGlobalTx(GrpcTxEvent message) {
         ByteString payloads = null;
         try {
             // Reasons for using the Kryo serialization tool are: 1.Do not change the TxEvent's structure. 2.To decrease data size for saving I/O. 3.Kryo has a high-performance computing power.
@@ -199,16 +315,12 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
             }
         } catch (Exception e) {
             LOG.error("Encountered an exception when executing method 'fetchLocalTxIdOfEndedGlobalTx'.", e);
-        } finally {
-            // message.toBuilder().setPayloads(payloads);// Could not set payloads to the original object.
-            // 保证下面两行代码被执行，若grpc服务端程序执行完成却没有执行下面两行代码，则将会报错误【io.grpc.StatusRuntimeException: UNKNOWN】 By Gannalyo
-            if (payloads == null) {
-                responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).build());
-            } else {
-                responseObserver.onNext(GrpcAck.newBuilder().setAborted(false).setLocalTxIds(payloads).build());
-            }
-            responseObserver.onCompleted();
         }
+        // message.toBuilder().setPayloads(payloads);// Could not set payloads to the original object.
+        if (payloads == null) {
+            return GrpcAck.newBuilder().setAborted(false).build();
+        }
+        return GrpcAck.newBuilder().setAborted(false).setLocalTxIds(payloads).build();
     }
 
     private byte[] serialize(Object[] objects) {
@@ -290,4 +402,17 @@ class GrpcTxEventEndpointImpl extends TxEventServiceImplBase {
             responseObserver.onCompleted();
         }
     }
+
+    /**
+     * The stream keeps open, so that omega reads its client configs locally, and it's pushed again after the configs were changed.
+     */
+    @Override
+    public void onSubscribeConfig(GrpcConfig config, StreamObserver<GrpcConfigSnapshot> responseObserver) {
+        try {
+            configSubscriptions.subscribe(config, responseObserver);
+        } catch (Exception e) {
+            LOG.error("Encountered an exception when executing method 'onSubscribeConfig'.", e);
+            responseObserver.onError(e);
+        }
+    }
 }
@@ -23,13 +23,15 @@ import static org.apache.servicecomb.saga.common.EventType.TxCompensatedEvent;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
 
-import javax.transaction.Transactional;
-
 import org.apache.servicecomb.saga.alpha.core.Command;
 import org.apache.servicecomb.saga.alpha.core.CommandRepository;
+import org.apache.servicecomb.saga.alpha.core.CompensationDispatcher;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 public class SpringCommandRepository implements CommandRepository {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -37,11 +39,22 @@ public class SpringCommandRepository implements CommandRepository {
   private final TxEventEnvelopeRepository eventRepository;
   private final CommandEntityRepository commandRepository;
 
+  @Autowired(required = false)
+  private CompensationDispatcher compensationDispatcher;
+
+  // it's null if the commands are claimed one by one, e.g. the Command table has no column 'claimToken', see CommandClaimer.isSupported.
+  private CommandClaimer commandClaimer;
+
   SpringCommandRepository(TxEventEnvelopeRepository eventRepository, CommandEntityRepository commandRepository) {
     this.eventRepository = eventRepository;
     this.commandRepository = commandRepository;
   }
 
+  SpringCommandRepository(TxEventEnvelopeRepository eventRepository, CommandEntityRepository commandRepository, CommandClaimer commandClaimer) {
+    this(eventRepository, commandRepository);
+    this.commandClaimer = commandClaimer;
+  }
+
   @Override
   public void saveCompensationCommands(String globalTxId) {
     // 查询已结束但未补偿的子事务，之后保存该子事务的补偿命令，供后续补偿使用
@@ -132,52 +145,79 @@ public class SpringCommandRepository implements CommandRepository {
         Set<Long> eventIdSet = new HashSet<>();
         txStartedEvents.forEach(event -> eventIdSet.add(event.id()));
         Set<Long> existCommandEventIdList = commandRepository.findExistCommandList(eventIdSet);
+        List<Command> savedCommands = new ArrayList<>(txStartedEvents.size());
 
         txStartedEvents.forEach(event -> {
           try {
             if (!existCommandEventIdList.contains(event.id())) {
-              commandRepository.save(new Command(event));
+              savedCommands.add(commandRepository.save(new Command(event)));
               eventRepository.save(new TxEvent(event.serviceName(), event.instanceId(), event.globalTxId(), event.localTxId(), event.parentTxId(), TxCompensatedEvent.name(), event.compensationMethod(), event.category(), event.payloads()));
             }
           } catch (Exception e) {
             LOG.error("Failed to save command {} in method {}.", event, method);
           }
         });
+        dispatch(savedCommands);
       }
     } catch (Exception e) {
       LOG.error("Failed to save command {} in method {}.", txStartedEvents.toArray().toString(), method);
     }
   }
 
+  // the commands are compensated in the order of saving, the same as the order of the scanner.
+  private void dispatch(List<Command> savedCommands) {
+    if (compensationDispatcher == null || savedCommands.isEmpty()) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      // the dispatcher can not claim the commands before they are visible to other connections.
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          compensationDispatcher.dispatch(savedCommands);
+        }
+      });
+    } else {
+      compensationDispatcher.dispatch(savedCommands);
+    }
+  }
+
   @Override
   public void markCommandAsDone(String globalTxId, String localTxId) {
     commandRepository.updateStatusByGlobalTxIdAndLocalTxId(DONE.name(), globalTxId, localTxId);
   }
 
+  @Override
+  public boolean markCommandAsPending(String globalTxId, String localTxId) {
+    return commandRepository.updateStatusByGlobalTxIdAndLocalTxId(NEW.name(), PENDING.name(), globalTxId, localTxId) > 0;
+  }
+
   @Override
   public List<Command> findUncompletedCommands(String globalTxId) {
 //    return commandRepository.findByGlobalTxIdAndStatus(globalTxId, NEW.name());
     return commandRepository.findUncompletedCommandByGlobalTxIdAndStatus(globalTxId, DONE.name());
   }
 
-  @Transactional
   @Override
-  public List<Command> findFirstCommandToCompensate() {
+  public List<Command> findNewCommands() {
 //    List<Command> commands = commandRepository.findFirstGroupByGlobalTxIdWithoutPendingOrderByIdDesc();
-    List<Command> commands = commandRepository.findCommandByStatus("NEW");
+    return commandRepository.findCommandByStatus(NEW.name());
+  }
 
-    commands.forEach(command -> {
-      try {
-        commandRepository.updateStatusByGlobalTxIdAndLocalTxId(
-                NEW.name(),
-                PENDING.name(),
-                command.globalTxId(),
-                command.localTxId());
-      } catch (Exception e) {
-        LOG.error("Failed to execute method 'updateStatusByGlobalTxIdAndLocalTxId' localTxId {}.", command.localTxId(), e);
+  @Override
+  public List<Command> claimNewCommands(int limit) {
+    if (commandClaimer != null) {
+      return commandClaimer.claim(limit);
+    }
+    List<Command> claimedCommands = new ArrayList<>();
+    for (Command command : findNewCommands()) {
+      if (claimedCommands.size() >= limit) {
+        break;
       }
-    });
-
-    return commands;
+      if (markCommandAsPending(command.globalTxId(), command.localTxId())) {
+        claimedCommands.add(command);
+      }
+    }
+    return claimedCommands;
   }
 }
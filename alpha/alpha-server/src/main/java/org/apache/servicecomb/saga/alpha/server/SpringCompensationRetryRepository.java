@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.servicecomb.saga.alpha.core.Command;
+import org.apache.servicecomb.saga.alpha.core.CompensationRetry;
+import org.apache.servicecomb.saga.alpha.core.CompensationRetryRepository;
+
+public class SpringCompensationRetryRepository implements CompensationRetryRepository {
+  private final CompensationRetryEntityRepository retryRepo;
+  private final CommandEntityRepository commandRepo;
+
+  SpringCompensationRetryRepository(CompensationRetryEntityRepository retryRepo, CommandEntityRepository commandRepo) {
+    this.retryRepo = retryRepo;
+    this.commandRepo = commandRepo;
+  }
+
+  @Override
+  public CompensationRetry find(String globalTxId, String localTxId) {
+    List<CompensationRetry> retries = retryRepo.findByGlobalTxIdAndLocalTxId(globalTxId, localTxId);
+    return retries.isEmpty() ? null : retries.get(0);
+  }
+
+  @Override
+  public void save(CompensationRetry retry) {
+    int updated = retryRepo.updateAttemptsByGlobalTxIdAndLocalTxId(retry.attempts(), retry.nextAttemptTime(), retry.lastError(),
+        retry.globalTxId(), retry.localTxId());
+    if (updated == 0) {
+      retryRepo.save(retry);
+    }
+  }
+
+  @Override
+  public void delete(String globalTxId, String localTxId) {
+    retryRepo.deleteByGlobalTxIdAndLocalTxId(globalTxId, localTxId);
+  }
+
+  @Override
+  public List<CompensationRetry> findOverdue(Date before) {
+    return retryRepo.findByNextAttemptTimeBefore(before);
+  }
+
+  @Override
+  public boolean claimOverdue(String globalTxId, String localTxId, Date before, Date nextAttemptTime) {
+    return retryRepo.updateOverdueNextAttemptTimeByGlobalTxIdAndLocalTxId(nextAttemptTime, globalTxId, localTxId, before) > 0;
+  }
+
+  @Override
+  public Command findCommand(String globalTxId, String localTxId) {
+    List<Command> commands = commandRepo.findByGlobalTxIdAndLocalTxIdWithPayloads(globalTxId, localTxId);
+    return commands.isEmpty() ? null : commands.get(0);
+  }
+}
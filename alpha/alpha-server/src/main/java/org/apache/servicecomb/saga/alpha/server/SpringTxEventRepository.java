@@ -22,15 +22,25 @@ package org.apache.servicecomb.saga.alpha.server;
 import org.apache.servicecomb.saga.alpha.core.AdditionalEventType;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
 import org.apache.servicecomb.saga.alpha.core.TxEventRepository;
+import org.apache.servicecomb.saga.alpha.core.TxTimeoutWheel;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.DataDictionaryItem;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.IDataDictionaryService;
 import org.apache.servicecomb.saga.alpha.core.listener.GlobalTxListener;
+import org.apache.servicecomb.saga.alpha.core.txstate.GlobalTxState;
+import org.apache.servicecomb.saga.alpha.core.txstate.GlobalTxStateTable;
+import org.apache.servicecomb.saga.alpha.core.txstate.UnendedTxWatermark;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.sql.DataSource;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -41,23 +51,129 @@ class SpringTxEventRepository implements TxEventRepository {
 
   private final TxEventEnvelopeRepository eventRepo;
 
+  // it's null if there is no data source, then the dedupe keys are not saved.
+  private TxEventInserter inserter;
+  // it's null if the group commit is disabled.
+  private TxEventGroupCommitWriter groupCommitWriter;
+  // it's null if there is no data source, then the low watermark of unended events is not persisted.
+  private TxEventWatermarkStore watermarkStore;
+
   @Autowired
   private IDataDictionaryService dataDictionaryService;
 
   @Autowired
   private GlobalTxListener globalTxListener;
 
+  // the decisions about the active global transactions which are owned by current node are answered from memory, see GlobalTxStateTable.
+  @Autowired(required = false)
+  private GlobalTxStateTable globalTxStateTable;
+
+  @Autowired(required = false)
+  private TxStateForwarder txStateForwarder;
+
+  @Autowired(required = false)
+  private TxTimeoutWheel txTimeoutWheel;
+
+  @Autowired(required = false)
+  private UnendedTxWatermark unendedTxWatermark;
+
   SpringTxEventRepository(TxEventEnvelopeRepository eventRepo) {
     this.eventRepo = eventRepo;
   }
 
+  /**
+   * @param groupCommitMaxBatchSize the group commit is disabled if it's not positive
+   */
+  SpringTxEventRepository(TxEventEnvelopeRepository eventRepo, DataSource dataSource, int groupCommitMaxBatchSize) {
+    this.eventRepo = eventRepo;
+    this.inserter = new TxEventInserter(dataSource);
+    this.watermarkStore = new TxEventWatermarkStore(dataSource);
+    if (groupCommitMaxBatchSize > 0) {
+      this.groupCommitWriter = new TxEventGroupCommitWriter(inserter, groupCommitMaxBatchSize, this::saveByJpa);
+    }
+  }
+
+  void shutdown() {
+    if (groupCommitWriter != null) {
+      groupCommitWriter.shutdown();
+    }
+  }
+
   @Override
   public void save(TxEvent event) {
+    // The event has to be written by the current transaction if there is, so it would not be written by group commit.
+    if (groupCommitWriter != null && !TransactionSynchronizationManager.isActualTransactionActive()) {
+      groupCommitWriter.write(event);
+      afterSaving(event);
+      return;
+    }
+    // the dedupe key is not mapped by JPA.
+    if (event.dedupeKey() != null && inserter != null) {
+      inserter.insertOne(event);
+      afterSaving(event);
+      return;
+    }
+    if (saveByJpa(event)) {
+      afterSaving(event);
+    }
+  }
+
+  @Override
+  public boolean saveUnlessDuplicate(TxEvent event) {
+    try {
+      save(event);
+      return true;
+    } catch (RuntimeException e) {
+      // the dedupe key is the only unique column which is set by the caller.
+      if (event.dedupeKey() != null && isIntegrityViolation(e)) {
+        LOG.debug("Ignored the duplicate TxEvent, dedupeKey = [{}].", event.dedupeKey());
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private static boolean isIntegrityViolation(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof DataIntegrityViolationException || cause instanceof SQLIntegrityConstraintViolationException) {
+        return true;
+      }
+      // the SQL states of class '23' are the integrity constraint violations, some drivers don't throw the specific exception, e.g. PostgreSQL.
+      if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null && ((SQLException) cause).getSQLState().startsWith("23")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void afterSaving(TxEvent event) {
+    if (globalTxStateTable != null) {
+      globalTxStateTable.apply(event);
+    }
+    if (txStateForwarder != null) {
+      txStateForwarder.forward(event);
+    }
+    if (txTimeoutWheel != null) {
+      txTimeoutWheel.onEventPersisted(event);
+    }
+    if (unendedTxWatermark != null) {
+      unendedTxWatermark.apply(event);
+    }
+    globalTxListener.listenEvent(event);
+  }
+
+  // it's null if the global transaction is not owned by current node, or it's not active.
+  private GlobalTxState txState(String globalTxId) {
+    return globalTxStateTable == null ? null : globalTxStateTable.get(globalTxId);
+  }
+
+  private boolean saveByJpa(TxEvent event) {
     TxEvent saveEvent = eventRepo.save(event);
     if (saveEvent != null) {
       event.setSurrogateId(saveEvent.id());
-      globalTxListener.listenEvent(event);
+      return true;
     }
+    return false;
   }
 
   @Override
@@ -66,8 +182,20 @@ class SpringTxEventRepository implements TxEventRepository {
     return eventRepo.findTimeoutEvents(unendedMinEventId, new Date());
   }
 
+  @Override
+  public List<TxEvent> findTimeoutEvents(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    if (partitionCount < 1) {
+      return findTimeoutEvents(unendedMinEventId);
+    }
+    return partitions.isEmpty() ? Collections.emptyList() : eventRepo.findTimeoutEventsOfPartitions(unendedMinEventId, new Date(), partitionCount, partitions);
+  }
+
   @Override
   public TxEvent findTimeoutEventsBeforeEnding(String globalTxId) {
+    GlobalTxState state = txState(globalTxId);
+    if (state != null) {
+      return state.findTimeoutEventBeforeEnding(new Date());
+    }
     return eventRepo.findTimeoutEventsBeforeEnding(globalTxId, new Date());
   }
 
@@ -81,13 +209,35 @@ class SpringTxEventRepository implements TxEventRepository {
     return eventRepo.findSequentialCompensableEventOfUnended(unendedMinEventId);
   }
 
+  @Override
+  public List<TxEvent> findSequentialCompensableEventOfUnended(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    if (partitionCount < 1) {
+      return findSequentialCompensableEventOfUnended(unendedMinEventId);
+    }
+    return partitions.isEmpty() ? Collections.emptyList()
+        : eventRepo.findSequentialCompensableEventOfUnendedOfPartitions(unendedMinEventId, partitionCount, partitions);
+  }
+
   @Override
   public List<String> selectAllTypeByGlobalTxId(String globalTxId) {
+    GlobalTxState state = txState(globalTxId);
+    if (state != null) {
+      return state.allTypes();
+    }
+    return eventRepo.selectAllTypeByGlobalTxId(globalTxId);
+  }
+
+  @Override
+  public List<String> selectPersistedTypesByGlobalTxId(String globalTxId) {
     return eventRepo.selectAllTypeByGlobalTxId(globalTxId);
   }
 
   @Override
 	public List<TxEvent> selectPausedAndContinueEvent(String globalTxId) {
+		GlobalTxState state = txState(globalTxId);
+		if (state != null) {
+			return state.pausedAndContinueEvents();
+		}
 		return eventRepo.selectPausedAndContinueEvent(globalTxId);
 	}
 
@@ -98,14 +248,32 @@ class SpringTxEventRepository implements TxEventRepository {
 
   @Override
   public boolean checkIsExistsEventType(String globalTxId, String localTxId, String type) {
+    GlobalTxState state = txState(globalTxId);
+    if (state != null) {
+      return state.containsEventType(localTxId, type);
+    }
+    return eventRepo.checkIsExistsEventType(globalTxId, localTxId, type) > 0;
+  }
+
+  @Override
+  public boolean checkPersistedEventType(String globalTxId, String localTxId, String type) {
     return eventRepo.checkIsExistsEventType(globalTxId, localTxId, type) > 0;
   }
 
   @Override
   public boolean checkTxIsAborted(String globalTxId, String localTxId) {
+    GlobalTxState state = txState(globalTxId);
+    if (state != null) {
+      return state.hasStartedWithoutRetries(localTxId);
+    }
     return eventRepo.checkTxIsAborted(globalTxId, localTxId) > 0;
   }
 
+  @Override
+  public boolean checkGlobalTxIsAborted(String globalTxId) {
+    return eventRepo.checkGlobalTxIsAborted(globalTxId) > 0;
+  }
+
   @Override
   public List<Map<String, Object>> findTxList(int pageIndex, int pageSize, String orderName, String direction, String searchText) {
     // 确定本次分页查询的全局事务
@@ -197,11 +365,44 @@ class SpringTxEventRepository implements TxEventRepository {
     return eventRepo.selectUnendedTxEvents(unendedMinEventId);
   }
 
+  @Override
+  public List<TxEvent> selectUnendedTxEvents(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    if (partitionCount < 1) {
+      return selectUnendedTxEvents(unendedMinEventId);
+    }
+    return partitions.isEmpty() ? Collections.emptyList() : eventRepo.selectUnendedTxEventsOfPartitions(unendedMinEventId, partitionCount, partitions);
+  }
+
   @Override
   public long selectMinUnendedTxEventId(long unendedMinEventId) {
     return eventRepo.selectMinUnendedTxEventId(unendedMinEventId);
   }
 
+  @Override
+  public long selectMinUnendedTxEventId(long unendedMinEventId, int partitionCount, Set<Integer> partitions) {
+    if (partitionCount < 1 || partitions.isEmpty()) {
+      return selectMinUnendedTxEventId(unendedMinEventId);
+    }
+    return eventRepo.selectMinUnendedTxEventIdOfPartitions(unendedMinEventId, partitionCount, partitions);
+  }
+
+  @Override
+  public long selectMaxTxEventId() {
+    return eventRepo.selectMaxTxEventId();
+  }
+
+  @Override
+  public long selectUnendedTxWatermark() {
+    return watermarkStore == null ? 0 : watermarkStore.select(TxEventWatermarkStore.UNENDED_EVENT_WATERMARK);
+  }
+
+  @Override
+  public void saveUnendedTxWatermark(long unendedMinEventId) {
+    if (watermarkStore != null) {
+      watermarkStore.save(TxEventWatermarkStore.UNENDED_EVENT_WATERMARK, unendedMinEventId);
+    }
+  }
+
   @Override
   public Date selectMinDateInTxEvent() {
     return eventRepo.selectMinDateInTxEvent();
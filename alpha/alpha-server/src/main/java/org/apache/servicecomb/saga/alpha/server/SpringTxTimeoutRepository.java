@@ -22,8 +22,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.transaction.Transactional;
 import java.lang.invoke.MethodHandles;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.servicecomb.saga.alpha.core.TaskStatus.PENDING;
 
@@ -60,6 +62,14 @@ public class SpringTxTimeoutRepository implements TxTimeoutRepository {
     return timeoutRepo.selectTimeoutIdList();
   }
 
+  @Override
+  public List<Long> selectTimeoutIdList(int partitionCount, Set<Integer> partitions) {
+    if (partitionCount < 1) {
+      return selectTimeoutIdList();
+    }
+    return partitions.isEmpty() ? Collections.emptyList() : timeoutRepo.selectTimeoutIdListOfPartitions(partitionCount, partitions);
+  }
+
   @Transactional
   @Override
   public List<TxTimeout> findFirstTimeout() {
@@ -69,4 +79,19 @@ public class SpringTxTimeoutRepository implements TxTimeoutRepository {
         .updateStatusByGlobalTxIdAndLocalTxId(PENDING.name(), event.globalTxId(), event.localTxId()));
     return timeoutEvents;
   }
+
+  @Transactional
+  @Override
+  public List<TxTimeout> findFirstTimeout(int partitionCount, Set<Integer> partitions) {
+    if (partitionCount < 1) {
+      return findFirstTimeout();
+    }
+    if (partitions.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<TxTimeout> timeoutEvents = timeoutRepo.findFirstTimeoutTxOfPartitions(new Date(), partitionCount, partitions);
+    timeoutEvents.forEach(event -> timeoutRepo
+        .updateStatusByGlobalTxIdAndLocalTxId(PENDING.name(), event.globalTxId(), event.localTxId()));
+    return timeoutEvents;
+  }
 }
\ No newline at end of file
@@ -17,10 +17,13 @@ package org.apache.servicecomb.saga.alpha.server;
 
 import org.apache.servicecomb.saga.alpha.core.EventScanner;
 import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -35,6 +38,13 @@ interface TxEventEnvelopeRepository extends CrudRepository<TxEvent, Long> {
           " AND NOT EXISTS (SELECT 1 FROM TxEvent t2 WHERE t2.globalTxId = t.globalTxId AND t2.type = 'TxAbortedEvent')" + EventScanner.SCANNER_SQL, nativeQuery = true)
   List<TxEvent> findTimeoutEvents(long unendedMinEventId, Date currentDateTime);
 
+  @Query(value = "SELECT * FROM TxEvent t WHERE t.surrogateId > :unendedMinEventId AND t.type IN ('TxStartedEvent', 'SagaStartedEvent') AND t.expiryTime < :currentDateTime" +
+          " AND NOT EXISTS (SELECT 1 FROM TxEvent t1 WHERE t1.globalTxId = t.globalTxId AND t1.localTxId = t.localTxId AND t1.type != t.type)" +
+          " AND NOT EXISTS (SELECT 1 FROM TxEvent t2 WHERE t2.globalTxId = t.globalTxId AND t2.type = 'TxAbortedEvent')" +
+          PartitionLeaseManager.PARTITION_SQL + EventScanner.SCANNER_SQL, nativeQuery = true)
+  List<TxEvent> findTimeoutEventsOfPartitions(@Param("unendedMinEventId") long unendedMinEventId, @Param("currentDateTime") Date currentDateTime,
+      @Param("partitionCount") int partitionCount, @Param("partitions") Collection<Integer> partitions);
+
   // 查询某未结束的全局事务中的超时未处理的记录，如果全局事务和子事务都设置了超时，则优先获取子事务的(其实哪个都可以)
   @Query(value = "SELECT * FROM TxEvent t WHERE t.globalTxId = ?1 AND t.type IN ('TxStartedEvent', 'SagaStartedEvent') AND t.expiryTime < ?2" +
           " AND NOT EXISTS (SELECT 1 FROM TxEvent WHERE globalTxId = ?1 AND type = 'TxAbortedEvent')" +
@@ -84,6 +94,11 @@ interface TxEventEnvelopeRepository extends CrudRepository<TxEvent, Long> {
   @Query(value = "SELECT * FROM TxEvent t WHERE t.surrogateId > ?1 AND t.globalTxId NOT IN (SELECT t1.globalTxId FROM TxEvent t1 WHERE t1.type = 'SagaEndedEvent') AND t.type = 'TxCompensatedEvent' ORDER BY surrogateId" + EventScanner.SCANNER_SQL, nativeQuery = true)
   List<TxEvent> findSequentialCompensableEventOfUnended(long unendedMinEventId);
 
+  @Query(value = "SELECT * FROM TxEvent t WHERE t.surrogateId > :unendedMinEventId AND t.globalTxId NOT IN (SELECT t1.globalTxId FROM TxEvent t1 WHERE t1.type = 'SagaEndedEvent') AND t.type = 'TxCompensatedEvent'" +
+          PartitionLeaseManager.PARTITION_SQL + " ORDER BY surrogateId" + EventScanner.SCANNER_SQL, nativeQuery = true)
+  List<TxEvent> findSequentialCompensableEventOfUnendedOfPartitions(@Param("unendedMinEventId") long unendedMinEventId,
+      @Param("partitionCount") int partitionCount, @Param("partitions") Collection<Integer> partitions);
+
   @Query("SELECT T.type FROM TxEvent T WHERE T.globalTxId = ?1")
   List<String> selectAllTypeByGlobalTxId(String globalTxId);
 
@@ -99,6 +114,10 @@ interface TxEventEnvelopeRepository extends CrudRepository<TxEvent, Long> {
   @Query(value = "SELECT * FROM (SELECT count(1) FROM TxEvent T WHERE T.globalTxId = ?1 AND T.localTxId = ?2 AND T.type = 'TxStartedEvent' AND T.retries = 0) T1", nativeQuery = true)
   long checkTxIsAborted(String globalTxId, String localTxId);
 
+  @Query(value = "SELECT * FROM (SELECT count(1) FROM TxEvent A WHERE A.globalTxId = ?1 AND A.type = 'TxAbortedEvent' AND (A.localTxId = ?1 OR EXISTS"
+      + " (SELECT 1 FROM TxEvent S WHERE S.globalTxId = ?1 AND S.localTxId = A.localTxId AND S.type = 'TxStartedEvent' AND S.retries = 0))) T1", nativeQuery = true)
+  long checkGlobalTxIsAborted(String globalTxId);
+
   @Query("SELECT new org.apache.servicecomb.saga.alpha.core.TxEvent(T.surrogateId, T.globalTxId, T.serviceName, T.instanceId, T.category, T.expiryTime, T.retries, T.creationTime)" +
           " FROM TxEvent T WHERE T.type = 'SagaStartedEvent'")
   List<TxEvent> findTxList(Pageable pageable);
@@ -124,9 +143,24 @@ interface TxEventEnvelopeRepository extends CrudRepository<TxEvent, Long> {
   @Query("FROM TxEvent t WHERE t.surrogateId > ?1 AND t.globalTxId NOT IN (SELECT t1.globalTxId FROM TxEvent t1 WHERE t1.type = 'SagaEndedEvent')")
   List<TxEvent> selectUnendedTxEvents(long unendedMinEventId);
 
+  @Query(value = "SELECT * FROM TxEvent t WHERE t.surrogateId > :unendedMinEventId AND t.globalTxId NOT IN"
+          + " (SELECT t1.globalTxId FROM TxEvent t1 WHERE t1.surrogateId > :unendedMinEventId AND t1.type = 'SagaEndedEvent')"
+          + PartitionLeaseManager.PARTITION_SQL, nativeQuery = true)
+  List<TxEvent> selectUnendedTxEventsOfPartitions(@Param("unendedMinEventId") long unendedMinEventId,
+      @Param("partitionCount") int partitionCount, @Param("partitions") Collection<Integer> partitions);
+
   @Query("SELECT coalesce(min(t.surrogateId), 0) FROM TxEvent t WHERE t.surrogateId > ?1 AND t.globalTxId NOT IN (SELECT t1.globalTxId FROM TxEvent t1 WHERE t1.surrogateId > ?1 AND t1.type = 'SagaEndedEvent')")
   long selectMinUnendedTxEventId(long unendedMinEventId);
 
+  @Query(value = "SELECT COALESCE(MIN(t.surrogateId), 0) FROM TxEvent t WHERE t.surrogateId > :unendedMinEventId AND t.globalTxId NOT IN"
+          + " (SELECT t1.globalTxId FROM TxEvent t1 WHERE t1.surrogateId > :unendedMinEventId AND t1.type = 'SagaEndedEvent')"
+          + PartitionLeaseManager.PARTITION_SQL, nativeQuery = true)
+  long selectMinUnendedTxEventIdOfPartitions(@Param("unendedMinEventId") long unendedMinEventId,
+      @Param("partitionCount") int partitionCount, @Param("partitions") Collection<Integer> partitions);
+
+  @Query("SELECT coalesce(max(t.surrogateId), 0) FROM TxEvent t")
+  long selectMaxTxEventId();
+
   @Query(value = "SELECT min(creationTime) FROM TxEvent", nativeQuery = true)
   Date selectMinDateInTxEvent();
 
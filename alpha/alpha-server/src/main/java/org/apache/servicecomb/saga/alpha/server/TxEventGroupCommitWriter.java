@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Group commit for TxEvents.
+ * Concurrent callers enqueue their events and wait, one flusher thread drains all of the queued events and writes them
+ * by one JDBC batch in one transaction, then every caller is released after the commit of its batch.
+ * The ids are taken from the generated keys of the batch, so it's not necessary to fetch the identity row by row.
+ * If the driver does not return a key for every row, or the batch is rejected, e.g. by a duplicate dedupe key,
+ * the batch is rolled back and written one by one by the fallback writer, so only the rejected event fails.
+ * The idempotent events are written one by one by JDBC instead, since their dedupe keys are not mapped by JPA.
+ * On shutdown, the queued events are still flushed, and the events written after that are written one by one by their callers.
+ */
+class TxEventGroupCommitWriter {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+  private final TxEventInserter inserter;
+  private final int maxBatchSize;
+  private final Consumer<TxEvent> fallbackWriter;
+  private final BlockingQueue<PendingEvent> pendingEvents = new LinkedBlockingQueue<>();
+  // it's queued by shutdown, the flusher exits after the events before it are flushed.
+  private final PendingEvent shutdownSignal = new PendingEvent(null);
+  private final Thread flusher;
+  private volatile boolean shutdown;
+
+  TxEventGroupCommitWriter(TxEventInserter inserter, int maxBatchSize, Consumer<TxEvent> fallbackWriter) {
+    this.inserter = inserter;
+    this.maxBatchSize = maxBatchSize;
+    this.fallbackWriter = fallbackWriter;
+
+    flusher = new Thread(this::flushLoop, "txle-event-group-commit");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * To write the event and block until its batch is committed. The surrogateId of the event is set before returning.
+   */
+  void write(TxEvent event) {
+    PendingEvent pendingEvent = new PendingEvent(event);
+    if (shutdown) {
+      writeOne(pendingEvent);
+    } else {
+      pendingEvents.offer(pendingEvent);
+      // the flusher may have exited before the event was queued, then nobody else would take it.
+      if (shutdown && pendingEvents.remove(pendingEvent)) {
+        writeOne(pendingEvent);
+      }
+    }
+    try {
+      pendingEvent.committed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the commit of TxEvent " + event.localTxId(), e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to save TxEvent " + event.localTxId(), e.getCause());
+    }
+  }
+
+  /**
+   * To flush the queued events and stop the flusher, waiting for it at most the timeout.
+   */
+  void shutdown() {
+    if (shutdown) {
+      return;
+    }
+    shutdown = true;
+    pendingEvents.offer(shutdownSignal);
+    try {
+      flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (flusher.isAlive()) {
+      LOG.warn("The TxEvents were not flushed in [{}] ms on shutdown, size = [{}].", SHUTDOWN_TIMEOUT_MILLIS, pendingEvents.size());
+    }
+  }
+
+  int pendingCount() {
+    return pendingEvents.size();
+  }
+
+  private void flushLoop() {
+    List<PendingEvent> batch = new ArrayList<>(maxBatchSize);
+    boolean signaled = false;
+    while (!signaled && !Thread.currentThread().isInterrupted()) {
+      try {
+        // the first one blocks, the others are the events which arrived during the last flush.
+        batch.add(pendingEvents.take());
+        pendingEvents.drainTo(batch, maxBatchSize - 1);
+        signaled = batch.remove(shutdownSignal);
+        if (signaled) {
+          // the events which were queued together with the signal.
+          pendingEvents.drainTo(batch);
+        }
+        if (!batch.isEmpty()) {
+          flush(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable e) {
+        LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to flush TxEvents, size = [{}].", batch.size(), e);
+        batch.forEach(pendingEvent -> pendingEvent.committed.completeExceptionally(e));
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(List<PendingEvent> batch) {
+    boolean inserted;
+    try {
+      inserted = inserter.insert(batch.stream().map(pendingEvent -> pendingEvent.event).collect(Collectors.toList()));
+    } catch (IllegalStateException e) {
+      LOG.warn("Failed to insert [{}] TxEvents by batch, falling back to write them one by one, cause: {}.", batch.size(), e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+      inserted = false;
+    }
+    if (!inserted) {
+      batch.forEach(this::writeOne);
+      return;
+    }
+    batch.forEach(pendingEvent -> pendingEvent.committed.complete(null));
+  }
+
+  private void writeOne(PendingEvent pendingEvent) {
+    try {
+      // the dedupe key is not mapped by JPA, so the idempotent events are inserted by JDBC for the database to reject the duplicates.
+      if (pendingEvent.event.dedupeKey() != null) {
+        inserter.insertOne(pendingEvent.event);
+      } else {
+        fallbackWriter.accept(pendingEvent.event);
+      }
+      pendingEvent.committed.complete(null);
+    } catch (Exception e) {
+      pendingEvent.committed.completeExceptionally(e);
+    }
+  }
+
+  private static class PendingEvent {
+    private final TxEvent event;
+    private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+    PendingEvent(TxEvent event) {
+      this.event = event;
+    }
+  }
+}
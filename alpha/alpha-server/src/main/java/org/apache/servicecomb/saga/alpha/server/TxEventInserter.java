@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inserts TxEvents by JDBC, including the dedupe key which is not mapped by JPA.
+ * The dedupeKey column is added by 'migrate-mysql-dedupe-key.sql' or 'migrate-postgresql-dedupe-key.sql' to the TxEvent table created before it.
+ * If the column is missing, the events are inserted without their dedupe keys, so the hedged copies of an event may be saved twice until the table is migrated and alpha is restarted.
+ */
+class TxEventInserter {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String INSERT_SQL = "INSERT INTO TxEvent (serviceName, instanceId, creationTime, globalTxId, localTxId, parentTxId, type,"
+      + " compensationMethod, expiryTime, retryMethod, retries, category, payloads, dedupeKey) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String INSERT_WITHOUT_DEDUPE_KEY_SQL = "INSERT INTO TxEvent (serviceName, instanceId, creationTime, globalTxId, localTxId,"
+      + " parentTxId, type, compensationMethod, expiryTime, retryMethod, retries, category, payloads) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private final DataSource dataSource;
+  // it's unknown until the first event is inserted.
+  private volatile Boolean dedupeKeySupported;
+
+  TxEventInserter(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  boolean isDedupeKeySupported() {
+    return !Boolean.FALSE.equals(dedupeKeySupported);
+  }
+
+  /**
+   * To insert the events by one JDBC batch in a new transaction. The surrogateIds of the events are set if it's successful.
+   *
+   * @return false if the driver does not return a key for every row, in this case nothing is persisted
+   * @throws IllegalStateException if the batch is rejected, e.g. by a duplicate dedupe key, in this case nothing is persisted
+   */
+  boolean insert(List<TxEvent> events) {
+    try (Connection connection = dataSource.getConnection()) {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        List<Long> ids = insert(connection, events);
+        if (ids.size() != events.size()) {
+          connection.rollback();
+          LOG.warn("The driver returned [{}] generated keys for [{}] TxEvents.", ids.size(), events.size());
+          return false;
+        }
+        connection.commit();
+        for (int i = 0; i < events.size(); i++) {
+          events.get(i).setSurrogateId(ids.get(i));
+        }
+        return true;
+      } catch (SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Failed to insert TxEvents by batch.", e);
+    }
+  }
+
+  /**
+   * To insert the event by the connection of the current transaction if there is, so it's committed or rolled back together with the transaction.
+   */
+  void insertOne(TxEvent event) {
+    Connection connection = DataSourceUtils.getConnection(dataSource);
+    try {
+      List<Long> ids = insert(connection, Collections.singletonList(event));
+      if (ids.isEmpty()) {
+        throw new IllegalStateException("The driver returned no generated key for TxEvent " + event.localTxId());
+      }
+      event.setSurrogateId(ids.get(0));
+    } catch (SQLException e) {
+      throw new IllegalStateException("Failed to insert TxEvent " + event.localTxId(), e);
+    } finally {
+      DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+  }
+
+  private List<Long> insert(Connection connection, List<TxEvent> events) throws SQLException {
+    Boolean supported = dedupeKeySupported;
+    if (supported == null) {
+      return probeDedupeKey(connection, events);
+    }
+    return executeBatch(connection, events, supported);
+  }
+
+  // a failed statement aborts the whole transaction of some databases, e.g. PostgreSQL, so the first try is isolated by a savepoint.
+  private List<Long> probeDedupeKey(Connection connection, List<TxEvent> events) throws SQLException {
+    Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+    try {
+      List<Long> ids = executeBatch(connection, events, true);
+      dedupeKeySupported = true;
+      return ids;
+    } catch (SQLException e) {
+      // the SQL states of class '42' are the syntax errors, such as the unknown dedupeKey column of an old table.
+      if (e.getSQLState() == null || !e.getSQLState().startsWith("42")) {
+        throw e;
+      }
+      if (savepoint != null) {
+        connection.rollback(savepoint);
+      }
+      dedupeKeySupported = false;
+      LOG.warn("The TxEvent table has no dedupeKey column, the events are saved without dedupe keys until it's migrated and alpha is restarted, cause: {}.", e.getMessage());
+    } finally {
+      if (savepoint != null && Boolean.TRUE.equals(dedupeKeySupported)) {
+        connection.releaseSavepoint(savepoint);
+      }
+    }
+    return executeBatch(connection, events, false);
+  }
+
+  private List<Long> executeBatch(Connection connection, List<TxEvent> events, boolean withDedupeKey) throws SQLException {
+    String sql = withDedupeKey ? INSERT_SQL : INSERT_WITHOUT_DEDUPE_KEY_SQL;
+    try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+      for (TxEvent event : events) {
+        bind(statement, event, withDedupeKey);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+
+      List<Long> ids = new ArrayList<>(events.size());
+      try (ResultSet keys = statement.getGeneratedKeys()) {
+        while (keys.next()) {
+          ids.add(keys.getLong(1));
+        }
+      }
+      return ids;
+    }
+  }
+
+  private void bind(PreparedStatement statement, TxEvent event, boolean withDedupeKey) throws SQLException {
+    statement.setString(1, event.serviceName());
+    statement.setString(2, event.instanceId());
+    statement.setTimestamp(3, new Timestamp(event.creationTime().getTime()));
+    statement.setString(4, event.globalTxId());
+    statement.setString(5, event.localTxId());
+    statement.setString(6, event.parentTxId());
+    statement.setString(7, event.type());
+    statement.setString(8, event.compensationMethod());
+    statement.setTimestamp(9, new Timestamp(event.expiryTime().getTime()));
+    statement.setString(10, event.retryMethod());
+    statement.setInt(11, event.retries());
+    statement.setString(12, event.category());
+    if (event.payloads() == null) {
+      statement.setNull(13, Types.VARBINARY);
+    } else {
+      statement.setBytes(13, event.payloads());
+    }
+    if (withDedupeKey) {
+      statement.setString(14, event.dedupeKey());
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Persists the low watermark of unended events in the TxEventWatermark table, so that the reconciliation after restarting does not query the whole TxEvent table.
+ * A watermark stays valid once it was valid, because the events persisted later have greater ids, so any node may overwrite it with its latest one.
+ * The table is created by 'schema-mysql.sql' or 'schema-postgresql.sql' on startup. If it's missing, nothing is persisted and the reconciliation starts from the first event.
+ */
+class TxEventWatermarkStore {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final String UNENDED_EVENT_WATERMARK = "unendedEvent";
+
+  private static final String SELECT_SQL = "SELECT eventId FROM TxEventWatermark WHERE name = ?";
+  private static final String UPDATE_SQL = "UPDATE TxEventWatermark SET eventId = ?, updateTime = ? WHERE name = ?";
+  private static final String INSERT_SQL = "INSERT INTO TxEventWatermark (name, eventId, updateTime) VALUES (?, ?, ?)";
+
+  private final DataSource dataSource;
+  private volatile boolean supported = true;
+
+  TxEventWatermarkStore(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * @return the persisted watermark, or 0 if there is no one
+   */
+  long select(String name) {
+    if (!supported) {
+      return 0;
+    }
+    try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+      statement.setString(1, name);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() ? resultSet.getLong(1) : 0;
+      }
+    } catch (SQLException e) {
+      return unsupported(e);
+    }
+  }
+
+  void save(String name, long eventId) {
+    if (!supported || eventId <= 0) {
+      return;
+    }
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    try (Connection connection = dataSource.getConnection()) {
+      int updated;
+      try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+        statement.setLong(1, eventId);
+        statement.setTimestamp(2, now);
+        statement.setString(3, name);
+        updated = statement.executeUpdate();
+      }
+      if (updated == 0) {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+          statement.setString(1, name);
+          statement.setLong(2, eventId);
+          statement.setTimestamp(3, now);
+          statement.executeUpdate();
+        }
+      }
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+    } catch (SQLException e) {
+      // the SQL states of class '23' are the integrity constraint violations, another node inserted the row at the same time.
+      if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+        unsupported(e);
+      }
+    }
+  }
+
+  boolean isSupported() {
+    return supported;
+  }
+
+  private long unsupported(SQLException e) {
+    // the SQL states of class '42' are the syntax errors, such as the unknown TxEventWatermark table of an old database.
+    if (e.getSQLState() != null && e.getSQLState().startsWith("42")) {
+      supported = false;
+      LOG.warn("The TxEventWatermark table is missing, the low watermark of unended events is not persisted until alpha is restarted, cause: {}.", e.getMessage());
+    } else {
+      LOG.error("Failed to access the TxEventWatermark table.", e);
+    }
+    return 0;
+  }
+}
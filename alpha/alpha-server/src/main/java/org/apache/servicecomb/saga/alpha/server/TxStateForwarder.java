@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
+import org.apache.servicecomb.saga.alpha.core.txstate.TxStateEvent;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Forwards the persisted events of the global transactions which are owned by other alpha nodes to their owners, see GlobalTxStateTable.
+ * It's done before the event is acknowledged, so the owner has applied it before the next event of the transaction arrives.
+ * If the owner can't be reached, the failure is logged and its state misses the event. It's usually because the owner is dead,
+ * then its partitions are acquired by the other nodes, which rebuild the states from the database.
+ */
+class TxStateForwarder {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  // it's null if the partitions are disabled, then no one owns the global transactions.
+  private final PartitionLeaseManager partitionLeaseManager;
+  private final RestTemplate restTemplate;
+
+  TxStateForwarder(PartitionLeaseManager partitionLeaseManager, int connectTimeout, int readTimeout) {
+    this.partitionLeaseManager = partitionLeaseManager;
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(connectTimeout);
+    requestFactory.setReadTimeout(readTimeout);
+    this.restTemplate = new RestTemplate(requestFactory);
+  }
+
+  TxStateForwarder(PartitionLeaseManager partitionLeaseManager, RestTemplate restTemplate) {
+    this.partitionLeaseManager = partitionLeaseManager;
+    this.restTemplate = restTemplate;
+  }
+
+  void forward(TxEvent event) {
+    if (partitionLeaseManager == null || partitionLeaseManager.owns(event.globalTxId())) {
+      return;
+    }
+    // the partition is free, its next owner will load the event from the database.
+    String owner = partitionLeaseManager.getOwnerAddress(event.globalTxId());
+    if (owner == null) {
+      return;
+    }
+    try {
+      restTemplate.postForObject("http://" + owner + "/applyTxState", TxStateEvent.of(event), Boolean.class);
+    } catch (Exception e) {
+      LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to forward TxEvent to the owner [{}] of its global transaction, globalTxId = [{}], type = [{}].",
+          owner, event.globalTxId(), event.type(), e);
+    }
+  }
+}
@@ -15,6 +15,7 @@
 
 package org.apache.servicecomb.saga.alpha.server;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -23,6 +24,7 @@ import javax.transaction.Transactional;
 
 import org.apache.servicecomb.saga.alpha.core.EventScanner;
 import org.apache.servicecomb.saga.alpha.core.TxTimeout;
+import org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
@@ -57,6 +59,14 @@ interface TxTimeoutEntityRepository extends CrudRepository<TxTimeout, Long> {
       + "ORDER BY t.expiryTime ASC" + EventScanner.SCANNER_SQL, nativeQuery = true)
   List<TxTimeout> findFirstTimeoutTxOrderByExpireTimeAsc(/*Pageable pageable, */Date currentDateTime);
 
+  @Lock(LockModeType.OPTIMISTIC)
+  @Query(value = "SELECT * FROM TxTimeout AS t "
+      + "WHERE t.status = 'NEW' "
+      + "  AND t.expiryTime < :currentDateTime" + PartitionLeaseManager.PARTITION_SQL
+      + " ORDER BY t.expiryTime ASC" + EventScanner.SCANNER_SQL, nativeQuery = true)
+  List<TxTimeout> findFirstTimeoutTxOfPartitions(@Param("currentDateTime") Date currentDateTime,
+      @Param("partitionCount") int partitionCount, @Param("partitions") Collection<Integer> partitions);
+
   @Transactional
   @Modifying(clearAutomatically = true)
   @Query("UPDATE TxTimeout t "
@@ -77,6 +87,10 @@ interface TxTimeoutEntityRepository extends CrudRepository<TxTimeout, Long> {
   @Query(value = "SELECT t.surrogateId FROM TxTimeout t, TxEvent t1 WHERE t.status != 'DONE' AND t1.globalTxId = t.globalTxId AND t1.localTxId = t.localTxId AND t1.type != t.type" + EventScanner.SCANNER_SQL, nativeQuery = true)
   List<Long> selectTimeoutIdList();
 
+  @Query(value = "SELECT t.surrogateId FROM TxTimeout t, TxEvent t1 WHERE t.status != 'DONE' AND t1.globalTxId = t.globalTxId AND t1.localTxId = t.localTxId AND t1.type != t.type"
+      + PartitionLeaseManager.PARTITION_SQL + EventScanner.SCANNER_SQL, nativeQuery = true)
+  List<Long> selectTimeoutIdListOfPartitions(@Param("partitionCount") int partitionCount, @Param("partitions") Collection<Integer> partitions);
+
   @Query(value = "SELECT * FROM (SELECT count(1) FROM TxTimeout t WHERE t.eventId = ?1) T1", nativeQuery = true)
   long findTxTimeoutByEventId(long eventId);
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server.cache;
+
+import org.apache.servicecomb.saga.alpha.core.cache.CacheMutation;
+import org.apache.servicecomb.saga.alpha.core.cache.CacheMutationBatch;
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Replicates the mutations of the distributed cache to the other alpha nodes.
+ * The mutations are applied locally by the caller at once, then they are numbered, recorded in a bounded log and sent by batch
+ * asynchronously, so the request path never waits for the other nodes.
+ * A receiver applies the batches of every origin in sequence. If some sequences are missing, it catches up from the log of the origin,
+ * and it falls back to the full synchronization only if the log has been truncated.
+ * The gaps are found by the later batches, so an idle origin sends its latest sequence as a heartbeat periodically,
+ * otherwise the loss of its last batch would never be found.
+ */
+class CacheReplicator {
+    private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    static final String ORIGIN_SEPARATOR = "#";
+
+    private final String origin;
+    private final RestTemplate restTemplate;
+    private final Supplier<Collection<String>> peers;
+    private final Consumer<CacheMutation> applier;
+    // to synchronize the whole cache from the given host and port
+    private final Consumer<String> fullSynchronizer;
+    private final int logCapacity;
+    private final int maxBatchSize;
+    private final long heartbeatInterval;
+
+    private long sequence;
+    private final Deque<CacheMutation> mutationLog = new ArrayDeque<>();
+    private final BlockingQueue<CacheMutation> pendingMutations = new LinkedBlockingQueue<>();
+    // origin -> the last sequence which has been applied
+    private final Map<String, Long> appliedSequences = new ConcurrentHashMap<>();
+    private final Map<String, Object> originLocks = new ConcurrentHashMap<>();
+    private final ExecutorService senderPool;
+    private final Thread sender;
+
+    CacheReplicator(String hostPort, RestTemplate restTemplate, Supplier<Collection<String>> peers, Consumer<CacheMutation> applier,
+                    Consumer<String> fullSynchronizer, int logCapacity, int maxBatchSize, long heartbeatInterval) {
+        // the starting time distinguishes the restarted node, whose sequence starts from 1 again.
+        this.origin = hostPort + ORIGIN_SEPARATOR + System.currentTimeMillis();
+        this.restTemplate = restTemplate;
+        this.peers = peers;
+        this.applier = applier;
+        this.fullSynchronizer = fullSynchronizer;
+        this.logCapacity = logCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.heartbeatInterval = heartbeatInterval;
+        this.senderPool = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "txle-cache-replication-peer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sender = new Thread(this::sendLoop, "txle-cache-replication");
+        this.sender.setDaemon(true);
+    }
+
+    void start() {
+        sender.start();
+    }
+
+    void shutdown() {
+        sender.interrupt();
+        senderPool.shutdownNow();
+    }
+
+    String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * To record the mutation which has been applied locally, and to send it to the other nodes later.
+     */
+    synchronized void replicate(String function, String key, String value, int expire) {
+        CacheMutation mutation = new CacheMutation(++sequence, function, key, value, expire);
+        mutationLog.addLast(mutation);
+        if (mutationLog.size() > logCapacity) {
+            mutationLog.removeFirst();
+        }
+        appliedSequences.put(origin, sequence);
+        pendingMutations.offer(mutation);
+    }
+
+    /**
+     * @return the mutations whose sequence is greater than 'sinceSequence', or a truncated batch if some of them have been dropped
+     */
+    synchronized CacheMutationBatch mutationsSince(long sinceSequence) {
+        CacheMutation first = mutationLog.peekFirst();
+        if (first != null && first.getSequence() > sinceSequence + 1) {
+            return CacheMutationBatch.truncated(origin);
+        }
+        List<CacheMutation> mutations = new ArrayList<>();
+        for (CacheMutation mutation : mutationLog) {
+            if (mutation.getSequence() > sinceSequence) {
+                mutations.add(mutation);
+            }
+        }
+        return new CacheMutationBatch(origin, mutations);
+    }
+
+    /**
+     * @return the heartbeat with the latest sequence, null if there is no mutation yet or some mutations are still waiting to be sent
+     */
+    synchronized CacheMutationBatch heartbeat() {
+        if (sequence == 0 || !pendingMutations.isEmpty()) {
+            return null;
+        }
+        return CacheMutationBatch.heartbeat(origin, sequence);
+    }
+
+    void receive(CacheMutationBatch batch) {
+        if (batch == null || batch.getOrigin() == null) {
+            return;
+        }
+        boolean isHeartbeat = batch.getMutations() == null || batch.getMutations().isEmpty();
+        if (isHeartbeat && batch.getToSequence() < 1) {
+            return;
+        }
+        // apply the batches of the same origin one by one.
+        synchronized (originLocks.computeIfAbsent(batch.getOrigin(), o -> new Object())) {
+            // the mutations of an unknown origin are applied from the current batch, the earlier ones were included by the full synchronization.
+            long lastSequence = appliedSequences.getOrDefault(batch.getOrigin(), 0L);
+            if (isHeartbeat) {
+                if (lastSequence > 0 && batch.getToSequence() > lastSequence) {
+                    appliedSequences.put(batch.getOrigin(), catchUp(batch.getOrigin(), lastSequence));
+                }
+                return;
+            }
+            if (lastSequence > 0 && batch.getFromSequence() > lastSequence + 1) {
+                lastSequence = catchUp(batch.getOrigin(), lastSequence);
+            }
+            appliedSequences.put(batch.getOrigin(), apply(batch, lastSequence));
+        }
+    }
+
+    Map<String, Long> getAppliedSequences() {
+        return new HashMap<>(appliedSequences);
+    }
+
+    /**
+     * To record the sequences of the full synchronized cache, the later mutations of those origins are applied incrementally.
+     */
+    void resetAppliedSequences(Map<String, ? extends Number> sequences) {
+        sequences.forEach((o, s) -> {
+            if (!origin.equals(o)) {
+                appliedSequences.merge(o, s.longValue(), Math::max);
+            }
+        });
+    }
+
+    private long catchUp(String batchOrigin, long lastSequence) {
+        String hostPort = batchOrigin.substring(0, batchOrigin.lastIndexOf(ORIGIN_SEPARATOR));
+        try {
+            CacheMutationBatch missing = restTemplate.getForObject("http://" + hostPort + "/fetchCacheMutations?since=" + lastSequence, CacheMutationBatch.class);
+            if (missing != null && !missing.isTruncated() && batchOrigin.equals(missing.getOrigin())) {
+                LOG.info("Caught up [{}] cache mutations from [{}].", missing.getMutations().size(), batchOrigin);
+                return apply(missing, lastSequence);
+            }
+        } catch (Exception e) {
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to catch up cache mutations from [{}] since [{}].", batchOrigin, lastSequence, e);
+        }
+        LOG.warn("The cache mutations of [{}] since [{}] are not available, synchronizing the whole cache.", batchOrigin, lastSequence);
+        fullSynchronizer.accept(hostPort);
+        return lastSequence;
+    }
+
+    private long apply(CacheMutationBatch batch, long lastSequence) {
+        long applied = lastSequence;
+        for (CacheMutation mutation : batch.getMutations()) {
+            if (mutation.getSequence() > applied) {
+                applier.accept(mutation);
+                applied = mutation.getSequence();
+            }
+        }
+        return applied;
+    }
+
+    private void sendLoop() {
+        List<CacheMutation> mutations = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // the first one blocks, the others are the mutations which arrived during the last sending.
+                CacheMutation first = pendingMutations.poll(heartbeatInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    CacheMutationBatch heartbeat = heartbeat();
+                    if (heartbeat != null) {
+                        send(heartbeat);
+                    }
+                    continue;
+                }
+                mutations.add(first);
+                pendingMutations.drainTo(mutations, maxBatchSize - 1);
+                send(new CacheMutationBatch(origin, new ArrayList<>(mutations)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // the receivers will catch up the lost batch from the log.
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to replicate cache mutations, size = [{}].", mutations.size(), e);
+            } finally {
+                mutations.clear();
+            }
+        }
+    }
+
+    // sent to all peers in parallel, but the next batch waits until this one is done so that every peer receives them in order.
+    private void send(CacheMutationBatch batch) throws InterruptedException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String peer : peers.get()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    restTemplate.postForObject("http://" + peer + "/replicateCache", batch, Boolean.class);
+                } catch (Exception e) {
+                    LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to replicate cache mutations to [{}], sequence [{}, {}].",
+                            peer, batch.getFromSequence(), batch.getToSequence(), e);
+                }
+            }, senderPool));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.warn("Timed out replicating cache mutations, sequence [{}, {}].", batch.getFromSequence(), batch.getToSequence());
+        }
+    }
+}
@@ -12,21 +12,29 @@ import com.ecwid.consul.v1.agent.model.Service;
 import com.ecwid.consul.v1.session.model.Session;
 import org.apache.servicecomb.saga.alpha.core.TxleConsulClient;
 import org.apache.servicecomb.saga.alpha.core.cache.CacheEntity;
+import org.apache.servicecomb.saga.alpha.core.cache.CacheMutationBatch;
+import org.apache.servicecomb.saga.alpha.core.cache.ExpiringStatusCache;
 import org.apache.servicecomb.saga.alpha.core.cache.ITxleCache;
+import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.apache.servicecomb.saga.common.CrossSystemInetAddress;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.apache.servicecomb.saga.common.TxleConstants.CONSUL_LEADER_KEY;
 import static org.apache.servicecomb.saga.common.TxleConstants.CONSUL_LEADER_KEY_VALUE;
@@ -38,11 +46,17 @@ import static org.apache.servicecomb.saga.common.TxleConstants.CONSUL_LEADER_KEY
 public class TxleCache implements ITxleCache {
     private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    private static final int MAX_TX_STATUS_CACHE_SIZE = 100000;
+
     private final ConcurrentHashMap<String, Boolean> configCache = new ConcurrentHashMap<>();
     // Store the identifies of global transaction when they have been suspended only. Do not use the 'configCache' variable so that free up memory for this variable in an even better fashion.
-    private final ConcurrentSkipListSet<CacheEntity> txSuspendStatusCache = new ConcurrentSkipListSet<>(Comparator.comparingLong(s -> s.getExpire()));
-    private final ConcurrentSkipListSet<CacheEntity> txAbortStatusCache = new ConcurrentSkipListSet<>(Comparator.comparingLong(s -> s.getExpire()));
-    private final Set<String> serviceList = new HashSet();
+    // Indexed by globalTxId and bucketed by expire time per minute, the same as the unit of the expire.
+    private final ExpiringStatusCache txSuspendStatusCache = new ExpiringStatusCache(TimeUnit.MINUTES.toMillis(1), MAX_TX_STATUS_CACHE_SIZE);
+    private final ExpiringStatusCache txAbortStatusCache = new ExpiringStatusCache(TimeUnit.MINUTES.toMillis(1), MAX_TX_STATUS_CACHE_SIZE);
+    private final Set<String> serviceList = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> configChangeListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<String>> txResumeListeners = new CopyOnWriteArrayList<>();
+    private CacheReplicator cacheReplicator;
 
     @Autowired
     private TxleConsulClient txleConsulClient;
@@ -53,41 +67,60 @@ public class TxleCache implements ITxleCache {
     @Value("${server.port:8090}")
     private int serverPort;
 
+    @Value("${alpha.cache.replication.log-capacity:10000}")
+    private int replicationLogCapacity;
+
+    @Value("${alpha.cache.replication.max-batch-size:500}")
+    private int replicationMaxBatchSize;
+
+    // an idle node sends its latest sequence after it, so the other nodes find its lost batches.
+    @Value("${alpha.cache.replication.heartbeat-interval:5000}")
+    private long replicationHeartbeatInterval;
+
+    @PostConstruct
+    void init() {
+        String currentHostPort = CrossSystemInetAddress.readCrossSystemIPv4() + ":" + serverPort;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(3000);
+        requestFactory.setReadTimeout(5000);
+        cacheReplicator = new CacheReplicator(currentHostPort, new RestTemplate(requestFactory),
+            () -> serviceList.stream().filter(ipPort -> !currentHostPort.equals(ipPort)).collect(Collectors.toSet()),
+            mutation -> callLocalFunction(mutation.getFunction(), mutation.getKey(), mutation.getValue(), mutation.getExpire()),
+            this::setSynchronizedCache, replicationLogCapacity, replicationMaxBatchSize, replicationHeartbeatInterval);
+        cacheReplicator.start();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cacheReplicator.shutdown();
+    }
+
     public ConcurrentHashMap<String, Boolean> getConfigCache() {
         return configCache;
     }
 
-    public ConcurrentSkipListSet<CacheEntity> getTxSuspendStatusCache() {
+    public ExpiringStatusCache getTxSuspendStatusCache() {
         return txSuspendStatusCache;
     }
 
-    public ConcurrentSkipListSet<CacheEntity> getTxAbortStatusCache() {
+    public ExpiringStatusCache getTxAbortStatusCache() {
         return txAbortStatusCache;
     }
 
     @Override
     public boolean getTxSuspendStatus(String globalTxId) {
-        return getTxStatusByGlobalTxId(txSuspendStatusCache, globalTxId);
+        // return true event though expired, due to it's not a real cache period, it's used for clearing cache mainly.
+        return txSuspendStatusCache.contains(globalTxId);
     }
 
     @Override
     public boolean getTxAbortStatus(String globalTxId) {
-        return getTxStatusByGlobalTxId(txAbortStatusCache, globalTxId);
-    }
-
-    private boolean getTxStatusByGlobalTxId(ConcurrentSkipListSet<CacheEntity> txStatusCache, String globalTxId) {
-        if (globalTxId != null) {
-            Iterator<CacheEntity> cacheEntities = txStatusCache.iterator();
-            while (cacheEntities.hasNext()) {
-                CacheEntity cacheEntity = cacheEntities.next();
-                if (cacheEntity != null && globalTxId.equals(cacheEntity.getKey())) {
-                    // return true event though expired, due to it's not a real cache period, it's used for clearing cache mainly.
-                    // in fact, the expires is not used yet so far.
-                    return true;
-                }
-            }
-        }
-        return false;
+        return txAbortStatusCache.contains(globalTxId);
+    }
+
+    @Override
+    public boolean isTxAbortStatusEvicted() {
+        return txAbortStatusCache.getEvictedByCapacity() > 0;
     }
 
     public void putDistributedConfigCache(String key, Boolean value) {
@@ -124,27 +157,9 @@ public class TxleCache implements ITxleCache {
 
     public void refreshDistributedCache(String cacheKey, String cacheValue, int expire, String restApi) {
         try {
-            if (serviceList != null && !serviceList.isEmpty()) {
-                String currentHostPort = CrossSystemInetAddress.readCrossSystemIPv4() + ":" + serverPort;
-                Set<String> ipPortSet = new HashSet<>();
-                serviceList.forEach(ipPort -> {
-                    try {
-                        if (!ipPortSet.contains(ipPort)) {
-                            ipPortSet.add(ipPort);
-
-                            if (currentHostPort.equals(ipPort)) {
-                                callLocalFunction(restApi, cacheKey, cacheValue, expire);
-                            } else {
-                                HttpEntity<String> entity = new HttpEntity<>(cacheKey + "," + cacheValue + "," + expire);
-                                log.info("Calling http://" + ipPort + restApi);
-                                restTemplate.exchange("http://" + ipPort + restApi, HttpMethod.POST, entity, Boolean.class);
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.error("Failed to refresh distributed cache. remoteHostPort [{}], restApi [{}], key  [{}], value [{}], expire [{}].", ipPort, restApi, cacheKey, cacheValue, expire, e);
-                    }
-                });
-            }
+            // To apply it locally at once, and the other servers will receive it by the asynchronous batches of the replicator.
+            callLocalFunction(restApi, cacheKey, cacheValue, expire);
+            cacheReplicator.replicate(restApi, cacheKey, cacheValue, expire);
         } catch (Exception e) {
             log.error("Failed to execute method 'refreshDistributedCache', restApi [{}], key [{}], value [{}], expire [{}].", restApi, cacheKey, cacheValue, expire, e);
         }
@@ -172,17 +187,18 @@ public class TxleCache implements ITxleCache {
     public void putLocalConfigCache(String key, Boolean value) {
         if (key != null) {
             configCache.put(key, value);
+            notifyConfigChanged();
         }
     }
 
     @Override
     public void putLocalTxSuspendStatusCache(String key, Boolean value, int expire) {
-        txSuspendStatusCache.add(new CacheEntity(key, value, expire));
+        txSuspendStatusCache.put(key, value, expire);
     }
 
     @Override
     public void putLocalTxAbortStatusCache(String key, Boolean value, int expire) {
-        txAbortStatusCache.add(new CacheEntity(key, value, expire));
+        txAbortStatusCache.put(key, value, expire);
     }
 
     public void removeLocalConfigCache(String key) {
@@ -190,6 +206,25 @@ public class TxleCache implements ITxleCache {
         if (configCache.isEmpty()) {
             configCache.clear();
         }
+        notifyConfigChanged();
+        if (TxleConstants.constructConfigCacheKey(null, null, ConfigCenterType.PauseGlobalTx.toInteger()).equals(key)) {
+            notifyTxResumed("");
+        }
+    }
+
+    @Override
+    public void addConfigChangeListener(Runnable listener) {
+        configChangeListeners.add(listener);
+    }
+
+    private void notifyConfigChanged() {
+        for (Runnable listener : configChangeListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to notify the change of config cache.", e);
+            }
+        }
     }
 
     public void removeLocalTxStatusCache(String key) {
@@ -199,49 +234,47 @@ public class TxleCache implements ITxleCache {
 
     public void removeLocalTxSuspendStatusCache(String key) {
         removeTxStatusCache(txSuspendStatusCache, key);
+        // every server notifies its own clients, because the suspended status is removed on all of servers.
+        notifyTxResumed(key);
+    }
+
+    @Override
+    public void addTxResumeListener(Consumer<String> listener) {
+        txResumeListeners.add(listener);
+    }
+
+    private void notifyTxResumed(String globalTxId) {
+        for (Consumer<String> listener : txResumeListeners) {
+            try {
+                listener.accept(globalTxId);
+            } catch (Exception e) {
+                log.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to notify the resuming of global transaction [{}].", globalTxId, e);
+            }
+        }
     }
 
     public void removeLocalTxAbortStatusCache(String key) {
         removeTxStatusCache(txAbortStatusCache, key);
     }
 
-    private void removeTxStatusCache(ConcurrentSkipListSet<CacheEntity> txStatusCache, String key) {
+    private void removeTxStatusCache(ExpiringStatusCache txStatusCache, String key) {
         if (key != null && txStatusCache.size() > 0) {
-            Set<String> keySet = new HashSet<>();
-            for (String k : key.split(TxleConstants.STRING_SEPARATOR)) {
-                keySet.add(k);
-            }
-            Iterator<CacheEntity> iterator = txStatusCache.iterator();
-            while (iterator.hasNext()) {
-                CacheEntity cacheEntity = iterator.next();
-                if (keySet.contains(cacheEntity.getKey())) {
-                    txStatusCache.remove(cacheEntity);
-                }
-            }
-            if (txStatusCache.isEmpty()) {
-                txStatusCache.clear();
-            }
-            keySet.clear();
+            txStatusCache.removeAll(Arrays.asList(key.split(TxleConstants.STRING_SEPARATOR)));
         }
     }
 
-    private void removeExpiredCache(ConcurrentSkipListSet<CacheEntity> cache) {
-        Iterator<CacheEntity> iterator = cache.iterator();
-        // Use LinkedList due to remove frequently later.
-        List<CacheEntity> removeKeys = new LinkedList<>();
-        while (iterator.hasNext()) {
-            CacheEntity cacheEntity = iterator.next();
-            if (cacheEntity.expired()) {
-                removeKeys.add(cacheEntity);
-            } else {
-                break;
-            }
+    // the abort statuses are not evicted by the expire time, because a sub-transaction may end long after its global transaction was aborted,
+    // and then it has to be compensated, so they're removed after their global transactions ended, see TxEventAfterPersistingListener.
+    @Scheduled(fixedDelay = 60000)
+    public void removeExpiredCache() {
+        int evicted = txSuspendStatusCache.evictExpired();
+        if (evicted > 0) {
+            log.info("Evicted [{}] expired transaction status caches.", evicted);
         }
-        if (!removeKeys.isEmpty()) {
-            removeKeys.forEach(cacheEntity -> cache.remove(cacheEntity));
-            if (cache.isEmpty()) {
-                cache.clear();
-            }
+        long evictedAbortStatuses = txAbortStatusCache.getEvictedByCapacity();
+        if (evictedAbortStatuses > 0) {
+            log.warn("[{}] abort statuses of the unended global transactions were evicted by the capacity [{}], the missing ones are checked by the database.",
+                evictedAbortStatuses, MAX_TX_STATUS_CACHE_SIZE);
         }
     }
 
@@ -316,14 +349,33 @@ public class TxleCache implements ITxleCache {
             LinkedHashMap<String, Boolean> synConfigCache = (LinkedHashMap<String, Boolean>) synCache.get("configCache");
             if (synConfigCache != null) {
                 configCache.putAll(synConfigCache);
+                notifyConfigChanged();
             }
-            ArrayList<CacheEntity> suspendedCache = (ArrayList<CacheEntity>) synCache.get("txSuspendStatusCache");
-            if (suspendedCache != null) {
-                txSuspendStatusCache.addAll(suspendedCache);
+            putSynchronizedStatusCache(txSuspendStatusCache, synCache.get("txSuspendStatusCache"));
+            putSynchronizedStatusCache(txAbortStatusCache, synCache.get("txAbortStatusCache"));
+            Object cacheSequences = synCache.get("cacheSequences");
+            if (cacheSequences instanceof Map) {
+                cacheReplicator.resetAppliedSequences((Map<String, Number>) cacheSequences);
             }
-            ArrayList<CacheEntity> abortedCache = (ArrayList<CacheEntity>) synCache.get("txAbortStatusCache");
-            if (abortedCache != null) {
-                txAbortStatusCache.addAll(abortedCache);
+        }
+    }
+
+    // The entities are deserialized as maps by RestTemplate, and the expire is the absolute time of the leader.
+    private void putSynchronizedStatusCache(ExpiringStatusCache txStatusCache, Object synchronizedCache) {
+        if (synchronizedCache instanceof List) {
+            for (Object entity : (List<?>) synchronizedCache) {
+                if (entity instanceof CacheEntity) {
+                    txStatusCache.put((CacheEntity) entity);
+                } else if (entity instanceof Map) {
+                    Map<?, ?> entityMap = (Map<?, ?>) entity;
+                    Object key = entityMap.get("key");
+                    Object expire = entityMap.get("expire");
+                    if (key != null && expire instanceof Number) {
+                        CacheEntity cacheEntity = new CacheEntity(key.toString(), entityMap.get("value"));
+                        cacheEntity.setExpire(((Number) expire).longValue());
+                        txStatusCache.put(cacheEntity);
+                    }
+                }
             }
         }
     }
@@ -332,8 +384,20 @@ public class TxleCache implements ITxleCache {
     public Map<String, Object> fetchSynchronizedCache() {
         Map<String, Object> cacheMap = new HashMap<>();
         cacheMap.put("configCache", configCache);
-        cacheMap.put("txSuspendStatusCache", txSuspendStatusCache);
-        cacheMap.put("txAbortStatusCache", txAbortStatusCache);
+        cacheMap.put("txSuspendStatusCache", txSuspendStatusCache.values());
+        cacheMap.put("txAbortStatusCache", txAbortStatusCache.values());
+        // the later mutations of every origin can be caught up incrementally from these sequences.
+        cacheMap.put("cacheSequences", cacheReplicator.getAppliedSequences());
         return cacheMap;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void receiveCacheMutations(CacheMutationBatch batch) {
+        cacheReplicator.receive(batch);
+    }
+
+    @Override
+    public CacheMutationBatch fetchCacheMutations(long sinceSequence) {
+        return cacheReplicator.mutationsSince(sinceSequence);
+    }
+}
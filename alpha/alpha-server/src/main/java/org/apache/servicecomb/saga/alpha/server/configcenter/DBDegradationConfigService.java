@@ -8,6 +8,7 @@ package org.apache.servicecomb.saga.alpha.server.configcenter;
 import org.apache.servicecomb.saga.alpha.core.cache.ITxleCache;
 import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigCenter;
 import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigCenterStatus;
+import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigDecisionTable;
 import org.apache.servicecomb.saga.alpha.core.configcenter.IConfigCenterService;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.DataDictionaryItem;
 import org.apache.servicecomb.saga.alpha.core.datadictionary.IDataDictionaryService;
@@ -18,9 +19,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 
+import javax.annotation.PostConstruct;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * @author Gannalyo
@@ -32,6 +39,10 @@ public class DBDegradationConfigService implements IConfigCenterService {
 
     private ConfigCenterEntityRepository configCenterEntityRepository;
 
+    private final AtomicReference<ConfigDecisionTable> decisionTable = new AtomicReference<>(ConfigDecisionTable.empty());
+    private final AtomicLong tableVersion = new AtomicLong();
+    private final List<Consumer<ConfigDecisionTable>> decisionTableListeners = new CopyOnWriteArrayList<>();
+
     @Autowired
     private IDataDictionaryService dataDictionaryService;
 
@@ -62,82 +73,62 @@ public class DBDegradationConfigService implements IConfigCenterService {
         return null;
     }
 
+    /**
+     * It's checked against the compiled table only, so the event path never queries the Config table.
+     */
     @Override
     public boolean isEnabledConfig(String instanceId, String category, ConfigCenterType type) {
-        String configKey = TxleConstants.constructConfigCacheKey(instanceId, category, type.toInteger());
-        Enumeration<String> configKeys = txleCache.getConfigCache().keys();
-        while (configKeys.hasMoreElements()) {
-            if (configKey.equals(configKeys.nextElement())) {
-                Boolean result = txleCache.getConfigCache().get(configKey);
-                if (result != null) {
-                    return result;
-                }
-            }
-        }
+        return decisionTable.get().isEnabled(instanceId, category, type);
+    }
 
-        List<ConfigCenter> configCenterList = configCenterEntityRepository.selectConfigCenterByType(instanceId, category, ConfigCenterStatus.Normal.toInteger(), type.toInteger());
-        if (configCenterList != null && !configCenterList.isEmpty()) {
-            /**
-             * 配置检测逻辑：
-             * 1.先判断是否有某配置类型的全局配置，即instanceId为null的，如果有全局配置则验证当前配置是否开启，如果ability=0，则直接返回false，否则标记isExistsConfigs=true，并暂存value
-             * 2.
-             */
-            String value = "";
-            boolean isExistsConfigs = false;
-            // 1.获取当前类型配置的全局值
-            for (ConfigCenter config : configCenterList) {
-                if (config.getInstanceid() == null || config.getInstanceid().trim().length() == 0) {
-                    if (config.getAbility() == TxleConstants.NO) {
-                        return false;
-                    }
-                    isExistsConfigs = true;
-                    value = config.getValue();
-                    break;
-                }
-            }
-            // 强制每个配置必须有全局配置才生效
-            if (isExistsConfigs) {
-                isExistsConfigs = false;
-                // 2.获取当前配置的具体值(instanceId和category都为有效值的情况)
-                for (ConfigCenter config : configCenterList) {
-                    if (config.getInstanceid() != null && config.getInstanceid().trim().length() > 0 && config.getCategory() != null && config.getCategory().trim().length() > 0) {
-                        isExistsConfigs = true;
-                        if (config.getAbility() == TxleConstants.NO) {
-                            // do not cover the value of global config.
-                            break;
-                        }
-                        value = config.getValue();
-                        // cover the value of global config.
-                        break;
-                    }
-                }
-                // 3.如果未获取到当前配置的具体值，则获取当前配置的默认值(instanceId为有效值、category为无效值的情况)
-                if (!isExistsConfigs) {
-                    for (ConfigCenter config : configCenterList) {
-                        if (config.getInstanceid() != null && config.getInstanceid().trim().length() > 0 && (config.getCategory() == null || config.getCategory().trim().length() == 0)) {
-                            if (config.getAbility() == TxleConstants.NO) {
-                                // do not cover the value of global config.
-                                break;
-                            }
-                            value = config.getValue();
-                            // cover the value of global config.
-                            break;
-                        }
-                    }
+    @PostConstruct
+    void initDecisionTable() {
+        // the changes of this server and the ones replicated from the other servers arrive by the config cache.
+        txleCache.addConfigChangeListener(this::refreshDecisionTable);
+        refreshDecisionTable();
+    }
+
+    /**
+     * To compile the normal configs into a new table, and to replace the current one unless a later version has been installed.
+     * It's also executed periodically in case of the configs which are modified in the database directly.
+     */
+    @Scheduled(initialDelayString = "${alpha.config.decision-table.refresh-interval:60000}", fixedDelayString = "${alpha.config.decision-table.refresh-interval:60000}")
+    public void refreshDecisionTable() {
+        long version = tableVersion.incrementAndGet();
+        try {
+            ConfigDecisionTable table = ConfigDecisionTable.compile(version, configCenterEntityRepository.selectConfigCenterList(ConfigCenterStatus.Normal.toInteger()));
+            ConfigDecisionTable current;
+            do {
+                current = decisionTable.get();
+                if (current.getVersion() > version) {
+                    return;
                 }
-                boolean result = TxleConstants.ENABLED.equals(value);
-                txleCache.putDistributedConfigCache(configKey, result);
-                return result;
-            }
+            } while (!decisionTable.compareAndSet(current, table));
+            notifyDecisionTableChanged(table);
+        } catch (Exception e) {
+            // keep the current table, it will be compiled again by the next change or period.
+            LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to compile the decision table of configs, version [{}].", version, e);
         }
+    }
+
+    @Override
+    public ConfigDecisionTable getConfigDecisionTable() {
+        return decisionTable.get();
+    }
 
-        // All of configs except fault-tolerant are enabled by default.
-        if (ConfigCenterType.PauseGlobalTx.equals(type) || ConfigCenterType.GlobalTxFaultTolerant.equals(type) || ConfigCenterType.CompensationFaultTolerant.equals(type) || ConfigCenterType.AutoCompensationFaultTolerant.equals(type)) {
-            txleCache.putDistributedConfigCache(configKey, false);
-            return false;
+    @Override
+    public void addConfigDecisionTableListener(Consumer<ConfigDecisionTable> listener) {
+        decisionTableListeners.add(listener);
+    }
+
+    private void notifyDecisionTableChanged(ConfigDecisionTable table) {
+        for (Consumer<ConfigDecisionTable> listener : decisionTableListeners) {
+            try {
+                listener.accept(table);
+            } catch (Exception e) {
+                LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to notify the decision table of configs, version [{}].", table.getVersion(), e);
+            }
         }
-        txleCache.putDistributedConfigCache(configKey, true);
-        return true;
     }
 
     @Override
@@ -165,8 +156,10 @@ public class DBDegradationConfigService implements IConfigCenterService {
         if ((config.getCategory() + "").length() == 0) {
             config.setCategory(null);
         }
+        boolean saved = configCenterEntityRepository.save(config) != null;
+        // after saving, so that every server compiles its decision table with this config.
         txleCache.putDistributedConfigCache(TxleConstants.constructConfigCacheKey(config.getInstanceid(), config.getCategory(), config.getType()), TxleConstants.ENABLED.equals(config.getValue()));
-        return configCenterEntityRepository.save(config) != null;
+        return saved;
     }
 
     @Override
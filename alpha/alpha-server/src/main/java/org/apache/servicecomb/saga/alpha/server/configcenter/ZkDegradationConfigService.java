@@ -6,11 +6,13 @@
 package org.apache.servicecomb.saga.alpha.server.configcenter;
 
 import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigCenter;
+import org.apache.servicecomb.saga.alpha.core.configcenter.ConfigDecisionTable;
 import org.apache.servicecomb.saga.common.ConfigCenterType;
 import org.apache.servicecomb.saga.alpha.core.configcenter.IConfigCenterService;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author Gannalyo
@@ -42,6 +44,15 @@ public class ZkDegradationConfigService implements IConfigCenterService {
         return false;
     }
 
+    @Override
+    public ConfigDecisionTable getConfigDecisionTable() {
+        return ConfigDecisionTable.empty();
+    }
+
+    @Override
+    public void addConfigDecisionTableListener(Consumer<ConfigDecisionTable> listener) {
+    }
+
     @Override
     public boolean createConfigCenter(ConfigCenter config) {
         return false;
@@ -5,11 +5,13 @@
 
 package org.apache.servicecomb.saga.alpha.server.restapi;
 
+import org.apache.servicecomb.saga.alpha.core.cache.CacheMutationBatch;
 import org.apache.servicecomb.saga.alpha.core.cache.ITxleCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
@@ -81,4 +83,15 @@ public class CacheRestApi {
         return txleCache.fetchSynchronizedCache();
     }
 
+    @PostMapping("/replicateCache")
+    public boolean replicateCache(@RequestBody CacheMutationBatch batch) {
+        txleCache.receiveCacheMutations(batch);
+        return true;
+    }
+
+    @GetMapping("/fetchCacheMutations")
+    public CacheMutationBatch fetchCacheMutations(@RequestParam("since") long sinceSequence) {
+        return txleCache.fetchCacheMutations(sinceSequence);
+    }
+
 }
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server.restapi;
+
+import org.apache.servicecomb.saga.alpha.core.txstate.GlobalTxStateTable;
+import org.apache.servicecomb.saga.alpha.core.txstate.TxStateEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class GlobalTxStateRestApi {
+    @Autowired(required = false)
+    private GlobalTxStateTable globalTxStateTable;
+
+    // the events persisted by the other nodes, whose global transactions are owned by current node.
+    @PostMapping("/applyTxState")
+    public boolean applyTxState(@RequestBody TxStateEvent event) {
+        if (globalTxStateTable == null) {
+            return false;
+        }
+        globalTxStateTable.apply(event.toTxEvent());
+        return true;
+    }
+}
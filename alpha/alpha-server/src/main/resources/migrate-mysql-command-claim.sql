@@ -0,0 +1,10 @@
+-- Copyright (c) 2018-2019 ActionTech.
+-- License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+
+-- Adds the columns which the scanners claim the NEW commands by, to the Command table created before it.
+-- Alpha claims the commands one by one if the columns are missing, so it is able to be executed while alpha is running, and alpha claims them by set after restarting.
+
+ALTER TABLE Command
+  ADD COLUMN claimToken varchar(36) DEFAULT NULL,
+  ADD COLUMN claimedTime datetime DEFAULT NULL,
+  ADD INDEX saga_commands_claim_index (claimToken) $$
@@ -0,0 +1,42 @@
+-- Copyright (c) 2018-2019 ActionTech.
+-- License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+
+-- Converts the tables created by 'schema-mysql.sql' to the compact row format of 'schema-mysql-compact.sql'.
+-- Alpha reads and writes both formats by the same mappings, so the tables are converted one by one while alpha is running,
+-- and the big ones are better converted by an online schema change tool, e.g. pt-online-schema-change, with the same ALTER clauses.
+-- It fails if an id is not ASCII or a type/status is unknown, and nothing of that table is changed in that case.
+-- The TxEvent table created before the dedupeKey column is migrated by 'migrate-mysql-dedupe-key.sql' first.
+
+ALTER TABLE TxEvent
+  MODIFY globalTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  MODIFY localTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  MODIFY parentTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  MODIFY type enum('SagaStartedEvent', 'TxStartedEvent', 'TxEndedEvent', 'TxAbortedEvent', 'TxCompensatedEvent', 'SagaEndedEvent',
+    'SagaPausedEvent', 'SagaContinuedEvent', 'SagaAutoContinuedEvent') NOT NULL,
+  MODIFY dedupeKey varchar(128) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  DROP INDEX saga_events_index,
+  DROP INDEX saga_global_tx_index,
+  DROP INDEX saga_surrogateId_index,
+  ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 $$
+
+ALTER TABLE Command
+  MODIFY globalTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  MODIFY localTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  MODIFY parentTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  MODIFY status enum('NEW', 'PENDING', 'DONE'),
+  DROP INDEX saga_commands_index,
+  ADD INDEX saga_commands_tx_index (globalTxId, localTxId),
+  ADD INDEX saga_commands_status_index (status),
+  ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 $$
+
+ALTER TABLE TxTimeout
+  MODIFY globalTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  MODIFY localTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  MODIFY parentTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  MODIFY type enum('SagaStartedEvent', 'TxStartedEvent', 'TxEndedEvent', 'TxAbortedEvent', 'TxCompensatedEvent', 'SagaEndedEvent',
+    'SagaPausedEvent', 'SagaContinuedEvent', 'SagaAutoContinuedEvent') NOT NULL,
+  MODIFY status enum('NEW', 'PENDING', 'DONE'),
+  DROP INDEX saga_timeouts_index,
+  ADD INDEX saga_timeouts_status_index (status, expiryTime),
+  ADD INDEX saga_timeouts_tx_index (globalTxId, localTxId),
+  ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 $$
@@ -0,0 +1,10 @@
+-- Copyright (c) 2018-2019 ActionTech.
+-- License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+
+-- Adds the column which the hedged copies of an idempotent event are rejected by, to the TxEvent table created before it.
+-- Alpha saves the events without dedupe keys if the column is missing, so it is able to be executed while alpha is running, and alpha saves the keys after restarting.
+-- It has to be executed before 'migrate-mysql-compact.sql'.
+
+ALTER TABLE TxEvent
+  ADD COLUMN dedupeKey varchar(128) DEFAULT NULL,
+  ADD UNIQUE INDEX saga_dedupe_key_index (dedupeKey) $$
@@ -0,0 +1,9 @@
+-- Copyright (c) 2018-2019 ActionTech.
+-- License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+
+-- Adds the column which the hedged copies of an idempotent event are rejected by, to the TxEvent table created before it.
+-- Alpha saves the events without dedupe keys if the column is missing, so it is able to be executed while alpha is running, and alpha saves the keys after restarting.
+
+ALTER TABLE TxEvent ADD COLUMN IF NOT EXISTS dedupeKey varchar(128) DEFAULT NULL;
+
+CREATE UNIQUE INDEX IF NOT EXISTS saga_dedupe_key_index ON TxEvent (dedupeKey);
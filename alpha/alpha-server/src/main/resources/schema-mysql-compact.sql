@@ -0,0 +1,74 @@
+-- Copyright (c) 2018-2019 ActionTech.
+-- License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+
+-- The optional compact row format of TxEvent, Command and TxTimeout, it's executed before 'schema-mysql.sql' by the profile 'mysql-compact'.
+-- The columns keep their names and their values in SQL, so the same JPA mappings and queries read both the compact and the original tables.
+--   1. The event types and the task statuses are ENUMs, which are stored as 1-byte codes and still compared with the type names.
+--   2. The ids are ASCII with the binary collation, they take 1 byte per char in the rows and the index keys rather than 4 bytes of utf8mb4.
+--   3. The pages are compressed, so the serviceName, instanceId and category repeated on every row are coded by the page dictionary.
+--   4. The indexes which begin with the primary key or repeat the prefix of another index are not created.
+-- The existing tables are converted by 'migrate-mysql-compact.sql'.
+
+CREATE TABLE IF NOT EXISTS TxEvent (
+  surrogateId bigint NOT NULL AUTO_INCREMENT,
+  serviceName varchar(100) NOT NULL,
+  instanceId varchar(100) NOT NULL,
+  creationTime datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  globalTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  localTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  parentTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  type enum('SagaStartedEvent', 'TxStartedEvent', 'TxEndedEvent', 'TxAbortedEvent', 'TxCompensatedEvent', 'SagaEndedEvent',
+    'SagaPausedEvent', 'SagaContinuedEvent', 'SagaAutoContinuedEvent') NOT NULL,
+  compensationMethod varchar(256) NOT NULL,
+  expiryTime datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  payloads blob,
+  retries int(11) NOT NULL DEFAULT '0',
+  retryMethod varchar(256) DEFAULT NULL,
+  category varchar(100),
+  dedupeKey varchar(128) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  PRIMARY KEY (surrogateId),
+  UNIQUE INDEX saga_dedupe_key_index (dedupeKey),
+  INDEX saga_globalid_localid_type (globalTxId, localTxId, type),
+  INDEX saga_tx_type_index (type)
+) DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 $$
+
+CREATE TABLE IF NOT EXISTS Command (
+  surrogateId bigint NOT NULL AUTO_INCREMENT,
+  eventId bigint NOT NULL UNIQUE,
+  serviceName varchar(100) NOT NULL,
+  instanceId varchar(100) NOT NULL,
+  globalTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  localTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  parentTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  compensationMethod varchar(256) NOT NULL,
+  payloads blob,
+  status enum('NEW', 'PENDING', 'DONE'),
+  lastModified datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  version bigint NOT NULL,
+  category varchar(100),
+  claimToken varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  claimedTime datetime DEFAULT NULL,
+  PRIMARY KEY (surrogateId),
+  INDEX saga_commands_tx_index (globalTxId, localTxId),
+  INDEX saga_commands_status_index (status),
+  INDEX saga_commands_claim_index (claimToken)
+) DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 $$
+
+CREATE TABLE IF NOT EXISTS TxTimeout (
+  surrogateId bigint NOT NULL AUTO_INCREMENT,
+  eventId bigint NOT NULL UNIQUE,
+  serviceName varchar(100) NOT NULL,
+  instanceId varchar(100) NOT NULL,
+  globalTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  localTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+  parentTxId varchar(36) CHARACTER SET ascii COLLATE ascii_bin DEFAULT NULL,
+  type enum('SagaStartedEvent', 'TxStartedEvent', 'TxEndedEvent', 'TxAbortedEvent', 'TxCompensatedEvent', 'SagaEndedEvent',
+    'SagaPausedEvent', 'SagaContinuedEvent', 'SagaAutoContinuedEvent') NOT NULL,
+  expiryTime datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  status enum('NEW', 'PENDING', 'DONE'),
+  version bigint NOT NULL,
+  category varchar(100),
+  PRIMARY KEY (surrogateId),
+  INDEX saga_timeouts_status_index (status, expiryTime),
+  INDEX saga_timeouts_tx_index (globalTxId, localTxId)
+) DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 $$
@@ -30,7 +30,9 @@ CREATE TABLE IF NOT EXISTS TxEvent (
   retries int(11) NOT NULL DEFAULT '0',
   retryMethod varchar(256) DEFAULT NULL,
   category varchar(100),
+  dedupeKey varchar(128) DEFAULT NULL,
   PRIMARY KEY (surrogateId),
+  UNIQUE INDEX saga_dedupe_key_index (dedupeKey),
   INDEX saga_events_index (surrogateId, globalTxId, localTxId, type, expiryTime),
   INDEX saga_global_tx_index (globalTxId),
   INDEX saga_globalid_localid_type (globalTxId, localTxId, type),
@@ -52,8 +54,11 @@ CREATE TABLE IF NOT EXISTS Command (
   lastModified datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
   version bigint NOT NULL,
   category varchar(100),
+  claimToken varchar(36) DEFAULT NULL,
+  claimedTime datetime DEFAULT NULL,
   PRIMARY KEY (surrogateId),
-  INDEX saga_commands_index (surrogateId, eventId, globalTxId, localTxId, status)
+  INDEX saga_commands_index (surrogateId, eventId, globalTxId, localTxId, status),
+  INDEX saga_commands_claim_index (claimToken)
 ) DEFAULT CHARSET=utf8mb4 $$
 
 CREATE TABLE IF NOT EXISTS TxTimeout (
@@ -73,6 +78,27 @@ CREATE TABLE IF NOT EXISTS TxTimeout (
   INDEX saga_timeouts_index (surrogateId, expiryTime, globalTxId, localTxId, status)
 ) DEFAULT CHARSET=utf8mb4 $$
 
+CREATE TABLE IF NOT EXISTS CompensationRetry (
+  surrogateId bigint NOT NULL AUTO_INCREMENT,
+  serviceName varchar(100) NOT NULL,
+  instanceId varchar(100) NOT NULL,
+  globalTxId varchar(36) NOT NULL,
+  localTxId varchar(36) NOT NULL,
+  attempts int NOT NULL DEFAULT 0,
+  nextAttemptTime datetime DEFAULT NULL COMMENT 'it is null after the command was given back to the scanner',
+  lastError varchar(500),
+  PRIMARY KEY (surrogateId),
+  UNIQUE INDEX saga_compensation_retry_tx_index (globalTxId, localTxId),
+  INDEX saga_compensation_retry_time_index (nextAttemptTime)
+) DEFAULT CHARSET=utf8mb4 $$
+
+CREATE TABLE IF NOT EXISTS TxEventWatermark (
+  name varchar(50) NOT NULL,
+  eventId bigint NOT NULL COMMENT 'the events of the unended global transactions are not below it',
+  updateTime datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (name)
+) DEFAULT CHARSET=utf8mb4 $$
+
 CREATE TABLE IF NOT EXISTS Message (
   id bigint NOT NULL AUTO_INCREMENT,
   globaltxid varchar(36) NOT NULL,
@@ -29,9 +29,11 @@ CREATE TABLE IF NOT EXISTS TxEvent (
   retryMethod varchar(256) NOT NULL,
   retries int NOT NULL DEFAULT 0,
   category varchar(36) NOT NULL,
-  payloads bytea
+  payloads bytea,
+  dedupeKey varchar(128) DEFAULT NULL
 );
 
+CREATE UNIQUE INDEX IF NOT EXISTS saga_dedupe_key_index ON TxEvent (dedupeKey);
 CREATE INDEX IF NOT EXISTS saga_events_index ON TxEvent (surrogateId, globalTxId, localTxId, type, expiryTime);
 CREATE INDEX IF NOT EXISTS saga_global_tx_index ON TxEvent (globalTxId);
 CREATE INDEX IF NOT EXISTS saga_surrogateId_index ON TxEvent (surrogateId);
@@ -51,10 +53,13 @@ CREATE TABLE IF NOT EXISTS Command (
   status varchar(12),
   lastModified timestamp(6) NOT NULL DEFAULT CURRENT_DATE,
   version bigint NOT NULL,
-  category varchar(36) NOT NULL
+  category varchar(36) NOT NULL,
+  claimToken varchar(36) DEFAULT NULL,
+  claimedTime timestamp(6) DEFAULT NULL
 );
 
 CREATE INDEX IF NOT EXISTS saga_commands_index ON Command (surrogateId, eventId, globalTxId, localTxId, status);
+CREATE INDEX IF NOT EXISTS saga_commands_claim_index ON Command (claimToken);
 
 
 CREATE TABLE IF NOT EXISTS TxTimeout (
@@ -74,6 +79,26 @@ CREATE TABLE IF NOT EXISTS TxTimeout (
 
 CREATE INDEX IF NOT EXISTS saga_timeouts_index ON TxTimeout (surrogateId, expiryTime, globalTxId, localTxId, status);
 
+CREATE TABLE IF NOT EXISTS CompensationRetry (
+  surrogateId BIGSERIAL PRIMARY KEY,
+  serviceName varchar(100) NOT NULL,
+  instanceId varchar(100) NOT NULL,
+  globalTxId varchar(36) NOT NULL,
+  localTxId varchar(36) NOT NULL,
+  attempts int NOT NULL DEFAULT 0,
+  nextAttemptTime TIMESTAMP DEFAULT NULL,
+  lastError varchar(500)
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS saga_compensation_retry_tx_index ON CompensationRetry (globalTxId, localTxId);
+CREATE INDEX IF NOT EXISTS saga_compensation_retry_time_index ON CompensationRetry (nextAttemptTime);
+
+CREATE TABLE IF NOT EXISTS TxEventWatermark (
+  name varchar(50) PRIMARY KEY,
+  eventId bigint NOT NULL,
+  updateTime TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
 /*
  * *********************** It is necessary to execute following sqls before online. **********************
  */
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.apache.servicecomb.saga.alpha.core.Command;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandClaimerTest {
+  private final JdbcDataSource dataSource = new JdbcDataSource();
+  private final CommandClaimer claimer = new CommandClaimer(dataSource, 60000);
+  private Connection keepAlive;
+
+  @Before
+  public void setUp() throws SQLException {
+    dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+    keepAlive = dataSource.getConnection();
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("CREATE TABLE TxEvent (surrogateId bigint PRIMARY KEY, payloads blob)");
+      statement.execute("CREATE TABLE Command (surrogateId bigint AUTO_INCREMENT PRIMARY KEY, eventId bigint NOT NULL UNIQUE,"
+          + " serviceName varchar(100) NOT NULL, instanceId varchar(100) NOT NULL, globalTxId varchar(36) NOT NULL, localTxId varchar(36) NOT NULL,"
+          + " parentTxId varchar(36), compensationMethod varchar(256) NOT NULL, payloads blob, status varchar(12), version bigint NOT NULL,"
+          + " category varchar(100), claimToken varchar(36), claimedTime timestamp)");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    keepAlive.close();
+  }
+
+  @Test
+  public void claimsNewCommandsUpToLimit() throws SQLException {
+    for (long eventId = 1; eventId <= 5; eventId++) {
+      insertCommand(eventId, eventId == 2 ? "PENDING" : "NEW");
+    }
+
+    List<Command> claimed = claimer.claim(3);
+    List<Command> rest = claimer.claim(3);
+
+    // MySQL claims the latest ones first, H2 ignores the order of UPDATE.
+    List<Long> claimedEventIds = eventIdsOf(claimed);
+    List<Long> sortedEventIds = new ArrayList<>(claimedEventIds);
+    sortedEventIds.sort(Collections.reverseOrder());
+    assertThat(claimedEventIds, is(sortedEventIds));
+    assertThat(claimed.size(), is(3));
+    assertThat(rest.size(), is(1));
+    Set<Long> allEventIds = new HashSet<>(claimedEventIds);
+    allEventIds.addAll(eventIdsOf(rest));
+    assertThat(allEventIds, containsInAnyOrder(1L, 3L, 4L, 5L));
+    assertThat(statusCount("NEW"), is(0));
+    assertThat(claimer.claim(3).isEmpty(), is(true));
+
+    Command command = rest.get(0);
+    assertThat(command.globalTxId(), is("globalTx-" + command.getEventId()));
+    assertThat(command.localTxId(), is("localTx-" + command.getEventId()));
+    assertThat(command.compensationMethod(), is("compensationMethod"));
+  }
+
+  @Test
+  public void claimsEveryCommandOnceByConcurrentClaimers() throws Exception {
+    for (long eventId = 1; eventId <= 500; eventId++) {
+      insertCommand(eventId, "NEW");
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<Long>>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> {
+          List<Long> eventIds = new ArrayList<>();
+          List<Command> claimed;
+          do {
+            claimed = claimer.claim(7);
+            eventIds.addAll(eventIdsOf(claimed));
+          } while (!claimed.isEmpty());
+          return eventIds;
+        }));
+      }
+
+      List<Long> allEventIds = new ArrayList<>();
+      for (Future<List<Long>> future : futures) {
+        allEventIds.addAll(future.get());
+      }
+      Set<Long> distinctEventIds = new HashSet<>(allEventIds);
+      assertThat(allEventIds.size(), is(500));
+      assertThat(distinctEventIds.size(), is(500));
+      assertThat(statusCount("NEW"), is(0));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void reclaimsPendingCommandsWhoseLeasesExpired() throws SQLException {
+    insertCommand(1, "NEW");
+    insertCommand(2, "NEW");
+    insertCommand(3, "PENDING");
+    assertThat(claimer.claim(2).size(), is(2));
+    assertThat(claimer.claim(2).isEmpty(), is(true));
+
+    // the claim of event 1 was made by a node which died before its compensation was done.
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.executeUpdate("UPDATE Command SET claimedTime = DATEADD('MINUTE', -2, CURRENT_TIMESTAMP) WHERE eventId = 1");
+    }
+
+    assertThat(eventIdsOf(claimer.claim(2)), containsInAnyOrder(1L));
+    // the commands which were claimed one by one have no lease.
+    assertThat(statusCount("PENDING"), is(3));
+  }
+
+  @Test
+  public void supportsClaimingOnlyIfTableHasClaimColumns() throws SQLException {
+    assertThat(claimer.isSupported(), is(true));
+
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("ALTER TABLE Command DROP COLUMN claimedTime");
+    }
+    assertThat(claimer.isSupported(), is(false));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void reportsFailedClaimAsIllegalState() throws SQLException {
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("ALTER TABLE Command DROP COLUMN claimToken");
+    }
+    insertCommand(1, "NEW");
+
+    claimer.claim(10);
+  }
+
+  private void insertCommand(long eventId, String status) throws SQLException {
+    try (PreparedStatement statement = keepAlive.prepareStatement("INSERT INTO Command (eventId, serviceName, instanceId, globalTxId, localTxId,"
+        + " compensationMethod, status, version, category) VALUES (?, 'serviceName', 'instanceId', ?, ?, 'compensationMethod', ?, 0, '')")) {
+      statement.setLong(1, eventId);
+      statement.setString(2, "globalTx-" + eventId);
+      statement.setString(3, "localTx-" + eventId);
+      statement.setString(4, status);
+      statement.executeUpdate();
+    }
+  }
+
+  private int statusCount(String status) throws SQLException {
+    try (PreparedStatement statement = keepAlive.prepareStatement("SELECT count(1) FROM Command WHERE status = ?")) {
+      statement.setString(1, status);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getInt(1);
+      }
+    }
+  }
+
+  private static List<Long> eventIdsOf(List<Command> commands) {
+    return commands == null ? Collections.emptyList() : commands.stream().map(Command::getEventId).collect(Collectors.toList());
+  }
+}
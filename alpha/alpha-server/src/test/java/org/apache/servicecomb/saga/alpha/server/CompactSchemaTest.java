@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.servicecomb.saga.alpha.core.AdditionalEventType;
+import org.apache.servicecomb.saga.alpha.core.TaskStatus;
+import org.apache.servicecomb.saga.common.EventType;
+import org.junit.Test;
+
+public class CompactSchemaTest {
+  private static final Pattern ENUM_COLUMN = Pattern.compile("(type|status) enum\\(([^)]*)\\)");
+
+  // an unknown type or status is rejected by the compact tables, so every new one has to be added to the ENUMs.
+  @Test
+  public void enumsCoverAllEventTypesAndStatuses() throws IOException {
+    Set<String> eventTypes = new LinkedHashSet<>();
+    Arrays.stream(EventType.values()).forEach(type -> eventTypes.add(type.name()));
+    Arrays.stream(AdditionalEventType.values()).forEach(type -> eventTypes.add(type.name()));
+    Set<String> statuses = new LinkedHashSet<>();
+    Arrays.stream(TaskStatus.values()).forEach(status -> statuses.add(status.name()));
+
+    for (String script : Arrays.asList("schema-mysql-compact.sql", "migrate-mysql-compact.sql")) {
+      List<Set<String>> typeEnums = new ArrayList<>();
+      List<Set<String>> statusEnums = new ArrayList<>();
+      Matcher matcher = ENUM_COLUMN.matcher(read(script));
+      while (matcher.find()) {
+        Set<String> values = new LinkedHashSet<>();
+        for (String value : matcher.group(2).split(",")) {
+          values.add(value.trim().replace("'", ""));
+        }
+        ("type".equals(matcher.group(1)) ? typeEnums : statusEnums).add(values);
+      }
+
+      assertThat(typeEnums.size(), is(2));
+      assertThat(statusEnums.size(), is(2));
+      typeEnums.forEach(values -> assertThat(values, is(eventTypes)));
+      statusEnums.forEach(values -> assertThat(values, is(statuses)));
+    }
+  }
+
+  private String read(String resource) throws IOException {
+    try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resource);
+         Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name())) {
+      return scanner.useDelimiter("\\A").next().replaceAll("\\s+", " ");
+    }
+  }
+}
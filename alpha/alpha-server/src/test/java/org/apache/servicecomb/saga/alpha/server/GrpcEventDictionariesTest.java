@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcServiceConfig;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.junit.Test;
+
+public class GrpcEventDictionariesTest {
+  private final GrpcEventDictionaries dictionaries = new GrpcEventDictionaries();
+  private final GrpcServiceConfig config = GrpcServiceConfig.newBuilder()
+      .setServiceName("demo-service").setInstanceId("demo-service-127.0.0.1").setDictionaryId(42).build();
+
+  @Test
+  public void resolvesRefsDefinedByEarlierEvents() {
+    assertThat(dictionaries.register(config), is(true));
+
+    GrpcTxEvent defining = dictionaries.resolve(GrpcTxEvent.newBuilder()
+        .setDictionaryId(42).putDictionaryEntries(1, "demo-service").putDictionaryEntries(2, "cancel")
+        .setServiceNameRef(1).setCompensationMethodRef(2).setType("TxStartedEvent").build());
+    GrpcTxEvent referencing = dictionaries.resolve(GrpcTxEvent.newBuilder()
+        .setDictionaryId(42).setServiceNameRef(1).setCompensationMethodRef(2).setType("TxEndedEvent").build());
+
+    assertThat(defining.getServiceName(), is("demo-service"));
+    assertThat(referencing.getServiceName(), is("demo-service"));
+    assertThat(referencing.getCompensationMethod(), is("cancel"));
+    assertThat(referencing.getType(), is("TxEndedEvent"));
+    assertThat(referencing.getServiceNameRef(), is(0));
+  }
+
+  @Test
+  public void missesUnknownRefsAndDictionaries() {
+    dictionaries.register(config);
+
+    assertThat(dictionaries.resolve(GrpcTxEvent.newBuilder().setDictionaryId(42).setServiceNameRef(3).build()), is(nullValue()));
+    assertThat(dictionaries.resolve(GrpcTxEvent.newBuilder().setDictionaryId(7).setServiceName("demo-service").build()), is(nullValue()));
+
+    dictionaries.unregister(config);
+    assertThat(dictionaries.resolve(GrpcTxEvent.newBuilder().setDictionaryId(42).setServiceName("demo-service").build()), is(nullValue()));
+  }
+
+  @Test
+  public void replacesDictionaryOfReconnectedInstance() {
+    dictionaries.register(config);
+    dictionaries.register(config.toBuilder().setDictionaryId(43).build());
+
+    assertThat(dictionaries.resolve(GrpcTxEvent.newBuilder().setDictionaryId(42).build()), is(nullValue()));
+    assertThat(dictionaries.resolve(GrpcTxEvent.newBuilder().setDictionaryId(43).setType("TxEndedEvent").build()).getType(), is("TxEndedEvent"));
+  }
+
+  @Test
+  public void passesEventsWithoutDictionary() {
+    GrpcTxEvent event = GrpcTxEvent.newBuilder().setServiceName("demo-service").build();
+
+    assertThat(dictionaries.register(GrpcServiceConfig.getDefaultInstance()), is(false));
+    assertThat(dictionaries.resolve(event), is(event));
+  }
+}
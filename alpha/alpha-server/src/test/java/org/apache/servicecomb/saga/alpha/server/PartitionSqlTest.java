@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager.PARTITION_SQL;
+import static org.apache.servicecomb.saga.alpha.core.partition.PartitionLeaseManager.partitionOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartitionSqlTest {
+  private static final int PARTITION_COUNT = 16;
+  // the chars of the time ordered ids of omega.
+  private static final char[] ENCODING = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+  private final JdbcDataSource dataSource = new JdbcDataSource();
+  private final List<String> globalTxIds = new ArrayList<>();
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+    connection = dataSource.getConnection();
+    connection.createStatement().execute("CREATE TABLE TxEvent (surrogateId bigint AUTO_INCREMENT PRIMARY KEY, globalTxId varchar(36) NOT NULL)");
+
+    Random random = new Random();
+    for (int i = 0; i < 200; i++) {
+      globalTxIds.add(UUID.randomUUID().toString());
+      char[] timeOrderedId = new char[26];
+      for (int j = 0; j < timeOrderedId.length; j++) {
+        timeOrderedId[j] = ENCODING[random.nextInt(ENCODING.length)];
+      }
+      globalTxIds.add(new String(timeOrderedId));
+    }
+    globalTxIds.addAll(Arrays.asList("a", "ab"));
+    try (PreparedStatement statement = connection.prepareStatement("INSERT INTO TxEvent (globalTxId) VALUES (?)")) {
+      for (String globalTxId : globalTxIds) {
+        statement.setString(1, globalTxId);
+        statement.addBatch();
+      }
+      statement.executeBatch();
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void databasePartitionsGlobalTxIdsTheSameAsAlpha() throws SQLException {
+    Set<Integer> usedPartitions = new HashSet<>();
+    for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+      Set<String> expected = new HashSet<>();
+      for (String globalTxId : globalTxIds) {
+        if (partitionOf(globalTxId, PARTITION_COUNT) == partition) {
+          expected.add(globalTxId);
+        }
+      }
+      assertThat(selectGlobalTxIdsOfPartition(partition), is(expected));
+      if (!expected.isEmpty()) {
+        usedPartitions.add(partition);
+      }
+    }
+    assertThat(usedPartitions.size(), is(PARTITION_COUNT));
+  }
+
+  private Set<String> selectGlobalTxIdsOfPartition(int partition) throws SQLException {
+    String sql = "SELECT t.globalTxId FROM TxEvent t WHERE t.surrogateId > 0"
+        + PARTITION_SQL.replace(":partitionCount", "?").replace(":partitions", "?");
+    Set<String> result = new HashSet<>();
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setInt(1, PARTITION_COUNT);
+      statement.setInt(2, partition);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          result.add(resultSet.getString(1));
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static com.seanyinx.github.unit.scaffolding.AssertUtils.expectFailing;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TxEventGroupCommitWriterTest {
+  private final JdbcDataSource dataSource = new JdbcDataSource();
+  private final BlockingInserter inserter = new BlockingInserter(dataSource);
+  private final List<TxEvent> fallbackEvents = new CopyOnWriteArrayList<>();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private TxEventGroupCommitWriter writer;
+  private Connection keepAlive;
+
+  @Before
+  public void setUp() throws SQLException {
+    dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+    keepAlive = dataSource.getConnection();
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("CREATE TABLE TxEvent (surrogateId bigint AUTO_INCREMENT PRIMARY KEY, serviceName varchar(36) NOT NULL,"
+          + " instanceId varchar(36) NOT NULL, creationTime timestamp NOT NULL, globalTxId varchar(36) NOT NULL, localTxId varchar(36) NOT NULL,"
+          + " parentTxId varchar(36), type varchar(50) NOT NULL, compensationMethod varchar(256) NOT NULL, expiryTime timestamp NOT NULL,"
+          + " retryMethod varchar(256) NOT NULL, retries int NOT NULL, category varchar(36), payloads blob, dedupeKey varchar(128) UNIQUE)");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    inserter.release();
+    if (writer != null) {
+      writer.shutdown();
+    }
+    executor.shutdownNow();
+    keepAlive.close();
+  }
+
+  @Test
+  public void flushesEventOnceQueueIsDrainedWithoutWaitingForFullBatch() throws SQLException {
+    inserter.release();
+    writer = newWriter(8);
+
+    TxEvent event = eventOf("localTxId-1", null);
+    writer.write(event);
+
+    assertThat(event.id(), notNullValue());
+    assertThat(inserter.batchSizes, is(Collections.singletonList(1)));
+    assertThat(count(), is(1));
+  }
+
+  @Test
+  public void batchesEventsQueuedDuringFlushUpToMaxBatchSize() throws Exception {
+    writer = newWriter(3);
+
+    List<TxEvent> events = new ArrayList<>();
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      events.add(eventOf("localTxId-" + i, null));
+    }
+    futures.add(writeAsync(events.get(0)));
+    inserter.awaitEntered();
+    for (TxEvent event : events.subList(1, events.size())) {
+      futures.add(writeAsync(event));
+    }
+    awaitPending(5);
+    inserter.release();
+
+    for (Future<?> future : futures) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    assertThat(inserter.batchSizes, is(Arrays.asList(1, 3, 2)));
+    assertThat(events.stream().map(TxEvent::id).distinct().count(), is(6L));
+    assertThat(fallbackEvents.isEmpty(), is(true));
+    assertThat(count(), is(6));
+  }
+
+  @Test
+  public void failsOnlyRejectedEventOfBatch() throws Exception {
+    inserter.insertOne(eventOf("localTxId-0", "duplicate"));
+    writer = newWriter(8);
+
+    writeBlockingEvent();
+    TxEvent idempotentEvent = eventOf("localTxId-1", "unique");
+    TxEvent duplicateEvent = eventOf("localTxId-2", "duplicate");
+    TxEvent event = eventOf("localTxId-3", null);
+    Future<?> idempotentFuture = writeAsync(idempotentEvent);
+    Future<?> duplicateFuture = writeAsync(duplicateEvent);
+    Future<?> future = writeAsync(event);
+    awaitPending(3);
+    inserter.release();
+
+    idempotentFuture.get(5, TimeUnit.SECONDS);
+    future.get(5, TimeUnit.SECONDS);
+    try {
+      duplicateFuture.get(5, TimeUnit.SECONDS);
+      expectFailing(ExecutionException.class);
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof IllegalStateException, is(true));
+      assertThat(((SQLException) e.getCause().getCause().getCause()).getSQLState().startsWith("23"), is(true));
+    }
+    assertThat(inserter.batchSizes, is(Arrays.asList(1, 3)));
+    assertThat(idempotentEvent.id(), notNullValue());
+    assertThat(event.id(), notNullValue());
+    assertThat(fallbackEvents, is(Collections.singletonList(event)));
+    assertThat(count(), is(4));
+  }
+
+  @Test
+  public void flushesQueuedEventsOnShutdown() throws Exception {
+    writer = newWriter(8);
+
+    List<Future<?>> futures = new ArrayList<>();
+    futures.add(writeBlockingEvent());
+    futures.add(writeAsync(eventOf("localTxId-1", null)));
+    futures.add(writeAsync(eventOf("localTxId-2", null)));
+    awaitPending(2);
+    Future<?> shutdown = executor.submit(writer::shutdown);
+    // the queued events and the shutdown signal.
+    awaitPending(3);
+    inserter.release();
+
+    shutdown.get(5, TimeUnit.SECONDS);
+    for (Future<?> future : futures) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    assertThat(inserter.batchSizes, is(Arrays.asList(1, 2)));
+    assertThat(count(), is(3));
+
+    // the events written after shutdown are written by their callers one by one.
+    TxEvent event = eventOf("localTxId-3", null);
+    writer.write(event);
+    assertThat(inserter.batchSizes, is(Arrays.asList(1, 2)));
+    assertThat(fallbackEvents, is(Collections.singletonList(event)));
+    assertThat(count(), is(4));
+  }
+
+  private TxEventGroupCommitWriter newWriter(int maxBatchSize) {
+    return new TxEventGroupCommitWriter(inserter, maxBatchSize, event -> {
+      fallbackEvents.add(event);
+      inserter.insertOne(event);
+    });
+  }
+
+  // the first event holds the flusher until it's released, the events written meanwhile are queued for the next batch.
+  private Future<?> writeBlockingEvent() throws InterruptedException {
+    Future<?> future = writeAsync(eventOf("localTxId-blocking", null));
+    inserter.awaitEntered();
+    return future;
+  }
+
+  private Future<?> writeAsync(TxEvent event) {
+    return executor.submit(() -> writer.write(event));
+  }
+
+  private void awaitPending(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (writer.pendingCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(writer.pendingCount(), is(count));
+  }
+
+  private int count() throws SQLException {
+    try (Statement statement = keepAlive.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM TxEvent")) {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+  }
+
+  private static TxEvent eventOf(String localTxId, String dedupeKey) {
+    TxEvent event = new TxEvent("service", "instance", "globalTxId", localTxId, null, "TxStartedEvent", "compensate", "", new byte[0]);
+    event.setDedupeKey(dedupeKey);
+    return event;
+  }
+
+  // it records the size of every batch and holds the first batch until it's released.
+  private static class BlockingInserter extends TxEventInserter {
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    BlockingInserter(JdbcDataSource dataSource) {
+      super(dataSource);
+    }
+
+    @Override
+    boolean insert(List<TxEvent> events) {
+      batchSizes.add(events.size());
+      entered.countDown();
+      try {
+        released.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.insert(events);
+    }
+
+    void awaitEntered() throws InterruptedException {
+      assertThat(entered.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    void release() {
+      released.countDown();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static com.seanyinx.github.unit.scaffolding.AssertUtils.expectFailing;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.servicecomb.saga.alpha.core.TxEvent;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TxEventInserterTest {
+  private final JdbcDataSource dataSource = new JdbcDataSource();
+  private final TxEventInserter inserter = new TxEventInserter(dataSource);
+  private Connection keepAlive;
+
+  @Before
+  public void setUp() throws SQLException {
+    dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+    keepAlive = dataSource.getConnection();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    keepAlive.close();
+  }
+
+  @Test
+  public void rejectsDuplicateDedupeKey() throws SQLException {
+    createTable(true);
+    TxEvent event = eventOf("localTxId-1", "globalTxId:localTxId-1:TxStartedEvent");
+
+    assertThat(inserter.insert(Collections.singletonList(event)), is(true));
+    assertThat(event.id(), notNullValue());
+
+    try {
+      inserter.insertOne(eventOf("localTxId-1", "globalTxId:localTxId-1:TxStartedEvent"));
+      expectFailing(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(((SQLException) e.getCause()).getSQLState().startsWith("23"), is(true));
+    }
+    assertThat(inserter.isDedupeKeySupported(), is(true));
+    assertThat(count("SELECT count(*) FROM TxEvent WHERE dedupeKey IS NOT NULL"), is(1));
+  }
+
+  @Test
+  public void savesEventsWithoutDedupeKeysIfColumnIsMissing() throws SQLException {
+    createTable(false);
+
+    assertThat(inserter.insert(Arrays.asList(eventOf("localTxId-1", "globalTxId:localTxId-1:TxStartedEvent"), eventOf("localTxId-2", null))), is(true));
+    inserter.insertOne(eventOf("localTxId-1", "globalTxId:localTxId-1:TxStartedEvent"));
+
+    assertThat(inserter.isDedupeKeySupported(), is(false));
+    assertThat(count("SELECT count(*) FROM TxEvent"), is(3));
+  }
+
+  private void createTable(boolean withDedupeKey) throws SQLException {
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("CREATE TABLE TxEvent (surrogateId bigint AUTO_INCREMENT PRIMARY KEY, serviceName varchar(36) NOT NULL,"
+          + " instanceId varchar(36) NOT NULL, creationTime timestamp NOT NULL, globalTxId varchar(36) NOT NULL, localTxId varchar(36) NOT NULL,"
+          + " parentTxId varchar(36), type varchar(50) NOT NULL, compensationMethod varchar(256) NOT NULL, expiryTime timestamp NOT NULL,"
+          + " retryMethod varchar(256) NOT NULL, retries int NOT NULL, category varchar(36), payloads blob"
+          + (withDedupeKey ? ", dedupeKey varchar(128) UNIQUE)" : ")"));
+    }
+  }
+
+  private int count(String sql) throws SQLException {
+    try (Statement statement = keepAlive.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+  }
+
+  private static TxEvent eventOf(String localTxId, String dedupeKey) {
+    TxEvent event = new TxEvent("service", "instance", "globalTxId", localTxId, null, "TxStartedEvent", "compensate", "", new byte[0]);
+    event.setDedupeKey(dedupeKey);
+    return event;
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server;
+
+import static org.apache.servicecomb.saga.alpha.server.TxEventWatermarkStore.UNENDED_EVENT_WATERMARK;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TxEventWatermarkStoreTest {
+  private final JdbcDataSource dataSource = new JdbcDataSource();
+  private final TxEventWatermarkStore store = new TxEventWatermarkStore(dataSource);
+  private Connection keepAlive;
+
+  @Before
+  public void setUp() throws SQLException {
+    dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+    keepAlive = dataSource.getConnection();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    keepAlive.close();
+  }
+
+  @Test
+  public void persistsLatestWatermark() throws SQLException {
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("CREATE TABLE TxEventWatermark (name varchar(50) PRIMARY KEY, eventId bigint NOT NULL, updateTime timestamp NOT NULL)");
+    }
+    assertThat(store.select(UNENDED_EVENT_WATERMARK), is(0L));
+
+    store.save(UNENDED_EVENT_WATERMARK, 10);
+    store.save(UNENDED_EVENT_WATERMARK, 25);
+
+    assertThat(store.select(UNENDED_EVENT_WATERMARK), is(25L));
+    assertThat(store.isSupported(), is(true));
+  }
+
+  @Test
+  public void persistsNothingIfTableIsMissing() {
+    store.save(UNENDED_EVENT_WATERMARK, 10);
+
+    assertThat(store.select(UNENDED_EVENT_WATERMARK), is(0L));
+    assertThat(store.isSupported(), is(false));
+  }
+}
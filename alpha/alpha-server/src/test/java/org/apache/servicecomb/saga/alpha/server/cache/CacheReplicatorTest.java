@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.alpha.server.cache;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.servicecomb.saga.alpha.core.cache.CacheMutation;
+import org.apache.servicecomb.saga.alpha.core.cache.CacheMutationBatch;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+public class CacheReplicatorTest {
+  private static final String ORIGIN = "10.0.0.2:8090#1";
+
+  private final RestTemplate restTemplate = mock(RestTemplate.class);
+  private final List<String> appliedKeys = new ArrayList<>();
+  private final List<String> fullySynchronizedHosts = new ArrayList<>();
+
+  private final CacheReplicator replicator = new CacheReplicator("10.0.0.1:8090", restTemplate, () -> singletonList("10.0.0.2:8090"),
+      mutation -> appliedKeys.add(mutation.getKey()), fullySynchronizedHosts::add, 3, 100, 100);
+
+  @After
+  public void tearDown() {
+    replicator.shutdown();
+  }
+
+  @Test
+  public void appliesBatchesOfOriginInSequence() {
+    replicator.receive(batchOf(1, 2));
+    // the duplicate one is ignored.
+    replicator.receive(batchOf(2, 3));
+
+    assertThat(appliedKeys, contains("key-1", "key-2", "key-3"));
+    assertThat(replicator.getAppliedSequences().get(ORIGIN), is(3L));
+  }
+
+  @Test
+  public void catchesUpMissingMutationsFromLogOfOrigin() {
+    when(restTemplate.getForObject("http://10.0.0.2:8090/fetchCacheMutations?since=1", CacheMutationBatch.class)).thenReturn(batchOf(2, 3));
+
+    replicator.receive(batchOf(1));
+    replicator.receive(batchOf(4));
+
+    assertThat(appliedKeys, contains("key-1", "key-2", "key-3", "key-4"));
+    assertThat(fullySynchronizedHosts.isEmpty(), is(true));
+  }
+
+  @Test
+  public void catchesUpLostLastBatchByHeartbeat() {
+    when(restTemplate.getForObject("http://10.0.0.2:8090/fetchCacheMutations?since=1", CacheMutationBatch.class)).thenReturn(batchOf(2));
+
+    replicator.receive(batchOf(1));
+    // the batch of sequence 2 was lost, and the origin has been idle since then.
+    replicator.receive(CacheMutationBatch.heartbeat(ORIGIN, 2));
+
+    assertThat(appliedKeys, contains("key-1", "key-2"));
+    assertThat(replicator.getAppliedSequences().get(ORIGIN), is(2L));
+
+    // nothing is missing.
+    replicator.receive(CacheMutationBatch.heartbeat(ORIGIN, 2));
+    verify(restTemplate, times(1)).getForObject(anyString(), eq(CacheMutationBatch.class));
+  }
+
+  @Test
+  public void synchronizesWholeCacheIfLogOfOriginWasTruncated() {
+    when(restTemplate.getForObject("http://10.0.0.2:8090/fetchCacheMutations?since=1", CacheMutationBatch.class))
+        .thenReturn(CacheMutationBatch.truncated(ORIGIN));
+
+    replicator.receive(batchOf(1));
+    replicator.receive(batchOf(9));
+
+    assertThat(fullySynchronizedHosts, contains("10.0.0.2:8090"));
+    assertThat(appliedKeys, contains("key-1", "key-9"));
+  }
+
+  @Test
+  public void answersMutationsSinceSequenceUntilTruncated() {
+    for (int i = 1; i <= 4; i++) {
+      replicator.replicate("/putTxAbortStatusCache", "key-" + i, "true", 2);
+    }
+
+    CacheMutationBatch batch = replicator.mutationsSince(2);
+    assertThat(batch.isTruncated(), is(false));
+    assertThat(batch.getFromSequence(), is(3L));
+    assertThat(batch.getToSequence(), is(4L));
+    // the log keeps 3 mutations only, the first one has been dropped.
+    assertThat(replicator.mutationsSince(0).isTruncated(), is(true));
+  }
+
+  @Test
+  public void sendsMutationsToPeersAsynchronously() {
+    replicator.start();
+    replicator.replicate("/putTxAbortStatusCache", "key-1", "true", 2);
+
+    verify(restTemplate, timeout(1000)).postForObject(eq("http://10.0.0.2:8090/replicateCache"), any(CacheMutationBatch.class), eq(Boolean.class));
+  }
+
+  @Test
+  public void sendsLatestSequenceAsHeartbeatWhileIdle() {
+    replicator.start();
+    replicator.replicate("/putTxAbortStatusCache", "key-1", "true", 2);
+
+    verify(restTemplate, timeout(1000)).postForObject(eq("http://10.0.0.2:8090/replicateCache"),
+        argThat((CacheMutationBatch batch) -> batch.getMutations().isEmpty() && batch.getToSequence() == 1), eq(Boolean.class));
+  }
+
+  private CacheMutationBatch batchOf(long... sequences) {
+    List<CacheMutation> mutations = new ArrayList<>();
+    Arrays.stream(sequences).forEach(sequence -> mutations.add(new CacheMutation(sequence, "/putTxAbortStatusCache", "key-" + sequence, "true", 2)));
+    return new CacheMutationBatch(ORIGIN, mutations);
+  }
+}
@@ -28,7 +28,8 @@ CREATE TABLE IF NOT EXISTS TxEvent (
   expiryTime TIMESTAMP NOT NULL,
   retryMethod varchar(256) NOT NULL,
   retries int DEFAULT 0 NOT NULL,
-  payloads blob
+  payloads blob,
+  dedupeKey varchar(128) DEFAULT NULL UNIQUE
 );
 
 CREATE TABLE IF NOT EXISTS Command (
@@ -43,7 +44,9 @@ CREATE TABLE IF NOT EXISTS Command (
   payloads blob,
   status varchar(12),
   lastModified TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
-  version bigint NOT NULL
+  version bigint NOT NULL,
+  claimToken varchar(36) DEFAULT NULL,
+  claimedTime TIMESTAMP DEFAULT NULL
 );
 
 CREATE TABLE IF NOT EXISTS TxTimeout (
@@ -59,3 +62,14 @@ CREATE TABLE IF NOT EXISTS TxTimeout (
   status varchar(12),
   version bigint NOT NULL
 );
+
+CREATE TABLE IF NOT EXISTS CompensationRetry (
+  surrogateId bigint GENERATED BY DEFAULT AS IDENTITY(START WITH 1, INCREMENT BY 1) PRIMARY KEY,
+  serviceName varchar(36) NOT NULL,
+  instanceId varchar(36) NOT NULL,
+  globalTxId varchar(36) NOT NULL,
+  localTxId varchar(36) NOT NULL,
+  attempts int DEFAULT 0 NOT NULL,
+  nextAttemptTime TIMESTAMP DEFAULT NULL,
+  lastError varchar(500)
+);
@@ -17,10 +17,12 @@ class AutoCompensableInterceptor implements EventAwareInterceptor {
     private static final Logger LOG = LoggerFactory.getLogger(AutoCompensableInterceptor.class);
     private final OmegaContext context;
     private final MessageSender sender;
+    private final boolean asyncSendEnabled;
 
     AutoCompensableInterceptor(OmegaContext context, MessageSender sender) {
         this.sender = sender;
         this.context = context;
+        this.asyncSendEnabled = AsyncTxEventSender.isEnabled();
     }
 
     @Override
@@ -35,15 +37,23 @@ class AutoCompensableInterceptor implements EventAwareInterceptor {
 
     @Override
     public void postIntercept(String parentTxId, String compensationMethod) {
-        sender.send(new TxEndedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category()));
+        send(new TxEndedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category()));
     }
 
     @Override
     public void onError(String parentTxId, String compensationMethod, Throwable throwable) {
-        sender.send(new TxAbortedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category(),
+        send(new TxAbortedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category(),
                 throwable));
     }
 
+    private void send(TxEvent event) {
+        if (asyncSendEnabled) {
+            AsyncTxEventSender.send(sender, event);
+        } else {
+            sender.send(event);
+        }
+    }
+
     public Set<String> fetchLocalTxIdOfEndedGlobalTx(Set<String> localTxIdSet) {
         return sender.send(localTxIdSet);
     }
@@ -30,18 +30,32 @@ public class AlphaClusterConfig {
 
   private String certChain;
 
+  // 'fastest' picks the alpha server with the lowest last latency, 'least-loaded' picks by power of two choices over the load.
+  private String loadBalanceStrategy;
+
   public AlphaClusterConfig(List<String> addresses,
       boolean enableSSL,
       boolean enableMutualAuth,
       String cert,
       String key,
       String certChain) {
+    this(addresses, enableSSL, enableMutualAuth, cert, key, certChain, "fastest");
+  }
+
+  public AlphaClusterConfig(List<String> addresses,
+      boolean enableSSL,
+      boolean enableMutualAuth,
+      String cert,
+      String key,
+      String certChain,
+      String loadBalanceStrategy) {
     this.addresses = addresses;
     this.enableMutualAuth = enableMutualAuth;
     this.enableSSL = enableSSL;
     this.cert = cert;
     this.key = key;
     this.certChain = certChain;
+    this.loadBalanceStrategy = loadBalanceStrategy;
   }
 
   public List<String> getAddresses() {
@@ -67,4 +81,8 @@ public class AlphaClusterConfig {
   public String getCertChain() {
     return certChain;
   }
+
+  public String getLoadBalanceStrategy() {
+    return loadBalanceStrategy;
+  }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent.Builder;
+
+/**
+ * The string dictionary of one connection to alpha. The strings of GrpcTxEvent which are constant per instance or per method,
+ * such as the service name and the compensation method, are sent as small refs after alpha accepted the dictionary in 'OnConnected'.
+ * An entry is defined in every event which references it until alpha acknowledged one of them, so the events may be sent concurrently.
+ * A new dictionary is declared on every connecting, because alpha keeps it for the connection only.
+ */
+class EventDictionary {
+  // the same limit as alpha, the strings beyond it are sent as text.
+  static final int MAX_ENTRIES = 1024;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final boolean enabled;
+  private volatile Table table = new Table(0);
+  // the events built by the previous table may be expanded after reconnecting.
+  private volatile Table previousTable = table;
+
+  EventDictionary(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * To start a new dictionary for a new connection, it's not used until alpha accepts it.
+   *
+   * @return the id of the new dictionary, 0 if it's disabled
+   */
+  long reset() {
+    if (!enabled) {
+      return 0;
+    }
+    long id;
+    do {
+      id = RANDOM.nextLong();
+    } while (id == 0);
+    previousTable = table;
+    table = new Table(id);
+    return id;
+  }
+
+  long id() {
+    return table.id;
+  }
+
+  void accept(long id) {
+    Table current = table;
+    if (id != 0 && current.id == id) {
+      current.accepted = true;
+    }
+  }
+
+  // alpha lost the dictionary, so the strings are sent as text until connecting again.
+  void invalidate(long id) {
+    Table current = table;
+    if (current.id == id) {
+      current.accepted = false;
+    }
+  }
+
+  GrpcTxEvent encode(Builder builder) {
+    Table current = table;
+    if (!current.accepted) {
+      return builder.build();
+    }
+
+    Map<Integer, String> definitions = new HashMap<>();
+    int ref = current.refOf(builder.getServiceName(), definitions);
+    if (ref > 0) {
+      builder.clearServiceName().setServiceNameRef(ref);
+    }
+    ref = current.refOf(builder.getInstanceId(), definitions);
+    if (ref > 0) {
+      builder.clearInstanceId().setInstanceIdRef(ref);
+    }
+    ref = current.refOf(builder.getType(), definitions);
+    if (ref > 0) {
+      builder.clearType().setTypeRef(ref);
+    }
+    ref = current.refOf(builder.getCompensationMethod(), definitions);
+    if (ref > 0) {
+      builder.clearCompensationMethod().setCompensationMethodRef(ref);
+    }
+    ref = current.refOf(builder.getCategory(), definitions);
+    if (ref > 0) {
+      builder.clearCategory().setCategoryRef(ref);
+    }
+    ref = current.refOf(builder.getRetryMethod(), definitions);
+    if (ref > 0) {
+      builder.clearRetryMethod().setRetryMethodRef(ref);
+    }
+    return builder.setDictionaryId(current.id).putAllDictionaryEntries(definitions).build();
+  }
+
+  // alpha saved the entries defined by the event, so the following events reference them only.
+  void acknowledge(GrpcTxEvent event) {
+    Table current = table;
+    if (event.getDictionaryId() == 0 || event.getDictionaryId() != current.id) {
+      return;
+    }
+    for (Map.Entry<Integer, String> definition : event.getDictionaryEntriesMap().entrySet()) {
+      Entry entry = current.entries.get(definition.getValue());
+      if (entry != null && entry.index == definition.getKey()) {
+        entry.acknowledged = true;
+      }
+    }
+  }
+
+  /**
+   * @return the event with the text of all strings rather than the refs
+   */
+  GrpcTxEvent expand(GrpcTxEvent event) {
+    if (event.getDictionaryId() == 0) {
+      return event;
+    }
+    Table owner = table.id == event.getDictionaryId() ? table : previousTable;
+    if (owner.id != event.getDictionaryId()) {
+      throw new IllegalStateException("Unknown string dictionary " + event.getDictionaryId());
+    }
+    Builder builder = event.toBuilder().clearDictionaryId().clearDictionaryEntries();
+    if (event.getServiceNameRef() > 0) {
+      builder.setServiceName(owner.values.get(event.getServiceNameRef())).clearServiceNameRef();
+    }
+    if (event.getInstanceIdRef() > 0) {
+      builder.setInstanceId(owner.values.get(event.getInstanceIdRef())).clearInstanceIdRef();
+    }
+    if (event.getTypeRef() > 0) {
+      builder.setType(owner.values.get(event.getTypeRef())).clearTypeRef();
+    }
+    if (event.getCompensationMethodRef() > 0) {
+      builder.setCompensationMethod(owner.values.get(event.getCompensationMethodRef())).clearCompensationMethodRef();
+    }
+    if (event.getCategoryRef() > 0) {
+      builder.setCategory(owner.values.get(event.getCategoryRef())).clearCategoryRef();
+    }
+    if (event.getRetryMethodRef() > 0) {
+      builder.setRetryMethod(owner.values.get(event.getRetryMethodRef())).clearRetryMethodRef();
+    }
+    return builder.build();
+  }
+
+  private static final class Table {
+    private final long id;
+    private volatile boolean accepted;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> values = new AtomicReferenceArray<>(MAX_ENTRIES);
+    // 0 means the text is sent, so the refs start from 1.
+    private final AtomicInteger nextIndex = new AtomicInteger(1);
+
+    private Table(long id) {
+      this.id = id;
+    }
+
+    private int refOf(String text, Map<Integer, String> definitions) {
+      if (text.isEmpty()) {
+        return 0;
+      }
+      Entry entry = entries.get(text);
+      if (entry == null) {
+        if (nextIndex.get() >= MAX_ENTRIES) {
+          return 0;
+        }
+        entry = entries.computeIfAbsent(text, key -> {
+          int index = nextIndex.getAndIncrement();
+          if (index >= MAX_ENTRIES) {
+            return null;
+          }
+          values.set(index, key);
+          return new Entry(index);
+        });
+        if (entry == null) {
+          return 0;
+        }
+      }
+      if (!entry.acknowledged) {
+        definitions.put(entry.index, text);
+      }
+      return entry.index;
+    }
+  }
+
+  private static final class Entry {
+    private final int index;
+    private volatile boolean acknowledged;
+
+    private Entry(int index) {
+      this.index = index;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
+import org.apache.servicecomb.saga.omega.transaction.TxEvent;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The policy of hedged TxEvents. If an alpha server has not answered an event within the given percentile of the recent latencies,
+ * the same event is sent to another alpha server, and the first answer wins.
+ * Only the events which are sent once for their (globalTxId, localTxId, type) are hedged, they are marked idempotent, so alpha saves them once.
+ * The events with retries are never hedged, because their TxStartedEvents and TxAbortedEvents are sent once per attempt.
+ */
+class EventHedging {
+  private static final int WINDOW_SIZE = 1024;
+  // no event is hedged before there are enough latencies to know the percentile.
+  private static final int MIN_SAMPLES = 100;
+  private static final int RECOMPUTE_INTERVAL = 64;
+
+  private final boolean enabled;
+  private final Set<String> eventTypes;
+  private final int percentile;
+  private final long minDelayNanos;
+
+  private final long[] latencies = new long[WINDOW_SIZE];
+  private int sampleCount;
+  private int nextSample;
+  private int samplesSinceRecompute;
+  private volatile long delayNanos = Long.MAX_VALUE;
+
+  EventHedging(boolean enabled, Collection<String> eventTypes, int percentile, long minDelayMillis) {
+    this.enabled = enabled;
+    this.eventTypes = new HashSet<>();
+    for (String eventType : eventTypes) {
+      if (!eventType.trim().isEmpty()) {
+        this.eventTypes.add(eventType.trim());
+      }
+    }
+    this.percentile = Math.max(1, Math.min(percentile, 100));
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+  }
+
+  static EventHedging fromConfig() {
+    return new EventHedging(
+        TxleStaticConfig.getBooleanConfig("txle.transaction.hedge.enabled", false),
+        Arrays.asList(TxleStaticConfig.getStringConfig("txle.transaction.hedge.event-types", "SagaStartedEvent,TxStartedEvent,TxEndedEvent,SagaEndedEvent").split(",")),
+        TxleStaticConfig.getIntegerConfig("txle.transaction.hedge.percentile", 95),
+        TxleStaticConfig.getIntegerConfig("txle.transaction.hedge.min-delay", 5));
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  boolean isHedgeable(TxEvent event) {
+    return enabled && event.retries() == 0 && eventTypes.contains(event.type().name());
+  }
+
+  /**
+   * @return the delay before sending the hedged copy, Long.MAX_VALUE if it's not known yet
+   */
+  long delayNanos() {
+    return delayNanos;
+  }
+
+  synchronized void recordLatency(long latencyNanos) {
+    latencies[nextSample] = latencyNanos;
+    nextSample = (nextSample + 1) % WINDOW_SIZE;
+    if (sampleCount < WINDOW_SIZE) {
+      sampleCount++;
+    }
+    if (sampleCount >= MIN_SAMPLES && (delayNanos == Long.MAX_VALUE || ++samplesSinceRecompute >= RECOMPUTE_INTERVAL)) {
+      samplesSinceRecompute = 0;
+      long[] window = Arrays.copyOf(latencies, sampleCount);
+      Arrays.sort(window);
+      int index = (int) Math.ceil(window.length * percentile / 100.0) - 1;
+      delayNanos = Math.max(window[Math.max(0, index)], minDelayNanos);
+    }
+  }
+}
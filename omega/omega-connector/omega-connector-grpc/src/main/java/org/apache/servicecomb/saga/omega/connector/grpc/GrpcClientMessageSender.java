@@ -20,7 +20,11 @@
 package org.apache.servicecomb.saga.omega.connector.grpc;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.apache.servicecomb.saga.common.PayloadCodec;
 import org.apache.servicecomb.saga.common.TxleConstants;
 import org.apache.servicecomb.saga.omega.connector.grpc.LoadBalancedClusterMessageSender.ErrorHandlerFactory;
 import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
@@ -39,6 +43,11 @@ import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class GrpcClientMessageSender implements MessageSender {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -53,6 +62,24 @@ public class GrpcClientMessageSender implements MessageSender {
   private final GrpcCompensateStreamObserver compensateStreamObserver;
   private final GrpcServiceConfig serviceConfig;
 
+  // null means that TxEvents are sent by the unary rpc 'OnTxEvent' only.
+  private final GrpcTxEventStreamSender eventStreamSender;
+
+  // null means that configs are read from alpha server every time.
+  private final GrpcConfigSubscriber configSubscriber;
+
+  private final TxResumeWaiter resumeWaiter = new TxResumeWaiter();
+  // the blocking rpc of 'sendAsync' runs here, so neither the callers nor the common pool are held by it.
+  private final ExecutorService asyncSendExecutor;
+  private final long pauseCheckIntervalMillis;
+  private final EventHedging eventHedging;
+
+  // the payloads larger than the threshold are compressed after alpha accepted the codec, a negative threshold disables it.
+  private final int payloadCompressionThreshold;
+  private volatile boolean payloadCompressionAccepted;
+
+  private final EventDictionary eventDictionary;
+
   public GrpcClientMessageSender(
       String address,
       ManagedChannel channel,
@@ -61,6 +88,18 @@ public class GrpcClientMessageSender implements MessageSender {
       ServiceConfig serviceConfig,
       ErrorHandlerFactory errorHandlerFactory,
       MessageHandler handler) {
+    this(address, channel, serializer, deserializer, serviceConfig, errorHandlerFactory, handler, false);
+  }
+
+  public GrpcClientMessageSender(
+      String address,
+      ManagedChannel channel,
+      MessageSerializer serializer,
+      MessageDeserializer deserializer,
+      ServiceConfig serviceConfig,
+      ErrorHandlerFactory errorHandlerFactory,
+      MessageHandler handler,
+      boolean eventStreamEnabled) {
     this.target = address;
     this.asyncEventService = TxEventServiceGrpc.newStub(channel);
     //.withDeadlineAfter(20, TimeUnit.SECONDS);
@@ -69,23 +108,57 @@ public class GrpcClientMessageSender implements MessageSender {
     this.deserializer = deserializer;
 
     this.compensateStreamObserver =
-        new GrpcCompensateStreamObserver(handler, errorHandlerFactory.getHandler(this), deserializer);
+        new GrpcCompensateStreamObserver(handler, errorHandlerFactory.getHandler(this), deserializer, resumeWaiter::resume,
+            codec -> payloadCompressionAccepted = PayloadCodec.DEFLATE.equals(codec), this::acceptDictionary);
+    this.payloadCompressionThreshold = TxleStaticConfig.getBooleanConfig("txle.transaction.payload-compression.enabled", false)
+        ? TxleStaticConfig.getIntegerConfig("txle.transaction.payload-compression.threshold", 4096) : -1;
     this.serviceConfig = serviceConfig(serviceConfig.serviceName(), serviceConfig.instanceId(), "");
+    this.eventStreamSender = eventStreamEnabled ? new GrpcTxEventStreamSender(this.asyncEventService,
+        TxleStaticConfig.getIntegerConfig("txle.transaction.event-stream.ack-timeout", 30)) : null;
+    this.configSubscriber = TxleStaticConfig.getBooleanConfig("txle.transaction.config-subscription.enabled", true)
+        ? new GrpcConfigSubscriber(this.asyncEventService, serviceConfig.serviceName(), serviceConfig.instanceId()) : null;
+    this.pauseCheckIntervalMillis = TxleStaticConfig.getIntegerConfig("txle.transaction.pause-check-interval", 60) * 1000L;
+    this.eventHedging = EventHedging.fromConfig();
+    this.eventDictionary = new EventDictionary(TxleStaticConfig.getBooleanConfig("txle.transaction.event-dictionary.enabled", true));
+    this.asyncSendExecutor = newAsyncSendExecutor(TxleStaticConfig.getIntegerConfig("txle.transaction.async-send.threads", 4));
+  }
+
+  private static ExecutorService newAsyncSendExecutor(int threads) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+      Thread thread = new Thread(r, "txle-async-event-sender");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   @Override
   public void onConnected() {
-    asyncEventService.onConnected(serviceConfig, compensateStreamObserver);
+    // it may be another alpha server after reconnecting, so the payloads are not compressed until it accepts the codec again.
+    payloadCompressionAccepted = false;
+    // alpha keeps the dictionary for one connection, so a new one is declared on every connecting.
+    asyncEventService.onConnected(serviceConfig.toBuilder().setDictionaryId(eventDictionary.reset()).build(), compensateStreamObserver);
+    if (configSubscriber != null) {
+      configSubscriber.subscribe();
+    }
   }
 
   @Override
   public void onDisconnected() {
-    blockingEventService.onDisconnected(serviceConfig);
+    blockingEventService.onDisconnected(serviceConfig.toBuilder().setDictionaryId(eventDictionary.id()).build());
   }
 
   @Override
   public void close() {
-    // just do nothing here
+    if (eventStreamSender != null) {
+      eventStreamSender.close();
+    }
+    if (configSubscriber != null) {
+      configSubscriber.close();
+    }
+    resumeWaiter.close();
+    asyncSendExecutor.shutdown();
   }
 
   @Override
@@ -95,6 +168,44 @@ public class GrpcClientMessageSender implements MessageSender {
 
   @Override
   public AlphaResponse send(TxEvent event) {
+    setContextServiceConfig();
+
+//    blockingEventService.withDeadlineAfter(5, TimeUnit.SECONDS);// TODO set timeout for current communication
+    // the event is converted once, and the same one is sent again while the global transaction is paused.
+    GrpcTxEvent grpcTxEvent = convertEvent(event);
+    long sentNanos = System.nanoTime();
+    GrpcAck grpcAck = sendTxEvent(grpcTxEvent);
+    // It's a manual operation to pause transaction, so it waits for the resume notification from alpha, and checks again at the interval in case of missing it.
+    while (grpcAck.getPaused()) {
+      try {
+        resumeWaiter.await(event.globalTxId(), sentNanos, pauseCheckIntervalMillis);
+      } catch (InterruptedException e) {
+      }
+      sentNanos = System.nanoTime();
+      grpcAck = sendTxEvent(grpcTxEvent);
+    }
+
+    // To append the pause status for global transaction By Gannalyo
+    return new AlphaResponse(grpcAck.getAborted(), grpcAck.getPaused(), grpcAck.getIsEnabledTx());
+  }
+
+  @Override
+  public CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+    setContextServiceConfig();
+    return sendUntilResumed(event.globalTxId(), convertEvent(event))
+        .thenApply(grpcAck -> new AlphaResponse(grpcAck.getAborted(), grpcAck.getPaused(), grpcAck.getIsEnabledTx()));
+  }
+
+  // no thread is held while the global transaction is paused, the event is sent again after resuming or at the interval.
+  private CompletableFuture<GrpcAck> sendUntilResumed(String globalTxId, GrpcTxEvent grpcTxEvent) {
+    long sentNanos = System.nanoTime();
+    return CompletableFuture.supplyAsync(() -> sendTxEvent(grpcTxEvent), asyncSendExecutor)
+        .thenCompose(grpcAck -> grpcAck.getPaused()
+            ? resumeWaiter.resumption(globalTxId, sentNanos, pauseCheckIntervalMillis).thenCompose(resumed -> sendUntilResumed(globalTxId, grpcTxEvent))
+            : CompletableFuture.completedFuture(grpcAck));
+  }
+
+  private void setContextServiceConfig() {
     try {
       // To set serviceName to OmegaContextServiceConfig.
       OmegaContextServiceConfig context = CurrentThreadOmegaContext.getContextFromCurThread();
@@ -104,28 +215,45 @@ public class GrpcClientMessageSender implements MessageSender {
       }
     } catch (Exception e) {
     }
+  }
 
-//    blockingEventService.withDeadlineAfter(5, TimeUnit.SECONDS);// TODO set timeout for current communication
-    GrpcAck grpcAck = blockingEventService.onTxEvent(convertEvent(event));
-    // It's a manual operation to pause transaction, so it can accept to pause for one minute.
-    while (grpcAck.getPaused()) {
+  private void acceptDictionary(long dictionaryId) {
+    eventDictionary.accept(dictionaryId);
+  }
+
+  private GrpcAck sendTxEvent(GrpcTxEvent grpcTxEvent) {
+    GrpcAck grpcAck = sendEncodedTxEvent(grpcTxEvent);
+    if (grpcAck.getDictionaryMissed()) {
+      // alpha lost the dictionary, e.g. it was restarted, so the strings are sent as text until connecting again.
+      GrpcTxEvent expandedEvent = eventDictionary.expand(grpcTxEvent);
+      eventDictionary.invalidate(grpcTxEvent.getDictionaryId());
+      return sendEncodedTxEvent(expandedEvent);
+    }
+    eventDictionary.acknowledge(grpcTxEvent);
+    return grpcAck;
+  }
+
+  // To send event by the stream first, and fall back to the unary rpc in case of the alpha server doesn't support the stream.
+  private GrpcAck sendEncodedTxEvent(GrpcTxEvent grpcTxEvent) {
+    if (eventStreamSender != null && eventStreamSender.isSupported()) {
       try {
-        Thread.sleep(TxleStaticConfig.getIntegerConfig("txle.transaction.pause-check-interval", 60) * 1000);
-      } catch (InterruptedException e) {
-      }
-      grpcAck = blockingEventService.onTxEvent(convertEvent(event));
-      if (!grpcAck.getPaused()) {
-        break;
+        return eventStreamSender.send(grpcTxEvent);
+      } catch (StatusRuntimeException e) {
+        if (e.getStatus().getCode() != Status.Code.UNIMPLEMENTED) {
+          throw e;
+        }
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException("Failed to send TxEvent by stream to " + target, e);
       }
     }
-
-    // To append the pause status for global transaction By Gannalyo
-    return new AlphaResponse(grpcAck.getAborted(), grpcAck.getPaused(), grpcAck.getIsEnabledTx());
+    return blockingEventService.onTxEvent(grpcTxEvent);
   }
 
   @Override
   public Set<String> send(Set<String> localTxIdSet) {
-    ByteString payloads = ByteString.copyFrom(serializer.serialize(localTxIdSet.toArray()));
+    ByteString payloads = UnsafeByteOperations.unsafeWrap(serializer.serialize(localTxIdSet.toArray()));
 
     Builder builder = GrpcTxEvent.newBuilder().setCategory(TxleConstants.SPECIAL_KEY).setPayloads(payloads);
     GrpcTxEvent grpcTxEvent = builder.build();
@@ -180,11 +308,21 @@ public class GrpcClientMessageSender implements MessageSender {
     if (category == null) {
         category = "";
     }
+    // the subscribed configs are read locally, it saves a round trip for the saga start and the error paths.
+    if (configSubscriber != null) {
+      Boolean status = configSubscriber.readConfig(type, category);
+      if (status != null) {
+        return GrpcConfigAck.newBuilder().setStatus(status).build();
+      }
+    }
     return blockingEventService.onReadConfig(GrpcConfig.newBuilder().setInstanceId(serviceConfig.getInstanceId()).setServiceName(serviceConfig.getServiceName()).setCategory(category).setType(type).build());
   }
 
   private GrpcTxEvent convertEvent(TxEvent event) {
-    ByteString payloads = ByteString.copyFrom(serializer.serialize(event.payloads()));
+    // the serialized bytes are not modified afterwards, so they are wrapped rather than copied.
+    byte[] serialized = serializer.serialize(event.payloads());
+    byte[] compressed = payloadCompressionAccepted ? PayloadCodec.compress(serialized, payloadCompressionThreshold) : serialized;
+    ByteString payloads = UnsafeByteOperations.unsafeWrap(compressed);
 
     Builder builder = GrpcTxEvent.newBuilder()
         .setServiceName(serviceConfig.getServiceName())
@@ -199,9 +337,15 @@ public class GrpcClientMessageSender implements MessageSender {
         .setRetryMethod(event.retryMethod() == null ? "" : event.retryMethod())
         .setRetries(event.retries())
         .setCategory(event.category())
-        .setPayloads(payloads);
+        .setPayloads(payloads)
+        // the hedgeable events may be received by two alpha servers, so alpha has to save them once.
+        .setIdempotent(eventHedging.isHedgeable(event));
+    if (compressed != serialized) {
+      builder.setPayloadCodec(PayloadCodec.DEFLATE);
+    }
 
-    return builder.build();
+    // the strings which are constant per instance or per method are sent as refs of the dictionary after alpha accepted it.
+    return eventDictionary.encode(builder);
   }
 
   private GrpcServiceConfig serviceConfig(String serviceName, String instanceId, String category) {
@@ -209,6 +353,9 @@ public class GrpcClientMessageSender implements MessageSender {
         .setServiceName(serviceName)
         .setInstanceId(instanceId)
         .setCategory(category)
+        .setResumeNotification(true)
+        .setPayloadCodec(payloadCompressionThreshold < 0 ? "" : PayloadCodec.DEFLATE)
+        .setBatchCompensation(true)
         .build();
   }
 }
@@ -16,7 +16,10 @@
 package org.apache.servicecomb.saga.omega.connector.grpc;
 
 import java.lang.invoke.MethodHandles;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
+import org.apache.servicecomb.saga.common.PayloadCodec;
 import org.apache.servicecomb.saga.omega.transaction.MessageDeserializer;
 import org.apache.servicecomb.saga.omega.transaction.MessageHandler;
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcCompensateCommand;
@@ -32,15 +35,69 @@ class GrpcCompensateStreamObserver implements StreamObserver<GrpcCompensateComma
   private final MessageHandler messageHandler;
   private final Runnable errorHandler;
   private final MessageDeserializer deserializer;
+  private final Consumer<String> resumeHandler;
+  private final Consumer<String> payloadCodecHandler;
+  private final LongConsumer dictionaryHandler;
 
   GrpcCompensateStreamObserver(MessageHandler messageHandler, Runnable errorHandler, MessageDeserializer deserializer) {
+    this(messageHandler, errorHandler, deserializer, globalTxId -> { });
+  }
+
+  GrpcCompensateStreamObserver(MessageHandler messageHandler, Runnable errorHandler, MessageDeserializer deserializer, Consumer<String> resumeHandler) {
+    this(messageHandler, errorHandler, deserializer, resumeHandler, codec -> { });
+  }
+
+  GrpcCompensateStreamObserver(MessageHandler messageHandler, Runnable errorHandler, MessageDeserializer deserializer,
+      Consumer<String> resumeHandler, Consumer<String> payloadCodecHandler) {
+    this(messageHandler, errorHandler, deserializer, resumeHandler, payloadCodecHandler, dictionaryId -> { });
+  }
+
+  GrpcCompensateStreamObserver(MessageHandler messageHandler, Runnable errorHandler, MessageDeserializer deserializer,
+      Consumer<String> resumeHandler, Consumer<String> payloadCodecHandler, LongConsumer dictionaryHandler) {
     this.messageHandler = messageHandler;
     this.errorHandler = errorHandler;
     this.deserializer = deserializer;
+    this.resumeHandler = resumeHandler;
+    this.payloadCodecHandler = payloadCodecHandler;
+    this.dictionaryHandler = dictionaryHandler;
   }
 
   @Override
   public void onNext(GrpcCompensateCommand command) {
+    if (command.getResumed()) {
+      LOG.info("Received resume notification, global tx id: [{}].", command.getGlobalTxId());
+      resumeHandler.accept(command.getGlobalTxId());
+      return;
+    }
+    if (!command.getAcceptedPayloadCodec().isEmpty()) {
+      LOG.info("Alpha accepted payload codec [{}].", command.getAcceptedPayloadCodec());
+      payloadCodecHandler.accept(command.getAcceptedPayloadCodec());
+      return;
+    }
+    if (command.getAcceptedDictionaryId() != 0) {
+      LOG.info("Alpha accepted string dictionary [{}].", command.getAcceptedDictionaryId());
+      dictionaryHandler.accept(command.getAcceptedDictionaryId());
+      return;
+    }
+
+    if (command.getCompensationsCount() > 0) {
+      LOG.info("Received [{}] batched compensate commands, global tx id: [{}].", command.getCompensationsCount(), command.getGlobalTxId());
+      // the batch is in the order of execution, and a failed compensation does not stop the others, the same as the separate commands.
+      for (GrpcCompensateCommand compensation : command.getCompensationsList()) {
+        try {
+          compensate(compensation);
+        } catch (Exception e) {
+          LOG.error("Failed to execute batched compensate command, global tx id: {}, local tx id: {}.",
+              compensation.getGlobalTxId(), compensation.getLocalTxId(), e);
+        }
+      }
+      return;
+    }
+
+    compensate(command);
+  }
+
+  private void compensate(GrpcCompensateCommand command) {
     LOG.error("Received compensate command, global tx id: {}, local tx id: {}, compensation method: {}",
         command.getGlobalTxId(), command.getLocalTxId(), command.getCompensationMethod());
 
@@ -50,7 +107,12 @@ class GrpcCompensateStreamObserver implements StreamObserver<GrpcCompensateComma
         command.getLocalTxId(),
         command.getParentTxId().isEmpty() ? null : command.getParentTxId(),
         command.getCompensationMethod(),
-        deserializer.deserialize(command.getPayloads().toByteArray()));
+        deserializer.deserialize(payloadsOf(command)));
+  }
+
+  // the compressed payloads are self-describing, so they are recognized even if an old alpha server sends them back without the codec.
+  private byte[] payloadsOf(GrpcCompensateCommand command) {
+    return PayloadCodec.decompress(command.getPayloads().toByteArray());
   }
 
   @Override
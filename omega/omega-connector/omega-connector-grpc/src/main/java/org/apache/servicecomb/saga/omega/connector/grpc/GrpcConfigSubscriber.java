@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfig;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigDecision;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigSnapshot;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the client configs of current instance locally by the server-streaming rpc 'OnSubscribeConfig'.
+ * Alpha server pushes a snapshot on subscribing and on every change, so the configs are read without a round trip.
+ * Nothing is returned while there is no snapshot, then the caller should read the config from server.
+ */
+class GrpcConfigSubscriber {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final long RESUBSCRIBE_INTERVAL_MILLIS = 5000;
+
+  private final TxEventServiceStub asyncEventService;
+  private final GrpcConfig subscription;
+
+  private volatile ConfigStream currentStream;
+  // it will be false if the alpha server does not support the subscription, then it's no need to try again.
+  private volatile boolean supported = true;
+  private volatile long lastSubscribeMillis;
+
+  GrpcConfigSubscriber(TxEventServiceStub asyncEventService, String serviceName, String instanceId) {
+    this.asyncEventService = asyncEventService;
+    this.subscription = GrpcConfig.newBuilder().setServiceName(serviceName).setInstanceId(instanceId).setCategory("").build();
+  }
+
+  boolean isSupported() {
+    return supported;
+  }
+
+  synchronized void subscribe() {
+    if (!supported) {
+      return;
+    }
+    close();
+    lastSubscribeMillis = System.currentTimeMillis();
+    ConfigStream stream = new ConfigStream();
+    currentStream = stream;
+    asyncEventService.onSubscribeConfig(subscription, stream);
+  }
+
+  synchronized void close() {
+    ConfigStream stream = currentStream;
+    currentStream = null;
+    if (stream != null && stream.requestStream != null) {
+      stream.requestStream.cancel("Config subscription was closed by client.", null);
+    }
+  }
+
+  /**
+   * @return the status of config, or null if the config has not been pushed by alpha server
+   */
+  Boolean readConfig(int type, String category) {
+    ConfigStream stream = currentStream;
+    if (stream == null) {
+      // the broken stream is subscribed again lazily, and the current reading falls back to the server.
+      if (System.currentTimeMillis() - lastSubscribeMillis > RESUBSCRIBE_INTERVAL_MILLIS) {
+        subscribe();
+      }
+      return null;
+    }
+    Map<String, Boolean> decisions = stream.decisions;
+    if (decisions == null) {
+      return null;
+    }
+    Boolean status = null;
+    if (category != null && !category.isEmpty()) {
+      status = decisions.get(keyOf(type, category));
+    }
+    // the categories without their own configs share the default of instance.
+    return status != null ? status : decisions.get(keyOf(type, ""));
+  }
+
+  private static String keyOf(int type, String category) {
+    return type + "_" + category;
+  }
+
+  private class ConfigStream implements ClientResponseObserver<GrpcConfig, GrpcConfigSnapshot> {
+    private volatile ClientCallStreamObserver<GrpcConfig> requestStream;
+    private volatile Map<String, Boolean> decisions;
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<GrpcConfig> requestStream) {
+      this.requestStream = requestStream;
+    }
+
+    @Override
+    public void onNext(GrpcConfigSnapshot snapshot) {
+      Map<String, Boolean> snapshotDecisions = new HashMap<>();
+      for (GrpcConfigDecision decision : snapshot.getDecisionsList()) {
+        snapshotDecisions.put(keyOf(decision.getType(), decision.getCategory()), decision.getStatus());
+      }
+      decisions = snapshotDecisions;
+      LOG.debug("Received client configs from alpha server, version [{}], size [{}].", snapshot.getVersion(), snapshotDecisions.size());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      detach();
+      if (t instanceof StatusRuntimeException && ((StatusRuntimeException) t).getStatus().getCode() == Status.Code.UNIMPLEMENTED) {
+        supported = false;
+        LOG.warn("Alpha server does not support config subscription, configs will be read from server.");
+      } else if (!(t instanceof StatusRuntimeException && ((StatusRuntimeException) t).getStatus().getCode() == Status.Code.CANCELLED)) {
+        LOG.warn("Config subscription was broken, it will be subscribed again at the next reading, cause: {}.", t.getMessage());
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+      detach();
+    }
+
+    private void detach() {
+      decisions = null;
+      synchronized (GrpcConfigSubscriber.this) {
+        if (currentStream == this) {
+          currentStream = null;
+        }
+      }
+    }
+  }
+}
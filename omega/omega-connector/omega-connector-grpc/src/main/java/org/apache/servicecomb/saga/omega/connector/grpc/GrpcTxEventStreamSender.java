@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ *  Copyright (c) 2018-2019 ActionTech.
+ *  License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAck;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends TxEvents through the bidirectional 'OnTxEventStream' rpc.
+ * All threads share one stream, every event is tagged with a sequence and waits for the ack with the same sequence,
+ * so many events can be in-flight at the same time on one connection.
+ */
+class GrpcTxEventStreamSender {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final TxEventServiceStub asyncEventService;
+  private final long ackTimeout;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private volatile EventStream currentStream;
+  // it will be false if the alpha server does not support the stream rpc, then it's no need to try again.
+  private volatile boolean supported = true;
+
+  GrpcTxEventStreamSender(TxEventServiceStub asyncEventService, long ackTimeoutSeconds) {
+    this.asyncEventService = asyncEventService;
+    this.ackTimeout = ackTimeoutSeconds;
+  }
+
+  boolean isSupported() {
+    return supported;
+  }
+
+  GrpcAck send(GrpcTxEvent event) throws Exception {
+    long seq = sequence.incrementAndGet();
+    EventStream stream = getOrOpenStream();
+    CompletableFuture<GrpcAck> ackFuture = new CompletableFuture<>();
+    stream.pendingAcks.put(seq, ackFuture);
+    try {
+      // StreamObserver is not thread-safe, so it's necessary to serialize the invocations of 'onNext'.
+      synchronized (stream) {
+        stream.requestObserver.onNext(event.toBuilder().setSequence(seq).build());
+      }
+      // the stream may be broken before the ack was registered, then nobody will complete it.
+      Throwable failure = stream.failure;
+      if (failure != null) {
+        ackFuture.completeExceptionally(failure);
+      }
+      return ackFuture.get(ackTimeout, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    } catch (TimeoutException e) {
+      throw new TimeoutException("Timed out waiting for the ack of TxEvent stream, sequence = " + seq);
+    } finally {
+      stream.pendingAcks.remove(seq);
+    }
+  }
+
+  void close() {
+    EventStream stream = currentStream;
+    currentStream = null;
+    if (stream != null) {
+      try {
+        synchronized (stream) {
+          stream.requestObserver.onCompleted();
+        }
+      } catch (Exception e) {
+        LOG.debug("Failed to complete TxEvent stream.", e);
+      }
+    }
+  }
+
+  private EventStream getOrOpenStream() {
+    EventStream stream = currentStream;
+    if (stream == null) {
+      synchronized (this) {
+        stream = currentStream;
+        if (stream == null) {
+          stream = new EventStream();
+          stream.requestObserver = asyncEventService.onTxEventStream(stream);
+          currentStream = stream;
+        }
+      }
+    }
+    return stream;
+  }
+
+  /**
+   * One opened stream and the acks which are waited on it. A broken stream fails its own pending acks only.
+   */
+  private class EventStream implements StreamObserver<GrpcAck> {
+    private final Map<Long, CompletableFuture<GrpcAck>> pendingAcks = new ConcurrentHashMap<>();
+    private volatile StreamObserver<GrpcTxEvent> requestObserver;
+    private volatile Throwable failure;
+
+    @Override
+    public void onNext(GrpcAck ack) {
+      CompletableFuture<GrpcAck> ackFuture = pendingAcks.get(ack.getSequence());
+      if (ackFuture == null) {
+        return;
+      }
+      if (!ack.getError().isEmpty()) {
+        // the event was not handled, so it's failed as the unary rpc does, and the client sends it again.
+        ackFuture.completeExceptionally(Status.UNKNOWN.withDescription(ack.getError()).asRuntimeException());
+      } else {
+        ackFuture.complete(ack);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      detach();
+      if (t instanceof StatusRuntimeException && ((StatusRuntimeException) t).getStatus().getCode() == Status.Code.UNIMPLEMENTED) {
+        supported = false;
+        LOG.warn("Alpha server does not support TxEvent stream, it will fall back to unary rpc.");
+      } else {
+        LOG.error("TxEvent stream was broken, it will be reopened at the next event.", t);
+      }
+      failPendingAcks(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      detach();
+      failPendingAcks(new IllegalStateException("TxEvent stream was completed by alpha server."));
+    }
+
+    private void detach() {
+      synchronized (GrpcTxEventStreamSender.this) {
+        if (currentStream == this) {
+          currentStream = null;
+        }
+      }
+    }
+
+    private void failPendingAcks(Throwable t) {
+      failure = t;
+      for (CompletableFuture<GrpcAck> ackFuture : pendingAcks.values()) {
+        ackFuture.completeExceptionally(t);
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import com.google.common.base.Supplier;
+import org.apache.servicecomb.saga.omega.transaction.MessageSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The strategy of picking the less loaded one of two random {@link MessageSender}s (power of two choices).
+ * The load of a sender is its EWMA latency multiplied by its in-flight requests, so one lucky fast call does not draw all of requests
+ * to the same alpha server, and the slow or busy one gets less requests at once.
+ * A failed sender is not picked for a penalty period, which doubles on every consecutive failure and is reset by a success.
+ */
+class LeastLoadedSender implements MessageSenderPicker {
+  // the weight of the latest latency
+  private static final double EWMA_ALPHA = 0.2;
+  private static final long BASE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private final Map<MessageSender, SenderLoad> loads = new ConcurrentHashMap<>();
+
+  @Override
+  public MessageSender pick(Map<MessageSender, Long> messageSenders, Supplier<MessageSender> defaultSender) {
+    long now = System.nanoTime();
+    List<MessageSender> candidates = new ArrayList<>(messageSenders.size());
+    MessageSender leastPenalized = null;
+    long leastPenaltyEnd = Long.MAX_VALUE;
+    for (MessageSender sender : messageSenders.keySet()) {
+      SenderLoad load = loadOf(sender);
+      if (load.penaltyEnd - now <= 0) {
+        candidates.add(sender);
+      } else if (leastPenalized == null || load.penaltyEnd - leastPenaltyEnd < 0) {
+        leastPenalized = sender;
+        leastPenaltyEnd = load.penaltyEnd;
+      }
+    }
+
+    if (candidates.isEmpty()) {
+      // all of senders failed recently, the one whose penalty ends first is tried.
+      return leastPenalized != null ? leastPenalized : defaultSender.get();
+    }
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(candidates.size());
+    int second = random.nextInt(candidates.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    MessageSender sender1 = candidates.get(first);
+    MessageSender sender2 = candidates.get(second);
+    return loadOf(sender1).cost() <= loadOf(sender2).cost() ? sender1 : sender2;
+  }
+
+  @Override
+  public void beforeSending(MessageSender sender) {
+    loadOf(sender).inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void afterSending(MessageSender sender, long latencyNanos, boolean failed) {
+    SenderLoad load = loadOf(sender);
+    load.inFlight.decrementAndGet();
+    if (failed) {
+      load.fail();
+    } else {
+      load.succeed(latencyNanos);
+    }
+  }
+
+  private SenderLoad loadOf(MessageSender sender) {
+    return loads.computeIfAbsent(sender, s -> new SenderLoad());
+  }
+
+  private static class SenderLoad {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double ewmaLatencyNanos;
+    private volatile long penaltyEnd = System.nanoTime();
+    private int consecutiveFailures;
+
+    // a sender without any latency yet is measured by its in-flight requests only.
+    private double cost() {
+      return (ewmaLatencyNanos + 1) * (inFlight.get() + 1);
+    }
+
+    private synchronized void succeed(long latencyNanos) {
+      consecutiveFailures = 0;
+      ewmaLatencyNanos = ewmaLatencyNanos == 0 ? latencyNanos : ewmaLatencyNanos + EWMA_ALPHA * (latencyNanos - ewmaLatencyNanos);
+    }
+
+    private synchronized void fail() {
+      long penalty = BASE_PENALTY_NANOS << Math.min(consecutiveFailures, 5);
+      consecutiveFailures++;
+      penaltyEnd = System.nanoTime() + Math.min(penalty, MAX_PENALTY_NANOS);
+    }
+  }
+}
@@ -26,7 +26,10 @@ import io.grpc.netty.NettyChannelBuilder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
+import org.apache.servicecomb.saga.omega.context.CurrentThreadOmegaContext;
+import org.apache.servicecomb.saga.omega.context.OmegaContextServiceConfig;
 import org.apache.servicecomb.saga.omega.context.ServiceConfig;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
 import org.apache.servicecomb.saga.omega.transaction.*;
 import org.apache.servicecomb.saga.omega.transaction.accidentplatform.AccidentHandling;
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigAck;
@@ -39,9 +42,12 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import static java.util.Collections.emptyList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class LoadBalancedClusterMessageSender implements MessageSender {
 
@@ -63,6 +69,12 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
 
   private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+  private final MessageSenderPicker messageSenderPicker;
+
+  private final EventHedging eventHedging;
+  // it's null if the hedging is disabled.
+  private final ExecutorService hedgeExecutor;
+
   public LoadBalancedClusterMessageSender(AlphaClusterConfig clusterConfig,
       MessageSerializer serializer,
       MessageDeserializer deserializer,
@@ -76,7 +88,12 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
     }
 
     channels = new ArrayList<>(clusterConfig.getAddresses().size());
+    messageSenderPicker = newMessageSenderPicker(clusterConfig.getLoadBalanceStrategy());
+    eventHedging = EventHedging.fromConfig();
+    hedgeExecutor = newHedgeExecutor(eventHedging);
 
+    // TxEvents are sent by the bidirectional stream by default, and it will fall back to unary rpc if alpha doesn't support it.
+    boolean eventStreamEnabled = TxleStaticConfig.getBooleanConfig("txle.transaction.event-stream.enabled", true);
     SslContext sslContext = null;
     for (String address : clusterConfig.getAddresses()) {
       ManagedChannel channel;
@@ -108,7 +125,8 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
               deserializer,
               serviceConfig,
               new ErrorHandlerFactory(),
-              handler),
+              handler,
+              eventStreamEnabled),
           0L);
     }
 
@@ -117,10 +135,38 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
 
   // this is for test only
   LoadBalancedClusterMessageSender(MessageSender... messageSenders) {
+    this(new FastestSender(), new EventHedging(false, emptyList(), 100, 0), messageSenders);
+  }
+
+  // this is for test only
+  LoadBalancedClusterMessageSender(MessageSenderPicker messageSenderPicker, EventHedging eventHedging, MessageSender... messageSenders) {
     for (MessageSender sender : messageSenders) {
       senders.put(sender, 0L);
     }
     channels = emptyList();
+    this.messageSenderPicker = messageSenderPicker;
+    this.eventHedging = eventHedging;
+    this.hedgeExecutor = newHedgeExecutor(eventHedging);
+  }
+
+  private static ExecutorService newHedgeExecutor(EventHedging eventHedging) {
+    if (!eventHedging.isEnabled()) {
+      return null;
+    }
+    return Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "txle-event-hedging");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  static MessageSenderPicker newMessageSenderPicker(String loadBalanceStrategy) {
+    if (loadBalanceStrategy == null || loadBalanceStrategy.trim().isEmpty() || "fastest".equalsIgnoreCase(loadBalanceStrategy.trim())) {
+      return new FastestSender();
+    } else if ("least-loaded".equalsIgnoreCase(loadBalanceStrategy.trim())) {
+      return new LeastLoadedSender();
+    }
+    throw new IllegalArgumentException("Unknown load balance strategy [" + loadBalanceStrategy + "] of alpha cluster, it should be 'fastest' or 'least-loaded'.");
   }
 
   @Override
@@ -148,6 +194,12 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
   @Override
   public void close() {
     scheduler.shutdown();
+    if (hedgeExecutor != null) {
+      hedgeExecutor.shutdown();
+    }
+    for (MessageSender sender : senders.keySet()) {
+      sender.close();
+    }
     for (ManagedChannel channel : channels) {
       channel.shutdownNow();
     }
@@ -160,9 +212,123 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
 
   @Override
   public AlphaResponse send(TxEvent event) {
+    if (eventHedging.isHedgeable(event) && senders.size() > 1 && eventHedging.delayNanos() != Long.MAX_VALUE) {
+      return sendHedged(event);
+    }
     return (AlphaResponse) send("sendEvent", event);
   }
 
+  // The event is sent to another alpha server if the first one has not answered within the hedging delay, and the first successful answer wins.
+  private AlphaResponse sendHedged(TxEvent event) {
+    MessageSender firstSender = messageSenderPicker.pick(senders, defaultMessageSender);
+    CompletableFuture<AlphaResponse> firstReply = sendByHedgeExecutor(firstSender, event);
+    try {
+      try {
+        return firstReply.get(eventHedging.delayNanos(), NANOSECONDS);
+      } catch (TimeoutException e) {
+        Map<MessageSender, Long> otherSenders = new HashMap<>(senders);
+        otherSenders.remove(firstSender);
+        if (otherSenders.isEmpty()) {
+          return firstReply.get();
+        }
+        MessageSender secondSender = messageSenderPicker.pick(otherSenders, defaultMessageSender);
+        LOG.debug("Hedging TxEvent {} to alpha at {}, because alpha at {} has not answered.", event, secondSender.target(), firstSender.target());
+        return firstSuccessful(firstReply, sendByHedgeExecutor(secondSender, event)).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OmegaException("Failed to send TxEvent " + event + " due to interruption.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof OmegaException) {
+        throw (OmegaException) e.getCause();
+      }
+      LOG.error("Try to send TxEvent " + event + " again due to failure", e.getCause());
+      return (AlphaResponse) send("sendEvent", event);
+    }
+  }
+
+  private CompletableFuture<AlphaResponse> sendByHedgeExecutor(MessageSender messageSender, TxEvent event) {
+    // the context of the current thread is updated by the sender.
+    OmegaContextServiceConfig context = CurrentThreadOmegaContext.getContextFromCurThread();
+    return CompletableFuture.supplyAsync(() -> {
+      CurrentThreadOmegaContext.putThreadGlobalLocalTxId(context);
+      long startTime = System.nanoTime();
+      messageSenderPicker.beforeSending(messageSender);
+      try {
+        AlphaResponse response = messageSender.send(event);
+        long latency = System.nanoTime() - startTime;
+        messageSenderPicker.afterSending(messageSender, latency, false);
+        senders.put(messageSender, latency);
+        eventHedging.recordLatency(latency);
+        return response;
+      } catch (OmegaException e) {
+        messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, false);
+        throw e;
+      } catch (RuntimeException e) {
+        messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, true);
+        senders.put(messageSender, Long.MAX_VALUE);
+        throw e;
+      } finally {
+        CurrentThreadOmegaContext.clearCache();
+      }
+    }, hedgeExecutor);
+  }
+
+  // the result fails only if both of them failed.
+  private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger failures = new AtomicInteger();
+    BiConsumer<T, Throwable> completion = (value, e) -> {
+      if (e == null) {
+        result.complete(value);
+      } else if (failures.incrementAndGet() == 2) {
+        result.completeExceptionally(e);
+      }
+    };
+    first.whenComplete(completion);
+    second.whenComplete(completion);
+    return result;
+  }
+
+  @Override
+  public CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+    MessageSender messageSender = messageSenderPicker.pick(senders, defaultMessageSender);
+    long startTime = System.nanoTime();
+    messageSenderPicker.beforeSending(messageSender);
+    CompletableFuture<AlphaResponse> response;
+    try {
+      response = messageSender.sendAsync(event);
+    } catch (OmegaException e) {
+      messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, false);
+      throw e;
+    } catch (Exception e) {
+      messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, true);
+      LOG.error("Try to send TxEvent " + event + " again due to failure", e);
+      senders.put(messageSender, Long.MAX_VALUE);
+      return CompletableFuture.completedFuture(send(event));
+    }
+    CompletableFuture<AlphaResponse> result = new CompletableFuture<>();
+    response.whenComplete((alphaResponse, e) -> {
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, cause != null && !(cause instanceof OmegaException));
+      if (cause == null) {
+        result.complete(alphaResponse);
+      } else if (cause instanceof OmegaException) {
+        result.completeExceptionally(cause);
+      } else {
+        // it's the thread of the sender's async executor, so the event is sent again by the blocking way here.
+        LOG.error("Try to send TxEvent " + event + " again due to failure", cause);
+        senders.put(messageSender, Long.MAX_VALUE);
+        try {
+          result.complete(send(event));
+        } catch (Exception retryFailure) {
+          result.completeExceptionally(retryFailure);
+        }
+      }
+    });
+    return result;
+  }
+
   @Override
   public Set<String> send(Set<String> localTxIdSet) {
     return (Set<String>) send("sendLocalTxIdSet", localTxIdSet);
@@ -184,13 +350,13 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
   }
 
   private Object send(String method, Object... args) {
-    FastestSender messageSenderPicker = new FastestSender();
     String errMsg = "send TxEvent" + args[0];
     do {
       MessageSender messageSender = messageSenderPicker.pick(senders, defaultMessageSender);
       Object returnObject = null;
+      long startTime = System.nanoTime();
+      messageSenderPicker.beforeSending(messageSender);
       try {
-        long startTime = System.nanoTime();
         if ("sendEvent".equals(method)) {
           returnObject = messageSender.send((TxEvent) args[0]);
         } else if ("readConfigFromServer".equals(method)) {
@@ -206,12 +372,19 @@ public class LoadBalancedClusterMessageSender implements MessageSender {
           errMsg = "report accident " + args[0];
           returnObject = messageSender.reportAccidentToServer((AccidentHandling) args[0]);
         }
-        senders.put(messageSender, System.nanoTime() - startTime);
+        long latency = System.nanoTime() - startTime;
+        messageSenderPicker.afterSending(messageSender, latency, false);
+        senders.put(messageSender, latency);
+        if ("sendEvent".equals(method) && eventHedging.isEnabled()) {
+          eventHedging.recordLatency(latency);
+        }
         return returnObject;
       } catch (OmegaException e) {
+        messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, false);
         LOG.error("Failed to " + errMsg + ", messageSender = " + messageSender, e);
         throw e;
       } catch (Exception e) {
+        messageSenderPicker.afterSending(messageSender, System.nanoTime() - startTime, true);
         LOG.error("Try to " + errMsg + " again due to failure", e);
         senders.put(messageSender, Long.MAX_VALUE);
       }
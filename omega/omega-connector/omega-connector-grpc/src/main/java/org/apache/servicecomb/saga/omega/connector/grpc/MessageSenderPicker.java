@@ -36,4 +36,19 @@ public interface MessageSenderPicker {
    */
   MessageSender pick(Map<MessageSender, Long> messageSenders,
       Supplier<MessageSender> defaultSender);
+
+  /**
+   * Called before sending by the picked sender, for the pickers which count the in-flight requests.
+   */
+  default void beforeSending(MessageSender sender) {
+  }
+
+  /**
+   * Called after sending by the picked sender, whether it succeeded or not.
+   *
+   * @param latencyNanos The time spent by sending.
+   * @param failed True if the sender failed to communicate with alpha server.
+   */
+  default void afterSending(MessageSender sender, long latencyNanos, boolean failed) {
+  }
 }
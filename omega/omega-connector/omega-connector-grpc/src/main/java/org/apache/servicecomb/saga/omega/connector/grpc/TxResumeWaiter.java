@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * The events of paused global transactions wait here until alpha server pushes the resume notification, or until the deadline,
+ * then they are sent again to check the status. So the paused events do not poll the server, and the async waiting holds no thread.
+ * A notification which arrives between the paused ack and the waiting is remembered for a while, so that it's not missed.
+ */
+class TxResumeWaiter {
+  private static final long RESUMED_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  // globalTxId -> the waitings of its paused events
+  private final Map<String, Set<CompletableFuture<Void>>> waitings = new ConcurrentHashMap<>();
+  // globalTxId -> the time of the latest resume notification
+  private final Map<String, Long> resumedTimes = new ConcurrentHashMap<>();
+  private volatile Long allResumedTime;
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "txle-tx-resume-waiter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  TxResumeWaiter() {
+    timer.scheduleWithFixedDelay(this::removeExpiredResumedTimes, 1, 1, TimeUnit.MINUTES);
+  }
+
+  /**
+   * To block current thread until the global transaction is resumed or the timeout elapses.
+   *
+   * @param sinceNanos the time before sending the paused event, the notifications after it are regarded as resumed
+   * @return true if it's resumed, false if it's timed out
+   */
+  boolean await(String globalTxId, long sinceNanos, long timeoutMillis) throws InterruptedException {
+    CompletableFuture<Void> waiting = register(globalTxId, sinceNanos);
+    try {
+      waiting.get(timeoutMillis, MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      return true;
+    } finally {
+      unregister(globalTxId, waiting);
+    }
+  }
+
+  /**
+   * @return a future which is completed with true if the global transaction is resumed, or with false at the deadline, no thread is held meanwhile
+   */
+  CompletableFuture<Boolean> resumption(String globalTxId, long sinceNanos, long timeoutMillis) {
+    CompletableFuture<Void> waiting = register(globalTxId, sinceNanos);
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    ScheduledFuture<?> deadline = timer.schedule(() -> result.complete(false), timeoutMillis, MILLISECONDS);
+    waiting.thenRun(() -> result.complete(true));
+    result.whenComplete((resumed, e) -> {
+      deadline.cancel(false);
+      unregister(globalTxId, waiting);
+    });
+    return result;
+  }
+
+  /**
+   * @param globalTxId empty or null if all of global transactions were resumed
+   */
+  void resume(String globalTxId) {
+    long now = System.nanoTime();
+    if (globalTxId == null || globalTxId.isEmpty()) {
+      allResumedTime = now;
+      waitings.values().forEach(futures -> futures.forEach(future -> future.complete(null)));
+    } else {
+      resumedTimes.put(globalTxId, now);
+      Set<CompletableFuture<Void>> futures = waitings.get(globalTxId);
+      if (futures != null) {
+        futures.forEach(future -> future.complete(null));
+      }
+    }
+  }
+
+  int waitingCount() {
+    return waitings.values().stream().mapToInt(Set::size).sum();
+  }
+
+  void close() {
+    timer.shutdownNow();
+    // the waiting events are sent again at once.
+    resume(null);
+  }
+
+  private CompletableFuture<Void> register(String globalTxId, long sinceNanos) {
+    CompletableFuture<Void> waiting = new CompletableFuture<>();
+    waitings.compute(globalTxId, (id, futures) -> {
+      Set<CompletableFuture<Void>> waitingFutures = futures == null ? ConcurrentHashMap.newKeySet() : futures;
+      waitingFutures.add(waiting);
+      return waitingFutures;
+    });
+    if (isResumedSince(allResumedTime, sinceNanos) || isResumedSince(resumedTimes.get(globalTxId), sinceNanos)) {
+      waiting.complete(null);
+    }
+    return waiting;
+  }
+
+  private static boolean isResumedSince(Long resumedTime, long sinceNanos) {
+    return resumedTime != null && resumedTime - sinceNanos >= 0;
+  }
+
+  private void unregister(String globalTxId, CompletableFuture<Void> waiting) {
+    waitings.computeIfPresent(globalTxId, (id, futures) -> {
+      futures.remove(waiting);
+      return futures.isEmpty() ? null : futures;
+    });
+  }
+
+  private void removeExpiredResumedTimes() {
+    long now = System.nanoTime();
+    resumedTimes.values().removeIf(resumedTime -> now - resumedTime > RESUMED_RETENTION_NANOS);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import org.apache.servicecomb.saga.omega.transaction.MessageDeserializer;
+import org.apache.servicecomb.saga.omega.transaction.MessageHandler;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcCompensateCommand;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.google.protobuf.ByteString;
+
+public class BatchCompensationTest {
+  private final MessageDeserializer deserializer = message -> new Object[] {new String(message)};
+  private final MessageHandler handler = mock(MessageHandler.class);
+  private final GrpcCompensateStreamObserver observer = new GrpcCompensateStreamObserver(handler, () -> { }, deserializer);
+
+  @Test
+  public void executesBatchedCompensationsInSequence() {
+    doThrow(RuntimeException.class).when(handler).onReceive(eq("globalTxId"), eq("localTxId-2"), any(), any(), any());
+
+    observer.onNext(GrpcCompensateCommand.newBuilder()
+        .setGlobalTxId("globalTxId")
+        .addCompensations(compensationOf("localTxId-3"))
+        .addCompensations(compensationOf("localTxId-2"))
+        .addCompensations(compensationOf("localTxId-1"))
+        .build());
+
+    // the failed compensation does not stop the rest of the batch.
+    InOrder inOrder = inOrder(handler);
+    inOrder.verify(handler).onReceive("globalTxId", "localTxId-3", null, "compensate-localTxId-3", "localTxId-3");
+    inOrder.verify(handler).onReceive("globalTxId", "localTxId-2", null, "compensate-localTxId-2", "localTxId-2");
+    inOrder.verify(handler).onReceive("globalTxId", "localTxId-1", null, "compensate-localTxId-1", "localTxId-1");
+    verifyNoMoreInteractions(handler);
+  }
+
+  private static GrpcCompensateCommand compensationOf(String localTxId) {
+    return GrpcCompensateCommand.newBuilder()
+        .setGlobalTxId("globalTxId")
+        .setLocalTxId(localTxId)
+        .setCompensationMethod("compensate-" + localTxId)
+        .setPayloads(ByteString.copyFromUtf8(localTxId))
+        .build();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.junit.Test;
+
+public class EventDictionaryTest {
+  private static final String COMPENSATION_METHOD = "public void org.apache.servicecomb.saga.demo.Service.cancel(java.lang.String,int)";
+
+  private final EventDictionary dictionary = new EventDictionary(true);
+
+  @Test
+  public void sendsTextUntilAlphaAcceptsDictionary() {
+    dictionary.reset();
+
+    GrpcTxEvent event = dictionary.encode(newEvent());
+
+    assertThat(event.getDictionaryId(), is(0L));
+    assertThat(event.getCompensationMethod(), is(COMPENSATION_METHOD));
+  }
+
+  @Test
+  public void definesEntriesUntilAcknowledged() {
+    dictionary.accept(dictionary.reset());
+
+    GrpcTxEvent first = dictionary.encode(newEvent());
+    GrpcTxEvent concurrent = dictionary.encode(newEvent());
+    assertThat(first.getCompensationMethod(), is(""));
+    assertThat(first.getDictionaryEntriesMap().get(first.getCompensationMethodRef()), is(COMPENSATION_METHOD));
+    assertThat(concurrent.getDictionaryEntriesMap(), is(first.getDictionaryEntriesMap()));
+
+    dictionary.acknowledge(first);
+    GrpcTxEvent later = dictionary.encode(newEvent());
+    assertThat(later.getDictionaryEntriesCount(), is(0));
+    assertThat(later.getCompensationMethodRef(), is(first.getCompensationMethodRef()));
+    assertThat(later.getServiceNameRef(), is(first.getServiceNameRef()));
+  }
+
+  @Test
+  public void expandsRefsToText() {
+    dictionary.accept(dictionary.reset());
+    GrpcTxEvent first = dictionary.encode(newEvent());
+    dictionary.acknowledge(first);
+
+    GrpcTxEvent expanded = dictionary.expand(dictionary.encode(newEvent()));
+
+    assertThat(expanded, is(newEvent().build()));
+  }
+
+  @Test
+  public void sendsTextAfterInvalidatingUntilNextConnection() {
+    long id = dictionary.reset();
+    dictionary.accept(id);
+    dictionary.invalidate(id);
+    assertThat(dictionary.encode(newEvent()).getDictionaryId(), is(0L));
+
+    long newId = dictionary.reset();
+    dictionary.accept(id);
+    assertThat(dictionary.encode(newEvent()).getDictionaryId(), is(0L));
+    dictionary.accept(newId);
+    assertThat(dictionary.encode(newEvent()).getDictionaryId(), is(newId));
+  }
+
+  @Test
+  public void neverEncodesIfDisabled() {
+    EventDictionary disabled = new EventDictionary(false);
+    long id = disabled.reset();
+    disabled.accept(id);
+
+    assertThat(id, is(0L));
+    assertThat(disabled.encode(newEvent()), is(newEvent().build()));
+  }
+
+  private GrpcTxEvent.Builder newEvent() {
+    return GrpcTxEvent.newBuilder()
+        .setServiceName("demo-service")
+        .setInstanceId("demo-service-127.0.0.1")
+        .setGlobalTxId("globalTxId")
+        .setLocalTxId("localTxId")
+        .setType("TxStartedEvent")
+        .setCompensationMethod(COMPENSATION_METHOD)
+        .setCategory("");
+  }
+}
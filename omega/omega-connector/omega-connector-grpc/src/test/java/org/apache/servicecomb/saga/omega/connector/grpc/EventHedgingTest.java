@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.servicecomb.saga.common.EventType;
+import org.apache.servicecomb.saga.omega.transaction.AlphaResponse;
+import org.apache.servicecomb.saga.omega.transaction.MessageSender;
+import org.apache.servicecomb.saga.omega.transaction.TxEvent;
+import org.junit.After;
+import org.junit.Test;
+
+public class EventHedgingTest {
+  private final String globalTxId = uniquify("globalTxId");
+  private final TxEvent event = new TxEvent(EventType.TxEndedEvent, globalTxId, uniquify("localTxId"), globalTxId, "", 0, null, 0, "", "");
+  private final CountDownLatch slowAlpha = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    slowAlpha.countDown();
+  }
+
+  @Test
+  public void delaysByPercentileOfRecentLatencies() {
+    EventHedging hedging = new EventHedging(true, Arrays.asList("TxEndedEvent"), 90, 0);
+    assertThat(hedging.delayNanos(), is(Long.MAX_VALUE));
+
+    for (long latency = 1; latency <= 100; latency++) {
+      hedging.recordLatency(latency);
+    }
+    assertThat(hedging.delayNanos(), is(90L));
+  }
+
+  @Test
+  public void hedgesOnlyEventsSentOnce() {
+    EventHedging hedging = new EventHedging(true, Arrays.asList("TxEndedEvent", " SagaEndedEvent"), 95, 5);
+    assertThat(hedging.isHedgeable(event), is(true));
+    assertThat(hedging.isHedgeable(new TxEvent(EventType.TxEndedEvent, globalTxId, uniquify("localTxId"), globalTxId, "", 0, null, 3, "", "")), is(false));
+    assertThat(hedging.isHedgeable(new TxEvent(EventType.TxAbortedEvent, globalTxId, uniquify("localTxId"), globalTxId, "", 0, null, 0, "", "")), is(false));
+    assertThat(new EventHedging(false, Arrays.asList("TxEndedEvent"), 95, 5).isHedgeable(event), is(false));
+  }
+
+  @Test(timeout = 5000)
+  public void answersBySecondAlphaIfFirstOneIsSlow() {
+    AlphaResponse response = new AlphaResponse(false);
+    MessageSender slowSender = mock(MessageSender.class);
+    when(slowSender.send(event)).thenAnswer(invocation -> {
+      slowAlpha.await();
+      return response;
+    });
+    MessageSender fastSender = mock(MessageSender.class);
+    when(fastSender.send(event)).thenReturn(response);
+
+    EventHedging hedging = warmedUpHedging();
+    // the slow one is picked at first.
+    MessageSenderPicker picker = (messageSenders, defaultSender) -> messageSenders.containsKey(slowSender) ? slowSender : fastSender;
+    MessageSender messageSender = new LoadBalancedClusterMessageSender(picker, hedging, slowSender, fastSender);
+
+    assertThat(messageSender.send(event), is(response));
+    verify(slowSender).send(event);
+    verify(fastSender).send(event);
+    messageSender.close();
+  }
+
+  @Test(timeout = 5000)
+  public void doesNotHedgeIfFirstAlphaAnswersInTime() {
+    AlphaResponse response = new AlphaResponse(false);
+    MessageSender sender1 = mock(MessageSender.class);
+    when(sender1.send(event)).thenReturn(response);
+    MessageSender sender2 = mock(MessageSender.class);
+
+    MessageSenderPicker picker = (messageSenders, defaultSender) -> messageSenders.containsKey(sender1) ? sender1 : sender2;
+    MessageSender messageSender = new LoadBalancedClusterMessageSender(picker,
+        new EventHedging(true, Arrays.asList("TxEndedEvent"), 95, TimeUnit.SECONDS.toMillis(3)) {
+          @Override
+          long delayNanos() {
+            return TimeUnit.SECONDS.toNanos(3);
+          }
+        }, sender1, sender2);
+
+    assertThat(messageSender.send(event), is(response));
+    verify(sender1, timeout(1000)).send(event);
+    verify(sender2, never()).send(event);
+    messageSender.close();
+  }
+
+  private EventHedging warmedUpHedging() {
+    EventHedging hedging = new EventHedging(true, Arrays.asList("TxEndedEvent"), 95, 0);
+    for (int i = 0; i < 100; i++) {
+      hedging.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    return hedging;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfig;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigDecision;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigSnapshot;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceImplBase;
+import org.junit.After;
+import org.junit.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class GrpcConfigSubscriberTest {
+  private static final int SQL_MONITOR = 51;
+
+  private final String serverName = uniquify("configSubscription");
+
+  private Server server;
+  private ManagedChannel channel;
+  private volatile StreamObserver<GrpcConfigSnapshot> subscriber;
+
+  @After
+  public void tearDown() {
+    if (channel != null) {
+      channel.shutdownNow();
+    }
+    if (server != null) {
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void readsConfigsPushedByServer() throws Exception {
+    GrpcConfigSubscriber configSubscriber = subscriberOf(new TxEventServiceImplBase() {
+      @Override
+      public void onSubscribeConfig(GrpcConfig request, StreamObserver<GrpcConfigSnapshot> responseObserver) {
+        subscriber = responseObserver;
+        responseObserver.onNext(snapshotOf(1, false, true));
+      }
+    });
+
+    configSubscriber.subscribe();
+
+    await().atMost(2, TimeUnit.SECONDS).until(() -> configSubscriber.readConfig(SQL_MONITOR, "") != null);
+    assertThat(configSubscriber.readConfig(SQL_MONITOR, ""), is(false));
+    assertThat(configSubscriber.readConfig(SQL_MONITOR, "unknown-category"), is(false));
+    assertThat(configSubscriber.readConfig(SQL_MONITOR, "category-1"), is(true));
+    // the types which are not subscribed are read from server.
+    assertThat(configSubscriber.readConfig(1, ""), is(nullValue()));
+
+    subscriber.onNext(snapshotOf(2, true, false));
+    await().atMost(2, TimeUnit.SECONDS).until(() -> configSubscriber.readConfig(SQL_MONITOR, ""));
+    assertThat(configSubscriber.readConfig(SQL_MONITOR, "category-1"), is(false));
+  }
+
+  @Test
+  public void forgetsConfigsWhenSubscriptionIsBroken() throws Exception {
+    GrpcConfigSubscriber configSubscriber = subscriberOf(new TxEventServiceImplBase() {
+      @Override
+      public void onSubscribeConfig(GrpcConfig request, StreamObserver<GrpcConfigSnapshot> responseObserver) {
+        subscriber = responseObserver;
+        responseObserver.onNext(snapshotOf(1, true, true));
+      }
+    });
+    configSubscriber.subscribe();
+    await().atMost(2, TimeUnit.SECONDS).until(() -> configSubscriber.readConfig(SQL_MONITOR, "") != null);
+
+    subscriber.onCompleted();
+
+    await().atMost(2, TimeUnit.SECONDS).until(() -> configSubscriber.readConfig(SQL_MONITOR, "") == null);
+    assertThat(configSubscriber.isSupported(), is(true));
+  }
+
+  @Test
+  public void stopsSubscribingIfServerDoesNotSupportIt() throws Exception {
+    GrpcConfigSubscriber configSubscriber = subscriberOf(new TxEventServiceImplBase() {
+    });
+
+    configSubscriber.subscribe();
+
+    await().atMost(2, TimeUnit.SECONDS).until(() -> !configSubscriber.isSupported());
+    assertThat(configSubscriber.readConfig(SQL_MONITOR, ""), is(nullValue()));
+  }
+
+  private GrpcConfigSubscriber subscriberOf(TxEventServiceImplBase service) throws Exception {
+    server = InProcessServerBuilder.forName(serverName).addService(service).directExecutor().build().start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    return new GrpcConfigSubscriber(TxEventServiceGrpc.newStub(channel), "service", "instance");
+  }
+
+  private static GrpcConfigSnapshot snapshotOf(long version, boolean instanceDefault, boolean category1) {
+    return GrpcConfigSnapshot.newBuilder().setVersion(version)
+        .addDecisions(GrpcConfigDecision.newBuilder().setType(SQL_MONITOR).setCategory("").setStatus(instanceDefault))
+        .addDecisions(GrpcConfigDecision.newBuilder().setType(SQL_MONITOR).setCategory("category-1").setStatus(category1))
+        .build();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static com.seanyinx.github.unit.scaffolding.AssertUtils.expectFailing;
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcAck;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcTxEvent;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc;
+import org.apache.servicecomb.saga.pack.contract.grpc.TxEventServiceGrpc.TxEventServiceImplBase;
+import org.junit.After;
+import org.junit.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+public class GrpcTxEventStreamSenderTest {
+  private final String serverName = uniquify("txEventStream");
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  private Server server;
+  private ManagedChannel channel;
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    if (channel != null) {
+      channel.shutdownNow();
+    }
+    if (server != null) {
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void correlatesAcksBySequenceWhenEventsArePipelined() throws Exception {
+    GrpcTxEventStreamSender sender = senderOf(new ReversedAckService(4));
+
+    List<Future<GrpcAck>> acks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final String localTxId = "localTxId-" + i;
+      acks.add(executor.submit(() -> sender.send(GrpcTxEvent.newBuilder().setLocalTxId(localTxId).build())));
+    }
+
+    for (int i = 0; i < 4; i++) {
+      GrpcAck ack = acks.get(i).get();
+      // the service marks the events whose local tx id ends with an odd number as aborted.
+      assertThat(ack.getAborted(), is(i % 2 == 1));
+    }
+    assertThat(sender.isSupported(), is(true));
+  }
+
+  @Test
+  public void disablesStreamWhenServerDoesNotSupportIt() throws Exception {
+    GrpcTxEventStreamSender sender = senderOf(new TxEventServiceImplBase() {
+    });
+
+    try {
+      sender.send(GrpcTxEvent.newBuilder().setLocalTxId(uniquify("localTxId")).build());
+      expectFailing(StatusRuntimeException.class);
+    } catch (StatusRuntimeException e) {
+      assertThat(e.getStatus().getCode(), is(Status.Code.UNIMPLEMENTED));
+    }
+    assertThat(sender.isSupported(), is(false));
+  }
+
+  @Test
+  public void failsEventWhoseAckCarriesError() throws Exception {
+    GrpcTxEventStreamSender sender = senderOf(new TxEventServiceImplBase() {
+      @Override
+      public StreamObserver<GrpcTxEvent> onTxEventStream(StreamObserver<GrpcAck> responseObserver) {
+        return new StreamObserver<GrpcTxEvent>() {
+          @Override
+          public void onNext(GrpcTxEvent event) {
+            GrpcAck.Builder ack = GrpcAck.newBuilder().setSequence(event.getSequence());
+            if (event.getLocalTxId().startsWith("failed")) {
+              ack.setError("java.util.concurrent.RejectedExecutionException");
+            }
+            responseObserver.onNext(ack.build());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+          }
+
+          @Override
+          public void onCompleted() {
+            responseObserver.onCompleted();
+          }
+        };
+      }
+    });
+
+    try {
+      sender.send(GrpcTxEvent.newBuilder().setLocalTxId(uniquify("failed")).build());
+      expectFailing(StatusRuntimeException.class);
+    } catch (StatusRuntimeException e) {
+      assertThat(e.getStatus().getCode(), is(Status.Code.UNKNOWN));
+    }
+
+    // the failed event does not break the stream.
+    assertThat(sender.send(GrpcTxEvent.newBuilder().setLocalTxId(uniquify("localTxId")).build()).getError(), is(""));
+    assertThat(sender.isSupported(), is(true));
+  }
+
+  private GrpcTxEventStreamSender senderOf(TxEventServiceImplBase service) throws Exception {
+    server = InProcessServerBuilder.forName(serverName).addService(service).directExecutor().build().start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    return new GrpcTxEventStreamSender(TxEventServiceGrpc.newStub(channel), 5);
+  }
+
+  // to hold the events until all of them arrived, and then to answer them in reversed order.
+  private static class ReversedAckService extends TxEventServiceImplBase {
+    private final int expectedEvents;
+
+    ReversedAckService(int expectedEvents) {
+      this.expectedEvents = expectedEvents;
+    }
+
+    @Override
+    public StreamObserver<GrpcTxEvent> onTxEventStream(StreamObserver<GrpcAck> responseObserver) {
+      final List<GrpcTxEvent> events = new ArrayList<>();
+      return new StreamObserver<GrpcTxEvent>() {
+        @Override
+        public synchronized void onNext(GrpcTxEvent event) {
+          events.add(event);
+          if (events.size() == expectedEvents) {
+            for (int i = events.size() - 1; i >= 0; i--) {
+              GrpcTxEvent e = events.get(i);
+              int index = Integer.parseInt(e.getLocalTxId().substring(e.getLocalTxId().lastIndexOf('-') + 1));
+              responseObserver.onNext(GrpcAck.newBuilder().setSequence(e.getSequence()).setAborted(index % 2 == 1).build());
+            }
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+          responseObserver.onCompleted();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Supplier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.servicecomb.saga.omega.transaction.MessageSender;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class LeastLoadedSenderTest {
+  private final MessageSender sender1 = Mockito.mock(MessageSender.class);
+  private final MessageSender sender2 = Mockito.mock(MessageSender.class);
+  private final MessageSender defaultSender = Mockito.mock(MessageSender.class);
+  private final Supplier<MessageSender> defaultSenderSupplier = () -> defaultSender;
+  private final Map<MessageSender, Long> senders = new HashMap<>();
+  private final LeastLoadedSender picker = new LeastLoadedSender();
+
+  @Test
+  public void picksSenderWithLowerLatency() {
+    senders.put(sender1, 0L);
+    senders.put(sender2, 0L);
+    send(sender1, TimeUnit.MILLISECONDS.toNanos(1));
+    send(sender2, TimeUnit.MILLISECONDS.toNanos(50));
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(picker.pick(senders, defaultSenderSupplier), is(sender1));
+    }
+  }
+
+  @Test
+  public void picksSenderWithLessInFlightRequests() {
+    senders.put(sender1, 0L);
+    senders.put(sender2, 0L);
+    send(sender1, TimeUnit.MILLISECONDS.toNanos(1));
+    send(sender2, TimeUnit.MILLISECONDS.toNanos(2));
+    // the faster one is busy, so the other one takes the following requests.
+    for (int i = 0; i < 5; i++) {
+      picker.beforeSending(sender1);
+    }
+
+    assertThat(picker.pick(senders, defaultSenderSupplier), is(sender2));
+  }
+
+  @Test
+  public void skipsFailedSenderDuringPenalty() {
+    senders.put(sender1, 0L);
+    senders.put(sender2, 0L);
+    send(sender2, TimeUnit.MILLISECONDS.toNanos(50));
+    picker.beforeSending(sender1);
+    picker.afterSending(sender1, 0, true);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(picker.pick(senders, defaultSenderSupplier), is(sender2));
+    }
+  }
+
+  @Test
+  public void picksLeastPenalizedSenderIfAllFailed() {
+    senders.put(sender1, 0L);
+    senders.put(sender2, 0L);
+    fail(sender1);
+    fail(sender1);
+    fail(sender2);
+
+    assertThat(picker.pick(senders, defaultSenderSupplier), is(sender2));
+  }
+
+  @Test
+  public void picksDefaultSenderIfNoSender() {
+    assertThat(picker.pick(senders, defaultSenderSupplier), is(defaultSender));
+  }
+
+  private void send(MessageSender sender, long latencyNanos) {
+    picker.beforeSending(sender);
+    picker.afterSending(sender, latencyNanos, false);
+  }
+
+  private void fail(MessageSender sender) {
+    picker.beforeSending(sender);
+    picker.afterSending(sender, 0, true);
+  }
+}
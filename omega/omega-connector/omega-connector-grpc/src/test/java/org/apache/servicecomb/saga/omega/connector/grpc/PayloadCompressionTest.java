@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.servicecomb.saga.common.PayloadCodec;
+import org.apache.servicecomb.saga.omega.transaction.MessageDeserializer;
+import org.apache.servicecomb.saga.omega.transaction.MessageHandler;
+import org.apache.servicecomb.saga.pack.contract.grpc.GrpcCompensateCommand;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class PayloadCompressionTest {
+  private final MessageDeserializer deserializer = message -> new Object[] {new String(message)};
+  private final MessageHandler handler = mock(MessageHandler.class);
+  private final AtomicReference<String> acceptedCodec = new AtomicReference<>();
+  private final GrpcCompensateStreamObserver observer = new GrpcCompensateStreamObserver(handler, () -> { }, deserializer,
+      globalTxId -> { }, acceptedCodec::set);
+
+  @Test
+  public void compressesPayloadsLargerThanThreshold() {
+    byte[] payload = largeArgument().getBytes();
+
+    byte[] compressed = PayloadCodec.compress(payload, 1024);
+
+    assertThat(PayloadCodec.isCompressed(compressed), is(true));
+    assertThat(compressed.length < payload.length, is(true));
+    assertThat(Arrays.equals(PayloadCodec.decompress(compressed), payload), is(true));
+  }
+
+  @Test
+  public void keepsSmallAndIncompressiblePayloads() {
+    byte[] small = "small".getBytes();
+    assertThat(PayloadCodec.compress(small, 1024), sameInstance(small));
+
+    byte[] random = new byte[4096];
+    new Random(1).nextBytes(random);
+    random[0] = 1;
+    assertThat(PayloadCodec.compress(random, 1024), sameInstance(random));
+    assertThat(PayloadCodec.decompress(random), sameInstance(random));
+  }
+
+  @Test
+  public void plainKryoPayloadIsNeverRegardedAsCompressed() {
+    // Kryo writes a null array as the single byte 0, and the length plus one for the others.
+    assertThat(PayloadCodec.isCompressed(new byte[] {0}), is(false));
+    assertThat(PayloadCodec.isCompressed(new byte[] {1}), is(false));
+    assertThat(PayloadCodec.isCompressed(new byte[] {4, 0, 0, 0, 0, 0, 0, 0}), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void blowsUpWhenCompressedPayloadIsTruncated() {
+    byte[] compressed = PayloadCodec.compress(largeArgument().getBytes(), 1024);
+
+    PayloadCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+  }
+
+  @Test
+  public void acceptsCodecAnsweredByAlpha() {
+    observer.onNext(GrpcCompensateCommand.newBuilder().setAcceptedPayloadCodec(PayloadCodec.DEFLATE).build());
+
+    assertThat(acceptedCodec.get(), is(PayloadCodec.DEFLATE));
+    verify(handler, never()).onReceive(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void inflatesCompressedCompensationPayloads() {
+    String argument = largeArgument();
+    byte[] compressed = PayloadCodec.compress(argument.getBytes(), 1024);
+
+    observer.onNext(GrpcCompensateCommand.newBuilder()
+        .setGlobalTxId("globalTxId")
+        .setLocalTxId("localTxId")
+        .setCompensationMethod("compensate")
+        .setPayloadCodec(PayloadCodec.DEFLATE)
+        .setPayloads(ByteString.copyFrom(compressed))
+        .build());
+
+    verify(handler).onReceive(eq("globalTxId"), eq("localTxId"), eq(null), eq("compensate"), eq(argument));
+  }
+
+  private String largeArgument() {
+    List<String> items = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      items.add("item-" + (i % 10));
+    }
+    return String.join(",", items);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.connector.grpc;
+
+import static com.seanyinx.github.unit.scaffolding.Randomness.uniquify;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TxResumeWaiterTest {
+  private final String globalTxId = uniquify("globalTxId");
+  private final TxResumeWaiter resumeWaiter = new TxResumeWaiter();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    resumeWaiter.close();
+  }
+
+  @Test
+  public void wakesUpWaitingThreadOnResume() throws Exception {
+    long sentNanos = System.nanoTime();
+    Future<Boolean> resumed = executor.submit(() -> resumeWaiter.await(globalTxId, sentNanos, 60000));
+    await().atMost(2, TimeUnit.SECONDS).until(() -> resumeWaiter.waitingCount() == 1);
+
+    resumeWaiter.resume(uniquify("globalTxId"));
+    assertThat(resumeWaiter.waitingCount(), is(1));
+
+    resumeWaiter.resume(globalTxId);
+    assertThat(resumed.get(2, TimeUnit.SECONDS), is(true));
+    assertThat(resumeWaiter.waitingCount(), is(0));
+  }
+
+  @Test
+  public void timesOutWithoutNotification() throws Exception {
+    assertThat(resumeWaiter.await(globalTxId, System.nanoTime(), 100), is(false));
+    assertThat(resumeWaiter.waitingCount(), is(0));
+  }
+
+  @Test
+  public void doesNotMissNotificationArrivedBeforeWaiting() throws Exception {
+    long sentNanos = System.nanoTime();
+    resumeWaiter.resume(globalTxId);
+
+    assertThat(resumeWaiter.await(globalTxId, sentNanos, 60000), is(true));
+    // the notifications before sending belong to the former pause.
+    assertThat(resumeWaiter.await(globalTxId, System.nanoTime(), 100), is(false));
+  }
+
+  @Test
+  public void completesAsyncWaitingsWhenAllAreResumed() throws Exception {
+    CompletableFuture<Boolean> first = resumeWaiter.resumption(globalTxId, System.nanoTime(), 60000);
+    CompletableFuture<Boolean> second = resumeWaiter.resumption(uniquify("globalTxId"), System.nanoTime(), 60000);
+    CompletableFuture<Boolean> timedOut = resumeWaiter.resumption(uniquify("globalTxId"), System.nanoTime(), 100);
+
+    assertThat(timedOut.get(2, TimeUnit.SECONDS), is(false));
+    assertThat(first.isDone(), is(false));
+
+    resumeWaiter.resume("");
+
+    assertThat(first.get(2, TimeUnit.SECONDS), is(true));
+    assertThat(second.get(2, TimeUnit.SECONDS), is(true));
+    assertThat(resumeWaiter.waitingCount(), is(0));
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.context;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates 26-char ids in the ULID layout (Crockford's base32), which are ordered by time, so the ids of the new transactions are appended
+ * to the end of the indexes of alpha, rather than being spread over them like random UUIDs.
+ * An id consists of 48 bits of milliseconds, 32 bits hashed from the instanceId and a 48-bit sequence which starts randomly in every process.
+ * The sequence is unique in one process, and the instance bits and the random start separate the processes, so no random is generated per id.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator<String> {
+  private static final char[] ENCODING = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+  private static final long SEQUENCE_MASK = (1L << 48) - 1;
+
+  private final long node;
+  private final AtomicLong sequence;
+
+  public TimeOrderedIdGenerator(String instanceId) {
+    this.node = (instanceId == null ? 0 : instanceId.hashCode()) & 0xFFFFFFFFL;
+    this.sequence = new AtomicLong(new SecureRandom().nextLong());
+  }
+
+  @Override
+  public String nextId() {
+    long seq = sequence.getAndIncrement() & SEQUENCE_MASK;
+    char[] id = new char[26];
+
+    long time = System.currentTimeMillis();
+    for (int i = 9; i >= 0; i--) {
+      id[i] = ENCODING[(int) (time & 31)];
+      time >>>= 5;
+    }
+
+    // the 80 bits of node and sequence, 'high' holds the upper 32 bits, 'low' holds the lower 48 bits.
+    long high = node;
+    long low = seq;
+    for (int i = 25; i >= 10; i--) {
+      id[i] = ENCODING[(int) (low & 31)];
+      low = (low >>> 5) | ((high & 31) << 43);
+      high >>>= 5;
+    }
+    return new String(id);
+  }
+}
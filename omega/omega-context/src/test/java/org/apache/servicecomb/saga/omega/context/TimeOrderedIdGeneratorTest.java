@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.context;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TimeOrderedIdGeneratorTest {
+
+  private final TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator("service-127.0.0.1");
+
+  @Test
+  public void nextIdIsUniqueAcrossThreads() throws Exception {
+    int nThreads = 10;
+    int idsPerThread = 10000;
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < nThreads; i++) {
+      futures.add(executorService.submit(() -> {
+        for (int j = 0; j < idsPerThread; j++) {
+          ids.add(idGenerator.nextId());
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executorService.shutdown();
+
+    assertThat(ids.size(), is(nThreads * idsPerThread));
+  }
+
+  @Test
+  public void nextIdIsOrderedByTime() throws Exception {
+    String former = idGenerator.nextId();
+    Thread.sleep(2);
+    String latter = new TimeOrderedIdGenerator("another-127.0.0.2").nextId();
+
+    assertThat(latter.compareTo(former), greaterThan(0));
+  }
+
+  @Test
+  public void nextIdIsCompact() {
+    String id = idGenerator.nextId();
+
+    assertThat(id.length(), is(26));
+    assertThat(id.matches("[0-9A-HJKMNP-TV-Z]{26}"), is(true));
+  }
+}
@@ -15,7 +15,8 @@
 
 package org.apache.servicecomb.saga.omega.format;
 
-import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.servicecomb.saga.omega.transaction.OmegaException;
 
@@ -26,37 +27,92 @@ import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoFactory;
 import com.esotericsoftware.kryo.pool.KryoPool;
 
+/**
+ * The buffers of Output and Input are reused by every thread, so a message costs one exact-size copy of its bytes only.
+ * If the registration is required, the classes are written as the ids of the registry instead of their names,
+ * so the registry, including its order, has to be the same between the serializer and the deserializer.
+ */
 public class KryoMessageFormat implements MessageFormat {
 
   private static final int DEFAULT_BUFFER_SIZE = 4096;
 
-  private static final KryoFactory FACTORY = () -> new Kryo();
+  // the thread does not keep the buffer which grew for a large message.
+  private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+  private static final byte[] EMPTY_BUFFER = new byte[0];
+
+  private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(DEFAULT_BUFFER_SIZE, -1));
 
-  private static final KryoPool POOL = new KryoPool.Builder(FACTORY).softReferences().build();
+  private static final ThreadLocal<Input> INPUT = ThreadLocal.withInitial(Input::new);
+
+  private final KryoPool pool;
+
+  public KryoMessageFormat() {
+    this(false, Collections.emptyList());
+  }
+
+  /**
+   * @param registrationRequired true if only the registered classes are serializable
+   * @param registeredClasses the full names of the classes to be registered in order, besides the ones which are registered by default
+   */
+  public KryoMessageFormat(boolean registrationRequired, List<String> registeredClasses) {
+    KryoFactory factory = () -> {
+      Kryo kryo = new Kryo();
+      if (registrationRequired) {
+        kryo.setRegistrationRequired(true);
+        kryo.register(Object[].class);
+        for (String className : registeredClasses) {
+          if (!className.trim().isEmpty()) {
+            kryo.register(loadClass(className.trim()));
+          }
+        }
+      }
+      return kryo;
+    };
+    this.pool = new KryoPool.Builder(factory).softReferences().build();
+    // to fail fast if any class is unknown.
+    pool.release(pool.borrow());
+  }
 
   @Override
   public byte[] serialize(Object[] objects) {
-    Output output = new Output(DEFAULT_BUFFER_SIZE, -1);
-
-    Kryo kryo = POOL.borrow();
-    kryo.writeObjectOrNull(output, objects, Object[].class);
-    POOL.release(kryo);
+    Output output = OUTPUT.get();
+    output.clear();
 
-    return output.toBytes();
+    Kryo kryo = pool.borrow();
+    try {
+      kryo.writeObjectOrNull(output, objects, Object[].class);
+      return output.toBytes();
+    } finally {
+      pool.release(kryo);
+      if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+        OUTPUT.remove();
+      }
+    }
   }
 
   @Override
   public Object[] deserialize(byte[] message) {
+    Input input = INPUT.get();
+    Kryo kryo = pool.borrow();
     try {
-      Input input = new Input(new ByteArrayInputStream(message));
-
-      Kryo kryo = POOL.borrow();
-      Object[] objects = kryo.readObjectOrNull(input, Object[].class);
-      POOL.release(kryo);
-
-      return objects;
+      input.setBuffer(message);
+      return kryo.readObjectOrNull(input, Object[].class);
     } catch (KryoException e) {
       throw new OmegaException("Unable to deserialize message", e);
+    } finally {
+      pool.release(kryo);
+      // not to keep the message.
+      input.setBuffer(EMPTY_BUFFER);
+    }
+  }
+
+  private static Class<?> loadClass(String className) {
+    try {
+      ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+      return Class.forName(className, false, classLoader != null ? classLoader : KryoMessageFormat.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("Unable to register class [" + className + "] to Kryo.", e);
     }
   }
 }
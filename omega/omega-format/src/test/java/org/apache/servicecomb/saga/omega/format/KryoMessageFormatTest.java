@@ -15,9 +15,16 @@
 
 package org.apache.servicecomb.saga.omega.format;
 
+import static com.seanyinx.github.unit.scaffolding.AssertUtils.expectFailing;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -36,4 +43,42 @@ public class KryoMessageFormatTest extends MessageFormatTestBase {
 
     assertThat(message[0], instanceOf(EmptyClass.class));
   }
+
+  @Test
+  public void serializesIntoIndependentArraysByReusedBuffer() {
+    byte[] bytes1 = format.serialize(new Object[]{"hello"});
+    byte[] bytes1Copy = Arrays.copyOf(bytes1, bytes1.length);
+    byte[] bytes2 = format.serialize(new Object[]{new String(new char[100 * 1024]).replace('\0', 'a')});
+    format.serialize(new Object[]{"world"});
+
+    assertThat(Arrays.equals(bytes1, bytes1Copy), is(true));
+    assertThat(((String) format.deserialize(bytes2)[0]).length(), is(100 * 1024));
+    assertThat(format.deserialize(bytes1)[0], is("hello"));
+  }
+
+  @Test
+  public void serializesRegisteredClassesOnlyIfRegistrationIsRequired() {
+    MessageFormat registeredFormat = new KryoMessageFormat(true, asList(ArrayList.class.getName(), EmptyClass.class.getName()));
+    ArrayList<String> list = new ArrayList<>(singletonList("hello"));
+
+    byte[] bytes = registeredFormat.serialize(new Object[]{list, new EmptyClass()});
+    Object[] message = registeredFormat.deserialize(bytes);
+
+    assertThat(message[0], is(list));
+    assertThat(message[1], instanceOf(EmptyClass.class));
+    // the class names are not written.
+    assertThat(bytes.length < format.serialize(new Object[]{list, new EmptyClass()}).length, is(true));
+
+    try {
+      registeredFormat.serialize(new Object[]{new java.util.Date()});
+      expectFailing(IllegalArgumentException.class);
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage().contains("Class is not registered"), is(true));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void blowsUpWhenRegisteredClassIsUnknown() {
+    new KryoMessageFormat(true, singletonList("org.apache.servicecomb.saga.UnknownClass"));
+  }
 }
@@ -43,8 +43,14 @@ class OmegaSpringConfig {
   @Value("${txle.prometheus.metrics.port:8098}")
   private String promMetricsPort;
 
+  // 'uuid' generates random UUIDs, 'time-ordered' generates ULID-like ids which keep the indexes of alpha appending.
   @Bean(name = {"omegaUniqueIdGenerator"})
-  IdGenerator<String> idGenerator() {
+  IdGenerator<String> idGenerator(@Value("${txle.transaction.id-generator:uuid}") String idGeneratorType, ServiceConfig serviceConfig) {
+    if ("time-ordered".equalsIgnoreCase(idGeneratorType.trim())) {
+      return new TimeOrderedIdGenerator(serviceConfig.instanceId());
+    } else if (!"uuid".equalsIgnoreCase(idGeneratorType.trim())) {
+      throw new IllegalArgumentException("Unknown id generator [" + idGeneratorType + "], it should be 'uuid' or 'time-ordered'.");
+    }
     return new UniqueIdGenerator();
   }
 
@@ -97,13 +103,16 @@ class OmegaSpringConfig {
       @Value("${alpha.cluster.ssl.key:client.pem}") String key,
       @Value("${alpha.cluster.ssl.certChain:ca.crt}") String certChain,
       @Value("${omega.connection.reconnectDelay:3000}") int reconnectDelay,
+      @Value("${alpha.cluster.loadBalance.strategy:fastest}") String loadBalanceStrategy,
+      @Value("${txle.transaction.kryo.registration-required:false}") boolean kryoRegistrationRequired,
+      @Value("${txle.transaction.kryo.registered-classes:}") String[] kryoRegisteredClasses,
       ServiceConfig serviceConfig,
       @Lazy MessageHandler handler,
       @Autowired Tracing tracing) {
 
-    MessageFormat messageFormat = new KryoMessageFormat();
+    MessageFormat messageFormat = new KryoMessageFormat(kryoRegistrationRequired, Arrays.asList(kryoRegisteredClasses));
     AlphaClusterConfig clusterConfig = new AlphaClusterConfig(Arrays.asList(addresses),
-        enableSSL, mutualAuth, cert, key, certChain);
+        enableSSL, mutualAuth, cert, key, certChain, loadBalanceStrategy);
     final MessageSender sender = new LoadBalancedClusterMessageSender(
         clusterConfig,
         messageFormat,
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+
+package org.apache.servicecomb.saga.omega.transaction;
+
+import org.apache.servicecomb.saga.common.TxleConstants;
+import org.apache.servicecomb.saga.omega.context.TxleStaticConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * If 'txle.transaction.async-send.enabled' is true, the TxEndedEvents and TxAbortedEvents of the sub-transactions are sent by 'MessageSender.sendAsync',
+ * their acks are not used by the business methods, so the business threads are neither held by the sending nor by the paused global transactions.
+ * The failures of these events are logged instead of being thrown to the business methods.
+ * The SagaEndedEvent waits for the pending events of its global transaction which were sent by current omega, so alpha receives them before it.
+ * That only orders the events within current JVM, so the events are sent asynchronously only if their global transactions were started by current omega.
+ * The others are sent synchronously, so they have reached alpha before the sub-transaction returns to the remote initiator.
+ */
+final class AsyncTxEventSender {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  // globalTxId -> the events which are being sent
+  private static final Map<String, Set<CompletableFuture<AlphaResponse>>> PENDING_EVENTS = new ConcurrentHashMap<>();
+  // the globalTxIds of the running global transactions which were started by current omega
+  private static final Set<String> LOCAL_SAGAS = ConcurrentHashMap.newKeySet();
+
+  private AsyncTxEventSender() {
+  }
+
+  static boolean isEnabled() {
+    return TxleStaticConfig.getBooleanConfig("txle.transaction.async-send.enabled", false);
+  }
+
+  static void sagaStarted(String globalTxId) {
+    if (globalTxId != null) {
+      LOCAL_SAGAS.add(globalTxId);
+    }
+  }
+
+  static void sagaFinished(String globalTxId) {
+    if (globalTxId != null) {
+      LOCAL_SAGAS.remove(globalTxId);
+    }
+  }
+
+  static void send(MessageSender sender, TxEvent event) {
+    if (!LOCAL_SAGAS.contains(event.globalTxId())) {
+      // the SagaEndedEvent is sent by another JVM, which can not wait for this event.
+      sender.send(event);
+      return;
+    }
+    CompletableFuture<AlphaResponse> response = sender.sendAsync(event);
+    if (!response.isDone()) {
+      PENDING_EVENTS.compute(event.globalTxId(), (globalTxId, futures) -> {
+        Set<CompletableFuture<AlphaResponse>> pendingFutures = futures == null ? ConcurrentHashMap.newKeySet() : futures;
+        pendingFutures.add(response);
+        return pendingFutures;
+      });
+    }
+    response.whenComplete((alphaResponse, e) -> {
+      PENDING_EVENTS.computeIfPresent(event.globalTxId(), (globalTxId, futures) -> {
+        futures.remove(response);
+        return futures.isEmpty() ? null : futures;
+      });
+      if (e != null) {
+        LOG.error(TxleConstants.LOG_ERROR_PREFIX + "Failed to send TxEvent {} asynchronously.", event, e);
+      }
+    });
+  }
+
+  /**
+   * To block current thread until the pending events of the global transaction are sent, no matter whether they succeeded.
+   */
+  static void awaitPending(String globalTxId) {
+    Set<CompletableFuture<AlphaResponse>> futures = globalTxId == null ? null : PENDING_EVENTS.get(globalTxId);
+    if (futures != null && !futures.isEmpty()) {
+      CompletableFuture.allOf(futures.stream().map(future -> future.handle((alphaResponse, e) -> null)).toArray(CompletableFuture[]::new)).join();
+    }
+  }
+
+  static int pendingCount() {
+    return PENDING_EVENTS.values().stream().mapToInt(Set::size).sum();
+  }
+}
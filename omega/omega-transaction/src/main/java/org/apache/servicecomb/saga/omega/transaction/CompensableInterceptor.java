@@ -26,10 +26,16 @@ class CompensableInterceptor implements EventAwareInterceptor {
   private static final Logger LOG = LoggerFactory.getLogger(CompensableInterceptor.class);
   private final OmegaContext context;
   private final MessageSender sender;
+  private final boolean asyncSendEnabled;
 
   CompensableInterceptor(OmegaContext context, MessageSender sender) {
+    this(context, sender, AsyncTxEventSender.isEnabled());
+  }
+
+  CompensableInterceptor(OmegaContext context, MessageSender sender, boolean asyncSendEnabled) {
     this.sender = sender;
     this.context = context;
+    this.asyncSendEnabled = asyncSendEnabled;
   }
 
   @Override
@@ -45,13 +51,20 @@ class CompensableInterceptor implements EventAwareInterceptor {
 
   @Override
   public void postIntercept(String parentTxId, String compensationMethod) {
-    sender.send(new TxEndedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category()));
+    send(new TxEndedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category()));
   }
 
   @Override
   public void onError(String parentTxId, String compensationMethod, Throwable throwable) {
-    sender.send(
-        new TxAbortedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category(), throwable));
+    send(new TxAbortedEvent(context.globalTxId(), context.localTxId(), parentTxId, compensationMethod, context.category(), throwable));
+  }
+
+  private void send(TxEvent event) {
+    if (asyncSendEnabled) {
+      AsyncTxEventSender.send(sender, event);
+    } else {
+      sender.send(event);
+    }
   }
 
   private void readConfigFromServer() {
@@ -19,6 +19,7 @@ import org.apache.servicecomb.saga.omega.transaction.accidentplatform.AccidentHa
 import org.apache.servicecomb.saga.pack.contract.grpc.GrpcConfigAck;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface MessageSender {
   void onConnected();
@@ -31,6 +32,14 @@ public interface MessageSender {
 
   AlphaResponse send(TxEvent event);
 
+  /**
+   * The same as 'send(TxEvent)', but the implementations which support the resume notifications do not hold the caller thread
+   * while the global transaction is paused.
+   */
+  default CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+    return CompletableFuture.completedFuture(send(event));
+  }
+
   Set<String> send(Set<String> localTxIdSet);
 
   String reportMessageToServer(KafkaMessage message);
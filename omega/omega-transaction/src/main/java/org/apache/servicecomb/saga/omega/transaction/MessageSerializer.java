@@ -16,5 +16,8 @@
 package org.apache.servicecomb.saga.omega.transaction;
 
 public interface MessageSerializer {
+  /**
+   * @return a new array for every call, which is not modified afterwards, so the caller is able to wrap it without copying
+   */
   byte[] serialize(Object[] objects);
 }
@@ -33,7 +33,10 @@ class SagaStartAnnotationProcessor implements EventAwareInterceptor {
   public AlphaResponse preIntercept(String parentTxId, String compensationMethod, int timeout, String retriesMethod,
       int retries, Object... message) {
     try {
-      return sender.send(new SagaStartedEvent(omegaContext.globalTxId(), omegaContext.localTxId(), timeout, omegaContext.category()));
+      AlphaResponse response = sender.send(new SagaStartedEvent(omegaContext.globalTxId(), omegaContext.localTxId(), timeout, omegaContext.category()));
+      // it's unregistered by SagaStartAspect once the global transaction is done.
+      AsyncTxEventSender.sagaStarted(omegaContext.globalTxId());
+      return response;
     } catch (OmegaException e) {
       throw new TransactionalException(e.getMessage(), e.getCause());
     }
@@ -41,6 +44,8 @@ class SagaStartAnnotationProcessor implements EventAwareInterceptor {
 
   @Override
   public void postIntercept(String parentTxId, String compensationMethod) {
+    // the sub-transactions' events which are sent asynchronously by current omega reach alpha before the SagaEndedEvent.
+    AsyncTxEventSender.awaitPending(omegaContext.globalTxId());
     AlphaResponse response = sender.send(new SagaEndedEvent(omegaContext.globalTxId(), omegaContext.localTxId(), omegaContext.category()));
     if (response.aborted()) {
       throw new OmegaException("transaction " + parentTxId + " is aborted");
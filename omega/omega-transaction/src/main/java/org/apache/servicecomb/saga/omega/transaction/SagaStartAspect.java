@@ -86,6 +86,7 @@ public class SagaStartAspect {
       }
       throw throwable;
     } finally {
+      AsyncTxEventSender.sagaFinished(context.globalTxId());
       context.clear();
     }
   }
@@ -22,6 +22,8 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.servicecomb.saga.common.EventType;
 import org.apache.servicecomb.saga.omega.context.IdGenerator;
@@ -38,6 +40,7 @@ public class CompensableInterceptorTest {
   private final String globalTxId = UUID.randomUUID().toString();
   private final String localTxId = UUID.randomUUID().toString();
   private final String parentTxId = UUID.randomUUID().toString();
+  private final CompletableFuture<AlphaResponse> asyncResponse = new CompletableFuture<>();
 
   private final MessageSender sender =new MessageSender() {
     @Override
@@ -63,6 +66,12 @@ public class CompensableInterceptorTest {
       return new AlphaResponse(false);
     }
 
+    @Override
+    public CompletableFuture<AlphaResponse> sendAsync(TxEvent event) {
+      messages.add(event);
+      return asyncResponse;
+    }
+
     @Override
     public Set<String> send(Set<String> localTxIdSet) {
       return null;
@@ -143,4 +152,35 @@ public class CompensableInterceptorTest {
     assertThat(event.type(), is(EventType.TxAbortedEvent));
     assertThat(event.compensationMethod(), is(compensationMethod));
   }
+
+  @Test
+  public void sendsTxEndedEventAsyncAndSagaEndWaitsForIt() throws Exception {
+    AsyncTxEventSender.sagaStarted(globalTxId);
+    CompensableInterceptor asyncInterceptor = new CompensableInterceptor(context, sender, true);
+    asyncInterceptor.postIntercept(parentTxId, compensationMethod);
+
+    assertThat(messages.get(0).type(), is(EventType.TxEndedEvent));
+    assertThat(AsyncTxEventSender.pendingCount(), is(1));
+
+    CompletableFuture<Void> sagaEnding = CompletableFuture.runAsync(() -> AsyncTxEventSender.awaitPending(globalTxId));
+    Thread.sleep(100);
+    assertThat(sagaEnding.isDone(), is(false));
+
+    asyncResponse.complete(new AlphaResponse(false));
+    sagaEnding.get(1, TimeUnit.SECONDS);
+    assertThat(AsyncTxEventSender.pendingCount(), is(0));
+    AsyncTxEventSender.sagaFinished(globalTxId);
+  }
+
+  @Test
+  public void sendsTxEndedEventSyncIfSagaWasStartedByAnotherJvm() {
+    // the initiator's SagaEndedEvent can not wait for the events which are pending in current JVM.
+    CompensableInterceptor asyncInterceptor = new CompensableInterceptor(context, sender, true);
+    asyncInterceptor.postIntercept(parentTxId, compensationMethod);
+
+    assertThat(messages.get(0).type(), is(EventType.TxEndedEvent));
+    // it has been acknowledged by alpha before the sub-transaction returns to the initiator.
+    assertThat(asyncResponse.isDone(), is(false));
+    assertThat(AsyncTxEventSender.pendingCount(), is(0));
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018-2019 ActionTech.
+ * License: http://www.apache.org/licenses/LICENSE-2.0 Apache License 2.0 or higher.
+ */
+package org.apache.servicecomb.saga.common;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The codec of the compressed TxEvent payloads, it's negotiated between omega and alpha in 'OnConnected'.
+ * A compressed payload is self-describing, so alpha stores it as-is and recognizes it when sending it back as a compensation.
+ * Its layout is the 4-byte magic, the 4-byte original length and the raw deflate data.
+ * The magic starts with 0, and a Kryo serialized array which starts with 0 is the null array of one byte, so the magic never matches a plain payload.
+ */
+public final class PayloadCodec {
+    public static final String DEFLATE = "deflate";
+
+    private static final byte[] MAGIC = {0, 'T', 'Z', 1};
+    private static final int HEADER_LENGTH = MAGIC.length + 4;
+    private static final int MAX_INFLATED_LENGTH = 64 * 1024 * 1024;
+
+    // Deflater and Inflater hold native memory, so they are reused by every thread rather than created per payload.
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * @return the compressed payload, or the given one if it's smaller than the threshold or it's not made smaller by compressing
+     */
+    public static byte[] compress(byte[] payload, int threshold) {
+        if (payload == null || payload.length < Math.max(threshold, HEADER_LENGTH) || isCompressed(payload)) {
+            return payload;
+        }
+
+        Deflater deflater = DEFLATER.get();
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            // it's worth nothing if the compressed one is not smaller, so the buffer is limited by the original length.
+            byte[] buffer = new byte[payload.length];
+            System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+            writeInt(buffer, MAGIC.length, payload.length);
+            int length = HEADER_LENGTH;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished()) {
+                return payload;
+            }
+            byte[] compressed = new byte[length];
+            System.arraycopy(buffer, 0, compressed, 0, length);
+            return compressed;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * @return the original payload, or the given one if it's not compressed
+     */
+    public static byte[] decompress(byte[] payload) {
+        if (!isCompressed(payload)) {
+            return payload;
+        }
+
+        int originalLength = readInt(payload, MAGIC.length);
+        if (originalLength < 0 || originalLength > MAX_INFLATED_LENGTH) {
+            throw new IllegalArgumentException("Invalid length of the compressed payload, length = " + originalLength);
+        }
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH);
+            byte[] original = new byte[originalLength];
+            int length = 0;
+            while (length < originalLength && !inflater.finished()) {
+                int inflated = inflater.inflate(original, length, originalLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != originalLength) {
+                throw new IllegalArgumentException("Truncated compressed payload, expected " + originalLength + " bytes, but got " + length);
+            }
+            return original;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Unable to decompress payload", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    public static boolean isCompressed(byte[] payload) {
+        if (payload == null || payload.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (payload[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+}